@@ -0,0 +1,131 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import chess.Board;
+import chess.engine.Search;
+
+/**
+ * Analyses positions in the background for {@link Sketch}'s analysis mode. Each position is
+ * searched without limits until the next one arrives, and after every completed iteration the
+ * best lines are reported. One {@link Search} is kept for all positions, so its transposition
+ * table and history scores carry over from move to move and the analysis of the next position
+ * warms up quickly.
+ * <br>
+ * Requests never block the caller: a control thread stops the running search and starts the next
+ * one, skipping positions that were replaced before their search could start.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see app.Sketch
+ */
+class Analysis implements AutoCloseable {
+
+    /** Number of lines reported when none is specified. */
+    static final int DEFAULT_LINES = 3;
+
+    private static final long STOP_POLL_MILLIS = 10;
+
+    private final Search search;
+    private final BiConsumer<String, List<Search.Info>> listener;
+    private final ExecutorService control;
+    private final ExecutorService searcher;
+    private final java.util.concurrent.atomic.AtomicLong generation;
+    private Future<?> running;
+
+    /**
+     * Creates an idle analysis.
+     *
+     * @param lines    the number of best lines to report
+     * @param listener receives, on the search thread, the position analysed and its best lines
+     *                 after each completed iteration, best first
+     */
+    Analysis(int lines, BiConsumer<String, List<Search.Info>> listener) {
+        search = new Search();
+        search.setMultiPv(lines);
+        this.listener = listener;
+        control = newDaemonExecutor("analysis-control");
+        searcher = newDaemonExecutor("analysis-search");
+        generation = new java.util.concurrent.atomic.AtomicLong();
+    }
+
+    /**
+     * Stops analysing the current position, if any, and starts analysing the specified one.
+     *
+     * @param fen the position to analyse, or <code>null</code> to only stop
+     */
+    void analyse(String fen) {
+        long request = generation.incrementAndGet();
+        control.execute(() -> {
+            stopRunning();
+            if (fen == null || generation.get() != request) {
+                return;
+            }
+            var board = new Board(fen);
+            int lines = Math.min(search.getMultiPv(), board.getLegalMoves().size());
+            running = searcher.submit(() -> {
+                var infos = new java.util.ArrayList<Search.Info>();
+                search.search(board, Search.Limits.INFINITE, info -> {
+                    if (info.getLine() == 1) {
+                        infos.clear();
+                    }
+                    infos.add(info);
+                    if (infos.size() == lines) {
+                        listener.accept(fen, List.copyOf(infos));
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * Stops the analysis and its threads.
+     */
+    @Override
+    public void close() {
+        analyse(null);
+        control.shutdown();
+        searcher.shutdown();
+    }
+
+    /**
+     * Stops the running search and waits for it to return. The stop request is repeated in case
+     * the search had not started yet. Called on the control thread.
+     */
+    private void stopRunning() {
+        if (running == null) {
+            return;
+        }
+        while (!running.isDone()) {
+            search.stop();
+            try {
+                running.get(STOP_POLL_MILLIS, java.util.concurrent.TimeUnit.MILLISECONDS);
+            } catch (java.util.concurrent.TimeoutException e) {
+                // Ask again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (java.util.concurrent.ExecutionException e) {
+                break;
+            }
+        }
+        running = null;
+    }
+
+    /**
+     * Creates a single-thread executor whose thread does not keep the application alive.
+     *
+     * @param name the thread's name
+     * @return the executor
+     */
+    private static ExecutorService newDaemonExecutor(String name) {
+        return java.util.concurrent.Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
\ No newline at end of file
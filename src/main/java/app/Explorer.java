@@ -0,0 +1,67 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import explorer.PositionIndex;
+
+/**
+ * Looks up positions in a {@link PositionIndex} for {@link Sketch}'s explorer view, away from the
+ * Processing animation thread. Lookups are binary searches over memory-mapped files, so they are
+ * quick once the pages are cached, but the first ones may wait on the disk. Requests run one at a
+ * time on a daemon thread, and a request that is no longer needed can be cancelled through its
+ * future.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see app.Sketch
+ */
+class Explorer implements AutoCloseable {
+
+    private final PositionIndex index;
+    private final ExecutorService executor;
+
+    /**
+     * Opens an index with its own worker thread.
+     *
+     * @param directory the directory of the index, as built by {@link explorer.IndexBuilder}
+     * @throws IOException if the index cannot be read
+     */
+    Explorer(Path directory) throws IOException {
+        index = new PositionIndex(directory);
+        executor = java.util.concurrent.Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, "explorer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts looking up a position.
+     *
+     * @param key the position's Zobrist key
+     * @return the games that reached the position
+     */
+    CompletableFuture<PositionIndex.Stats> query(long key) {
+        return CompletableFuture.supplyAsync(() -> index.query(key), executor);
+    }
+
+    /**
+     * Returns the number of games in the index.
+     *
+     * @return the game count
+     */
+    int getGameCount() {
+        return index.getGameCount();
+    }
+
+    /**
+     * Stops the worker thread, interrupting the current request.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
\ No newline at end of file
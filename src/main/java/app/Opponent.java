@@ -0,0 +1,220 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import chess.Board;
+import chess.Move;
+import chess.engine.Search;
+
+/**
+ * Plays against the human in {@link Sketch}, and ponders while the human thinks. After each of
+ * its moves, the opponent predicts the human's reply from its principal variation and searches
+ * the position that reply leads to, without limits, until the human moves.
+ * <br>
+ * If the human plays the predicted move, a ponder hit, the running search is given what is left of
+ * the time for a move, counted from the start of the ponder, and its result is played; nothing
+ * searched while pondering is lost, and the reply comes sooner by the time spent pondering. On a
+ * miss, the ponder is stopped and a new search gets the full time; the transposition table still
+ * keeps whatever the ponder found. Hits, misses and the time saved are counted.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see app.Sketch
+ */
+class Opponent implements AutoCloseable {
+
+    /** Time for a move when none is specified, in milliseconds. */
+    static final long DEFAULT_MOVE_MILLIS = 2000;
+
+    private static final long STOP_POLL_MILLIS = 10;
+
+    private final Search search;
+    private final long moveMillis;
+    private final BiConsumer<String, Move> listener;
+    private final ExecutorService control;
+    private final ExecutorService searcher;
+    private volatile List<Move> principalVariation;
+    private Future<Move> running;
+    private String ponderFen;
+    private long ponderStart;
+    private volatile int ponders;
+    private volatile int hits;
+    private volatile long savedMillis;
+
+    /**
+     * Creates an opponent that is not thinking yet.
+     *
+     * @param moveMillis the time for each move, in milliseconds
+     * @param listener   receives, on the control thread, the position the opponent was asked to
+     *                   play and the move it chose
+     */
+    Opponent(long moveMillis, BiConsumer<String, Move> listener) {
+        search = new Search();
+        this.moveMillis = moveMillis;
+        this.listener = listener;
+        control = newDaemonExecutor("opponent-control");
+        searcher = newDaemonExecutor("opponent-search");
+        principalVariation = List.of();
+    }
+
+    /**
+     * Starts choosing a move in the specified position, which is normally the one the human's
+     * move led to. When the move is chosen, it is handed to the listener and pondering starts.
+     * Does nothing if the player to move has no legal moves.
+     *
+     * @param fen the position to play
+     */
+    void play(String fen) {
+        control.execute(() -> {
+            Move best;
+            if (running != null && fen.equals(ponderFen)) {
+                long pondered = (System.nanoTime() - ponderStart) / 1_000_000;
+                hits++;
+                ponders++;
+                savedMillis += Math.min(pondered, moveMillis);
+                search.setTimeLimit(Math.max(0, moveMillis - pondered));
+                best = await(Math.max(0, moveMillis - pondered));
+            } else {
+                if (running != null) {
+                    ponders++;
+                    stopRunning();
+                }
+                var board = new Board(fen);
+                principalVariation = List.of();
+                var limits = new Search.Limits(0, 0, moveMillis);
+                running = searcher.submit(() -> search.search(board, limits, this::update));
+                best = await(moveMillis);
+            }
+            ponderFen = null;
+            if (best == null) {
+                return;
+            }
+            List<Move> line = principalVariation;
+            listener.accept(fen, best);
+            if (line.size() > 1 && line.get(0).equals(best)) {
+                ponder(fen, best, line.get(1));
+            }
+        });
+    }
+
+    /**
+     * Stops thinking and stops the opponent's threads. Moves already requested are still chosen
+     * first.
+     */
+    @Override
+    public void close() {
+        control.execute(() -> {
+            stopRunning();
+            searcher.shutdown();
+        });
+        control.shutdown();
+    }
+
+    /**
+     * Returns the ponder statistics, such as "ponder hits 3/5 (60%), 4.2 s saved".
+     *
+     * @return the number of ponder hits, the number of moves answered after pondering, and the
+     *         thinking time the hits saved
+     */
+    @Override
+    public String toString() {
+        int hits = this.hits, ponders = this.ponders;
+        return String.format("ponder hits %d/%d (%d%%), %.1f s saved", hits, ponders,
+                             ponders == 0 ? 0 : 100 * hits / ponders, savedMillis / 1000.0);
+    }
+
+    /**
+     * Starts searching the position reached after the opponent's move and the human's expected
+     * reply. Called on the control thread.
+     *
+     * @param fen      the position before the opponent's move
+     * @param move     the opponent's move
+     * @param expected the human's expected reply
+     */
+    private void ponder(String fen, Move move, Move expected) {
+        var board = new Board(fen);
+        board.makeMove(move);
+        board.makeMove(expected);
+        ponderFen = board.toFen();
+        ponderStart = System.nanoTime();
+        running = searcher.submit(() -> search.search(board, Search.Limits.INFINITE,
+                                                      this::update));
+    }
+
+    /**
+     * Records the principal variation of the search in progress. Called on the search thread.
+     *
+     * @param info the search's progress
+     */
+    private void update(Search.Info info) {
+        principalVariation = info.getPrincipalVariation();
+    }
+
+    /**
+     * Waits for the running search to return its move. The search limits its own time, but it is
+     * stopped if it overruns, which happens if it was given its limit before it had started.
+     * Called on the control thread.
+     *
+     * @param millis the time the search has left, in milliseconds
+     * @return the best move found or <code>null</code> if there is no legal move
+     */
+    private Move await(long millis) {
+        try {
+            return running.get(millis + STOP_POLL_MILLIS,
+                               java.util.concurrent.TimeUnit.MILLISECONDS);
+        } catch (java.util.concurrent.TimeoutException e) {
+            return stopRunning();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (java.util.concurrent.ExecutionException e) {
+            return null;
+        } finally {
+            running = null;
+        }
+    }
+
+    /**
+     * Stops the running search and waits for it to return. The stop request is repeated in case
+     * the search had not started yet. Called on the control thread.
+     *
+     * @return the best move found or <code>null</code> if there was no search or no legal move
+     */
+    private Move stopRunning() {
+        Future<Move> future = running;
+        running = null;
+        if (future == null) {
+            return null;
+        }
+        while (true) {
+            search.stop();
+            try {
+                return future.get(STOP_POLL_MILLIS, java.util.concurrent.TimeUnit.MILLISECONDS);
+            } catch (java.util.concurrent.TimeoutException e) {
+                // Ask again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (java.util.concurrent.ExecutionException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Creates a single-thread executor whose thread does not keep the application alive.
+     *
+     * @param name the thread's name
+     * @return the executor
+     */
+    private static ExecutorService newDaemonExecutor(String name) {
+        return java.util.concurrent.Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
\ No newline at end of file
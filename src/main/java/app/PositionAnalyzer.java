@@ -0,0 +1,97 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import chess.Move;
+import chess.PositionSnapshot;
+import chess.pieces.Position;
+
+/**
+ * Computes legal moves and game status away from the Processing animation thread. Every request
+ * carries an immutable {@link PositionSnapshot} of the position and is answered from it alone, so
+ * the window's board can keep changing while a request runs. Results are immutable. Requests run
+ * one at a time on a daemon thread, and a request that is no longer needed can be cancelled
+ * through its future.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see app.Sketch
+ */
+class PositionAnalyzer implements AutoCloseable {
+
+    /**
+     * The status of the player to move.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    enum Status {
+
+        /** The player is not in check and has legal moves. */
+        PLAYING,
+        /** The player is in check and has legal moves. */
+        CHECK,
+        /** The player is in check and has no legal moves. */
+        CHECKMATE,
+        /** The player is not in check and has no legal moves. */
+        STALEMATE
+
+    }
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates an analyzer with its own worker thread.
+     */
+    PositionAnalyzer() {
+        executor = java.util.concurrent.Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, "position-analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts computing the legal moves of a piece.
+     *
+     * @param position the position
+     * @param from     the position of the piece
+     * @return the positions the piece can legally move to; empty if there is no piece there or
+     *         it is not the piece's turn
+     */
+    CompletableFuture<List<Position>> legalMoves(PositionSnapshot position, Position from) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Move> moves = position.getLegalMoves();
+            return moves.stream().filter(move -> move.getFrom().equals(from))
+                                 .map(Move::getTo)
+                                 .distinct()
+                                 .toList();
+        }, executor);
+    }
+
+    /**
+     * Starts computing the status of the player to move.
+     *
+     * @param position the position
+     * @return the player's status
+     */
+    CompletableFuture<Status> status(PositionSnapshot position) {
+        return CompletableFuture.supplyAsync(() -> {
+            boolean inCheck = position.isInCheck();
+            if (position.getLegalMoves().isEmpty()) {
+                return inCheck ? Status.CHECKMATE : Status.STALEMATE;
+            }
+            return inCheck ? Status.CHECK : Status.PLAYING;
+        }, executor);
+    }
+
+    /**
+     * Stops the worker thread, interrupting the current request.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
\ No newline at end of file
@@ -1,10 +1,18 @@
 package app;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PImage;
+import processing.event.KeyEvent;
 import processing.event.MouseEvent;
 import chess.Board;
+import chess.Move;
+import chess.engine.Search;
 import chess.pieces.Position;
 import chess.pieces.Color;
 import chess.pieces.Piece;
@@ -14,9 +22,35 @@ import chess.pieces.Knight;
 import chess.pieces.Rook;
 import chess.pieces.King;
 import chess.pieces.Queen;
+import explorer.PositionIndex;
 
 /**
- * Processing sketch used for playing chess.
+ * Processing sketch used for playing chess. The empty board is rendered once into an off-screen
+ * layer, and the piece images are scaled once into a sprite atlas; both are only rebuilt when the
+ * window is resized, so each redraw copies the layer and draws every piece without scaling.
+ * After a click, only the squares the click changed are repainted: those of the last move, and
+ * those of the previous and current selection.
+ * <br>
+ * Legal moves and the game's status are computed by a {@link PositionAnalyzer} on a background
+ * thread, so input is never blocked by move generation. Its results are handed back to the
+ * animation thread, which applies them on its next redraw; requests made stale by a later click
+ * are cancelled. The window title shows when a request is pending.
+ * <br>
+ * Pressing <code>A</code> toggles analysis mode, in which an {@link Analysis} searches the current
+ * position in the background. Its results are drawn into an overlay layer, redrawn only when new
+ * results arrive: an arrow for the best move, an evaluation bar, and the best lines. The squares
+ * the overlay covers are repainted with it, and only those it covered before or covers now are
+ * marked dirty when it changes.
+ * <br>
+ * Pressing <code>C</code> toggles play against the computer, which takes the side that is not to
+ * move. The computer's {@link Opponent} ponders on the human's expected reply during the human's
+ * turn, and the window title shows how often it guessed right and how much thinking time that
+ * saved.
+ * <br>
+ * Pressing <code>E</code> toggles the opening explorer, which looks up every position in the game
+ * index named by the <code>explorer.index</code> system property through an {@link Explorer} and
+ * lists, in the overlay, how many games reached it and the moves most played from it. Only the
+ * ranks under the listing are repainted when it changes.
  * 
  * @author Marco Olea
  * @version 1.0
@@ -84,6 +118,7 @@ public class Sketch extends PApplet {
     private static final String WINDOW_TITLE                  = "Processing 3 Chess";
     private static final String CHECKMATE_MESSAGE             = "Checkmate! %s wins!";
     private static final String STALEMATE_MESSAGE             = "Stalemate! It's a draw!";
+    private static final String THINKING_TITLE                = WINDOW_TITLE + " (thinking...)";
     private static final int    SQUARE_BORDER_COLOR           = 0xff000000; // ARGB
     private static final int    SQUARE_BORDER_WIDTH           = 1;
     private static final int    SELECTED_SQUARE_BORDER_COLOR  = 0xff0000ff;
@@ -92,23 +127,59 @@ public class Sketch extends PApplet {
     private static final int    POTENTIAL_SQUARE_BORDER_WIDTH = 3;
     private static final int    WHITE_SQUARE_FILL             = 0xffdcdcdc;
     private static final int    BLACK_SQUARE_FILL             = 0x64000000;
+    private static final char   ANALYSIS_KEY                  = 'a';
+    private static final char   OPPONENT_KEY                  = 'c';
+    private static final char   EXPLORER_KEY                  = 'e';
+    private static final String EXPLORER_INDEX_PROPERTY       = "explorer.index";
+    private static final String DEFAULT_EXPLORER_INDEX        = "index";
+    private static final int    EXPLORER_MOVES                = 5; // Moves listed per position
+    private static final int    ARROW_COLOR                   = 0xa0008000;
+    private static final int    EVAL_BAR_WHITE                = 0xfff0f0f0;
+    private static final int    EVAL_BAR_BLACK                = 0xff202020;
+    private static final int    LINES_BACKGROUND              = 0xb0000000;
+    private static final int    LINES_TEXT_COLOR              = 0xffffffff;
+    private static final int    LINE_LENGTH                   = 6; // Moves shown per line
+    private static final double EVAL_BAR_SCALE                = 400; // Centipawns
 
-    // These can only be set after displayHeight is available.
+    // These can only be set after displayHeight is available, and change when the window is
+    // resized.
     private static int BOARD_SIZE;
     private static int SQUARE_SIZE;
     private static int IMAGE_SIZE;
     private static int SQUARE_MARGIN;
 
     private Board board;
-    private HashMap<String, PImage> images;
-    private Piece selectedPiece;
+    private java.util.Map<String, PImage> images;
+    private HashMap<String, Integer> spriteIndices;
+    private PGraphics boardLayer;
+    private PGraphics sprites;
+    private int layoutWidth;
+    private int layoutHeight;
+    private PositionAnalyzer analyzer;
+    private java.util.Queue<Runnable> results;
+    private CompletableFuture<?> movesRequest;
+    private CompletableFuture<?> statusRequest;
+    private String title;
     private Position selectedPosition;
+    private java.util.List<Position> potentialMoves;
+    private java.util.Set<Position> dirtySquares;
+    private boolean repaintAll;
     private boolean choosingNextMove;
     private boolean gameIsOver;
+    private Analysis analysis;
+    private String analysedFen;
+    private java.util.List<Search.Info> analysisLines;
+    private PGraphics overlay;
+    private java.util.Set<Position> overlaySquares;
+    private Opponent opponent;
+    private Color computerColor;
+    private Explorer explorer;
+    private CompletableFuture<?> explorerRequest;
+    private PositionIndex.Stats explorerStats;
 
     /**
-     * Sets up the window, turns off looping, loads piece image files, creates board, and assigns
-     * images to pieces.
+     * Sets up the window, turns off looping, loads piece image files in parallel, creates board,
+     * and assigns images to pieces.
      */
     @Override
     public void setup() {
@@ -119,73 +190,156 @@ public class Sketch extends PApplet {
 
         surface.setLocation((displayWidth - BOARD_SIZE) / 2, (displayHeight - BOARD_SIZE) / 2);
         surface.setSize(BOARD_SIZE, BOARD_SIZE);
-        surface.setTitle(WINDOW_TITLE);
+        title = WINDOW_TITLE;
+        surface.setTitle(title);
         surface.setResizable(true);
         noLoop();
 
         board = Board.getInstance();
-        images = new HashMap<>(12);
-        put(new Pawn(Color.WHITE), "/white-pawn-50.png");
-        put(new Bishop(Color.WHITE), "/white-bishop-50.png");
-        put(new Knight(Color.WHITE), "/white-knight-50.png");
-        put(new Rook(Color.WHITE), "/white-rook-50.png");
-        put(new King(Color.WHITE), "/white-king-50.png");
-        put(new Queen(Color.WHITE), "/white-queen-50.png");
-        put(new Pawn(Color.BLACK), "/black-pawn-50.png");
-        put(new Bishop(Color.BLACK), "/black-bishop-50.png");
-        put(new Knight(Color.BLACK), "/black-knight-50.png");
-        put(new Rook(Color.BLACK), "/black-rook-50.png");
-        put(new King(Color.BLACK), "/black-king-50.png");
-        put(new Queen(Color.BLACK), "/black-queen-50.png");
+        images = new java.util.concurrent.ConcurrentHashMap<>(12);
+        spriteIndices = new HashMap<>(12);
+        potentialMoves = java.util.List.of();
+        dirtySquares = new java.util.HashSet<>();
+        overlaySquares = new java.util.HashSet<>();
+        analyzer = new PositionAnalyzer();
+        results = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        CompletableFuture.allOf(put(new Pawn(Color.WHITE), "/white-pawn-50.png"),
+                                put(new Bishop(Color.WHITE), "/white-bishop-50.png"),
+                                put(new Knight(Color.WHITE), "/white-knight-50.png"),
+                                put(new Rook(Color.WHITE), "/white-rook-50.png"),
+                                put(new King(Color.WHITE), "/white-king-50.png"),
+                                put(new Queen(Color.WHITE), "/white-queen-50.png"),
+                                put(new Pawn(Color.BLACK), "/black-pawn-50.png"),
+                                put(new Bishop(Color.BLACK), "/black-bishop-50.png"),
+                                put(new Knight(Color.BLACK), "/black-knight-50.png"),
+                                put(new Rook(Color.BLACK), "/black-rook-50.png"),
+                                put(new King(Color.BLACK), "/black-king-50.png"),
+                                put(new Queen(Color.BLACK), "/black-queen-50.png"))
+                         .join();
+    }
+
+    /**
+     * Resizes the sketch and schedules a redraw, which rebuilds the board layer and the sprite
+     * atlas for the new size.
+     *
+     * @param width  the new width
+     * @param height the new height
+     */
+    @Override
+    public void setSize(int width, int height) {
+        super.setSize(width, height);
+        redraw();
     }
 
     /**
      * Draws the 8x8 chess board, using special predefined colors for the selected piece and all the
-     * positions it can legally move to, then draws the images for every piece on the board.
+     * positions it can legally move to, then draws the images for every piece on the board. Only
+     * the dirty squares are drawn, unless the window was resized or nothing was drawn yet.
      */
     @Override
     public void draw() {
-        // Clear canvas
-        background(255);
+        for (Runnable result; (result = results.poll()) != null; ) {
+            result.run();
+        }
+        if (width != layoutWidth || height != layoutHeight) {
+            layout();
+            repaintAll = true;
+        }
 
-        // Board
-        stroke(SQUARE_BORDER_COLOR);
-        strokeWeight(SQUARE_BORDER_WIDTH);
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                drawSquare(i, j);
+        if (repaintAll) {
+            // Clear canvas and copy the board
+            background(255);
+            image(boardLayer, 0, 0);
+
+            // Selection
+            for (Position move: potentialMoves) {
+                drawHighlight(move, POTENTIAL_SQUARE_BORDER_COLOR, POTENTIAL_SQUARE_BORDER_WIDTH);
+            }
+            if (choosingNextMove) {
+                drawHighlight(selectedPosition, SELECTED_SQUARE_BORDER_COLOR,
+                              SELECTED_SQUARE_BORDER_WIDTH);
             }
-        }
 
-        // Selection
-        if (choosingNextMove) {
-            stroke(POTENTIAL_SQUARE_BORDER_COLOR);
-            strokeWeight(POTENTIAL_SQUARE_BORDER_WIDTH);
-            for (Position move: selectedPiece.getLegalMoves()) {
-                drawSquare(move.getRank(), move.getFile());
+            // Pieces
+            for (Piece piece: board) {
+                drawPiece(piece);
+            }
+
+            // Analysis and explorer
+            if (analysis != null || explorer != null) {
+                image(overlay, 0, 0);
+            }
+            repaintAll = false;
+        } else {
+            for (Position position: dirtySquares) {
+                repaintSquare(position);
             }
-            stroke(SELECTED_SQUARE_BORDER_COLOR);
-            strokeWeight(SELECTED_SQUARE_BORDER_WIDTH);
-            drawSquare(selectedPosition.getRank(), selectedPosition.getFile());
         }
+        dirtySquares.clear();
 
-        // Pieces
-        for (Piece piece: board) {
-            image(images.get(piece.toString()), 
-                  piece.getPosition().getFile() * SQUARE_SIZE + SQUARE_MARGIN,
-                  piece.getPosition().getRank() * SQUARE_SIZE + SQUARE_MARGIN,
-                  IMAGE_SIZE, IMAGE_SIZE);
+        // Thinking indicator and ponder statistics
+        boolean pending = movesRequest != null || statusRequest != null
+                          || opponent != null && board.getTurn() == computerColor && !gameIsOver;
+        String newTitle = (pending ? THINKING_TITLE : WINDOW_TITLE)
+                          + (opponent != null ? " - " + opponent : "");
+        if (!newTitle.equals(title)) {
+            surface.setTitle(newTitle);
+            title = newTitle;
         }
+    }
 
-        // Checkmate or stalemate
-        if (!gameIsOver && board.isCheckmate()) {
-            String winner = board.getTurn() == Color.WHITE ? "Black" : "White";
-            runSketch(platformNames, new Dialog(String.format(CHECKMATE_MESSAGE, winner)));
-            gameIsOver = true;
-        } else if (!gameIsOver && board.isStalemate()) {
-            runSketch(platformNames, new Dialog(STALEMATE_MESSAGE));
-            gameIsOver = true;
+    /**
+     * Stops the background analysis and the explorer when the window is closed.
+     */
+    @Override
+    public void dispose() {
+        if (analyzer != null) {
+            analyzer.close();
+        }
+        if (analysis != null) {
+            analysis.close();
+        }
+        if (opponent != null) {
+            opponent.close();
+        }
+        if (explorer != null) {
+            explorer.close();
         }
+        super.dispose();
+    }
+
+    /**
+     * Toggles analysis mode when the analysis key is pressed, play against the computer when the
+     * opponent key is pressed, and the explorer when the explorer key is pressed.
+     *
+     * @param event key event
+     */
+    @Override
+    public void keyPressed(KeyEvent event) {
+        char key = Character.toLowerCase(event.getKey());
+        if (key == OPPONENT_KEY) {
+            toggleOpponent();
+            return;
+        } else if (key == EXPLORER_KEY) {
+            toggleExplorer();
+            return;
+        } else if (key != ANALYSIS_KEY) {
+            return;
+        }
+        if (analysis == null) {
+            analysis = new Analysis(Analysis.DEFAULT_LINES, (fen, lines) -> deliver(() -> {
+                if (analysis != null && fen.equals(analysedFen)) {
+                    analysisLines = lines;
+                    renderOverlay();
+                }
+            }));
+            analyseCurrentPosition();
+        } else {
+            analysis.close();
+            analysis = null;
+            renderOverlay();
+        }
+        redraw();
     }
 
     /**
@@ -200,25 +354,330 @@ public class Sketch extends PApplet {
             return;
         }
 
-        // If a player attempted to move the selected piece
+        // A click makes the pending legal moves of the previous selection stale
+        if (movesRequest != null) {
+            movesRequest.cancel(true);
+            movesRequest = null;
+        }
+
+        // If a player attempted to move the selected piece. The move is only made if it is one
+        // of the legal moves computed for the selection, so no legality check is needed here.
         if (choosingNextMove) {
-            board.movePiece(selectedPiece, 
-                            new Position(mapMouseCoordinateToRankOrFile(event.getY()),
-                                         mapMouseCoordinateToRankOrFile(event.getX())));
+            Position target = new Position(mapMouseCoordinateToRankOrFile(event.getY()),
+                                           mapMouseCoordinateToRankOrFile(event.getX()));
+            dirtySquares.add(selectedPosition);
+            dirtySquares.addAll(potentialMoves);
+            if (potentialMoves.contains(target)) {
+                makeMove(new Move(selectedPosition, target));
+                if (opponent != null) {
+                    opponent.play(board.toFen());
+                }
+            }
             choosingNextMove = false;
-            selectedPiece = null;
-        } else { // If a player attempted to select a piece
+            potentialMoves = java.util.List.of();
+        } else if (!gameIsOver) { // If a player attempted to select a piece
             selectedPosition = new Position(mapMouseCoordinateToRankOrFile(event.getY()),
                                             mapMouseCoordinateToRankOrFile(event.getX()));
-            if (board.getTurn() == board.getPieceColor(selectedPosition)) {
-                selectedPiece = board.getPiece(selectedPosition);
+            if (board.getTurn() == board.getPieceColor(selectedPosition)
+                    && (opponent == null || board.getTurn() != computerColor)) {
                 choosingNextMove = true;
+                dirtySquares.add(selectedPosition);
+                requestLegalMoves(selectedPosition);
             }
         }
 
         redraw();
     }
 
+    /**
+     * Makes a move on the board, notifying the board's listeners, marks the squares it changed,
+     * and requests the new position's status, analysis and games. The move's legality was
+     * already established off the animation thread, so it is not checked again.
+     *
+     * @param move a legal move
+     */
+    private void makeMove(Move move) {
+        board.playMove(move);
+        dirtySquares.addAll(board.getChangedSquares());
+        requestStatus();
+        if (analysis != null) {
+            analyseCurrentPosition();
+        }
+        if (explorer != null) {
+            requestExplorer();
+        }
+    }
+
+    /**
+     * Starts or stops play against the computer. The computer takes the side that is not to move.
+     * Its moves are played on the next redraw, unless the position changed since it started
+     * thinking.
+     */
+    private void toggleOpponent() {
+        if (opponent == null) {
+            computerColor = board.getTurn() == Color.WHITE ? Color.BLACK : Color.WHITE;
+            opponent = new Opponent(Opponent.DEFAULT_MOVE_MILLIS, (fen, move) -> deliver(() -> {
+                if (opponent != null && !gameIsOver && fen.equals(board.toFen())) {
+                    makeMove(move);
+                }
+            }));
+        } else {
+            opponent.close();
+            opponent = null;
+        }
+        redraw();
+    }
+
+    /**
+     * Opens or closes the explorer. The index is opened from the directory named by the
+     * <code>explorer.index</code> system property; if it cannot be read, the explorer stays off.
+     */
+    private void toggleExplorer() {
+        if (explorer == null) {
+            Path directory = Path.of(System.getProperty(EXPLORER_INDEX_PROPERTY,
+                                                        DEFAULT_EXPLORER_INDEX));
+            try {
+                explorer = new Explorer(directory);
+            } catch (IOException e) {
+                System.err.println("Cannot open the game index in " + directory + ": " + e);
+                return;
+            }
+            requestExplorer();
+        } else {
+            if (explorerRequest != null) {
+                explorerRequest.cancel(true);
+                explorerRequest = null;
+            }
+            explorer.close();
+            explorer = null;
+            explorerStats = null;
+            renderOverlay();
+        }
+        redraw();
+    }
+
+    /**
+     * Looks up the board's current position in the explorer. When the games arrive, and if no
+     * other move was made since, they are drawn into the overlay.
+     */
+    private void requestExplorer() {
+        if (explorerRequest != null) {
+            explorerRequest.cancel(true);
+        }
+        var request = explorer.query(board.getKey());
+        explorerRequest = request;
+        request.thenAccept(stats -> deliver(() -> {
+            if (explorerRequest == request) {
+                explorerRequest = null;
+                explorerStats = stats;
+                renderOverlay();
+            }
+        }));
+    }
+
+    /**
+     * Requests the legal moves of the selected piece. When they arrive, and if the selection has
+     * not changed since, they are highlighted.
+     *
+     * @param from the position of the selected piece
+     */
+    private void requestLegalMoves(Position from) {
+        var request = analyzer.legalMoves(board.snapshot(), from);
+        movesRequest = request;
+        request.thenAccept(moves -> deliver(() -> {
+            if (movesRequest == request) {
+                movesRequest = null;
+                potentialMoves = moves;
+                dirtySquares.addAll(moves);
+            }
+        }));
+    }
+
+    /**
+     * Requests the status of the player to move after a move. When it arrives, and if no other
+     * move was made since, the game-over dialog is shown if the game ended.
+     */
+    private void requestStatus() {
+        if (statusRequest != null) {
+            statusRequest.cancel(true);
+        }
+        Color turn = board.getTurn();
+        var request = analyzer.status(board.snapshot());
+        statusRequest = request;
+        request.thenAccept(status -> deliver(() -> {
+            if (statusRequest != request) {
+                return;
+            }
+            statusRequest = null;
+            if (status == PositionAnalyzer.Status.CHECKMATE) {
+                String winner = turn == Color.WHITE ? "Black" : "White";
+                runSketch(platformNames, new Dialog(String.format(CHECKMATE_MESSAGE, winner)));
+                gameIsOver = true;
+            } else if (status == PositionAnalyzer.Status.STALEMATE) {
+                runSketch(platformNames, new Dialog(STALEMATE_MESSAGE));
+                gameIsOver = true;
+            }
+        }));
+    }
+
+    /**
+     * Starts analysing the board's current position, replacing the previous analysis and
+     * clearing the overlay until the first results arrive.
+     */
+    private void analyseCurrentPosition() {
+        analysedFen = board.toFen();
+        analysisLines = java.util.List.of();
+        renderOverlay();
+        analysis.analyse(analysedFen);
+    }
+
+    /**
+     * Draws the latest analysis into the overlay layer: an arrow for the best move, an evaluation
+     * bar along the right edge, white's share growing with white's advantage, and the best lines
+     * along the bottom edge. The explorer's games, if any, are listed along the top edge. The
+     * squares covered before and after are marked dirty. Everything is drawn within the squares,
+     * so that repainting them repaints the whole overlay.
+     */
+    private void renderOverlay() {
+        if (overlay == null) {
+            return;
+        }
+        dirtySquares.addAll(overlaySquares);
+        overlaySquares.clear();
+        int size = 8 * SQUARE_SIZE;
+        overlay.beginDraw();
+        overlay.clear();
+        if (analysis != null && !analysisLines.isEmpty()) {
+            Search.Info best = analysisLines.get(0);
+            Color turn = analysedFen.contains(" w ") ? Color.WHITE : Color.BLACK;
+
+            // Best move
+            if (!best.getPrincipalVariation().isEmpty()) {
+                Move move = best.getPrincipalVariation().get(0);
+                float x1 = (move.getFrom().getFile() + 0.5f) * SQUARE_SIZE;
+                float y1 = (move.getFrom().getRank() + 0.5f) * SQUARE_SIZE;
+                float x2 = (move.getTo().getFile() + 0.5f) * SQUARE_SIZE;
+                float y2 = (move.getTo().getRank() + 0.5f) * SQUARE_SIZE;
+                float angle = atan2(y2 - y1, x2 - x1);
+                float head = SQUARE_SIZE / 3f;
+                overlay.stroke(ARROW_COLOR);
+                overlay.strokeWeight(SQUARE_SIZE / 10f);
+                overlay.line(x1, y1, x2 - head * cos(angle), y2 - head * sin(angle));
+                overlay.noStroke();
+                overlay.fill(ARROW_COLOR);
+                overlay.triangle(x2, y2,
+                                 x2 - head * cos(angle - 0.5f), y2 - head * sin(angle - 0.5f),
+                                 x2 - head * cos(angle + 0.5f), y2 - head * sin(angle + 0.5f));
+                cover(Math.min(move.getFrom().getRank(), move.getTo().getRank()),
+                      Math.max(move.getFrom().getRank(), move.getTo().getRank()),
+                      Math.min(move.getFrom().getFile(), move.getTo().getFile()),
+                      Math.max(move.getFrom().getFile(), move.getTo().getFile()));
+            }
+
+            // Evaluation bar
+            double whiteScore = turn == Color.WHITE ? best.getScore() : -best.getScore();
+            double whiteShare = best.isMate() ? (whiteScore > 0 ? 1 : 0)
+                                              : 1 / (1 + Math.exp(-whiteScore / EVAL_BAR_SCALE));
+            float barWidth = SQUARE_SIZE / 8f;
+            float whiteHeight = (float) (size * whiteShare);
+            overlay.noStroke();
+            overlay.fill(EVAL_BAR_BLACK);
+            overlay.rect(size - barWidth, 0, barWidth, size - whiteHeight);
+            overlay.fill(EVAL_BAR_WHITE);
+            overlay.rect(size - barWidth, size - whiteHeight, barWidth, whiteHeight);
+            cover(0, 7, 7, 7);
+
+            // Best lines
+            float textSize = SQUARE_SIZE / 5f;
+            float lineHeight = textSize * 1.3f;
+            float top = Math.max(0, size - lineHeight * analysisLines.size() - textSize / 2);
+            overlay.fill(LINES_BACKGROUND);
+            overlay.rect(0, top, size - barWidth, size - top);
+            cover((int) (top / SQUARE_SIZE), 7, 0, 7);
+            overlay.fill(LINES_TEXT_COLOR);
+            overlay.textSize(textSize);
+            overlay.textAlign(LEFT, TOP);
+            for (int i = 0; i < analysisLines.size(); i++) {
+                overlay.text(describe(analysisLines.get(i), turn), textSize / 2,
+                             top + textSize / 4 + i * lineHeight);
+            }
+        }
+
+        // Explorer
+        if (explorer != null && explorerStats != null) {
+            var moves = explorerStats.getMoves();
+            var lines = new java.util.ArrayList<String>();
+            lines.add(String.format("%,d of %,d games, white scores %.1f%%",
+                                    explorerStats.getGames(), explorer.getGameCount(),
+                                    100 * explorerStats.getTotal().getWhiteScore()));
+            for (var move: moves.subList(0, Math.min(EXPLORER_MOVES, moves.size()))) {
+                lines.add(move.toString());
+            }
+            float textSize = SQUARE_SIZE / 5f;
+            float lineHeight = textSize * 1.3f;
+            float bottom = Math.min(size, lineHeight * lines.size() + textSize / 2);
+            overlay.noStroke();
+            overlay.fill(LINES_BACKGROUND);
+            overlay.rect(0, 0, size - SQUARE_SIZE / 8f, bottom);
+            cover(0, Math.min(7, (int) (bottom / SQUARE_SIZE)), 0, 7);
+            overlay.fill(LINES_TEXT_COLOR);
+            overlay.textSize(textSize);
+            overlay.textAlign(LEFT, TOP);
+            for (int i = 0; i < lines.size(); i++) {
+                overlay.text(lines.get(i), textSize / 2, textSize / 4 + i * lineHeight);
+            }
+        }
+        overlay.endDraw();
+        dirtySquares.addAll(overlaySquares);
+    }
+
+    /**
+     * Records that the overlay covers a block of squares.
+     *
+     * @param fromRank the block's first rank
+     * @param toRank   the block's last rank
+     * @param fromFile the block's first file
+     * @param toFile   the block's last file
+     */
+    private void cover(int fromRank, int toRank, int fromFile, int toFile) {
+        for (int rank = fromRank; rank <= toRank; rank++) {
+            for (int file = fromFile; file <= toFile; file++) {
+                overlaySquares.add(new Position(rank, file));
+            }
+        }
+    }
+
+    /**
+     * Describes one line of the analysis, such as "2. +0.35 (d12) e2e4 e7e5 g1f3".
+     *
+     * @param info the line
+     * @param turn the player to move in the analysed position
+     * @return the line's rank, score from white's point of view, depth and first moves
+     */
+    private static String describe(Search.Info info, Color turn) {
+        int sign = turn == Color.WHITE ? 1 : -1;
+        String score = info.isMate() ? "#" + sign * info.getMateIn()
+                                     : String.format("%+.2f", sign * info.getScore() / 100.0);
+        var text = new StringBuilder().append(info.getLine()).append(". ").append(score)
+                                      .append(" (d").append(info.getDepth()).append(')');
+        var moves = info.getPrincipalVariation();
+        for (Move move: moves.subList(0, Math.min(LINE_LENGTH, moves.size()))) {
+            text.append(' ').append(move);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Hands a result computed in the background to the animation thread, which runs it at the
+     * start of the next redraw.
+     *
+     * @param result the code applying the result
+     */
+    private void deliver(Runnable result) {
+        results.add(result);
+        redraw();
+    }
+
     /**
      * Maps an x or y coordinate to an integer in the range [0, 7] (a rank or file).
      * 
@@ -226,32 +685,138 @@ public class Sketch extends PApplet {
      * @return 0, 1, 2, 3, 4, 5, 6, or 7
      */
     private int mapMouseCoordinateToRankOrFile(int c) {
-        return c / (BOARD_SIZE / 8);
+        return c / SQUARE_SIZE;
+    }
+
+    /**
+     * Sizes the board to fit the window, renders the empty board into <code>boardLayer</code>, and
+     * scales every piece image once into the <code>sprites</code> atlas, one image after another.
+     */
+    private void layout() {
+        BOARD_SIZE = Math.min(width, height);
+        SQUARE_SIZE = BOARD_SIZE / 8;
+        IMAGE_SIZE = BOARD_SIZE / 10;
+        SQUARE_MARGIN = SQUARE_SIZE / 10;
+
+        boardLayer = createGraphics(BOARD_SIZE, BOARD_SIZE);
+        boardLayer.beginDraw();
+        boardLayer.stroke(SQUARE_BORDER_COLOR);
+        boardLayer.strokeWeight(SQUARE_BORDER_WIDTH);
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                drawSquare(boardLayer, i, j);
+            }
+        }
+        boardLayer.endDraw();
+
+        sprites = createGraphics(images.size() * IMAGE_SIZE, IMAGE_SIZE);
+        sprites.beginDraw();
+        int index = 0;
+        for (var entry: images.entrySet()) {
+            sprites.image(entry.getValue(), index * IMAGE_SIZE, 0, IMAGE_SIZE, IMAGE_SIZE);
+            spriteIndices.put(entry.getKey(), index++);
+        }
+        sprites.endDraw();
+
+        overlay = createGraphics(BOARD_SIZE, BOARD_SIZE);
+        if (analysis != null || explorer != null) {
+            renderOverlay();
+        }
+
+        layoutWidth = width;
+        layoutHeight = height;
+    }
+
+    /**
+     * Repaints one square: the empty square from <code>boardLayer</code>, then its selection
+     * highlight, if any, then its piece, if any, then the part of the overlay covering it, if
+     * any.
+     *
+     * @param position the position of the square
+     */
+    private void repaintSquare(Position position) {
+        int x = position.getFile() * SQUARE_SIZE;
+        int y = position.getRank() * SQUARE_SIZE;
+        image(boardLayer, x, y, SQUARE_SIZE, SQUARE_SIZE, x, y, x + SQUARE_SIZE, y + SQUARE_SIZE);
+        if (choosingNextMove && position.equals(selectedPosition)) {
+            drawHighlight(position, SELECTED_SQUARE_BORDER_COLOR, SELECTED_SQUARE_BORDER_WIDTH);
+        } else if (potentialMoves.contains(position)) {
+            drawHighlight(position, POTENTIAL_SQUARE_BORDER_COLOR, POTENTIAL_SQUARE_BORDER_WIDTH);
+        }
+        Piece piece = board.getPiece(position);
+        if (piece != null) {
+            drawPiece(piece);
+        }
+        if (overlaySquares.contains(position)) {
+            image(overlay, x, y, SQUARE_SIZE, SQUARE_SIZE, x, y, x + SQUARE_SIZE, y + SQUARE_SIZE);
+        }
+    }
+
+    /**
+     * Draws a colored border just inside a square, so that repainting the square erases it.
+     *
+     * @param position the position of the square
+     * @param color    the border color
+     * @param weight   the border width
+     */
+    private void drawHighlight(Position position, int color, int weight) {
+        noFill();
+        stroke(color);
+        strokeWeight(weight);
+        rect(position.getFile() * SQUARE_SIZE + weight / 2f,
+             position.getRank() * SQUARE_SIZE + weight / 2f,
+             SQUARE_SIZE - weight, SQUARE_SIZE - weight);
+    }
+
+    /**
+     * Draws a piece's sprite on its square.
+     *
+     * @param piece the piece to draw
+     */
+    private void drawPiece(Piece piece) {
+        int u = spriteIndices.get(piece.toString()) * IMAGE_SIZE;
+        image(sprites,
+              piece.getPosition().getFile() * SQUARE_SIZE + SQUARE_MARGIN,
+              piece.getPosition().getRank() * SQUARE_SIZE + SQUARE_MARGIN,
+              IMAGE_SIZE, IMAGE_SIZE, u, 0, u + IMAGE_SIZE, IMAGE_SIZE);
     }
 
     /**
      * Draws an appropriately-colored square on the board, of width and height equal to
      * <code>SQUARE_SIZE</code>.
      * 
-     * @param i the x-coordinate
-     * @param j the y-coordinate
+     * @param target the graphics to draw on
+     * @param i      the x-coordinate
+     * @param j      the y-coordinate
      */
-    private void drawSquare(int i, int j) {
-        fill(0xffffffff);
-        rect(j * SQUARE_SIZE, i * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
-        fill((i + j) % 2 == 0 ? WHITE_SQUARE_FILL : BLACK_SQUARE_FILL);
-        rect(j * SQUARE_SIZE, i * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
+    private void drawSquare(PGraphics target, int i, int j) {
+        target.fill(0xffffffff);
+        target.rect(j * SQUARE_SIZE, i * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
+        target.fill((i + j) % 2 == 0 ? WHITE_SQUARE_FILL : BLACK_SQUARE_FILL);
+        target.rect(j * SQUARE_SIZE, i * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
     }
 
     /**
-     * Puts the entry <code>piece.toString()=loadImage(path)</code> into the <code>images</code>
-     * HashMap.
+     * Starts loading the image at the specified classpath location on a background thread, and
+     * puts the entry <code>piece.toString()=image</code> into the <code>images</code> map once it
+     * is decoded. Reading a stream, rather than a file path, also works when the application runs
+     * from a jar.
      *
      * @param piece the piece to put
      * @param path  the path for the image to load
+     * @return a future completed when the image is loaded
      */
-    private void put(Piece piece, String path) {
-        images.put(piece.toString(), loadImage(getClass().getResource(path).getPath()));
+    private CompletableFuture<Void> put(Piece piece, String path) {
+        return CompletableFuture.runAsync(() -> {
+            try (InputStream in = getClass().getResourceAsStream(path)) {
+                if (in == null) {
+                    throw new IllegalStateException("Missing image " + path);
+                }
+                images.put(piece.toString(), new PImage(javax.imageio.ImageIO.read(in)));
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,424 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import chess.Board;
+import chess.Move;
+import chess.engine.Evaluator;
+import chess.engine.Mcts;
+import chess.engine.Nnue;
+import chess.engine.Search;
+import chess.engine.Tablebase;
+import chess.engine.TranspositionTable;
+import chess.pieces.Color;
+
+/**
+ * Headless front end that speaks the Universal Chess Interface protocol, so the engine can be
+ * driven by chess GUIs and tournament managers. Commands are read from standard input by the main
+ * thread, which does nothing else, while searches run on a worker thread that the
+ * <code>stop</code> command interrupts. This class does not depend on Processing.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Uci {
+
+    private static final String ENGINE_NAME      = "Processing 3 Chess";
+    private static final String ENGINE_AUTHOR    = "Marco Olea";
+    private static final int    MAX_HASH_MB      = 1024;
+    private static final int    MAX_MULTI_PV     = 16;
+    private static final String EMPTY_PATH       = "<empty>";
+    private static final int    MAX_THREADS      = 256;
+    private static final int    MOVES_TO_GO      = 30;
+    private static final long   TIME_MARGIN      = 50; // Milliseconds kept in reserve
+    private static final long   STOP_POLL_MILLIS = 10;
+
+    /** A <code>setoption</code> command; names and values may contain spaces. */
+    private static final java.util.regex.Pattern OPTION =
+            java.util.regex.Pattern.compile("setoption\\s+name\\s+(.+?)\\s+value\\s+(.*)");
+
+    private final PrintStream out;
+    private final ExecutorService worker;
+    private Board board;
+    private Search search;
+    private Mcts mcts;
+    private int hashMegabytes;
+    private int threads;
+    private java.util.function.Supplier<Evaluator> evaluators;
+    private Future<?> pendingSearch;
+    private CountDownLatch stopSignal;
+
+    /**
+     * Creates a front end that writes its responses to the specified stream.
+     *
+     * @param out the stream to write to
+     */
+    public Uci(PrintStream out) {
+        this.out = out;
+        worker = java.util.concurrent.Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "uci-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        board = new Board();
+        search = new Search();
+        hashMegabytes = TranspositionTable.DEFAULT_SIZE_MB;
+        threads = 1;
+        evaluators = Evaluator::new;
+    }
+
+    /**
+     * Runs the engine on standard input and output.
+     *
+     * @param args unused
+     * @throws IOException if standard input cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        new Uci(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+
+    /**
+     * Executes commands read from the specified reader until it is exhausted or a
+     * <code>quit</code> command is read.
+     *
+     * @param in the reader to read commands from
+     * @throws IOException if the reader cannot be read
+     */
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null && execute(line.trim())) {
+            // Keep reading
+        }
+        stopSearch();
+        worker.shutdownNow();
+    }
+
+    /**
+     * Executes a single command. Unknown commands are ignored, as required by the protocol.
+     *
+     * @param command the command
+     * @return <code>false</code> if the command was <code>quit</code>
+     */
+    private boolean execute(String command) {
+        String[] tokens = command.split("\\s+");
+        switch (tokens[0]) {
+            case "uci" -> {
+                send("id name " + ENGINE_NAME);
+                send("id author " + ENGINE_AUTHOR);
+                send("option name Hash type spin default " + TranspositionTable.DEFAULT_SIZE_MB
+                     + " min 1 max " + MAX_HASH_MB);
+                send("option name MultiPV type spin default 1 min 1 max " + MAX_MULTI_PV);
+                send("option name EvalFile type string default " + EMPTY_PATH);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("option name UseMCTS type check default false");
+                send("option name TablebasePath type string default " + EMPTY_PATH);
+                send("uciok");
+            }
+            case "isready" -> send("readyok");
+            case "setoption" -> setOption(command);
+            case "ucinewgame" -> {
+                stopSearch();
+                search.getTable().clear();
+                search.getEvaluator().getPawnTable().clear();
+                if (mcts != null) {
+                    mcts.clear();
+                }
+            }
+            case "position" -> setPosition(tokens);
+            case "go" -> go(tokens);
+            case "stop" -> stopSearch();
+            case "quit" -> {
+                return false;
+            }
+            default -> { }
+        }
+        return true;
+    }
+
+    /**
+     * Handles <code>setoption name Hash value &lt;megabytes&gt;</code>,
+     * <code>setoption name MultiPV value &lt;lines&gt;</code> and
+     * <code>setoption name EvalFile value &lt;path&gt;</code>, which switches to a neural network
+     * evaluation loaded from the file, or back to the handcrafted one if the path is
+     * <code>&lt;empty&gt;</code>. <code>setoption name UseMCTS value true</code> replaces the
+     * alpha-beta search with {@link Mcts}, which runs on the number of threads set by
+     * <code>setoption name Threads value &lt;threads&gt;</code> and keeps its tree in the memory
+     * set by the <code>Hash</code> option. <code>setoption name TablebasePath value
+     * &lt;directory&gt;</code> loads the endgame tables found in the directory.
+     * <br>
+     * The name is the text between <code>name</code> and <code>value</code>, and the value
+     * everything after <code>value</code>, so paths may contain spaces. Malformed commands and
+     * unknown options are reported with <code>info string</code>.
+     *
+     * @param command the command
+     */
+    private void setOption(String command) {
+        var matcher = OPTION.matcher(command);
+        if (!matcher.matches()) {
+            send("info string malformed option: " + command);
+            return;
+        }
+        String name = matcher.group(1), value = matcher.group(2);
+        if (name.equalsIgnoreCase("Hash")) {
+            stopSearch();
+            hashMegabytes = Math.max(1, Math.min(MAX_HASH_MB, parseInt(value)));
+            replaceSearch(new TranspositionTable(hashMegabytes), search.getEvaluator());
+            resetMcts();
+        } else if (name.equalsIgnoreCase("MultiPV")) {
+            stopSearch();
+            search.setMultiPv(Math.min(MAX_MULTI_PV, parseInt(value)));
+        } else if (name.equalsIgnoreCase("EvalFile")) {
+            stopSearch();
+            if (value.equals(EMPTY_PATH)) {
+                evaluators = Evaluator::new;
+            } else {
+                Nnue.Network network;
+                try {
+                    network = Nnue.Network.load(java.nio.file.Path.of(value));
+                } catch (IOException e) {
+                    send("info string cannot load " + value + ": " + e.getMessage());
+                    return;
+                }
+                evaluators = () -> new Nnue(network);
+            }
+            Evaluator evaluator = evaluators.get();
+            if (evaluator instanceof Nnue) {
+                send("info string using " + evaluator);
+            }
+            replaceSearch(search.getTable(), evaluator);
+            resetMcts();
+        } else if (name.equalsIgnoreCase("Threads")) {
+            stopSearch();
+            threads = Math.max(1, Math.min(MAX_THREADS, parseInt(value)));
+            resetMcts();
+        } else if (name.equalsIgnoreCase("UseMCTS")) {
+            stopSearch();
+            if (!Boolean.parseBoolean(value)) {
+                mcts = null;
+            } else if (mcts == null) {
+                mcts = new Mcts(hashMegabytes, threads, evaluators);
+            }
+        } else if (name.equalsIgnoreCase("TablebasePath")) {
+            stopSearch();
+            if (value.equals(EMPTY_PATH)) {
+                search.setTablebase(null);
+                return;
+            }
+            try {
+                search.setTablebase(Tablebase.load(java.nio.file.Path.of(value)));
+                send("info string using " + search.getTablebase());
+            } catch (IOException e) {
+                send("info string cannot load " + value + ": " + e.getMessage());
+            }
+        } else {
+            send("info string unknown option " + name);
+        }
+    }
+
+    /**
+     * Replaces the alpha-beta search with one that uses the specified table and evaluator and
+     * keeps the other options.
+     *
+     * @param table     the transposition table
+     * @param evaluator the evaluator
+     */
+    private void replaceSearch(TranspositionTable table, Evaluator evaluator) {
+        var replacement = new Search(table, evaluator);
+        replacement.setMultiPv(search.getMultiPv());
+        replacement.setTablebase(search.getTablebase());
+        search = replacement;
+    }
+
+    /**
+     * Replaces the Monte Carlo tree search, if it is in use, with one built from the current
+     * options.
+     */
+    private void resetMcts() {
+        if (mcts != null) {
+            mcts = new Mcts(hashMegabytes, threads, evaluators);
+        }
+    }
+
+    /**
+     * Handles <code>position [startpos | fen &lt;fen&gt;] [moves &lt;move&gt; ...]</code>.
+     *
+     * @param tokens the command's tokens
+     */
+    private void setPosition(String[] tokens) {
+        stopSearch();
+        int movesIndex = java.util.Arrays.asList(tokens).indexOf("moves");
+        int end = movesIndex == -1 ? tokens.length : movesIndex;
+        try {
+            if (tokens.length > 1 && tokens[1].equals("fen")) {
+                board = new Board(String.join(" ", java.util.Arrays.copyOfRange(tokens, 2, end)));
+            } else {
+                board = new Board();
+            }
+        } catch (IllegalArgumentException e) {
+            send("info string " + e.getMessage());
+            board = new Board();
+            return;
+        }
+        for (int i = end + 1; i < tokens.length; i++) {
+            boolean moved;
+            try {
+                moved = board.movePiece(Move.parse(tokens[i]));
+            } catch (IllegalArgumentException e) {
+                moved = false;
+            }
+            if (!moved) {
+                send("info string Illegal move " + tokens[i]);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handles <code>go</code> with any of the parameters <code>depth</code>, <code>nodes</code>,
+     * <code>movetime</code>, <code>wtime</code>, <code>btime</code>, <code>winc</code>,
+     * <code>binc</code>, <code>movestogo</code> and <code>infinite</code>. The search runs on the
+     * worker thread, which prints <code>info</code> lines as it goes and the best move at the end.
+     *
+     * @param tokens the command's tokens
+     */
+    private void go(String[] tokens) {
+        stopSearch();
+        int depth = 0, movesToGo = 0;
+        long nodes = 0, moveTime = 0, time = 0, increment = 0;
+        boolean infinite = false;
+        boolean white = board.getTurn() == Color.WHITE;
+        for (int i = 1; i < tokens.length; i++) {
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            switch (tokens[i]) {
+                case "depth"     -> depth = parseInt(value);
+                case "nodes"     -> nodes = parseInt(value);
+                case "movetime"  -> moveTime = parseInt(value);
+                case "movestogo" -> movesToGo = parseInt(value);
+                case "wtime"     -> time = white ? parseInt(value) : time;
+                case "btime"     -> time = white ? time : parseInt(value);
+                case "winc"      -> increment = white ? parseInt(value) : increment;
+                case "binc"      -> increment = white ? increment : parseInt(value);
+                case "infinite"  -> infinite = true;
+                default          -> { }
+            }
+        }
+        if (moveTime == 0 && time > 0 && !infinite) {
+            long budget = time / (movesToGo > 0 ? movesToGo : MOVES_TO_GO) + increment * 3 / 4;
+            moveTime = Math.max(1, Math.min(budget, time - TIME_MARGIN));
+        }
+
+        var limits = new Search.Limits(depth, nodes, infinite ? 0 : moveTime);
+        var searchBoard = board;
+        var currentSearch = search;
+        var currentMcts = mcts;
+        var signal = new CountDownLatch(1);
+        boolean waitForStop = infinite;
+        stopSignal = signal;
+        pendingSearch = worker.submit(() -> {
+            Move best = currentMcts != null
+                      ? currentMcts.search(searchBoard, limits, this::sendInfo)
+                      : currentSearch.search(searchBoard, limits, this::sendInfo);
+            if (waitForStop) {
+                try {
+                    signal.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            send("bestmove " + (best == null ? "0000" : best));
+        });
+    }
+
+    /**
+     * Stops the search in progress, if any, and waits for it to print its best move.
+     */
+    private void stopSearch() {
+        if (pendingSearch == null) {
+            return;
+        }
+        stopSignal.countDown();
+        try {
+            // Repeat the request in case the worker had not started searching yet.
+            while (true) {
+                search.stop();
+                if (mcts != null) {
+                    mcts.stop();
+                }
+                try {
+                    pendingSearch.get(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    // Still searching
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            send("info string " + e.getCause());
+        }
+        pendingSearch = null;
+    }
+
+    /**
+     * Prints an <code>info</code> line for a completed iteration.
+     *
+     * @param info the search's progress
+     */
+    private void sendInfo(Search.Info info) {
+        var line = new StringBuilder("info depth ").append(info.getDepth());
+        if (search.getMultiPv() > 1) {
+            line.append(" multipv ").append(info.getLine());
+        }
+        if (info.isMate()) {
+            line.append(" score mate ").append(info.getMateIn());
+        } else {
+            line.append(" score cp ").append(info.getScore());
+        }
+        line.append(" nodes ").append(info.getNodes())
+            .append(" nps ").append(info.getNodesPerSecond())
+            .append(" time ").append(info.getMillis())
+            .append(" hashfull ").append(info.getPermilleFull());
+        if (!info.getPrincipalVariation().isEmpty()) {
+            line.append(" pv");
+            for (Move move: info.getPrincipalVariation()) {
+                line.append(' ').append(move);
+            }
+        }
+        send(line.toString());
+    }
+
+    /**
+     * Writes a line to the GUI. Called from both the main and the worker thread.
+     *
+     * @param line the line to write
+     */
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    /**
+     * Parses a number sent by the GUI.
+     *
+     * @param value the number's text
+     * @return the number, or <code>0</code> if it is malformed
+     */
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
\ No newline at end of file
@@ -1,4 +1,5 @@
 /**
- * Contains the main class that has to be executed to use this application.
+ * Contains the main class that has to be executed to use this application, and the headless
+ * {@link app.Uci} entry point used to play through the Universal Chess Interface protocol.
  */
 package app;
\ No newline at end of file
@@ -13,7 +13,9 @@ import chess.pieces.King;
 import chess.pieces.Rook;
 
 /**
- * A singleton class for representing a standard 8x8 chess board.
+ * A class for representing a standard 8x8 chess board. The application's window plays on the
+ * shared instance returned by {@link #getInstance()}; other boards can be created for analysing
+ * positions independently of it.
  * 
  * @author Marco Olea
  * @version 1.0
@@ -60,55 +62,141 @@ public class Board implements Iterable<Piece> {
 
     }
 
+    /**
+     * Everything needed to take back a move made on this board.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Undo {
+
+        private Piece piece;
+        private Position from;
+        private Position to;
+        private Piece captured;
+        private Position capturedPosition;
+        private Piece rook;
+        private Position rookFrom;
+        private Position rookTo;
+        private Piece promoted;
+        private Piece lastMoved;
+        private int halfmoveClock;
+        private long key;
+
+    }
+
+    /** The starting position in Forsyth-Edwards Notation. */
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final List<Class<? extends Piece>> PROMOTIONS =
+        List.of(Queen.class, Rook.class, Bishop.class, Knight.class);
+
     private static final Board INSTANCE = new Board();
 
     private Square[][] squares;
     private List<Piece> liveWhitePieces;
     private List<Piece> liveBlackPieces;
     private boolean currentPlayerHasLegalMoves;
+    private boolean legalMovesDetermined;
     private Color turn;
     private King whiteKing;
     private King blackKing;
+    private History history;
+    private java.util.Deque<Undo> undos;
+    private Undo lastChange;
+    private List<java.util.Map.Entry<BoardListener, java.util.concurrent.Executor>> listeners;
+    private SquareListener squareListener;
+    private int halfmoveClock;
+    private int fullmoveNumber;
+    private long key;
+    private long pawnKey;
+    private long whitePawns;
+    private long blackPawns;
 
     /**
      * Creates a board populated with the initial sixteen white and sixteen black pieces.
      */
-    private Board() {
+    public Board() {
+        this(START_FEN);
+    }
+
+    /**
+     * Creates a board set up in the position described by the specified string in Forsyth-Edwards
+     * Notation. The halfmove clock and fullmove number fields are optional.
+     *
+     * @param fen the position to set up
+     * @throws IllegalArgumentException if <code>fen</code> is malformed or either player does not
+     *                                  have exactly one king
+     */
+    public Board(String fen) {
         squares = new Square[8][8];
         liveWhitePieces = new java.util.LinkedList<>();
         liveBlackPieces = new java.util.LinkedList<>();
-        currentPlayerHasLegalMoves = true;
-        turn = Color.WHITE;                                 
+        history = new History();
+        undos = new java.util.ArrayDeque<>();
+        listeners = new java.util.concurrent.CopyOnWriteArrayList<>();
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++) {
                 squares[i][j] = new Square();
-                if (i >= 2 && i <= 5) {
-                    continue;
+            }
+        }
+
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+        String[] rows = fields[0].split("/");
+        if (rows.length != 8) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+        for (int i = 0; i < 8; i++) {
+            int j = 0;
+            for (char c: rows[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    j += c - '0';
+                } else if (j < 8) {
+                    placePiece(createPiece(c, fen), new Position(i, j++));
+                } else {
+                    j++;
                 }
-                Color color = (i == 6 || i == 7) ? Color.WHITE : Color.BLACK;
-                Piece piece = (i == 1 || i == 6) ? new Pawn(color) : switch (j) {
-                    case 0, 7 -> new Rook(color);
-                    case 1, 6 -> new Knight(color);
-                    case 2, 5 -> new Bishop(color);
-                    case 3    -> new Queen(color);
-                    default   -> {
-                        King king = new King(color);
-                        if (color == Color.WHITE) {
-                            whiteKing = king;
-                        } else {
-                            blackKing = king;
-                        }
-                        yield king;
-                    }
-                };
-                setPiece(piece, new Position(i, j));
-                (color == Color.WHITE ? liveWhitePieces : liveBlackPieces).add(piece);
+            }
+            if (j != 8) {
+                throw new IllegalArgumentException("Invalid FEN: " + fen);
             }
         }
+        if (whiteKing == null || blackKing == null) {
+            throw new IllegalArgumentException("Both players need exactly one king: " + fen);
+        }
+
+        turn = switch (fields[1]) {
+            case "w" -> Color.WHITE;
+            case "b" -> Color.BLACK;
+            default  -> throw new IllegalArgumentException("Invalid FEN: " + fen);
+        };
+        if (turn == Color.BLACK) {
+            key ^= Zobrist.SIDE;
+        }
+        restrictCastling(whiteKing, 7, fields[2].indexOf('K') >= 0, fields[2].indexOf('Q') >= 0);
+        restrictCastling(blackKing, 0, fields[2].indexOf('k') >= 0, fields[2].indexOf('q') >= 0);
+        if (!fields[3].equals("-")) {
+            Position target = Move.parseSquare(fields[3]);
+            Piece pawn = getPiece(new Position(target.getRank() + (turn == Color.WHITE ? 1 : -1),
+                                               target.getFile()));
+            if (pawn != null && pawn.getClass() == Pawn.class && pawn.getColor() != turn) {
+                history.setMoveCount(pawn, 1);
+                history.setLastMovedPiece(pawn);
+            }
+        }
+        try {
+            halfmoveClock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+            fullmoveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen, e);
+        }
     }
 
     /**
-     * Returns this runtime's <code>Board</code> instance.
+     * Returns the board shown by this application's window.
      * 
      * @return a unique <code>Board</code>
      */
@@ -116,6 +204,15 @@ public class Board implements Iterable<Piece> {
         return INSTANCE;
     }
 
+    /**
+     * Returns the record of the moves made on this board.
+     *
+     * @return this board's history
+     */
+    public History getHistory() {
+        return history;
+    }
+
     /**
      * Returns the color of the current player.
      * 
@@ -125,6 +222,100 @@ public class Board implements Iterable<Piece> {
         return turn;
     }
 
+    /**
+     * Returns the specified player's king.
+     *
+     * @param color the color of the king
+     * @return the king of the specified color
+     */
+    public King getKing(Color color) {
+        return color == Color.WHITE ? whiteKing : blackKing;
+    }
+
+    /**
+     * Returns the specified player's pieces that are still on the board.
+     *
+     * @param color the color of the pieces
+     * @return an unmodifiable view of the player's pieces
+     */
+    public List<Piece> getPieces(Color color) {
+        return java.util.Collections.unmodifiableList(
+            color == Color.WHITE ? liveWhitePieces : liveBlackPieces);
+    }
+
+    /**
+     * Returns the number of halfmoves since the last capture or pawn move.
+     *
+     * @return the halfmove clock
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Returns the number of the current full move. It starts at 1 and is incremented after each of
+     * black's moves.
+     *
+     * @return the fullmove number
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Returns a hash of the placement of every piece on the board and the current player. The key
+     * is updated incrementally with every change to the board. Castling and en passant rights are
+     * not part of the key.
+     *
+     * @return the position's key
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the number of times the current position occurred before on this board, with the
+     * same player to move, since the last capture or pawn move. Positions are compared by their
+     * keys, so castling and en passant rights are ignored. Positions before the one the board was
+     * set up in are unknown.
+     *
+     * @return <code>0</code> if the position is new, <code>2</code> once it occurred three times
+     */
+    public int getRepetitions() {
+        int repetitions = 0, plies = 0;
+        for (Undo undo: undos) {
+            if (++plies > halfmoveClock) {
+                break;
+            }
+            if ((plies & 1) == 0 && undo.key == key) {
+                repetitions++;
+            }
+        }
+        return repetitions;
+    }
+
+    /**
+     * Returns a hash of the placement of every pawn on the board. The key is updated incrementally
+     * whenever a pawn moves, is captured or is promoted, so two boards with the same pawn structure
+     * have the same key.
+     *
+     * @return the pawn structure's key
+     */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * Returns the squares occupied by the specified player's pawns as a bitboard, where bit
+     * <code>rank * 8 + file</code> is set if a pawn of that color stands on said square.
+     *
+     * @param color the color of the pawns
+     * @return a bitboard of the player's pawns
+     */
+    public long getPawns(Color color) {
+        return color == Color.WHITE ? whitePawns : blackPawns;
+    }
+
     /**
      * Gets the piece on the board in the specified position.
      * 
@@ -145,7 +336,8 @@ public class Board implements Iterable<Piece> {
      *   <li>the current player is attempting to move a piece to the same position it's already in, or
      *   <li>the move the current player is attempting to make is illegal.
      * </ul>
-     * Returns <code>true</code> if the move was made.
+     * Returns <code>true</code> if the move was made. Pawns reaching the last rank are promoted to
+     * queens.
      * 
      * @param piece the piece to be moved; can be <code>null</code>
      * @param move  the position of the square to move to the piece to
@@ -158,33 +350,187 @@ public class Board implements Iterable<Piece> {
                 || !piece.isLegalMove(move)) {
             return false;
         }
+        applyMove(piece, move, Queen.class);
+        fireMoveMade();
+        return true;
+    }
 
-        Piece capturedPiece = getPiece(move);
+    /**
+     * Makes the specified move if it is legal for the current player. Pawns reaching the last rank
+     * are promoted to the piece given by {@link Move#getPromotion()}, or to queens if none is
+     * given.
+     *
+     * @param move the move to make
+     * @return <code>true</code> if a piece changed its position on the board
+     * @see #movePiece(Piece, Position)
+     */
+    public boolean movePiece(Move move) {
+        Piece piece = getPiece(move.getFrom());
+        if (piece == null
+                || turn != piece.getColor()
+                || move.getFrom().equals(move.getTo())
+                || !piece.isLegalMove(move.getTo())) {
+            return false;
+        }
+        applyMove(piece, move.getTo(),
+                  move.getPromotion() == null ? Queen.class : move.getPromotion());
+        fireMoveMade();
+        return true;
+    }
 
-        // En passant
-        if (piece.getClass() == Pawn.class && capturedPiece == null) {
-            Position pos = new Position(piece.getPosition().getRank(), move.getFile());
-            capturedPiece = getPiece(pos);
-            setPiece(null, pos);
+    /**
+     * Makes the specified move, already known to be legal, and notifies the listeners. Unlike
+     * {@link #movePiece(Move)}, the move is not generated again, so it suits callers that picked
+     * it from {@link #getLegalMoves()} or from a {@link PositionSnapshot} of this position.
+     *
+     * @param move a legal move for the current player
+     */
+    public void playMove(Move move) {
+        makeMove(move);
+        fireMoveMade();
+    }
+
+    /**
+     * Makes the specified move without checking if it is legal. Meant for code that explores
+     * positions with moves returned by {@link #getLegalMoves()} and takes them back with
+     * {@link #undoMove()}. Listeners are not notified.
+     *
+     * @param move a legal move for the current player
+     */
+    public void makeMove(Move move) {
+        applyMove(getPiece(move.getFrom()), move.getTo(),
+                  move.getPromotion() == null ? Queen.class : move.getPromotion());
+    }
+
+    /**
+     * Takes back the last move made on this board, restoring captured pieces, castled rooks,
+     * promoted pawns and the board's history.
+     *
+     * @throws java.util.NoSuchElementException if no moves have been made on this board
+     */
+    public void undoMove() {
+        Undo undo = undos.pop();
+        turn = turn == Color.WHITE ? Color.BLACK : Color.WHITE;
+        key ^= Zobrist.SIDE;
+        if (turn == Color.BLACK) {
+            fullmoveNumber--;
+        }
+        halfmoveClock = undo.halfmoveClock;
+        if (undo.promoted != null) {
+            var ownPieces = turn == Color.WHITE ? liveWhitePieces : liveBlackPieces;
+            ownPieces.remove(undo.promoted);
+            ownPieces.add(undo.piece);
         }
+        setPiece(null, undo.to);
+        setPiece(undo.piece, undo.from);
+        if (undo.captured != null) {
+            setPiece(undo.captured, undo.capturedPosition);
+            (turn == Color.WHITE ? liveBlackPieces : liveWhitePieces).add(undo.captured);
+        }
+        if (undo.rook != null) {
+            setPiece(null, undo.rookTo);
+            setPiece(undo.rook, undo.rookFrom);
+            history.retractMove(undo.rook, null);
+        }
+        history.retractMove(undo.piece, undo.lastMoved);
+        legalMovesDetermined = false;
+        lastChange = undo;
+    }
 
-        // Castle
-        int side = piece.getPosition().getFile() - move.getFile();
-        if (piece.getClass() == King.class && (int) Math.abs(side) == 2) {
-            Piece rook = getPiece(new Position(piece.getPosition().getRank(), side > 0 ? 0 : 7));
-            Position newPos = new Position(piece.getPosition().getRank(), side > 0 ? 3 : 5);
-            setPiece(null, rook.getPosition());
-            setPiece(rook, newPos);
-            History.getInstance().submitMove(rook, newPos.getRank(), newPos.getFile());
+    /**
+     * Returns the squares whose contents changed with the last move made or taken back on this
+     * board: the moved piece's origin and destination, the square of a pawn captured en passant,
+     * and the origin and destination of a castled rook. Meant for redrawing only those squares.
+     *
+     * @return the changed squares; empty if no moves have been made on this board
+     */
+    public java.util.Set<Position> getChangedSquares() {
+        var changed = new java.util.LinkedHashSet<Position>();
+        if (lastChange != null) {
+            changed.add(lastChange.from);
+            changed.add(lastChange.to);
+            changed.add(lastChange.capturedPosition);
+            if (lastChange.rook != null) {
+                changed.add(lastChange.rookFrom);
+                changed.add(lastChange.rookTo);
+            }
         }
+        return changed;
+    }
 
-        setPiece(null, piece.getPosition());
-        setPiece(piece, move);
-        (turn == Color.WHITE ? liveBlackPieces : liveWhitePieces).remove(capturedPiece);
-        turn = turn == Color.WHITE ? Color.BLACK : Color.WHITE;
-        determineIfCurrentPlayerHasLegalMoves();
-        History.getInstance().submitMove(piece, move.getRank(), move.getFile());
-        return true;
+    /**
+     * Registers a listener to be notified, on the thread making the move, after every move made
+     * with {@link #movePiece(Piece, Position)} or {@link #movePiece(Move)}.
+     *
+     * @param listener the listener to register
+     */
+    public void addListener(BoardListener listener) {
+        addListener(listener, Runnable::run);
+    }
+
+    /**
+     * Registers a listener to be notified through the specified executor after every move made
+     * with {@link #movePiece(Piece, Position)} or {@link #movePiece(Move)}. The status reported by
+     * the event is computed once per move, on the thread making it, whatever the number of
+     * listeners.
+     *
+     * @param listener the listener to register
+     * @param executor runs the notifications, such as a single background thread
+     */
+    public void addListener(BoardListener listener, java.util.concurrent.Executor executor) {
+        listeners.add(java.util.Map.entry(listener, executor));
+    }
+
+    /**
+     * Unregisters a listener. Does nothing if the listener is not registered.
+     *
+     * @param listener the listener to unregister
+     */
+    public void removeListener(BoardListener listener) {
+        listeners.removeIf(entry -> entry.getKey() == listener);
+    }
+
+    /**
+     * Sets the listener told about every piece that enters or leaves a square, including during
+     * {@link #makeMove(Move)} and {@link #undoMove()}, replacing the previous one. The trial moves
+     * made and taken back while checking legality are not reported.
+     *
+     * @param listener the listener, or <code>null</code> to remove it
+     */
+    public void setSquareListener(SquareListener listener) {
+        squareListener = listener;
+    }
+
+    /**
+     * Returns the listener told about every piece that enters or leaves a square.
+     *
+     * @return the listener, or <code>null</code> if there is none
+     */
+    public SquareListener getSquareListener() {
+        return squareListener;
+    }
+
+    /**
+     * Returns every legal move for the current player. A pawn move to the last rank is returned
+     * once for each piece the pawn can be promoted to.
+     *
+     * @return the current player's legal moves; empty if the game is over
+     */
+    public List<Move> getLegalMoves() {
+        var moves = new java.util.ArrayList<Move>();
+        for (Piece piece: turn == Color.WHITE ? liveWhitePieces : liveBlackPieces) {
+            Position from = piece.getPosition();
+            for (Position to: piece.getLegalMoves()) {
+                if (piece.getClass() == Pawn.class && (to.getRank() == 0 || to.getRank() == 7)) {
+                    for (var promotion: PROMOTIONS) {
+                        moves.add(new Move(from, to, promotion));
+                    }
+                } else {
+                    moves.add(new Move(from, to));
+                }
+            }
+        }
+        return moves;
     }
 
     /**
@@ -193,6 +539,21 @@ public class Board implements Iterable<Piece> {
      * @return <code>true</code> if the current player is in check
      */
     public boolean isInCheck() {
+        if (!Metrics.ENABLED) {
+            return isKingAttacked();
+        }
+        long start = System.nanoTime();
+        boolean inCheck = isKingAttacked();
+        Metrics.Timer.IN_CHECK.record(start);
+        return inCheck;
+    }
+
+    /**
+     * Determines if any of the opponent's pieces can move to the current player's king.
+     *
+     * @return <code>true</code> if the current player is in check
+     */
+    private boolean isKingAttacked() {
         List<Piece> opponentsPieces = turn == Color.WHITE ? liveBlackPieces : liveWhitePieces;
         King king = turn == Color.WHITE ? whiteKing : blackKing;
         for (Piece piece: opponentsPieces) {
@@ -216,8 +577,37 @@ public class Board implements Iterable<Piece> {
         if (piece == null || turn != piece.getColor()) {
             return false;
         }
+        if (!Metrics.ENABLED) {
+            return tryMove(piece, move);
+        }
+        long start = System.nanoTime();
+        boolean causesCheck = tryMove(piece, move);
+        Metrics.Timer.MOVE_CAUSES_CHECK.record(start);
+        return causesCheck;
+    }
+
+    /**
+     * Makes a trial move of one of the current player's pieces, determines if it puts said
+     * player in check and takes it back.
+     *
+     * @param piece the piece to be moved
+     * @param move  the position of the square to move to the piece to
+     * @return <code>true</code> if the move puts the current player in check
+     */
+    private boolean tryMove(Piece piece, Position move) {
         Piece capturedPiece = getPiece(move);
         Position prevPosition = piece.getPosition();
+        Position capturedPosition = move;
+        // A pawn captured en passant leaves its own square, which may open a line to the king
+        if (piece.getClass() == Pawn.class && capturedPiece == null
+                && prevPosition.getFile() != move.getFile()) {
+            capturedPosition = new Position(prevPosition.getRank(), move.getFile());
+            capturedPiece = getPiece(capturedPosition);
+        }
+        // The trial move is always taken back, so the square listener does not need to see it
+        SquareListener listener = squareListener;
+        squareListener = null;
+        setPiece(null, capturedPosition);
         setPiece(piece, move);
         setPiece(null, prevPosition);
         var opponentsPieces = piece.getColor() == Color.WHITE ? liveBlackPieces : liveWhitePieces;
@@ -227,7 +617,9 @@ public class Board implements Iterable<Piece> {
             opponentsPieces.add(capturedPiece);
         }
         setPiece(piece, prevPosition);
-        setPiece(capturedPiece, move);
+        setPiece(null, move);
+        setPiece(capturedPiece, capturedPosition);
+        squareListener = listener;
         return causesCheck;
     }
 
@@ -237,7 +629,7 @@ public class Board implements Iterable<Piece> {
      * @return <code>true</code> if the current player's king has been checkmated
      */
     public boolean isCheckmate() {
-        return !currentPlayerHasLegalMoves && isInCheck();
+        return !currentPlayerHasLegalMoves() && isInCheck();
     }
 
     /**
@@ -246,7 +638,7 @@ public class Board implements Iterable<Piece> {
      * @return <code>true</code> if the current player has been stalemated
      */
     public boolean isStalemate() {
-        return !currentPlayerHasLegalMoves && !isInCheck();
+        return !currentPlayerHasLegalMoves() && !isInCheck();
     }
 
     /**
@@ -270,11 +662,181 @@ public class Board implements Iterable<Piece> {
         return isSquareEmpty(position) ? Color.NONE : getPiece(position).getColor();
     }
 
+    /**
+     * Returns the current position in Forsyth-Edwards Notation.
+     *
+     * @return the position as a FEN string
+     */
+    public String toFen() {
+        var fen = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            int empty = 0;
+            for (int j = 0; j < 8; j++) {
+                Piece piece = squares[i][j].getPiece();
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(fenCharacter(piece));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            fen.append(i < 7 ? "/" : " ");
+        }
+        fen.append(turn == Color.WHITE ? "w " : "b ");
+        String castling = (canCastle(whiteKing, 7) ? "K" : "") + (canCastle(whiteKing, 0) ? "Q" : "")
+                        + (canCastle(blackKing, 7) ? "k" : "") + (canCastle(blackKing, 0) ? "q" : "");
+        fen.append(castling.isEmpty() ? "-" : castling).append(' ');
+        int enPassantFile = enPassantFile();
+        if (enPassantFile != -1) {
+            fen.append(Move.squareName(new Position(turn == Color.WHITE ? 2 : 5, enPassantFile)));
+        } else {
+            fen.append('-');
+        }
+        return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber).toString();
+    }
+
+    /**
+     * Takes an immutable snapshot of the current position, which any number of threads can read
+     * while this board keeps changing. Takes time proportional to the number of squares and
+     * copies no pieces. Like any other method of a board, it must be called by the thread that
+     * makes the moves, for example from a {@link BoardListener}.
+     *
+     * @return the snapshot
+     */
+    public PositionSnapshot snapshot() {
+        long[] placement = new long[4];
+        for (int i = 0; i < 64; i++) {
+            long code = PositionSnapshot.codeOf(squares[i >> 3][i & 7].getPiece());
+            placement[i >>> 4] |= code << ((i & 15) << 2);
+        }
+        int castling = (canCastle(whiteKing, 7) ? PositionSnapshot.WHITE_KINGSIDE : 0)
+                     | (canCastle(whiteKing, 0) ? PositionSnapshot.WHITE_QUEENSIDE : 0)
+                     | (canCastle(blackKing, 7) ? PositionSnapshot.BLACK_KINGSIDE : 0)
+                     | (canCastle(blackKing, 0) ? PositionSnapshot.BLACK_QUEENSIDE : 0);
+        return new PositionSnapshot(placement, turn, castling, enPassantFile(), halfmoveClock,
+                                    fullmoveNumber, key);
+    }
+
+    /**
+     * Returns an iterator over the white pieces and then the black pieces on the board, without
+     * copying them. The board must not be changed while iterating.
+     *
+     * @return an iterator over every piece on the board
+     */
     @Override
     public Iterator<Piece> iterator() {
-        var list = new java.util.LinkedList<Piece>(liveWhitePieces);
-        list.addAll(liveBlackPieces);
-        return list.iterator();
+        return java.util.stream.Stream.concat(liveWhitePieces.stream(), liveBlackPieces.stream())
+                                      .iterator();
+    }
+
+    /**
+     * Moves a piece, which is assumed to be legal, and records how to take the move back.
+     *
+     * @param piece     the piece to be moved
+     * @param move      the position of the square to move to the piece to
+     * @param promotion the type of piece a pawn reaching the last rank is promoted to
+     */
+    private void applyMove(Piece piece, Position move, Class<? extends Piece> promotion) {
+        if (Metrics.ENABLED) {
+            Metrics.Counter.MOVES_APPLIED.increment();
+        }
+        Undo undo = new Undo();
+        undo.piece = piece;
+        undo.from = piece.getPosition();
+        undo.to = move;
+        undo.captured = getPiece(move);
+        undo.capturedPosition = move;
+        undo.lastMoved = history.getLastMovedPiece();
+        undo.halfmoveClock = halfmoveClock;
+        undo.key = key;
+
+        // En passant
+        if (piece.getClass() == Pawn.class && undo.captured == null
+                && undo.from.getFile() != move.getFile()) {
+            undo.capturedPosition = new Position(undo.from.getRank(), move.getFile());
+            undo.captured = getPiece(undo.capturedPosition);
+            setPiece(null, undo.capturedPosition);
+        }
+
+        // Castle
+        int side = undo.from.getFile() - move.getFile();
+        if (piece.getClass() == King.class && (int) Math.abs(side) == 2) {
+            undo.rook = getPiece(new Position(undo.from.getRank(), side > 0 ? 0 : 7));
+            undo.rookFrom = undo.rook.getPosition();
+            undo.rookTo = new Position(undo.from.getRank(), side > 0 ? 3 : 5);
+            setPiece(null, undo.rookFrom);
+            setPiece(undo.rook, undo.rookTo);
+            history.submitMove(undo.rook, undo.rookTo.getRank(), undo.rookTo.getFile());
+        }
+
+        setPiece(null, undo.from);
+        setPiece(piece, move);
+        (turn == Color.WHITE ? liveBlackPieces : liveWhitePieces).remove(undo.captured);
+
+        // Promotion
+        if (piece.getClass() == Pawn.class && (move.getRank() == 0 || move.getRank() == 7)) {
+            undo.promoted = createPiece(promotion, piece.getColor());
+            undo.promoted.setBoard(this);
+            setPiece(undo.promoted, move);
+            var ownPieces = turn == Color.WHITE ? liveWhitePieces : liveBlackPieces;
+            ownPieces.remove(piece);
+            ownPieces.add(undo.promoted);
+        }
+
+        boolean resetsClock = piece.getClass() == Pawn.class || undo.captured != null;
+        halfmoveClock = resetsClock ? 0 : halfmoveClock + 1;
+        if (turn == Color.BLACK) {
+            fullmoveNumber++;
+        }
+        turn = turn == Color.WHITE ? Color.BLACK : Color.WHITE;
+        key ^= Zobrist.SIDE;
+        legalMovesDetermined = false;
+        history.submitMove(piece, move.getRank(), move.getFile());
+        undos.push(undo);
+        lastChange = undo;
+    }
+
+    /**
+     * Notifies every listener of the last move made, if there are any listeners.
+     */
+    private void fireMoveMade() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        var types = java.util.EnumSet.of(MoveEvent.Type.MOVE);
+        if (lastChange.captured != null) {
+            types.add(MoveEvent.Type.CAPTURE);
+        }
+        if (!lastChange.capturedPosition.equals(lastChange.to)) {
+            types.add(MoveEvent.Type.EN_PASSANT);
+        }
+        if (lastChange.rook != null) {
+            types.add(MoveEvent.Type.CASTLE);
+        }
+        if (lastChange.promoted != null) {
+            types.add(MoveEvent.Type.PROMOTION);
+        }
+        if (isInCheck()) {
+            types.add(MoveEvent.Type.CHECK);
+        }
+        if (!currentPlayerHasLegalMoves()) {
+            types.add(types.contains(MoveEvent.Type.CHECK) ? MoveEvent.Type.CHECKMATE
+                                                           : MoveEvent.Type.STALEMATE);
+        }
+        var move = new Move(lastChange.from, lastChange.to,
+                            lastChange.promoted == null ? null : lastChange.promoted.getClass());
+        var event = new MoveEvent(move, lastChange.piece.getColor(), lastChange.piece.getClass(),
+                                  lastChange.captured == null ? null : lastChange.captured.getClass(),
+                                  types, toFen());
+        for (var listener: listeners) {
+            listener.getValue().execute(() -> listener.getKey().moveMade(event));
+        }
     }
 
     /**
@@ -284,10 +846,134 @@ public class Board implements Iterable<Piece> {
      * @param position  the position of the square to set the piece in
      */
     private void setPiece(Piece piece, Position position) {
+        Square square = squares[position.getRank()][position.getFile()];
+        int index = position.getRank() * 8 + position.getFile();
+        Piece previous = square.getPiece();
+        updateKeys(previous, index);
+        updateKeys(piece, index);
         if (piece != null) {
             piece.setPosition(position);
         }
-        squares[position.getRank()][position.getFile()].setPiece(piece);
+        square.setPiece(piece);
+        if (squareListener != null) {
+            if (previous != null) {
+                squareListener.pieceRemoved(previous, index);
+            }
+            if (piece != null) {
+                squareListener.pieceAdded(piece, index);
+            }
+        }
+    }
+
+    /**
+     * Toggles a piece in the position key, and in the pawn bitboards and pawn key if it is a pawn.
+     * Called once when a piece leaves a square and once when it enters one.
+     *
+     * @param piece the piece leaving or entering the square; can be <code>null</code>
+     * @param index the square's index
+     */
+    private void updateKeys(Piece piece, int index) {
+        if (piece == null) {
+            return;
+        }
+        key ^= Zobrist.key(piece, index);
+        if (piece.getClass() != Pawn.class) {
+            return;
+        }
+        pawnKey ^= Zobrist.key(piece, index);
+        if (piece.getColor() == Color.WHITE) {
+            whitePawns ^= 1L << index;
+        } else {
+            blackPawns ^= 1L << index;
+        }
+    }
+
+    /**
+     * Puts a new piece on the board while setting up a position.
+     *
+     * @param piece    the piece to place
+     * @param position the position of the piece's square
+     */
+    private void placePiece(Piece piece, Position position) {
+        if (piece.getClass() == King.class) {
+            if ((piece.getColor() == Color.WHITE ? whiteKing : blackKing) != null) {
+                throw new IllegalArgumentException("Both players need exactly one king");
+            }
+            if (piece.getColor() == Color.WHITE) {
+                whiteKing = (King) piece;
+            } else {
+                blackKing = (King) piece;
+            }
+        }
+        piece.setBoard(this);
+        setPiece(piece, position);
+        (piece.getColor() == Color.WHITE ? liveWhitePieces : liveBlackPieces).add(piece);
+    }
+
+    /**
+     * Marks the king or rooks as moved if a position set up from FEN lacks castling rights.
+     *
+     * @param king      the king to restrict
+     * @param homeRank  the rank the king and rooks start on
+     * @param kingside  <code>true</code> if the king may still castle kingside
+     * @param queenside <code>true</code> if the king may still castle queenside
+     */
+    private void restrictCastling(King king, int homeRank, boolean kingside, boolean queenside) {
+        for (int file: new int[] {0, 7}) {
+            Piece rook = getPiece(new Position(homeRank, file));
+            if (rook != null && !(file == 7 ? kingside : queenside)) {
+                history.setMoveCount(rook, 1);
+            }
+        }
+        if (!(kingside || queenside) || !king.getPosition().equals(new Position(homeRank, 4))) {
+            history.setMoveCount(king, 1);
+        }
+    }
+
+    /**
+     * Determines if a king and the rook in the specified corner have both never moved.
+     *
+     * @param king the king
+     * @param file the file of the rook's corner, 0 or 7
+     * @return <code>true</code> if the player keeps the right to castle on that side
+     */
+    private boolean canCastle(King king, int file) {
+        Piece rook = getPiece(new Position(king.getColor() == Color.WHITE ? 7 : 0, file));
+        return history.getMoveCount(king) == 0
+            && rook != null
+            && rook.getClass() == Rook.class
+            && rook.getColor() == king.getColor()
+            && history.getMoveCount(rook) == 0;
+    }
+
+    /**
+     * Finds the pawn the current player can capture en passant: the opponent's pawn that was
+     * moved last, two squares from its starting square.
+     *
+     * @return the pawn's file, or <code>-1</code> if there is no such pawn
+     */
+    private int enPassantFile() {
+        Piece lastMoved = history.getLastMovedPiece();
+        if (lastMoved != null && lastMoved.getClass() == Pawn.class && lastMoved.getColor() != turn
+                && history.getMoveCount(lastMoved) == 1
+                && lastMoved.getPosition().getRank() == (turn == Color.WHITE ? 3 : 4)) {
+            return lastMoved.getPosition().getFile();
+        }
+        return -1;
+    }
+
+    /**
+     * Determines if the current player has any legal moves left, computing it at most once per
+     * move. Used for detecting checkmate and/or stalemate.
+     *
+     * @return <code>true</code> if the current player can move
+     */
+    private boolean currentPlayerHasLegalMoves() {
+        if (!legalMovesDetermined) {
+            determineIfCurrentPlayerHasLegalMoves();
+            legalMovesDetermined = true;
+        }
+        return currentPlayerHasLegalMoves;
     }
 
     /**
@@ -304,4 +990,54 @@ public class Board implements Iterable<Piece> {
         currentPlayerHasLegalMoves = false;
     }
 
+    /**
+     * Creates the piece denoted by a FEN character, uppercase for white and lowercase for black.
+     *
+     * @param c   the character
+     * @param fen the FEN string being parsed, for error messages
+     * @return a new piece
+     * @throws IllegalArgumentException if <code>c</code> does not denote a piece
+     */
+    private static Piece createPiece(char c, String fen) {
+        Color color = Character.isUpperCase(c) ? Color.WHITE : Color.BLACK;
+        return switch (Character.toLowerCase(c)) {
+            case 'p' -> new Pawn(color);
+            case 'n' -> new Knight(color);
+            case 'b' -> new Bishop(color);
+            case 'r' -> new Rook(color);
+            case 'q' -> new Queen(color);
+            case 'k' -> new King(color);
+            default  -> throw new IllegalArgumentException("Invalid FEN: " + fen);
+        };
+    }
+
+    /**
+     * Creates a piece of the specified type and color.
+     *
+     * @param type  {@link Queen}, {@link Rook}, {@link Bishop} or {@link Knight}
+     * @param color the color of the piece
+     * @return a new piece
+     */
+    private static Piece createPiece(Class<? extends Piece> type, Color color) {
+        if (type == Rook.class) {
+            return new Rook(color);
+        } else if (type == Bishop.class) {
+            return new Bishop(color);
+        } else if (type == Knight.class) {
+            return new Knight(color);
+        }
+        return new Queen(color);
+    }
+
+    /**
+     * Returns the FEN character of a piece, uppercase for white and lowercase for black.
+     *
+     * @param piece the piece
+     * @return the piece's character
+     */
+    private static char fenCharacter(Piece piece) {
+        char c = "pnbrqk".charAt(Zobrist.index(piece) / 2);
+        return piece.getColor() == Color.WHITE ? Character.toUpperCase(c) : c;
+    }
+
 }
\ No newline at end of file
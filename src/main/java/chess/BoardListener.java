@@ -0,0 +1,23 @@
+package chess;
+
+/**
+ * Receives the moves made on a {@link Board}. Listeners are registered with
+ * {@link Board#addListener(BoardListener)}, or with
+ * {@link Board#addListener(BoardListener, java.util.concurrent.Executor)} to be notified on
+ * another thread.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.MoveEvent
+ */
+@FunctionalInterface
+public interface BoardListener {
+
+    /**
+     * Called after a move is made on the board.
+     *
+     * @param event the move and the status it left the game in
+     */
+    void moveMade(MoveEvent event);
+
+}
\ No newline at end of file
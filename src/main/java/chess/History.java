@@ -5,7 +5,8 @@ import java.util.List;
 import chess.pieces.Piece;
 
 /**
- * A singleton class for maintaining a record of all the moves made in a chess game.
+ * A class for maintaining a record of all the moves made in a chess game. Every
+ * {@link chess.Board} owns one.
  * 
  * @author Marco Olea
  * @version 1.0
@@ -13,8 +14,6 @@ import chess.pieces.Piece;
  */
 public class History {
 
-    private static final History INSTANCE = new History();
-
     private List<String> moveHistory;
     private Map<Piece, Integer> moveCounts;
     private Piece lastMoved;
@@ -22,18 +21,18 @@ public class History {
     /**
      * Creates an empty record set.
      */
-    private History() {
+    History() {
         moveHistory = new java.util.LinkedList<>();
         moveCounts = new java.util.IdentityHashMap<>();
     }
 
     /**
-     * Returns this runtime's <code>History</code> instance.
+     * Returns the history of this runtime's shared {@link chess.Board} instance.
      *
-     * @return a unique <code>History</code>
+     * @return the history of {@link chess.Board#getInstance()}
      */
     public static History getInstance() {
-        return INSTANCE;
+        return Board.getInstance().getHistory();
     }
 
     /**
@@ -50,6 +49,42 @@ public class History {
         }
     }
 
+    /**
+     * Takes back the last move submitted for the specified piece. Used when a board undoes a move.
+     *
+     * @param piece     the piece that was moved
+     * @param lastMoved the piece that had been moved last before the move being taken back
+     */
+    void retractMove(Piece piece, Piece lastMoved) {
+        int count = moveCounts.getOrDefault(piece, 0) - 1;
+        if (count > 0) {
+            moveCounts.put(piece, count);
+        } else {
+            moveCounts.remove(piece);
+        }
+        this.lastMoved = lastMoved;
+    }
+
+    /**
+     * Sets the amount of times the specified piece has moved. Used when a board is set up from a
+     * position in which castling or en passant rights are restricted.
+     *
+     * @param piece the piece to update
+     * @param count the new move count
+     */
+    void setMoveCount(Piece piece, int count) {
+        moveCounts.put(piece, count);
+    }
+
+    /**
+     * Sets the piece returned by {@link History#getLastMovedPiece()}.
+     *
+     * @param piece the last moved piece; can be <code>null</code>
+     */
+    void setLastMovedPiece(Piece piece) {
+        lastMoved = piece;
+    }
+
     /**
      * Returns the amount of times the specified piece has moved.
      *
@@ -0,0 +1,390 @@
+package chess;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters of the work done by boards, searches, the analysis scheduler and the game
+ * server, kept in striped {@link LongAdder}s so that threads counting at the same time do not
+ * contend. Counting
+ * is off unless the JVM is started with <code>-Dchess.metrics=true</code>; the flag is a
+ * constant, so the just-in-time compiler drops the counting code entirely when it is off.
+ * <br>
+ * While counting, the counters are also reported to JDK Flight Recorder as one event each every
+ * second, so that a recording shows their evolution next to the events of searches and server
+ * moves.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public final class Metrics {
+
+    /**
+     * A running total.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Counter {
+
+        /** Moves made on boards, including the ones taken back by searches. */
+        MOVES_APPLIED("chess_moves_applied_total", "Moves made on boards"),
+        /** Searches started. */
+        SEARCHES("chess_searches_total", "Searches started"),
+        /** Nodes visited by searches. */
+        SEARCH_NODES("chess_search_nodes_total", "Nodes visited by searches"),
+        /** Sum of the depths completed by searches. */
+        SEARCH_DEPTH("chess_search_depth_total", "Sum of the depths completed by searches"),
+        /** Beta cutoffs in searches, quiescence included. */
+        SEARCH_CUTOFFS("chess_search_cutoffs_total", "Beta cutoffs in searches"),
+        /** Transposition table lookups by searches. */
+        HASH_PROBES("chess_hash_probes_total", "Transposition table lookups"),
+        /** Transposition table lookups that found the position. */
+        HASH_HITS("chess_hash_hits_total", "Transposition table lookups that found the position"),
+        /** Bulk analysis jobs stopped to make room for an interactive one. */
+        ANALYSIS_PREEMPTIONS("chess_analysis_preemptions_total",
+                             "Bulk analysis jobs stopped for interactive ones");
+
+        private final String name;
+        private final String help;
+        private final LongAdder adder;
+
+        /**
+         * Creates a counter.
+         *
+         * @param name the counter's name in the Prometheus text format
+         * @param help a description of the counter
+         */
+        Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+            adder = new LongAdder();
+        }
+
+        /**
+         * Adds one to this counter. Callers check {@link Metrics#ENABLED} first.
+         */
+        public void increment() {
+            adder.increment();
+        }
+
+        /**
+         * Adds an amount to this counter. Callers check {@link Metrics#ENABLED} first.
+         *
+         * @param amount the amount to add
+         */
+        public void add(long amount) {
+            adder.add(amount);
+        }
+
+        /**
+         * Returns this counter's name in the Prometheus text format.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    /**
+     * A current level that goes up and down, such as the length of a queue.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Gauge {
+
+        /** Interactive analysis jobs waiting for a worker. */
+        ANALYSIS_QUEUED_INTERACTIVE("chess_analysis_interactive_queued",
+                                    "Interactive analysis jobs waiting for a worker"),
+        /** Bulk analysis jobs waiting for a worker, preempted ones included. */
+        ANALYSIS_QUEUED_BULK("chess_analysis_bulk_queued",
+                             "Bulk analysis jobs waiting for a worker");
+
+        private final String name;
+        private final String help;
+        private final LongAdder adder;
+
+        /**
+         * Creates a gauge.
+         *
+         * @param name the gauge's name in the Prometheus text format
+         * @param help a description of the gauge
+         */
+        Gauge(String name, String help) {
+            this.name = name;
+            this.help = help;
+            adder = new LongAdder();
+        }
+
+        /**
+         * Adds an amount, possibly negative, to this gauge. Callers check
+         * {@link Metrics#ENABLED} first.
+         *
+         * @param amount the amount to add
+         */
+        public void add(long amount) {
+            adder.add(amount);
+        }
+
+        /**
+         * Returns this gauge's name in the Prometheus text format.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    /**
+     * A count of calls to an operation and the total time spent in them. Times include the time
+     * spent in nested calls, so a call to {@link Board#isInCheck()} is also counted in the time
+     * of every {@link chess.pieces.Piece#getLegalMoves()} that made it.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Timer {
+
+        /** Calls to {@link chess.pieces.Piece#getLegalMoves()}. */
+        LEGAL_MOVES("chess_piece_legal_moves_seconds", "Legal move generation for one piece"),
+        /** Calls to {@link Board#moveCausesCheck(chess.pieces.Piece, chess.pieces.Position)}. */
+        MOVE_CAUSES_CHECK("chess_board_move_causes_check_seconds", "Tests of trial moves"),
+        /** Calls to {@link Board#isInCheck()}. */
+        IN_CHECK("chess_board_in_check_seconds", "Tests of the current player's king"),
+        /** Moves handled by the game server, until both players are told. */
+        SERVER_MOVE("chess_server_move_seconds", "Moves handled by the game server"),
+        /** Waits of interactive analysis jobs, from submission to the start of their search. */
+        ANALYSIS_WAIT_INTERACTIVE("chess_analysis_interactive_wait_seconds",
+                                  "Waits of interactive analysis jobs for a worker"),
+        /** Waits of bulk analysis jobs, from submission to the start of their search. */
+        ANALYSIS_WAIT_BULK("chess_analysis_bulk_wait_seconds",
+                           "Waits of bulk analysis jobs for a worker");
+
+        private final String name;
+        private final String help;
+        private final LongAdder calls;
+        private final LongAdder nanos;
+
+        /**
+         * Creates a timer.
+         *
+         * @param name the timer's name in the Prometheus text format
+         * @param help a description of the timed operation
+         */
+        Timer(String name, String help) {
+            this.name = name;
+            this.help = help;
+            calls = new LongAdder();
+            nanos = new LongAdder();
+        }
+
+        /**
+         * Counts a call that started at the specified time and ends now. Callers check
+         * {@link Metrics#ENABLED} first.
+         *
+         * @param start the value of {@link System#nanoTime()} when the call started
+         */
+        public void record(long start) {
+            nanos.add(System.nanoTime() - start);
+            calls.increment();
+        }
+
+        /**
+         * Returns this timer's name in the Prometheus text format.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    /**
+     * The values of every counter, gauge and timer at some point in time. Each value is read
+     * atomically, but values updated while the snapshot is taken may be from slightly different
+     * times.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static final class Snapshot {
+
+        private final long[] counters;
+        private final long[] gauges;
+        private final long[] calls;
+        private final long[] nanos;
+
+        /**
+         * Reads every counter, gauge and timer.
+         */
+        private Snapshot() {
+            Counter[] allCounters = Counter.values();
+            counters = new long[allCounters.length];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = allCounters[i].adder.sum();
+            }
+            Gauge[] allGauges = Gauge.values();
+            gauges = new long[allGauges.length];
+            for (int i = 0; i < gauges.length; i++) {
+                gauges[i] = allGauges[i].adder.sum();
+            }
+            Timer[] timers = Timer.values();
+            calls = new long[timers.length];
+            nanos = new long[timers.length];
+            for (int i = 0; i < timers.length; i++) {
+                calls[i] = timers[i].calls.sum();
+                nanos[i] = timers[i].nanos.sum();
+            }
+        }
+
+        /**
+         * Returns the value of a counter.
+         *
+         * @param counter the counter
+         * @return its value when the snapshot was taken
+         */
+        public long get(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        /**
+         * Returns the value of a gauge.
+         *
+         * @param gauge the gauge
+         * @return its value when the snapshot was taken
+         */
+        public long get(Gauge gauge) {
+            return gauges[gauge.ordinal()];
+        }
+
+        /**
+         * Returns the number of calls counted by a timer.
+         *
+         * @param timer the timer
+         * @return the number of calls when the snapshot was taken
+         */
+        public long getCalls(Timer timer) {
+            return calls[timer.ordinal()];
+        }
+
+        /**
+         * Returns the time counted by a timer.
+         *
+         * @param timer the timer
+         * @return the total time in nanoseconds when the snapshot was taken
+         */
+        public long getNanos(Timer timer) {
+            return nanos[timer.ordinal()];
+        }
+
+        /**
+         * Formats this snapshot in the Prometheus text exposition format, with counters as
+         * <code>counter</code> metrics, gauges as <code>gauge</code> metrics and timers as
+         * <code>summary</code> metrics in seconds.
+         *
+         * @return the text, one sample per line
+         */
+        public String toPrometheus() {
+            var text = new StringBuilder();
+            for (Counter counter: Counter.values()) {
+                text.append("# HELP ").append(counter.name).append(' ').append(counter.help)
+                    .append("\n# TYPE ").append(counter.name).append(" counter\n")
+                    .append(counter.name).append(' ').append(get(counter)).append('\n');
+            }
+            for (Gauge gauge: Gauge.values()) {
+                text.append("# HELP ").append(gauge.name).append(' ').append(gauge.help)
+                    .append("\n# TYPE ").append(gauge.name).append(" gauge\n")
+                    .append(gauge.name).append(' ').append(get(gauge)).append('\n');
+            }
+            for (Timer timer: Timer.values()) {
+                text.append("# HELP ").append(timer.name).append(' ').append(timer.help)
+                    .append("\n# TYPE ").append(timer.name).append(" summary\n")
+                    .append(timer.name).append("_count ").append(getCalls(timer)).append('\n')
+                    .append(timer.name).append("_sum ").append(getNanos(timer) / 1e9)
+                    .append('\n');
+            }
+            return text.toString();
+        }
+
+    }
+
+    /**
+     * The value of a counter or gauge, or the number of calls of a timer, reported to JDK Flight
+     * Recorder.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    @jdk.jfr.Name("chess.Counter")
+    @jdk.jfr.Label("Chess Counter")
+    @jdk.jfr.Category("Chess")
+    @jdk.jfr.Period("1 s")
+    @jdk.jfr.StackTrace(false)
+    static class CounterEvent extends jdk.jfr.Event {
+
+        @jdk.jfr.Label("Name")
+        String name;
+
+        @jdk.jfr.Label("Value")
+        long value;
+
+        @jdk.jfr.Label("Time")
+        @jdk.jfr.Timespan(jdk.jfr.Timespan.NANOSECONDS)
+        long nanos;
+
+    }
+
+    /**
+     * Whether counting is on, as set by the <code>chess.metrics</code> system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("chess.metrics");
+
+    static {
+        if (ENABLED) {
+            jdk.jfr.FlightRecorder.addPeriodicEvent(CounterEvent.class, Metrics::emitEvents);
+        }
+    }
+
+    private Metrics() {}
+
+    /**
+     * Reads every counter, gauge and timer.
+     *
+     * @return the current values; all zero if counting is off
+     */
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Reports every counter, gauge and timer to JDK Flight Recorder.
+     */
+    private static void emitEvents() {
+        Snapshot snapshot = snapshot();
+        for (Counter counter: Counter.values()) {
+            var event = new CounterEvent();
+            event.name = counter.name;
+            event.value = snapshot.get(counter);
+            event.commit();
+        }
+        for (Gauge gauge: Gauge.values()) {
+            var event = new CounterEvent();
+            event.name = gauge.name;
+            event.value = snapshot.get(gauge);
+            event.commit();
+        }
+        for (Timer timer: Timer.values()) {
+            var event = new CounterEvent();
+            event.name = timer.name;
+            event.value = snapshot.getCalls(timer);
+            event.nanos = snapshot.getNanos(timer);
+            event.commit();
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+package chess;
+
+import chess.pieces.Position;
+import chess.pieces.Piece;
+import chess.pieces.Bishop;
+import chess.pieces.Knight;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+
+/**
+ * A move from one square to another, along with the piece a pawn is promoted to when it reaches
+ * the last rank. Moves are written in long algebraic notation, as used by the UCI protocol:
+ * "e2e4", "e1g1" (castling) or "e7e8q" (promotion).
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.Board#getLegalMoves()
+ */
+public class Move {
+
+    private static final java.util.List<Class<? extends Piece>> PROMOTIONS =
+        java.util.Arrays.asList(null, Knight.class, Bishop.class, Rook.class, Queen.class);
+
+    private final Position from;
+    private final Position to;
+    private final Class<? extends Piece> promotion;
+
+    /**
+     * Creates a move that is not a promotion.
+     *
+     * @param from the position of the piece to move
+     * @param to   the position to move the piece to
+     */
+    public Move(Position from, Position to) {
+        this(from, to, null);
+    }
+
+    /**
+     * Creates a move that promotes a pawn to the specified type of piece.
+     *
+     * @param from      the position of the piece to move
+     * @param to        the position to move the piece to
+     * @param promotion {@link Queen}, {@link Rook}, {@link Bishop} or {@link Knight}; can be
+     *                  <code>null</code> if the move is not a promotion
+     */
+    public Move(Position from, Position to, Class<? extends Piece> promotion) {
+        this.from = from;
+        this.to = to;
+        this.promotion = promotion;
+    }
+
+    /**
+     * Parses a move written in long algebraic notation.
+     *
+     * @param text the move, such as "e2e4" or "a7a8n"
+     * @return the parsed move
+     * @throws IllegalArgumentException if <code>text</code> is not a valid move
+     */
+    public static Move parse(String text) {
+        if (text.length() != 4 && text.length() != 5) {
+            throw new IllegalArgumentException("Invalid move: " + text);
+        }
+        Class<? extends Piece> promotion = null;
+        if (text.length() == 5) {
+            promotion = switch (text.charAt(4)) {
+                case 'q' -> Queen.class;
+                case 'r' -> Rook.class;
+                case 'b' -> Bishop.class;
+                case 'n' -> Knight.class;
+                default  -> throw new IllegalArgumentException("Invalid promotion: " + text);
+            };
+        }
+        return new Move(parseSquare(text.substring(0, 2)), parseSquare(text.substring(2, 4)),
+                        promotion);
+    }
+
+    /**
+     * Parses a square written in algebraic notation, such as "e4".
+     *
+     * @param text the square's name
+     * @return the position of the square
+     * @throws IllegalArgumentException if <code>text</code> is not a valid square
+     */
+    public static Position parseSquare(String text) {
+        if (text.length() != 2 || text.charAt(0) < 'a' || text.charAt(0) > 'h'
+                || text.charAt(1) < '1' || text.charAt(1) > '8') {
+            throw new IllegalArgumentException("Invalid square: " + text);
+        }
+        return new Position('8' - text.charAt(1), text.charAt(0) - 'a');
+    }
+
+    /**
+     * Returns the name of a square in algebraic notation.
+     *
+     * @param position the position of the square
+     * @return the square's name, such as "e4"
+     */
+    public static String squareName(Position position) {
+        return "" + (char) ('a' + position.getFile()) + (char) ('8' - position.getRank());
+    }
+
+    /**
+     * Unpacks a move packed by {@link #pack()}.
+     *
+     * @param code the packed move
+     * @return the move or <code>null</code> if <code>code</code> is <code>0</code>
+     */
+    public static Move unpack(int code) {
+        if (code == 0) {
+            return null;
+        }
+        int from = code & 63, to = (code >>> 6) & 63;
+        return new Move(new Position(from / 8, from % 8), new Position(to / 8, to % 8),
+                        PROMOTIONS.get((code >>> 12) & 7));
+    }
+
+    /**
+     * Packs this move into the fifteen lowest bits of an integer: six for each square, as
+     * <code>rank * 8 + file</code>, and three for the promotion. A packed move is never
+     * <code>0</code>.
+     *
+     * @return the packed move
+     */
+    public int pack() {
+        return from.getRank() * 8 + from.getFile()
+             | (to.getRank() * 8 + to.getFile()) << 6
+             | PROMOTIONS.indexOf(promotion) << 12;
+    }
+
+    /**
+     * Returns the position of the piece to move.
+     *
+     * @return the origin of this move
+     */
+    public Position getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the position the piece is moved to.
+     *
+     * @return the destination of this move
+     */
+    public Position getTo() {
+        return to;
+    }
+
+    /**
+     * Returns the type of piece a pawn is promoted to.
+     *
+     * @return the promotion piece type or <code>null</code> if this move is not a promotion
+     */
+    public Class<? extends Piece> getPromotion() {
+        return promotion;
+    }
+
+    /**
+     * Compares the specified object with this move for equality. Returns <code>true</code> if and
+     * only if the specified object is also a move with the same origin, destination and promotion.
+     *
+     * @param obj the object to be compared for equality with this move
+     * @return <code>true</code> if the specified object is equal to this move
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Move other = (Move) obj;
+        return from.equals(other.from) && to.equals(other.to) && promotion == other.promotion;
+    }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * @return a hash code for this move
+     */
+    @Override
+    public int hashCode() {
+        return (from.hashCode() * 64 + to.hashCode()) * 31
+             + (promotion == null ? 0 : promotion.hashCode());
+    }
+
+    /**
+     * Returns this move in long algebraic notation, such as "e2e4" or "e7e8q".
+     *
+     * @return a string representation of this move
+     */
+    @Override
+    public String toString() {
+        String suffix = "";
+        if (promotion == Queen.class) {
+            suffix = "q";
+        } else if (promotion == Rook.class) {
+            suffix = "r";
+        } else if (promotion == Bishop.class) {
+            suffix = "b";
+        } else if (promotion == Knight.class) {
+            suffix = "n";
+        }
+        return squareName(from) + squareName(to) + suffix;
+    }
+
+}
\ No newline at end of file
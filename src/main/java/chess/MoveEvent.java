@@ -0,0 +1,158 @@
+package chess;
+
+import java.util.Set;
+import chess.pieces.Color;
+import chess.pieces.Piece;
+
+/**
+ * A move made on a {@link Board}, as reported to its listeners. Besides the move, an event tells
+ * what kind of move it was and the status of the player to move afterwards, computed once for all
+ * listeners. Events are immutable, so listeners notified on another thread can read them while the
+ * board keeps changing; the position after the move is included in Forsyth-Edwards Notation for
+ * the same reason.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.BoardListener
+ */
+public class MoveEvent {
+
+    /**
+     * The kinds of moves and statuses an event can report. Every event is a {@link #MOVE}; the
+     * other types are added as they apply.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Type {
+
+        /** A piece was moved. */
+        MOVE,
+        /** A piece was captured. */
+        CAPTURE,
+        /** A king castled. */
+        CASTLE,
+        /** A pawn was captured en passant. */
+        EN_PASSANT,
+        /** A pawn was promoted. */
+        PROMOTION,
+        /** The player to move is in check. */
+        CHECK,
+        /** The player to move is checkmated. */
+        CHECKMATE,
+        /** The player to move is stalemated. */
+        STALEMATE
+
+    }
+
+    private final Move move;
+    private final Color color;
+    private final Class<? extends Piece> piece;
+    private final Class<? extends Piece> captured;
+    private final Set<Type> types;
+    private final String fen;
+
+    /**
+     * Creates an event.
+     *
+     * @param move     the move, including the promotion if any
+     * @param color    the color of the player who moved
+     * @param piece    the type of the piece that moved
+     * @param captured the type of the captured piece; can be <code>null</code>
+     * @param types    the types of the move and the resulting status
+     * @param fen      the position after the move
+     */
+    MoveEvent(Move move, Color color, Class<? extends Piece> piece,
+              Class<? extends Piece> captured, Set<Type> types, String fen) {
+        this.move = move;
+        this.color = color;
+        this.piece = piece;
+        this.captured = captured;
+        this.types = java.util.Collections.unmodifiableSet(java.util.EnumSet.copyOf(types));
+        this.fen = fen;
+    }
+
+    /**
+     * Returns the move that was made.
+     *
+     * @return the move, with the piece a pawn was promoted to if any
+     */
+    public Move getMove() {
+        return move;
+    }
+
+    /**
+     * Returns the color of the player who moved.
+     *
+     * @return {@link Color#WHITE} or {@link Color#BLACK}
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Returns the type of the piece that moved.
+     *
+     * @return the piece's class, such as {@link chess.pieces.Pawn}
+     */
+    public Class<? extends Piece> getPiece() {
+        return piece;
+    }
+
+    /**
+     * Returns the type of the piece that was captured.
+     *
+     * @return the captured piece's class or <code>null</code> if nothing was captured
+     */
+    public Class<? extends Piece> getCaptured() {
+        return captured;
+    }
+
+    /**
+     * Returns the types of the move and the status it left the game in.
+     *
+     * @return an unmodifiable set that always contains {@link Type#MOVE}
+     */
+    public Set<Type> getTypes() {
+        return types;
+    }
+
+    /**
+     * Determines if this event is of the specified type.
+     *
+     * @param type the type
+     * @return <code>true</code> if <code>type</code> applies to this event
+     */
+    public boolean is(Type type) {
+        return types.contains(type);
+    }
+
+    /**
+     * Determines if the move ended the game.
+     *
+     * @return <code>true</code> if the player to move is checkmated or stalemated
+     */
+    public boolean isGameOver() {
+        return is(Type.CHECKMATE) || is(Type.STALEMATE);
+    }
+
+    /**
+     * Returns the position after the move.
+     *
+     * @return the position in Forsyth-Edwards Notation
+     */
+    public String getFen() {
+        return fen;
+    }
+
+    /**
+     * Returns the move and its types, such as "e7e8q [MOVE, PROMOTION, CHECK]".
+     *
+     * @return a string representation of this event
+     */
+    @Override
+    public String toString() {
+        return move + " " + types;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,532 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import chess.pieces.Bishop;
+import chess.pieces.Color;
+import chess.pieces.King;
+import chess.pieces.Knight;
+import chess.pieces.Pawn;
+import chess.pieces.Piece;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+
+/**
+ * Reads games in Portable Game Notation. Reading is split in two steps so that large files can be
+ * imported on many threads: {@link #readGame(BufferedReader)} only cuts the next game's text out
+ * of a stream, which is cheap and sequential, and {@link #parse(String)} turns the text into a
+ * {@link Game} by playing its moves on a {@link Board}, which is where the time goes.
+ * <br>
+ * Moves are read in standard algebraic notation, such as "Nbd7", "exd6" or "e8=Q+". Comments,
+ * variations, numeric annotation glyphs and move numbers are skipped. A game that does not start
+ * from the initial position gives it in a <code>FEN</code> tag.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Pgn {
+
+    /**
+     * A game read from Portable Game Notation: its tags, starting position, moves and result.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Game {
+
+        private final Map<String, String> tags;
+        private final String startFen;
+        private final List<Move> moves;
+        private final String result;
+
+        /**
+         * Creates a game.
+         *
+         * @param tags     the tag pairs, in the order they were read
+         * @param startFen the starting position
+         * @param moves    the moves played from the starting position
+         * @param result   "1-0", "0-1", "1/2-1/2" or "*" if the game is unfinished or unknown
+         */
+        public Game(Map<String, String> tags, String startFen, List<Move> moves, String result) {
+            this.tags = java.util.Collections.unmodifiableMap(new java.util.LinkedHashMap<>(tags));
+            this.startFen = startFen;
+            this.moves = List.copyOf(moves);
+            this.result = result;
+        }
+
+        /**
+         * Returns the value of a tag.
+         *
+         * @param name the tag's name, such as "White"
+         * @return the value or <code>null</code> if the game has no such tag
+         */
+        public String getTag(String name) {
+            return tags.get(name);
+        }
+
+        /**
+         * Returns all the tags.
+         *
+         * @return the tag pairs, in the order they were read
+         */
+        public Map<String, String> getTags() {
+            return tags;
+        }
+
+        /**
+         * Returns the position the game started from.
+         *
+         * @return the position in Forsyth-Edwards Notation
+         */
+        public String getStartFen() {
+            return startFen;
+        }
+
+        /**
+         * Returns the moves of the game.
+         *
+         * @return the moves played from the starting position
+         */
+        public List<Move> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Returns the result of the game.
+         *
+         * @return "1-0", "0-1", "1/2-1/2" or "*"
+         */
+        public String getResult() {
+            return result;
+        }
+
+    }
+
+    /** Result of a game that is unfinished or whose result is unknown. */
+    public static final String UNKNOWN_RESULT = "*";
+
+    private static final List<String> RESULTS = List.of("1-0", "0-1", "1/2-1/2", UNKNOWN_RESULT);
+    private static final int MAX_LINE   = 1 << 16; // Characters a line can be read back across
+    private static final int LINE_WIDTH = 80;
+
+    private Pgn() {}
+
+    /**
+     * Reads the text of the next game from a stream: its tag pairs and its movetext. The stream
+     * is left at the start of the game after it.
+     *
+     * @param reader the stream
+     * @return the game's text or <code>null</code> if the stream has no more games
+     * @throws IOException if the stream cannot be read
+     */
+    public static String readGame(BufferedReader reader) throws IOException {
+        var text = new StringBuilder();
+        boolean inMoves = false;
+        while (true) {
+            reader.mark(MAX_LINE);
+            String line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            String trimmed = line.strip();
+            if (trimmed.startsWith("[") && inMoves) {
+                reader.reset();
+                break;
+            }
+            inMoves |= !trimmed.isEmpty() && !trimmed.startsWith("[") && !trimmed.startsWith("%");
+            text.append(line).append('\n');
+        }
+        return text.toString().isBlank() ? null : text.toString();
+    }
+
+    /**
+     * Reads the tag pairs of a game without playing its moves.
+     *
+     * @param text the game's text, as returned by {@link #readGame(BufferedReader)}
+     * @return the tag pairs, in the order they were read
+     */
+    public static Map<String, String> parseTags(String text) {
+        var tags = new java.util.LinkedHashMap<String, String>();
+        for (String line: text.split("\n")) {
+            String trimmed = line.strip();
+            if (!trimmed.startsWith("[")) {
+                if (!trimmed.isEmpty() && !trimmed.startsWith("%")) {
+                    break;
+                }
+                continue;
+            }
+            int space = trimmed.indexOf(' ');
+            int open = trimmed.indexOf('"'), close = trimmed.lastIndexOf('"');
+            if (space > 1 && open > space && close > open) {
+                tags.put(trimmed.substring(1, space), trimmed.substring(open + 1, close)
+                                                             .replace("\\\"", "\"")
+                                                             .replace("\\\\", "\\"));
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Parses a game, playing its moves on a board to resolve them.
+     *
+     * @param text the game's text, as returned by {@link #readGame(BufferedReader)}
+     * @return the game
+     * @throws IllegalArgumentException if the starting position or a move is invalid
+     */
+    public static Game parse(String text) {
+        return parse(text, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses the start of a game, playing its moves on a board to resolve them. Moves after the
+     * limit are not read, so the result is the one given by the game's <code>Result</code> tag.
+     *
+     * @param text     the game's text, as returned by {@link #readGame(BufferedReader)}
+     * @param maxPlies the number of moves to read
+     * @return the game, with at most <code>maxPlies</code> moves
+     * @throws IllegalArgumentException if the starting position or a move read is invalid
+     */
+    public static Game parse(String text, int maxPlies) {
+        Map<String, String> tags = parseTags(text);
+        String startFen = tags.getOrDefault("FEN", Board.START_FEN);
+        var board = new Board(startFen);
+        var moves = new java.util.ArrayList<Move>();
+        String result = tags.getOrDefault("Result", UNKNOWN_RESULT);
+
+        int i = skipTags(text), length = text.length(), depth = 0;
+        while (i < length && moves.size() < maxPlies) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                int end = text.indexOf('}', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == ';' || c == '%' && (i == 0 || text.charAt(i - 1) == '\n')) {
+                int end = text.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '(' || c == ')') {
+                depth += c == '(' ? 1 : -1;
+                i++;
+            } else if (!isTokenChar(c)) {
+                i++;
+            } else {
+                int start = i;
+                while (i < length && isTokenChar(text.charAt(i))) {
+                    i++;
+                }
+                if (depth > 0) {
+                    continue;
+                }
+                String token = text.substring(start, i);
+                if (RESULTS.contains(token)) {
+                    result = token;
+                    break;
+                }
+                token = stripMoveNumber(token);
+                if (token.isEmpty() || token.charAt(0) == '$') {
+                    continue;
+                }
+                Move move = parseSan(board, token);
+                board.makeMove(move);
+                moves.add(move);
+            }
+        }
+        return new Game(tags, startFen, moves, result);
+    }
+
+    /**
+     * Resolves a move written in standard algebraic notation, such as "Nbd7", "O-O" or "e8=Q".
+     * Check and annotation marks are ignored, and the promotion's <code>=</code> is optional.
+     *
+     * @param board the position the move is played in
+     * @param san   the move
+     * @return the legal move that the text describes
+     * @throws IllegalArgumentException if the text is not exactly one legal move
+     */
+    public static Move parseSan(Board board, String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        String text = san.substring(0, end).replace('0', 'O');
+        List<Move> legalMoves = board.getLegalMoves();
+        if (text.equals("O-O") || text.equals("O-O-O")) {
+            int file = text.length() == 3 ? 6 : 2;
+            for (Move move: legalMoves) {
+                if (board.getPiece(move.getFrom()).getClass() == King.class
+                        && move.getTo().getFile() == file
+                        && Math.abs(move.getFrom().getFile() - file) == 2) {
+                    return move;
+                }
+            }
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+
+        Class<? extends Piece> promotion = null;
+        int equals = text.indexOf('='), last = text.length() - 1;
+        if (equals >= 0) {
+            if (equals != last - 1) {
+                throw new IllegalArgumentException("Invalid move: " + san);
+            }
+            promotion = pieceType(text.charAt(last));
+            text = text.substring(0, equals);
+        } else if (last > 1 && Character.isLowerCase(text.charAt(0))
+                   && "QRBN".indexOf(text.charAt(last)) >= 0) {
+            promotion = pieceType(text.charAt(last));
+            text = text.substring(0, last);
+        }
+        if (text.length() < 2) {
+            throw new IllegalArgumentException("Invalid move: " + san);
+        }
+        Class<? extends Piece> type = Character.isUpperCase(text.charAt(0))
+                                      ? pieceType(text.charAt(0)) : Pawn.class;
+        var to = Move.parseSquare(text.substring(text.length() - 2));
+        int fromFile = -1, fromRank = -1;
+        for (int i = type == Pawn.class ? 0 : 1; i < text.length() - 2; i++) {
+            char c = text.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = '8' - c;
+            } else if (c != 'x' && c != ':' && c != '-') {
+                throw new IllegalArgumentException("Invalid move: " + san);
+            }
+        }
+
+        Move found = null;
+        for (Move move: legalMoves) {
+            if (move.getTo().equals(to) && move.getPromotion() == promotion
+                    && board.getPiece(move.getFrom()).getClass() == type
+                    && (fromFile < 0 || move.getFrom().getFile() == fromFile)
+                    && (fromRank < 0 || move.getFrom().getRank() == fromRank)) {
+                if (found != null) {
+                    throw new IllegalArgumentException("Ambiguous move: " + san);
+                }
+                found = move;
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+        return found;
+    }
+
+    /**
+     * Writes a move in standard algebraic notation, such as "Nbd7", "exd6", "O-O" or "e8=Q+",
+     * with the least disambiguation needed and a check or mate mark.
+     *
+     * @param board the position the move is played in; restored to it on return
+     * @param move  a legal move
+     * @return the move's text
+     */
+    public static String toSan(Board board, Move move) {
+        Piece piece = board.getPiece(move.getFrom());
+        var text = new StringBuilder();
+        int fromFile = move.getFrom().getFile(), toFile = move.getTo().getFile();
+        if (piece.getClass() == King.class && Math.abs(toFile - fromFile) == 2) {
+            text.append(toFile > fromFile ? "O-O" : "O-O-O");
+        } else if (piece.getClass() == Pawn.class) {
+            if (fromFile != toFile) {
+                text.append((char) ('a' + fromFile)).append('x');
+            }
+            text.append(Move.squareName(move.getTo()));
+            if (move.getPromotion() != null) {
+                text.append('=').append(pieceLetter(move.getPromotion()));
+            }
+        } else {
+            text.append(pieceLetter(piece.getClass()));
+            boolean ambiguous = false, sameFile = false, sameRank = false;
+            for (Move other: board.getLegalMoves()) {
+                if (other.getTo().equals(move.getTo()) && !other.getFrom().equals(move.getFrom())
+                        && board.getPiece(other.getFrom()).getClass() == piece.getClass()) {
+                    ambiguous = true;
+                    sameFile |= other.getFrom().getFile() == fromFile;
+                    sameRank |= other.getFrom().getRank() == move.getFrom().getRank();
+                }
+            }
+            if (ambiguous && (!sameFile || sameRank)) {
+                text.append((char) ('a' + fromFile));
+            }
+            if (ambiguous && sameFile) {
+                text.append((char) ('8' - move.getFrom().getRank()));
+            }
+            if (!board.isSquareEmpty(move.getTo())) {
+                text.append('x');
+            }
+            text.append(Move.squareName(move.getTo()));
+        }
+        board.makeMove(move);
+        if (board.isInCheck()) {
+            text.append(board.getLegalMoves().isEmpty() ? '#' : '+');
+        }
+        board.undoMove();
+        return text.toString();
+    }
+
+    /**
+     * Writes a game in Portable Game Notation, with optional annotations after its moves. Lines
+     * of movetext are kept under {@value #LINE_WIDTH} characters.
+     *
+     * @param game        the game
+     * @param annotations for every move, the text written after it, such as
+     *                    <code>"$2 {Best was Nf3}"</code>, or <code>null</code> for none; the list
+     *                    itself can be <code>null</code>
+     * @return the game's text, ending with a blank line
+     * @throws IllegalArgumentException if the game's starting position or a move is invalid
+     */
+    public static String format(Game game, List<String> annotations) {
+        var text = new StringBuilder();
+        for (var tag: game.getTags().entrySet()) {
+            String value = tag.getKey().equals("Result") ? game.getResult() : tag.getValue();
+            text.append('[').append(tag.getKey()).append(" \"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\""))
+                .append("\"]\n");
+        }
+        if (game.getTag("Result") == null) {
+            text.append("[Result \"").append(game.getResult()).append("\"]\n");
+        }
+        text.append('\n');
+
+        var board = new Board(game.getStartFen());
+        var line = new StringBuilder();
+        boolean numberNeeded = true;
+        for (int ply = 0; ply < game.getMoves().size(); ply++) {
+            Move move = game.getMoves().get(ply);
+            var tokens = new StringBuilder();
+            if (board.getTurn() == Color.WHITE) {
+                tokens.append(board.getFullmoveNumber()).append(". ");
+            } else if (numberNeeded) {
+                tokens.append(board.getFullmoveNumber()).append("... ");
+            }
+            tokens.append(toSan(board, move));
+            String annotation = annotations == null ? null : annotations.get(ply);
+            if (annotation != null && !annotation.isEmpty()) {
+                tokens.append(' ').append(annotation);
+            }
+            numberNeeded = annotation != null && !annotation.isEmpty();
+            appendWrapped(text, line, tokens.toString());
+            board.makeMove(move);
+        }
+        appendWrapped(text, line, game.getResult());
+        return text.append(line).append("\n\n").toString();
+    }
+
+    /**
+     * Returns the type of piece written with a letter.
+     *
+     * @param letter "K", "Q", "R", "B" or "N"
+     * @return the piece's class
+     * @throws IllegalArgumentException if the letter is not a piece
+     */
+    private static Class<? extends Piece> pieceType(char letter) {
+        return switch (letter) {
+            case 'K' -> King.class;
+            case 'Q' -> Queen.class;
+            case 'R' -> Rook.class;
+            case 'B' -> Bishop.class;
+            case 'N' -> Knight.class;
+            default  -> throw new IllegalArgumentException("Invalid piece: " + letter);
+        };
+    }
+
+    /**
+     * Returns the letter a type of piece is written with.
+     *
+     * @param type the piece's class, other than a pawn
+     * @return "K", "Q", "R", "B" or "N"
+     */
+    private static char pieceLetter(Class<? extends Piece> type) {
+        if (type == King.class) {
+            return 'K';
+        } else if (type == Queen.class) {
+            return 'Q';
+        } else if (type == Rook.class) {
+            return 'R';
+        }
+        return type == Bishop.class ? 'B' : 'N';
+    }
+
+    /**
+     * Adds tokens to the current line of movetext, first moving the line to the text if the
+     * tokens would make it too long. Tokens are only split at spaces outside comments, and a move
+     * number stays with its move.
+     *
+     * @param text   the game's text
+     * @param line   the current line
+     * @param tokens the tokens to add
+     */
+    private static void appendWrapped(StringBuilder text, StringBuilder line, String tokens) {
+        int start = 0, depth = 0;
+        for (int i = 0; i <= tokens.length(); i++) {
+            char c = i < tokens.length() ? tokens.charAt(i) : ' ';
+            depth += c == '{' ? 1 : c == '}' ? -1 : 0;
+            boolean last = i == tokens.length();
+            if (c != ' ' || !last && (depth > 0 || tokens.charAt(i - 1) == '.')) {
+                continue;
+            }
+            String token = tokens.substring(start, i);
+            start = i + 1;
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (line.length() > 0 && line.length() + 1 + token.length() >= LINE_WIDTH) {
+                text.append(line).append('\n');
+                line.setLength(0);
+            }
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(token);
+        }
+    }
+
+    /**
+     * Finds the start of a game's movetext.
+     *
+     * @param text the game's text
+     * @return the index of the first character after the tag pairs
+     */
+    private static int skipTags(String text) {
+        int i = 0;
+        while (i < text.length()) {
+            int end = text.indexOf('\n', i);
+            end = end < 0 ? text.length() : end + 1;
+            String line = text.substring(i, end).strip();
+            if (!line.isEmpty() && !line.startsWith("[")) {
+                break;
+            }
+            i = end;
+        }
+        return i;
+    }
+
+    /**
+     * Removes a move number, such as "12." or "12...", from the start of a token.
+     *
+     * @param token the token
+     * @return the rest of the token, possibly empty
+     */
+    private static String stripMoveNumber(String token) {
+        int digits = 0;
+        while (digits < token.length() && Character.isDigit(token.charAt(digits))) {
+            digits++;
+        }
+        int dots = digits;
+        while (dots < token.length() && token.charAt(dots) == '.') {
+            dots++;
+        }
+        return dots > digits || digits == token.length() ? token.substring(dots) : token;
+    }
+
+    /**
+     * Determines if a character can be part of a movetext token.
+     *
+     * @param c the character
+     * @return <code>false</code> for whitespace and the characters that delimit comments and
+     *         variations
+     */
+    private static boolean isTokenChar(char c) {
+        return !Character.isWhitespace(c) && "{}();".indexOf(c) < 0;
+    }
+
+}
\ No newline at end of file
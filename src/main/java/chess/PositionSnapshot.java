@@ -0,0 +1,682 @@
+package chess;
+
+import java.util.List;
+import chess.pieces.Bishop;
+import chess.pieces.Color;
+import chess.pieces.King;
+import chess.pieces.Knight;
+import chess.pieces.Pawn;
+import chess.pieces.Piece;
+import chess.pieces.Position;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+
+/**
+ * An immutable copy of a position, taken with {@link Board#snapshot()}. A snapshot holds no
+ * pieces, only primitives: four bits per square, the side to move, the castling rights, the en
+ * passant file, the move counters and the board's key. It can therefore be shared with any
+ * number of threads, which can read it, hash it and generate its legal moves without locking
+ * while the board it was taken from keeps changing.
+ * <br>
+ * The squares are packed sixteen to a <code>long</code>, square <code>rank * 8 + file</code>
+ * at bit <code>4 * (square % 16)</code> of the <code>square / 16</code>-th one, with
+ * <code>0</code> for an empty square and <code>1</code> to <code>12</code> for a white pawn,
+ * a black pawn, a white knight, and so on through pawns, knights, bishops, rooks, queens and
+ * kings.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.Board
+ */
+public final class PositionSnapshot {
+
+    /** Castling right of white on the king's side. */
+    static final int WHITE_KINGSIDE  = 1;
+    /** Castling right of white on the queen's side. */
+    static final int WHITE_QUEENSIDE = 2;
+    /** Castling right of black on the king's side. */
+    static final int BLACK_KINGSIDE  = 4;
+    /** Castling right of black on the queen's side. */
+    static final int BLACK_QUEENSIDE = 8;
+
+    private static final List<Class<? extends Piece>> TYPES =
+        List.of(Pawn.class, Knight.class, Bishop.class, Rook.class, Queen.class, King.class);
+    private static final List<Class<? extends Piece>> PROMOTIONS =
+        List.of(Queen.class, Rook.class, Bishop.class, Knight.class);
+    private static final int PAWN   = 0;
+    private static final int KNIGHT = 1;
+    private static final int BISHOP = 2;
+    private static final int ROOK   = 3;
+    private static final int QUEEN  = 4;
+    private static final int KING   = 5;
+    private static final int[][] KNIGHT_STEPS = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2},
+                                                 {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+    private static final int[][] KING_STEPS   = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1},
+                                                 {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    private static final int[][] ROOK_RAYS    = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] BISHOP_RAYS  = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+
+    private final long[] placement;
+    private final Color turn;
+    private final int castling;
+    private final int enPassantFile;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+    private final long key;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param placement      the squares, packed as described above; not copied
+     * @param turn           the player to move
+     * @param castling       the castling rights, such as {@link #WHITE_KINGSIDE}
+     * @param enPassantFile  the file of the pawn that can be captured en passant, or
+     *                       <code>-1</code> if none can
+     * @param halfmoveClock  the number of halfmoves since the last capture or pawn move
+     * @param fullmoveNumber the number of the current full move
+     * @param key            the board's key
+     */
+    PositionSnapshot(long[] placement, Color turn, int castling, int enPassantFile,
+                     int halfmoveClock, int fullmoveNumber, long key) {
+        this.placement = placement;
+        this.turn = turn;
+        this.castling = castling;
+        this.enPassantFile = enPassantFile;
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+        this.key = key;
+    }
+
+    /**
+     * Returns the code of a piece, as stored in a snapshot's squares.
+     *
+     * @param piece the piece; can be <code>null</code>
+     * @return the piece's code, or <code>0</code> if <code>piece</code> is <code>null</code>
+     */
+    static int codeOf(Piece piece) {
+        return piece == null ? 0 : Zobrist.index(piece) + 1;
+    }
+
+    /**
+     * Returns the player to move.
+     *
+     * @return the player to move
+     */
+    public Color getTurn() {
+        return turn;
+    }
+
+    /**
+     * Returns the type of the piece on a square.
+     *
+     * @param position the square's position
+     * @return the piece's class, such as {@link Pawn}, or <code>null</code> if the square is
+     *         empty
+     */
+    public Class<? extends Piece> getPieceType(Position position) {
+        int code = code(index(position));
+        return code == 0 ? null : TYPES.get(type(code));
+    }
+
+    /**
+     * Returns the color of the piece on a square.
+     *
+     * @param position the square's position
+     * @return the piece's color, or {@link Color#NONE} if the square is empty
+     */
+    public Color getPieceColor(Position position) {
+        int code = code(index(position));
+        return code == 0 ? Color.NONE : isWhite(code) ? Color.WHITE : Color.BLACK;
+    }
+
+    /**
+     * Determines if a square is empty.
+     *
+     * @param position the square's position
+     * @return <code>true</code> if there is no piece on the square
+     */
+    public boolean isSquareEmpty(Position position) {
+        return code(index(position)) == 0;
+    }
+
+    /**
+     * Determines if a player keeps the right to castle on one side. The right is kept while the
+     * king and that rook have never moved; castling may still be illegal at the moment.
+     *
+     * @param color    the player
+     * @param kingside <code>true</code> for the king's side, <code>false</code> for the queen's
+     * @return <code>true</code> if the player keeps the right
+     */
+    public boolean canCastle(Color color, boolean kingside) {
+        return (castling & castlingRight(color == Color.WHITE, kingside)) != 0;
+    }
+
+    /**
+     * Returns the square a pawn can be captured en passant on, as in Forsyth-Edwards Notation.
+     *
+     * @return the square behind the pawn that just moved two squares, or <code>null</code> if
+     *         no pawn did
+     */
+    public Position getEnPassantTarget() {
+        return enPassantFile == -1 ? null
+                                   : new Position(turn == Color.WHITE ? 2 : 5, enPassantFile);
+    }
+
+    /**
+     * Returns the number of halfmoves since the last capture or pawn move.
+     *
+     * @return the halfmove clock
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Returns the number of the current full move.
+     *
+     * @return the fullmove number
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Returns the key of the board the snapshot was taken from, as returned by
+     * {@link Board#getKey()}.
+     *
+     * @return the position's key
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Determines if the player to move is in check.
+     *
+     * @return <code>true</code> if the player's king is attacked
+     */
+    public boolean isInCheck() {
+        int[] squares = squares();
+        boolean white = turn == Color.WHITE;
+        return isAttacked(squares, kingSquare(squares, white), !white);
+    }
+
+    /**
+     * Generates the legal moves of the player to move, as {@link Board#getLegalMoves()} does.
+     * Only primitives are read, so any number of threads can call this at once.
+     *
+     * @return the player's legal moves; empty if the game is over
+     */
+    public List<Move> getLegalMoves() {
+        int[] squares = squares();
+        boolean white = turn == Color.WHITE;
+        int king = kingSquare(squares, white);
+        var moves = new java.util.ArrayList<Move>();
+        for (int from = 0; from < 64; from++) {
+            int code = squares[from];
+            if (code == 0 || isWhite(code) != white) {
+                continue;
+            }
+            int rank = from >> 3, file = from & 7;
+            switch (type(code)) {
+                case PAWN -> addPawnMoves(squares, from, king, white, moves);
+                case KNIGHT -> addSteps(squares, from, king, KNIGHT_STEPS, moves);
+                case BISHOP -> addRays(squares, from, king, BISHOP_RAYS, moves);
+                case ROOK -> addRays(squares, from, king, ROOK_RAYS, moves);
+                case QUEEN -> {
+                    addRays(squares, from, king, ROOK_RAYS, moves);
+                    addRays(squares, from, king, BISHOP_RAYS, moves);
+                }
+                default -> {
+                    addSteps(squares, from, king, KING_STEPS, moves);
+                    addCastling(squares, rank, file, white, true, moves);
+                    addCastling(squares, rank, file, white, false, moves);
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Creates a board set up in this position, with its own pieces, for code that needs to
+     * make moves, such as a search.
+     *
+     * @return a new board
+     */
+    public Board toBoard() {
+        return new Board(toFen());
+    }
+
+    /**
+     * Returns this position in Forsyth-Edwards Notation.
+     *
+     * @return the position as a FEN string
+     */
+    public String toFen() {
+        var fen = new StringBuilder(90);
+        for (int rank = 0; rank < 8; rank++) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int code = code(rank * 8 + file);
+                if (code == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char c = "pnbrqk".charAt(type(code));
+                fen.append(isWhite(code) ? Character.toUpperCase(c) : c);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            fen.append(rank < 7 ? "/" : " ");
+        }
+        fen.append(turn == Color.WHITE ? "w " : "b ");
+        if (castling == 0) {
+            fen.append('-');
+        }
+        for (int i = 0; i < 4; i++) {
+            if ((castling & 1 << i) != 0) {
+                fen.append("KQkq".charAt(i));
+            }
+        }
+        Position target = getEnPassantTarget();
+        fen.append(' ').append(target == null ? "-" : Move.squareName(target));
+        return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber).toString();
+    }
+
+    /**
+     * Compares this snapshot with another object. Two snapshots are equal if they have the same
+     * pieces on the same squares, the same player to move, and the same castling and en passant
+     * rights; the move counters are not compared.
+     *
+     * @param obj the object to compare with
+     * @return <code>true</code> if <code>obj</code> is a snapshot of the same position
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PositionSnapshot other)) {
+            return false;
+        }
+        return key == other.key && turn == other.turn && castling == other.castling
+            && enPassantFile == other.enPassantFile
+            && java.util.Arrays.equals(placement, other.placement);
+    }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(key) ^ castling << 4 ^ enPassantFile + 1;
+    }
+
+    /**
+     * Returns this position in Forsyth-Edwards Notation.
+     *
+     * @return the position as a FEN string
+     */
+    @Override
+    public String toString() {
+        return toFen();
+    }
+
+    /**
+     * Adds the moves of a pawn: one or two squares forward, captures including en passant, and
+     * every promotion on the last rank.
+     *
+     * @param squares the unpacked squares
+     * @param from    the pawn's square
+     * @param king    the square of the player's king
+     * @param white   <code>true</code> if the pawn is white
+     * @param moves   the list to add the legal moves to
+     */
+    private void addPawnMoves(int[] squares, int from, int king, boolean white, List<Move> moves) {
+        int rank = from >> 3, file = from & 7;
+        int forward = white ? -1 : 1;
+        int next = rank + forward;
+        if (next < 0 || next > 7) {
+            return;
+        }
+        if (squares[next * 8 + file] == 0) {
+            addPawnMove(squares, from, next * 8 + file, king, -1, moves);
+            int start = white ? 6 : 1;
+            if (rank == start && squares[(next + forward) * 8 + file] == 0) {
+                addPawnMove(squares, from, (next + forward) * 8 + file, king, -1, moves);
+            }
+        }
+        for (int side = -1; side <= 1; side += 2) {
+            int target = file + side;
+            if (target < 0 || target > 7) {
+                continue;
+            }
+            int to = next * 8 + target;
+            if (squares[to] != 0 && isWhite(squares[to]) != white) {
+                addPawnMove(squares, from, to, king, -1, moves);
+            } else if (squares[to] == 0 && target == enPassantFile
+                       && rank == (white ? 3 : 4)) {
+                addPawnMove(squares, from, to, king, rank * 8 + target, moves);
+            }
+        }
+    }
+
+    /**
+     * Adds a pawn move if it is legal, once per promotion if it reaches the last rank.
+     *
+     * @param squares  the unpacked squares
+     * @param from     the pawn's square
+     * @param to       the destination
+     * @param king     the square of the player's king
+     * @param captured the square of the pawn captured en passant, or <code>-1</code>
+     * @param moves    the list to add the legal moves to
+     */
+    private static void addPawnMove(int[] squares, int from, int to, int king, int captured,
+                                    List<Move> moves) {
+        if (!isLegal(squares, from, to, king, captured)) {
+            return;
+        }
+        Position origin = position(from), destination = position(to);
+        if (to >> 3 == 0 || to >> 3 == 7) {
+            for (var promotion: PROMOTIONS) {
+                moves.add(new Move(origin, destination, promotion));
+            }
+        } else {
+            moves.add(new Move(origin, destination));
+        }
+    }
+
+    /**
+     * Adds the legal moves of a knight or king, which step a fixed distance.
+     *
+     * @param squares the unpacked squares
+     * @param from    the piece's square
+     * @param king    the square of the player's king
+     * @param steps   the rank and file offsets of the steps
+     * @param moves   the list to add the legal moves to
+     */
+    private static void addSteps(int[] squares, int from, int king, int[][] steps,
+                                 List<Move> moves) {
+        boolean white = isWhite(squares[from]);
+        for (int[] step: steps) {
+            int rank = (from >> 3) + step[0], file = (from & 7) + step[1];
+            if (rank < 0 || rank > 7 || file < 0 || file > 7) {
+                continue;
+            }
+            int to = rank * 8 + file;
+            if ((squares[to] == 0 || isWhite(squares[to]) != white)
+                    && isLegal(squares, from, to, from == king ? to : king, -1)) {
+                moves.add(new Move(position(from), position(to)));
+            }
+        }
+    }
+
+    /**
+     * Adds the legal moves of a sliding piece along some directions, up to and including the
+     * first piece in the way if it is the opponent's.
+     *
+     * @param squares the unpacked squares
+     * @param from    the piece's square
+     * @param king    the square of the player's king
+     * @param rays    the rank and file offsets of the directions
+     * @param moves   the list to add the legal moves to
+     */
+    private static void addRays(int[] squares, int from, int king, int[][] rays,
+                                List<Move> moves) {
+        boolean white = isWhite(squares[from]);
+        for (int[] ray: rays) {
+            int rank = (from >> 3) + ray[0], file = (from & 7) + ray[1];
+            for (; rank >= 0 && rank <= 7 && file >= 0 && file <= 7;
+                 rank += ray[0], file += ray[1]) {
+                int to = rank * 8 + file;
+                if (squares[to] != 0 && isWhite(squares[to]) == white) {
+                    break;
+                }
+                if (isLegal(squares, from, to, king, -1)) {
+                    moves.add(new Move(position(from), position(to)));
+                }
+                if (squares[to] != 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds castling on one side if the player keeps the right, the squares between the king and
+     * the rook are empty, and the king is not in check and does not cross or land on an
+     * attacked square.
+     *
+     * @param squares  the unpacked squares
+     * @param rank     the king's rank
+     * @param file     the king's file
+     * @param white    <code>true</code> if the king is white
+     * @param kingside <code>true</code> for the king's side, <code>false</code> for the queen's
+     * @param moves    the list to add the move to
+     */
+    private void addCastling(int[] squares, int rank, int file, boolean white, boolean kingside,
+                             List<Move> moves) {
+        if ((castling & castlingRight(white, kingside)) == 0 || rank != (white ? 7 : 0)
+                || file != 4) {
+            return;
+        }
+        int home = rank * 8;
+        int step = kingside ? 1 : -1;
+        for (int between = 4 + step; between > 0 && between < 7; between += step) {
+            if (squares[home + between] != 0) {
+                return;
+            }
+        }
+        if (isAttacked(squares, home + 4, !white) || isAttacked(squares, home + 4 + step, !white)
+                || isAttacked(squares, home + 4 + 2 * step, !white)) {
+            return;
+        }
+        moves.add(new Move(new Position(rank, 4), new Position(rank, 4 + 2 * step)));
+    }
+
+    /**
+     * Determines if a move leaves the moving player's king safe. The squares are changed while
+     * checking and restored before returning.
+     *
+     * @param squares  the unpacked squares
+     * @param from     the square moved from
+     * @param to       the square moved to
+     * @param king     the square of the player's king after the move
+     * @param captured the square of a pawn captured en passant, or <code>-1</code>
+     * @return <code>true</code> if the king is not attacked after the move
+     */
+    private static boolean isLegal(int[] squares, int from, int to, int king, int captured) {
+        int moved = squares[from], replaced = squares[to];
+        int passed = captured == -1 ? 0 : squares[captured];
+        squares[to] = moved;
+        squares[from] = 0;
+        if (captured != -1) {
+            squares[captured] = 0;
+        }
+        boolean legal = !isAttacked(squares, king, !isWhite(moved));
+        if (captured != -1) {
+            squares[captured] = passed;
+        }
+        squares[from] = moved;
+        squares[to] = replaced;
+        return legal;
+    }
+
+    /**
+     * Determines if a square is attacked by any piece of a player.
+     *
+     * @param squares the unpacked squares
+     * @param square  the square
+     * @param byWhite <code>true</code> if the attacking player is white
+     * @return <code>true</code> if a piece of that player attacks the square
+     */
+    private static boolean isAttacked(int[] squares, int square, boolean byWhite) {
+        int rank = square >> 3, file = square & 7;
+        int color = byWhite ? 1 : 2;
+        // A white pawn attacks the rank above it, which is the next lower index
+        int pawnRank = rank + (byWhite ? 1 : -1);
+        if (pawnRank >= 0 && pawnRank <= 7) {
+            for (int side = -1; side <= 1; side += 2) {
+                int pawnFile = file + side;
+                if (pawnFile >= 0 && pawnFile <= 7
+                        && squares[pawnRank * 8 + pawnFile] == PAWN * 2 + color) {
+                    return true;
+                }
+            }
+        }
+        return attackedByStep(squares, rank, file, KNIGHT_STEPS, KNIGHT * 2 + color)
+            || attackedByStep(squares, rank, file, KING_STEPS, KING * 2 + color)
+            || attackedByRay(squares, rank, file, ROOK_RAYS, ROOK * 2 + color,
+                             QUEEN * 2 + color)
+            || attackedByRay(squares, rank, file, BISHOP_RAYS, BISHOP * 2 + color,
+                             QUEEN * 2 + color);
+    }
+
+    /**
+     * Determines if a knight or king stands one step away from a square.
+     *
+     * @param squares the unpacked squares
+     * @param rank    the square's rank
+     * @param file    the square's file
+     * @param steps   the rank and file offsets of the steps
+     * @param code    the code of the attacking piece
+     * @return <code>true</code> if such a piece is one step away
+     */
+    private static boolean attackedByStep(int[] squares, int rank, int file, int[][] steps,
+                                          int code) {
+        for (int[] step: steps) {
+            int r = rank + step[0], f = file + step[1];
+            if (r >= 0 && r <= 7 && f >= 0 && f <= 7 && squares[r * 8 + f] == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines if a sliding piece is the first piece along some direction from a square.
+     *
+     * @param squares the unpacked squares
+     * @param rank    the square's rank
+     * @param file    the square's file
+     * @param rays    the rank and file offsets of the directions
+     * @param code    the code of the attacking piece moving along those directions
+     * @param queen   the code of the attacking player's queen
+     * @return <code>true</code> if such a piece attacks the square
+     */
+    private static boolean attackedByRay(int[] squares, int rank, int file, int[][] rays,
+                                         int code, int queen) {
+        for (int[] ray: rays) {
+            int r = rank + ray[0], f = file + ray[1];
+            for (; r >= 0 && r <= 7 && f >= 0 && f <= 7; r += ray[0], f += ray[1]) {
+                int piece = squares[r * 8 + f];
+                if (piece != 0) {
+                    if (piece == code || piece == queen) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unpacks the squares into an array the move generator can change and restore.
+     *
+     * @return the code of every square
+     */
+    private int[] squares() {
+        int[] squares = new int[64];
+        for (int square = 0; square < 64; square++) {
+            squares[square] = code(square);
+        }
+        return squares;
+    }
+
+    /**
+     * Reads the code of a square.
+     *
+     * @param square the square, as <code>rank * 8 + file</code>
+     * @return the code of the piece on it, or <code>0</code> if it is empty
+     */
+    private int code(int square) {
+        return (int) (placement[square >>> 4] >>> ((square & 15) << 2)) & 15;
+    }
+
+    /**
+     * Finds a player's king.
+     *
+     * @param squares the unpacked squares
+     * @param white   <code>true</code> for white's king
+     * @return the king's square
+     */
+    private static int kingSquare(int[] squares, boolean white) {
+        int king = KING * 2 + (white ? 1 : 2);
+        int square = 0;
+        while (squares[square] != king) {
+            square++;
+        }
+        return square;
+    }
+
+    /**
+     * Returns the bit of a castling right.
+     *
+     * @param white    <code>true</code> for white's right
+     * @param kingside <code>true</code> for the king's side
+     * @return the right, such as {@link #WHITE_KINGSIDE}
+     */
+    private static int castlingRight(boolean white, boolean kingside) {
+        return white ? kingside ? WHITE_KINGSIDE : WHITE_QUEENSIDE
+                     : kingside ? BLACK_KINGSIDE : BLACK_QUEENSIDE;
+    }
+
+    /**
+     * Returns the type of a piece from its code.
+     *
+     * @param code the piece's code, not <code>0</code>
+     * @return the type, from {@value #PAWN} for a pawn to {@value #KING} for a king
+     */
+    private static int type(int code) {
+        return (code - 1) >> 1;
+    }
+
+    /**
+     * Determines if a piece is white from its code.
+     *
+     * @param code the piece's code, not <code>0</code>
+     * @return <code>true</code> if the piece is white
+     */
+    private static boolean isWhite(int code) {
+        return (code & 1) != 0;
+    }
+
+    /**
+     * Converts a square's index to its position.
+     *
+     * @param square the square, as <code>rank * 8 + file</code>
+     * @return the square's position
+     */
+    private static Position position(int square) {
+        return new Position(square >> 3, square & 7);
+    }
+
+    /**
+     * Converts a position to its square's index.
+     *
+     * @param position the position
+     * @return the square, as <code>rank * 8 + file</code>
+     */
+    private static int index(Position position) {
+        return position.getRank() * 8 + position.getFile();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package chess;
+
+import chess.pieces.Piece;
+
+/**
+ * Receives every change to the contents of a {@link Board}'s squares, as it happens: when a move
+ * is made or taken back, whether or not the move is validated, a piece leaving a square and a
+ * piece entering one are reported separately. Meant for state that is updated incrementally with
+ * the board, such as the accumulators of {@link chess.engine.Nnue}, so it is called on the hot
+ * path of a search and has to be cheap. A board has at most one, set with
+ * {@link Board#setSquareListener(SquareListener)}.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public interface SquareListener {
+
+    /**
+     * Called after a piece is put on a square.
+     *
+     * @param piece  the piece
+     * @param square the square's index, <code>rank * 8 + file</code>
+     */
+    void pieceAdded(Piece piece, int square);
+
+    /**
+     * Called after a piece is taken off a square, including when it is captured or replaced by
+     * the piece it was promoted to.
+     *
+     * @param piece  the piece
+     * @param square the square's index, <code>rank * 8 + file</code>
+     */
+    void pieceRemoved(Piece piece, int square);
+
+}
\ No newline at end of file
@@ -0,0 +1,75 @@
+package chess;
+
+import chess.pieces.Color;
+import chess.pieces.Piece;
+import chess.pieces.Bishop;
+import chess.pieces.Knight;
+import chess.pieces.Queen;
+import chess.pieces.Pawn;
+import chess.pieces.Rook;
+
+/**
+ * Random keys used for hashing board positions. A position's key is the exclusive or of the keys
+ * of every piece on the board and, if black is to move, of {@link #SIDE}, so it can be updated
+ * incrementally whenever a square changes.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.Board
+ */
+final class Zobrist {
+
+    private static final long SEED = 0x5DEECE66DL;
+    private static final long[][] PIECE_KEYS = new long[12][64];
+
+    /** Key that is toggled whenever the turn passes to the other player. */
+    static final long SIDE;
+
+    static {
+        var random = new java.util.SplittableRandom(SEED);
+        for (long[] keys: PIECE_KEYS) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong();
+            }
+        }
+        SIDE = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Returns the key for the specified piece standing on the specified square.
+     *
+     * @param piece  the piece; can be <code>null</code>
+     * @param square the square's index, i.e. <code>rank * 8 + file</code>
+     * @return the piece's key or <code>0</code> if <code>piece</code> is <code>null</code>
+     */
+    static long key(Piece piece, int square) {
+        return piece == null ? 0 : PIECE_KEYS[index(piece)][square];
+    }
+
+    /**
+     * Maps a piece to a number in the range [0, 11] that is unique to its type and color.
+     *
+     * @param piece the piece to map
+     * @return the index of the piece's keys
+     */
+    static int index(Piece piece) {
+        int type;
+        if (piece.getClass() == Pawn.class) {
+            type = 0;
+        } else if (piece.getClass() == Knight.class) {
+            type = 1;
+        } else if (piece.getClass() == Bishop.class) {
+            type = 2;
+        } else if (piece.getClass() == Rook.class) {
+            type = 3;
+        } else if (piece.getClass() == Queen.class) {
+            type = 4;
+        } else {
+            type = 5;
+        }
+        return type * 2 + (piece.getColor() == Color.WHITE ? 0 : 1);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,748 @@
+package chess.engine;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import chess.Board;
+import chess.Metrics;
+import chess.Move;
+import chess.PositionSnapshot;
+
+/**
+ * Runs analysis jobs on a fixed set of worker threads, in front of the search. A job is a
+ * position, a priority and a budget of depth, nodes or time. Interactive jobs, which somebody is
+ * waiting for, go to a queue shared by all the workers, and every worker looks there first. Bulk
+ * jobs are dealt out among the workers' own queues; a worker takes the oldest job of its own
+ * queue, and a worker whose queue is empty steals the newest job of another's, so the bulk load
+ * spreads over every worker however it was dealt.
+ * <br>
+ * When an interactive job arrives and no worker is free, a worker searching a bulk job is
+ * preempted: its search is stopped, the interactive job takes its place, and the bulk job goes
+ * back to the front of the worker's queue with the rest of its budget. The preempted job keeps
+ * the worker's transposition table, and the worker carries on with a spare one, so the job
+ * resumes from its hash table state and goes through the depths it had already searched at the
+ * cost of little more than the table lookups. To bound the memory, at most as many preempted jobs
+ * as there are workers keep a table; any others resume with the table of the worker that picks
+ * them up. An interactive job therefore waits for a free worker only while every worker is busy
+ * with other interactive jobs, however many bulk jobs are queued.
+ * <br>
+ * Cancelling a job's result stops its search at once if it is running, and a queued job is
+ * dropped when a worker reaches it.
+ * <br>
+ * The queue depths and waits of each priority can be read with {@link #getStats()}, and are also
+ * counted in {@link Metrics} while counting is on.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class AnalysisScheduler implements AutoCloseable {
+
+    /**
+     * How urgently a job is needed.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Priority {
+
+        /** Somebody is waiting for the result; the job preempts bulk jobs. */
+        INTERACTIVE,
+        /** The result is part of a batch; the job yields to interactive jobs. */
+        BULK
+
+    }
+
+    /**
+     * The result of a job.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Result {
+
+        private final Move bestMove;
+        private final Search.Info info;
+        private final long nodes;
+        private final long waitNanos;
+        private final long searchNanos;
+        private final int preemptions;
+
+        /**
+         * Creates a result.
+         *
+         * @param bestMove    the best move found
+         * @param info        the deepest iteration completed
+         * @param nodes       the nodes searched, over every run of the job
+         * @param waitNanos   the time from submission to the start of the first run
+         * @param searchNanos the time spent searching, over every run of the job
+         * @param preemptions the number of times the job was preempted
+         */
+        Result(Move bestMove, Search.Info info, long nodes, long waitNanos, long searchNanos,
+               int preemptions) {
+            this.bestMove = bestMove;
+            this.info = info;
+            this.nodes = nodes;
+            this.waitNanos = waitNanos;
+            this.searchNanos = searchNanos;
+            this.preemptions = preemptions;
+        }
+
+        /**
+         * Returns the best move found.
+         *
+         * @return the move, or <code>null</code> if the current player has no legal moves
+         */
+        public Move getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Returns the report of the deepest iteration the search completed, with its score and
+         * principal variation.
+         *
+         * @return the report, or <code>null</code> if the budget ran out before the first
+         *         iteration completed
+         */
+        public Search.Info getInfo() {
+            return info;
+        }
+
+        /**
+         * Returns the number of nodes searched, over every run of the job.
+         *
+         * @return the number of nodes, counted against the job's node budget
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the time the job waited for a worker before its first run.
+         *
+         * @return the wait in milliseconds
+         */
+        public double getWaitMillis() {
+            return waitNanos / 1e6;
+        }
+
+        /**
+         * Returns the time spent searching, over every run of the job.
+         *
+         * @return the time in milliseconds, counted against the job's time budget
+         */
+        public double getSearchMillis() {
+            return searchNanos / 1e6;
+        }
+
+        /**
+         * Returns the number of times the job was preempted by an interactive job.
+         *
+         * @return the number of preemptions; always <code>0</code> for an interactive job
+         */
+        public int getPreemptions() {
+            return preemptions;
+        }
+
+    }
+
+    /**
+     * The queue depths and waits of a scheduler at some point in time.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Stats {
+
+        private final int[] queued;
+        private final long[] started;
+        private final long[] completed;
+        private final long[] waitNanos;
+        private final long[] maxWaitNanos;
+        private final long preemptions;
+
+        /**
+         * Reads the counts of a scheduler.
+         *
+         * @param scheduler the scheduler
+         */
+        private Stats(AnalysisScheduler scheduler) {
+            int priorities = Priority.values().length;
+            queued = new int[priorities];
+            started = new long[priorities];
+            completed = new long[priorities];
+            waitNanos = new long[priorities];
+            maxWaitNanos = new long[priorities];
+            for (int p = 0; p < priorities; p++) {
+                queued[p] = scheduler.queued[p].get();
+                started[p] = scheduler.started[p].sum();
+                completed[p] = scheduler.completed[p].sum();
+                waitNanos[p] = scheduler.waitNanos[p].sum();
+                maxWaitNanos[p] = scheduler.maxWaitNanos[p].get();
+            }
+            preemptions = scheduler.preemptions.sum();
+        }
+
+        /**
+         * Returns the number of jobs of a priority waiting for a worker.
+         *
+         * @param priority the priority
+         * @return the number of jobs queued, including preempted bulk jobs
+         */
+        public int getQueueDepth(Priority priority) {
+            return queued[priority.ordinal()];
+        }
+
+        /**
+         * Returns the number of jobs of a priority that have started.
+         *
+         * @param priority the priority
+         * @return the number of jobs, each counted once however often it was preempted
+         */
+        public long getStarted(Priority priority) {
+            return started[priority.ordinal()];
+        }
+
+        /**
+         * Returns the number of jobs of a priority that have completed.
+         *
+         * @param priority the priority
+         * @return the number of jobs
+         */
+        public long getCompleted(Priority priority) {
+            return completed[priority.ordinal()];
+        }
+
+        /**
+         * Returns the average time the jobs of a priority waited for their first run.
+         *
+         * @param priority the priority
+         * @return the average wait in milliseconds, or <code>0</code> if no job has started
+         */
+        public double getAverageWaitMillis(Priority priority) {
+            int p = priority.ordinal();
+            return started[p] == 0 ? 0 : waitNanos[p] / 1e6 / started[p];
+        }
+
+        /**
+         * Returns the longest time a job of a priority waited for its first run.
+         *
+         * @param priority the priority
+         * @return the longest wait in milliseconds
+         */
+        public double getMaxWaitMillis(Priority priority) {
+            return maxWaitNanos[priority.ordinal()] / 1e6;
+        }
+
+        /**
+         * Returns the number of times a bulk job was preempted by an interactive one.
+         *
+         * @return the number of preemptions
+         */
+        public long getPreemptions() {
+            return preemptions;
+        }
+
+    }
+
+    /**
+     * A job and its progress over the runs it took so far.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Job {
+
+        private final PositionSnapshot position;
+        private final Priority priority;
+        private final Search.Limits budget;
+        private final long submitted;
+        private final CompletableFuture<Result> result;
+        private volatile boolean preempted;
+        private volatile Worker worker; // The worker running the job, if any
+        private boolean started;
+        private TranspositionTable table; // Kept from a preempted run, if any
+        private Move bestMove;
+        private Search.Info info;
+        private long nodes;
+        private long waitNanos;
+        private long searchNanos;
+        private int preemptions;
+
+        /**
+         * Creates a job.
+         *
+         * @param position the position to search
+         * @param priority the job's priority
+         * @param budget   the job's budget
+         */
+        Job(PositionSnapshot position, Priority priority, Search.Limits budget) {
+            this.position = position;
+            this.priority = priority;
+            this.budget = budget;
+            submitted = System.nanoTime();
+            result = new CompletableFuture<>();
+        }
+
+    }
+
+    /**
+     * A worker thread, its queue of bulk jobs and the job it is running.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Worker {
+
+        private final int index;
+        private final ConcurrentLinkedDeque<Job> bulkJobs;
+        private final Evaluator evaluator;
+        private TranspositionTable table;
+        private Job job;       // Guarded by this worker
+        private Search search; // Guarded by this worker
+        private Thread thread;
+
+        /**
+         * Creates a worker.
+         *
+         * @param index the worker's position in the scheduler's list
+         * @param table the worker's first transposition table
+         */
+        Worker(int index, TranspositionTable table) {
+            this.index = index;
+            bulkJobs = new ConcurrentLinkedDeque<>();
+            evaluator = new Evaluator();
+            this.table = table;
+        }
+
+    }
+
+    private final int megabytes;
+    private final List<Worker> workers;
+    private final java.util.Queue<Job> interactiveJobs;
+    private final java.util.Queue<TranspositionTable> spareTables;
+    private final Semaphore available; // One permit per queued job
+    private final AtomicInteger idleWorkers;
+    private final AtomicInteger pendingPreemptions;
+    private final AtomicInteger keptTables;
+    private final AtomicInteger nextWorker;
+    private final AtomicInteger[] queued;
+    private final LongAdder[] started;
+    private final LongAdder[] completed;
+    private final LongAdder[] waitNanos;
+    private final AtomicLong[] maxWaitNanos;
+    private final LongAdder preemptions;
+    private volatile boolean closed;
+
+    /**
+     * Creates a scheduler and starts its workers.
+     *
+     * @param threads   the number of worker threads
+     * @param megabytes the size of each transposition table; the scheduler keeps at most twice as
+     *                  many tables as workers
+     * @throws IllegalArgumentException if <code>threads</code> is not positive
+     */
+    public AnalysisScheduler(int threads, int megabytes) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        this.megabytes = megabytes;
+        interactiveJobs = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        spareTables = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        available = new Semaphore(0);
+        idleWorkers = new AtomicInteger();
+        pendingPreemptions = new AtomicInteger();
+        keptTables = new AtomicInteger();
+        nextWorker = new AtomicInteger();
+        int priorities = Priority.values().length;
+        queued = new AtomicInteger[priorities];
+        started = new LongAdder[priorities];
+        completed = new LongAdder[priorities];
+        waitNanos = new LongAdder[priorities];
+        maxWaitNanos = new AtomicLong[priorities];
+        for (int p = 0; p < priorities; p++) {
+            queued[p] = new AtomicInteger();
+            started[p] = new LongAdder();
+            completed[p] = new LongAdder();
+            waitNanos[p] = new LongAdder();
+            maxWaitNanos[p] = new AtomicLong();
+        }
+        preemptions = new LongAdder();
+        workers = new java.util.ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Worker(t, new TranspositionTable(megabytes)));
+        }
+        for (int t = 0; t < threads; t++) {
+            Worker worker = workers.get(t);
+            worker.thread = new Thread(() -> work(worker), "analysis-" + t);
+            worker.thread.setDaemon(true);
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Queues a position for analysis. Boards are not thread-safe, so a position being played is
+     * submitted as a {@link Board#snapshot()}.
+     *
+     * @param position the position to search
+     * @param priority the job's priority
+     * @param budget   the job's budget, counted over all its runs if it is preempted; the search
+     *                 stops at whichever of the depth, nodes and time runs out first
+     * @return the result, completed when the budget runs out or the search ends on its own;
+     *         cancelling it drops the job, or stops its search at once if it is running
+     * @throws IllegalArgumentException if the budget has no limit at all
+     * @throws IllegalStateException    if the scheduler is closed
+     */
+    public CompletableFuture<Result> submit(PositionSnapshot position, Priority priority,
+                                            Search.Limits budget) {
+        if (budget.getDepth() <= 0 && budget.getNodes() <= 0 && budget.getMillis() <= 0) {
+            throw new IllegalArgumentException("A job needs a depth, node or time budget");
+        }
+        if (closed) {
+            throw new IllegalStateException("The scheduler is closed");
+        }
+        var job = new Job(position, priority, budget);
+        job.result.whenComplete((result, failure) -> {
+            if (job.result.isCancelled()) {
+                stop(job);
+            }
+        });
+        if (priority == Priority.INTERACTIVE) {
+            interactiveJobs.add(job);
+        } else {
+            int index = Math.floorMod(nextWorker.getAndIncrement(), workers.size());
+            workers.get(index).bulkJobs.addLast(job);
+        }
+        enqueued(job);
+        if (priority == Priority.INTERACTIVE) {
+            preemptIfNeeded();
+        }
+        return job.result;
+    }
+
+    /**
+     * Returns the number of jobs of a priority waiting for a worker.
+     *
+     * @param priority the priority
+     * @return the number of jobs queued, including preempted bulk jobs
+     */
+    public int getQueueDepth(Priority priority) {
+        return queued[priority.ordinal()].get();
+    }
+
+    /**
+     * Reads the queue depths, waits and preemptions so far.
+     *
+     * @return the counts
+     */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    /**
+     * Stops the workers and cancels every job that has not completed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker: workers) {
+            synchronized (worker) {
+                if (worker.search != null) {
+                    worker.search.stop();
+                }
+            }
+            worker.thread.interrupt();
+        }
+        for (Job job; (job = interactiveJobs.poll()) != null; ) {
+            dequeued(job);
+            job.result.cancel(false);
+        }
+        for (Worker worker: workers) {
+            for (Job job; (job = worker.bulkJobs.poll()) != null; ) {
+                dequeued(job);
+                job.result.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Runs jobs until the scheduler is closed.
+     *
+     * @param worker the worker
+     */
+    private void work(Worker worker) {
+        try {
+            while (!closed) {
+                idleWorkers.incrementAndGet();
+                try {
+                    available.acquire();
+                } finally {
+                    idleWorkers.decrementAndGet();
+                }
+                Job job = take(worker);
+                if (job.result.isDone()) {
+                    dropTable(job);
+                    continue;
+                }
+                try {
+                    run(worker, job);
+                } catch (RuntimeException e) {
+                    job.result.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes the next job for a worker: the oldest interactive job, else the oldest job of the
+     * worker's own queue, else the newest job of another worker's queue. The caller holds a
+     * permit, so a job is queued somewhere.
+     *
+     * @param worker the worker
+     * @return the job
+     */
+    private Job take(Worker worker) {
+        while (true) {
+            Job job = interactiveJobs.poll();
+            if (job == null) {
+                job = worker.bulkJobs.pollFirst();
+            }
+            for (int i = 1; job == null && i < workers.size(); i++) {
+                job = workers.get((worker.index + i) % workers.size()).bulkJobs.pollLast();
+            }
+            if (job != null) {
+                dequeued(job);
+                return job;
+            }
+            // Another worker took the job this permit stood for before it was found
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Searches a job until it completes or is preempted, then completes or requeues it.
+     *
+     * @param worker the worker
+     * @param job    the job
+     */
+    private void run(Worker worker, Job job) {
+        if (!job.started) {
+            job.started = true;
+            job.waitNanos = System.nanoTime() - job.submitted;
+            int p = job.priority.ordinal();
+            started[p].increment();
+            waitNanos[p].add(job.waitNanos);
+            maxWaitNanos[p].accumulateAndGet(job.waitNanos, Math::max);
+            if (Metrics.ENABLED) {
+                (job.priority == Priority.INTERACTIVE ? Metrics.Timer.ANALYSIS_WAIT_INTERACTIVE
+                                                      : Metrics.Timer.ANALYSIS_WAIT_BULK)
+                        .record(job.submitted);
+            }
+        }
+        if (job.table != null) {
+            spareTables.add(worker.table);
+            worker.table = job.table;
+            job.table = null;
+            keptTables.decrementAndGet();
+        }
+        var search = new Search(worker.table, worker.evaluator);
+        synchronized (worker) {
+            worker.search = search;
+            worker.job = job;
+            job.worker = worker;
+        }
+
+        int previousDepth = job.info == null ? 0 : job.info.getDepth();
+        int[] depth = new int[1];
+        boolean preempted = false;
+        long start = System.nanoTime();
+        Move move;
+        try {
+            move = search.search(job.position.toBoard(), remaining(job), info -> {
+                if (info.getLine() == 1) {
+                    depth[0] = info.getDepth();
+                    if (job.info == null || info.getDepth() >= job.info.getDepth()) {
+                        job.info = info;
+                    }
+                }
+                // Catches a stop that came before the search started and cleared it
+                if (job.preempted || job.result.isDone() || closed) {
+                    search.stop();
+                }
+            });
+        } finally {
+            synchronized (worker) {
+                worker.search = null;
+                worker.job = null;
+                job.worker = null;
+                preempted = job.preempted;
+                job.preempted = false;
+            }
+            if (preempted) {
+                pendingPreemptions.decrementAndGet();
+            }
+        }
+        job.searchNanos += System.nanoTime() - start;
+        job.nodes += search.getNodes();
+        if (job.bestMove == null || depth[0] >= previousDepth) {
+            job.bestMove = move;
+        }
+
+        boolean cancelled = job.result.isCancelled();
+        if (closed) {
+            job.result.cancel(false);
+        } else if (preempted && !cancelled && search.isStopped() && !exhausted(job)) {
+            requeue(worker, job);
+        } else if (!cancelled) {
+            completed[job.priority.ordinal()].increment();
+            job.result.complete(new Result(job.bestMove, job.info, job.nodes, job.waitNanos,
+                                           job.searchNanos, job.preemptions));
+        }
+    }
+
+    /**
+     * Puts a preempted job back at the front of its worker's queue, with the worker's
+     * transposition table if not too many preempted jobs have one already.
+     *
+     * @param worker the worker that ran the job
+     * @param job    the job
+     */
+    private void requeue(Worker worker, Job job) {
+        job.preemptions++;
+        if (keptTables.incrementAndGet() <= workers.size()) {
+            job.table = worker.table;
+            TranspositionTable spare = spareTables.poll();
+            worker.table = spare != null ? spare : new TranspositionTable(megabytes);
+        } else {
+            keptTables.decrementAndGet();
+        }
+        worker.bulkJobs.addFirst(job);
+        enqueued(job);
+    }
+
+    /**
+     * Gives the transposition table a dropped job kept from a preempted run to the spares.
+     *
+     * @param job the job, cancelled
+     */
+    private void dropTable(Job job) {
+        if (job.table != null) {
+            spareTables.add(job.table);
+            job.table = null;
+            keptTables.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the search of a cancelled job if a worker is running it.
+     *
+     * @param job the job
+     */
+    private void stop(Job job) {
+        Worker worker = job.worker;
+        if (worker == null) {
+            return;
+        }
+        synchronized (worker) {
+            if (worker.job == job) {
+                worker.search.stop();
+            }
+        }
+    }
+
+    /**
+     * Stops a bulk job if more interactive jobs are waiting than there are free workers and
+     * preemptions on the way.
+     */
+    private void preemptIfNeeded() {
+        int free = idleWorkers.get() + pendingPreemptions.get();
+        if (queued[Priority.INTERACTIVE.ordinal()].get() <= free) {
+            return;
+        }
+        for (Worker worker: workers) {
+            synchronized (worker) {
+                Job job = worker.job;
+                if (job != null && job.priority == Priority.BULK && !job.preempted) {
+                    job.preempted = true;
+                    pendingPreemptions.incrementAndGet();
+                    worker.search.stop();
+                    preemptions.increment();
+                    if (Metrics.ENABLED) {
+                        Metrics.Counter.ANALYSIS_PREEMPTIONS.increment();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a job added to a queue and lets a worker take it.
+     *
+     * @param job the job
+     */
+    private void enqueued(Job job) {
+        queued[job.priority.ordinal()].incrementAndGet();
+        if (Metrics.ENABLED) {
+            gauge(job.priority).add(1);
+        }
+        available.release();
+    }
+
+    /**
+     * Counts a job taken from a queue.
+     *
+     * @param job the job
+     */
+    private void dequeued(Job job) {
+        queued[job.priority.ordinal()].decrementAndGet();
+        if (Metrics.ENABLED) {
+            gauge(job.priority).add(-1);
+        }
+    }
+
+    /**
+     * Returns the gauge of the queue depth of a priority.
+     *
+     * @param priority the priority
+     * @return the gauge
+     */
+    private static Metrics.Gauge gauge(Priority priority) {
+        return priority == Priority.INTERACTIVE ? Metrics.Gauge.ANALYSIS_QUEUED_INTERACTIVE
+                                                : Metrics.Gauge.ANALYSIS_QUEUED_BULK;
+    }
+
+    /**
+     * Returns what is left of a job's budget after its previous runs. The depth is not reduced:
+     * a resumed search starts over from the first iteration, which the job's transposition table
+     * makes cheap up to the depth it had reached.
+     *
+     * @param job the job
+     * @return the limits of the job's next run
+     */
+    private static Search.Limits remaining(Job job) {
+        Search.Limits budget = job.budget;
+        long nodes = budget.getNodes() > 0 ? Math.max(1, budget.getNodes() - job.nodes) : 0;
+        long millis = budget.getMillis() > 0
+                      ? Math.max(1, budget.getMillis() - job.searchNanos / 1_000_000) : 0;
+        return new Search.Limits(budget.getDepth(), nodes, millis);
+    }
+
+    /**
+     * Tells whether a job has used up its node or time budget.
+     *
+     * @param job the job
+     * @return <code>true</code> if the job should not run again
+     */
+    private static boolean exhausted(Job job) {
+        Search.Limits budget = job.budget;
+        return budget.getNodes() > 0 && job.nodes >= budget.getNodes()
+               || budget.getMillis() > 0 && job.searchNanos >= budget.getMillis() * 1_000_000;
+    }
+
+}
\ No newline at end of file
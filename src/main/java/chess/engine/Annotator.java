@@ -0,0 +1,438 @@
+package chess.engine;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import chess.Board;
+import chess.Move;
+import chess.Pgn;
+import chess.pieces.Color;
+
+/**
+ * Reviews recorded games: every position of a game is searched with a fixed budget, and the moves
+ * that lose a lot compared with the best move are marked as inaccuracies, mistakes or blunders.
+ * <br>
+ * Each game is cut into chunks of {@value #CHUNK_PLIES} consecutive positions, and the chunks of
+ * all the games submitted are shared out among worker threads, so one long game is reviewed by
+ * several threads at once and many games keep every thread busy. Each worker has its own
+ * {@link Search} and board, and searches the positions of a chunk from the last to the first, so
+ * its transposition table carries the refutations found later in the game back to the earlier
+ * positions, which is where they are needed.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Annotator implements AutoCloseable {
+
+    /**
+     * How bad a move was, by the score it lost compared with the best move.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Judgement {
+
+        /** The move lost less than 50 centipawns. */
+        GOOD(0, 0, ""),
+        /** The move lost at least 50 centipawns. */
+        INACCURACY(INACCURACY_LOSS, 6, "Inaccuracy"),
+        /** The move lost at least 100 centipawns. */
+        MISTAKE(MISTAKE_LOSS, 2, "Mistake"),
+        /** The move lost at least 300 centipawns. */
+        BLUNDER(BLUNDER_LOSS, 4, "Blunder");
+
+        private final int loss;
+        private final int nag;
+        private final String name;
+
+        /**
+         * Creates a judgement.
+         *
+         * @param loss the loss in centipawns from which a move gets the judgement
+         * @param nag  the numeric annotation glyph of the judgement
+         * @param name the judgement's name in annotations
+         */
+        Judgement(int loss, int nag, String name) {
+            this.loss = loss;
+            this.nag = nag;
+            this.name = name;
+        }
+
+        /**
+         * Returns the numeric annotation glyph of the judgement, such as <code>4</code> for
+         * <code>$4</code>, a blunder.
+         *
+         * @return the glyph, or <code>0</code> for a good move
+         */
+        public int getNag() {
+            return nag;
+        }
+
+        /**
+         * Returns the judgement's name in annotations.
+         *
+         * @return the name, such as "Blunder"; empty for a good move
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the judgement of a move that lost some score.
+         *
+         * @param loss the loss in centipawns
+         * @return the worst judgement whose loss is reached
+         */
+        static Judgement of(int loss) {
+            Judgement[] judgements = values();
+            for (int i = judgements.length - 1; i > 0; i--) {
+                if (loss >= judgements[i].loss) {
+                    return judgements[i];
+                }
+            }
+            return GOOD;
+        }
+
+    }
+
+    /**
+     * The review of one move of a game.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Review {
+
+        private final Move move;
+        private final Move bestMove;
+        private final int score;
+        private final int bestScore;
+        private final int loss;
+        private final Judgement judgement;
+
+        /**
+         * Creates a review.
+         *
+         * @param move      the move played
+         * @param bestMove  the move the search preferred
+         * @param score     the score after the move played, from white's point of view
+         * @param bestScore the score of the position before the move, from white's point of view
+         * @param loss      the score lost by the move, from the mover's point of view
+         */
+        Review(Move move, Move bestMove, int score, int bestScore, int loss) {
+            this.move = move;
+            this.bestMove = bestMove;
+            this.score = score;
+            this.bestScore = bestScore;
+            this.loss = loss;
+            judgement = Judgement.of(loss);
+        }
+
+        /**
+         * Returns the move played.
+         *
+         * @return the move
+         */
+        public Move getMove() {
+            return move;
+        }
+
+        /**
+         * Returns the move the search preferred in the position before the move played.
+         *
+         * @return the best move
+         */
+        public Move getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Returns the score of the position after the move played.
+         *
+         * @return the score in centipawns, from white's point of view
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the score of the position before the move, which the best move keeps.
+         *
+         * @return the score in centipawns, from white's point of view
+         */
+        public int getBestScore() {
+            return bestScore;
+        }
+
+        /**
+         * Returns the score the move lost compared with the best move. Scores are capped at
+         * 1000 centipawns first, so a move that only lets a won game
+         * stay won loses nothing.
+         *
+         * @return the loss in centipawns, never negative
+         */
+        public int getLoss() {
+            return loss;
+        }
+
+        /**
+         * Returns how bad the move was.
+         *
+         * @return the judgement
+         */
+        public Judgement getJudgement() {
+            return judgement;
+        }
+
+    }
+
+    /**
+     * The positions of a game searched by one worker.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Chunk {
+
+        private final Job job;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a chunk.
+         *
+         * @param job  the game's review
+         * @param from the first position, by the number of moves played before it
+         * @param to   the position after the last
+         */
+        Chunk(Job job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+    }
+
+    /**
+     * The review of a game in progress.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Job {
+
+        private final Pgn.Game game;
+        private final int[] scores;
+        private final Move[] bestMoves;
+        private final java.util.concurrent.atomic.AtomicInteger remainingChunks;
+        private final CompletableFuture<List<Review>> result;
+
+        /**
+         * Creates the review of a game.
+         *
+         * @param game   the game
+         * @param chunks the number of chunks the game is cut into
+         */
+        Job(Pgn.Game game, int chunks) {
+            this.game = game;
+            scores = new int[game.getMoves().size() + 1];
+            bestMoves = new Move[scores.length];
+            remainingChunks = new java.util.concurrent.atomic.AtomicInteger(chunks);
+            result = new CompletableFuture<>();
+        }
+
+    }
+
+    /** Positions searched one after another by the same worker. */
+    public static final int CHUNK_PLIES = 16;
+
+    private static final int INACCURACY_LOSS = 50;
+    private static final int MISTAKE_LOSS    = 100;
+    private static final int BLUNDER_LOSS    = 300;
+    private static final int SCORE_LIMIT     = 1000; // Centipawns; beyond this a game is won
+    private static final Chunk STOP          = new Chunk(null, 0, 0);
+
+    private final Search.Limits limits;
+    private final BlockingQueue<Chunk> chunks;
+    private final List<Thread> workers;
+
+    /**
+     * Creates an annotator and starts its workers.
+     *
+     * @param threads   the number of worker threads
+     * @param limits    the budget of each position's search
+     * @param megabytes the size of each worker's transposition table
+     */
+    public Annotator(int threads, Search.Limits limits, int megabytes) {
+        this.limits = limits;
+        chunks = new java.util.concurrent.LinkedBlockingQueue<>();
+        workers = new java.util.ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            var worker = new Thread(() -> work(new Search(new TranspositionTable(megabytes),
+                                                          new Evaluator())), "annotator-" + t);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Starts reviewing a game. Games are reviewed in the order they are submitted, but the
+     * positions of a game are searched by all the workers that are free.
+     *
+     * @param game the game
+     * @return the review of every move, in the order they were played; completed exceptionally
+     *         if the game's starting position is invalid
+     */
+    public CompletableFuture<List<Review>> review(Pgn.Game game) {
+        int positions = game.getMoves().size() + 1;
+        int chunkCount = (positions + CHUNK_PLIES - 1) / CHUNK_PLIES;
+        var job = new Job(game, chunkCount);
+        for (int from = 0; from < positions; from += CHUNK_PLIES) {
+            chunks.add(new Chunk(job, from, Math.min(from + CHUNK_PLIES, positions)));
+        }
+        return job.result;
+    }
+
+    /**
+     * Writes a reviewed game in Portable Game Notation. Every move is followed by the score after
+     * it; inaccuracies, mistakes and blunders also get their glyph and the best move.
+     *
+     * @param game    the game
+     * @param reviews the review of every move
+     * @return the annotated game's text
+     */
+    public static String toPgn(Pgn.Game game, List<Review> reviews) {
+        var board = new Board(game.getStartFen());
+        var annotations = new java.util.ArrayList<String>();
+        for (Review review: reviews) {
+            String annotation = "{" + formatScore(review.getScore()) + "}";
+            if (review.getJudgement() != Judgement.GOOD) {
+                annotation = "$" + review.getJudgement().getNag() + " {"
+                             + formatScore(review.getScore()) + " "
+                             + review.getJudgement().getName() + ". Best was "
+                             + Pgn.toSan(board, review.getBestMove()) + " ("
+                             + formatScore(review.getBestScore()) + ").}";
+            }
+            annotations.add(annotation);
+            board.makeMove(review.getMove());
+        }
+        var tags = new java.util.LinkedHashMap<>(game.getTags());
+        tags.put("Annotator", "Processing 3 Chess");
+        return Pgn.format(new Pgn.Game(tags, game.getStartFen(), game.getMoves(),
+                                       game.getResult()), annotations);
+    }
+
+    /**
+     * Stops the workers. Reviews in progress are left incomplete.
+     */
+    @Override
+    public void close() {
+        for (int t = 0; t < workers.size(); t++) {
+            chunks.add(STOP);
+        }
+        for (Thread worker: workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Searches the chunks of the queue until the annotator is closed.
+     *
+     * @param search the worker's search, kept for all its chunks
+     */
+    private void work(Search search) {
+        try {
+            for (Chunk chunk; (chunk = chunks.take()) != STOP; ) {
+                Job job = chunk.job;
+                if (job.result.isDone()) {
+                    continue;
+                }
+                try {
+                    searchChunk(search, chunk);
+                } catch (RuntimeException e) {
+                    job.result.completeExceptionally(e);
+                    continue;
+                }
+                if (job.remainingChunks.decrementAndGet() == 0) {
+                    job.result.complete(reviews(job));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Searches the positions of a chunk, from the last to the first.
+     *
+     * @param search the worker's search
+     * @param chunk  the chunk
+     */
+    private void searchChunk(Search search, Chunk chunk) {
+        List<Move> moves = chunk.job.game.getMoves();
+        var board = new Board(chunk.job.game.getStartFen());
+        for (int ply = 0; ply < chunk.to - 1; ply++) {
+            board.makeMove(moves.get(ply));
+        }
+        for (int ply = chunk.to - 1; ply >= chunk.from; ply--) {
+            int[] score = new int[1];
+            Move best = search.search(board, limits, info -> score[0] = info.getScore());
+            if (best == null) {
+                score[0] = board.isInCheck() ? -Search.MATE_SCORE : 0;
+            }
+            chunk.job.scores[ply] = score[0];
+            chunk.job.bestMoves[ply] = best;
+            if (ply > 0) {
+                board.undoMove();
+            }
+        }
+    }
+
+    /**
+     * Turns the scores of a game's positions into the reviews of its moves.
+     *
+     * @param job the game's review, with every position searched
+     * @return the review of every move
+     */
+    private static List<Review> reviews(Job job) {
+        List<Move> moves = job.game.getMoves();
+        var board = new Board(job.game.getStartFen());
+        var reviews = new java.util.ArrayList<Review>(moves.size());
+        for (int ply = 0; ply < moves.size(); ply++) {
+            int sign = board.getTurn() == Color.WHITE ? 1 : -1;
+            int before = job.scores[ply], after = -job.scores[ply + 1];
+            int loss = moves.get(ply).equals(job.bestMoves[ply]) ? 0
+                       : Math.max(0, clamp(before) - clamp(after));
+            reviews.add(new Review(moves.get(ply), job.bestMoves[ply], sign * after,
+                                   sign * before, loss));
+            board.makeMove(moves.get(ply));
+        }
+        return reviews;
+    }
+
+    /**
+     * Caps a score at {@value #SCORE_LIMIT} centipawns either way.
+     *
+     * @param score the score
+     * @return the capped score
+     */
+    private static int clamp(int score) {
+        return Math.max(-SCORE_LIMIT, Math.min(SCORE_LIMIT, score));
+    }
+
+    /**
+     * Formats a score from white's point of view, such as "+0.35" or "#-3".
+     *
+     * @param score the score in centipawns
+     * @return the score in pawns, or the moves to mate; just "#" once mate is on the board
+     */
+    private static String formatScore(int score) {
+        if (Math.abs(score) > Search.MATE_SCORE - Search.MAX_DEPTH * 2) {
+            int moves = (Search.MATE_SCORE - Math.abs(score) + 1) / 2;
+            return moves == 0 ? "#" : "#" + (score > 0 ? moves : -moves);
+        }
+        return String.format("%+.2f", score / 100.0);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,282 @@
+package chess.engine;
+
+import chess.Board;
+import chess.pieces.Color;
+import chess.pieces.Piece;
+import chess.pieces.Bishop;
+import chess.pieces.Knight;
+import chess.pieces.Queen;
+import chess.pieces.Pawn;
+import chess.pieces.King;
+import chess.pieces.Rook;
+
+/**
+ * Handcrafted static evaluation of a board: material, a bonus for centralized pieces and
+ * advanced pawns, and pawn structure looked up in a {@link PawnTable}.
+ * <br>
+ * Apart from pawn structure, the evaluation is a weighted sum of features: for every term, the
+ * number of times white's pieces earn it minus the number of times black's pieces do. The
+ * weights default to handpicked values and can be replaced by tuned ones, such as those found
+ * by {@link tuning.Tuner}; {@link #features(Board, int[])} exposes the features for tuning.
+ * <br>
+ * An evaluator is not thread-safe; every searcher is expected to own one.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Evaluator {
+
+    /** Number of weights, and of features. */
+    public static final int WEIGHTS = 30;
+
+    private static final int PAWN_VALUE   = 100;
+    private static final int KNIGHT_VALUE = 320;
+    private static final int BISHOP_VALUE = 330;
+    private static final int ROOK_VALUE   = 500;
+    private static final int QUEEN_VALUE  = 900;
+    private static final int PAWN_ADVANCE_BONUS = 5;
+    private static final int[] CENTER_BONUS = {0, 4, 8, 12, 12, 8, 4, 0};
+    private static final int[] PAWN_FILE_BONUS = {0, 2, 4, 6, 6, 4, 2, 0};
+
+    // Offsets of each term in the weight vector
+    private static final int MATERIAL     = 0; // Pawn, knight, bishop, rook, queen
+    private static final int PAWN_ADVANCE = 5;
+    private static final int CENTER_RANK  = 6; // By rank counted from the piece's own side
+    private static final int CENTER_FILE  = 14;
+    private static final int PAWN_FILE    = 22;
+
+    private static final String[] NAMES = new String[WEIGHTS];
+    private static final int[] DEFAULT_WEIGHTS = new int[WEIGHTS];
+
+    static {
+        String[] pieces = {"pawn", "knight", "bishop", "rook", "queen"};
+        int[] values = {PAWN_VALUE, KNIGHT_VALUE, BISHOP_VALUE, ROOK_VALUE, QUEEN_VALUE};
+        for (int i = 0; i < pieces.length; i++) {
+            NAMES[MATERIAL + i] = pieces[i];
+            DEFAULT_WEIGHTS[MATERIAL + i] = values[i];
+        }
+        NAMES[PAWN_ADVANCE] = "pawnAdvance";
+        DEFAULT_WEIGHTS[PAWN_ADVANCE] = PAWN_ADVANCE_BONUS;
+        for (int i = 0; i < 8; i++) {
+            NAMES[CENTER_RANK + i] = "centerRank" + i;
+            DEFAULT_WEIGHTS[CENTER_RANK + i] = CENTER_BONUS[i];
+            NAMES[CENTER_FILE + i] = "centerFile" + i;
+            DEFAULT_WEIGHTS[CENTER_FILE + i] = CENTER_BONUS[i];
+            NAMES[PAWN_FILE + i] = "pawnFile" + i;
+            DEFAULT_WEIGHTS[PAWN_FILE + i] = PAWN_FILE_BONUS[i];
+        }
+    }
+
+    private final PawnTable pawnTable;
+    private final int[] weights;
+
+    /**
+     * Creates an evaluator with a pawn table of the default size.
+     */
+    public Evaluator() {
+        this(new PawnTable());
+    }
+
+    /**
+     * Creates an evaluator that looks up pawn structure in the specified table.
+     *
+     * @param pawnTable the table to use
+     */
+    public Evaluator(PawnTable pawnTable) {
+        this(pawnTable, DEFAULT_WEIGHTS);
+    }
+
+    /**
+     * Creates an evaluator with the specified weights that looks up pawn structure in the
+     * specified table.
+     *
+     * @param pawnTable the table to use
+     * @param weights   the weight of every feature, in centipawns; copied
+     * @throws IllegalArgumentException if there are not exactly {@value #WEIGHTS} weights
+     */
+    public Evaluator(PawnTable pawnTable, int[] weights) {
+        if (weights.length != WEIGHTS) {
+            throw new IllegalArgumentException("Expected " + WEIGHTS + " weights: "
+                                               + weights.length);
+        }
+        this.pawnTable = pawnTable;
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Returns the handpicked weights used when none are specified.
+     *
+     * @return a copy of the default weights
+     */
+    public static int[] getDefaultWeights() {
+        return DEFAULT_WEIGHTS.clone();
+    }
+
+    /**
+     * Returns the name of a weight, such as "knight" or "centerRank3".
+     *
+     * @param index the index of the weight
+     * @return the name
+     */
+    public static String getWeightName(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * Returns this evaluator's weights.
+     *
+     * @return a copy of the weights
+     */
+    public int[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Returns this evaluator's pawn table.
+     *
+     * @return the pawn table
+     */
+    public PawnTable getPawnTable() {
+        return pawnTable;
+    }
+
+    /**
+     * Evaluates the specified board.
+     *
+     * @param board the board to evaluate
+     * @return the score in centipawns from the current player's point of view
+     */
+    public int evaluate(Board board) {
+        int score = pawnTable.probe(board).getScore();
+        for (Piece piece: board.getPieces(Color.WHITE)) {
+            score += weightedBonus(piece);
+        }
+        for (Piece piece: board.getPieces(Color.BLACK)) {
+            score -= weightedBonus(piece);
+        }
+        return board.getTurn() == Color.WHITE ? score : -score;
+    }
+
+    /**
+     * Computes the features of a board. With them, the evaluation from white's point of view is
+     * the pawn structure score plus the sum of every feature times its weight.
+     *
+     * @param board    the board
+     * @param features receives, for every weight, how many times white earns it minus how many
+     *                 times black does; at least {@value #WEIGHTS} long
+     */
+    public static void features(Board board, int[] features) {
+        java.util.Arrays.fill(features, 0, WEIGHTS, 0);
+        for (Piece piece: board.getPieces(Color.WHITE)) {
+            addFeatures(piece, features, 1);
+        }
+        for (Piece piece: board.getPieces(Color.BLACK)) {
+            addFeatures(piece, features, -1);
+        }
+    }
+
+    /**
+     * Returns the material value of a piece. Kings are worth nothing since they are never
+     * captured.
+     *
+     * @param piece the piece
+     * @return the value in centipawns
+     */
+    public static int value(Piece piece) {
+        return value(piece.getClass());
+    }
+
+    /**
+     * Returns the material value of a type of piece.
+     *
+     * @param type the type of piece
+     * @return the value in centipawns
+     */
+    public static int value(Class<? extends Piece> type) {
+        if (type == Pawn.class) {
+            return PAWN_VALUE;
+        } else if (type == Knight.class) {
+            return KNIGHT_VALUE;
+        } else if (type == Bishop.class) {
+            return BISHOP_VALUE;
+        } else if (type == Rook.class) {
+            return ROOK_VALUE;
+        } else if (type == Queen.class) {
+            return QUEEN_VALUE;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a piece's material value plus the bonus for its position, using this evaluator's
+     * weights: pawns are rewarded for advancing and by file, kings are left alone and every other
+     * piece is rewarded for standing near the center, by its rank counted from its own side and
+     * by its file, so that mirrored positions get opposite scores.
+     *
+     * @param piece the piece
+     * @return the value and bonus in centipawns
+     */
+    private int weightedBonus(Piece piece) {
+        int rank = piece.getPosition().getRank(), file = piece.getPosition().getFile();
+        Class<? extends Piece> type = piece.getClass();
+        if (type == Pawn.class) {
+            int advance = piece.getColor() == Color.WHITE ? 6 - rank : rank - 1;
+            return weights[MATERIAL] + advance * weights[PAWN_ADVANCE] + weights[PAWN_FILE + file];
+        } else if (type == King.class) {
+            return 0;
+        }
+        return weights[MATERIAL + materialIndex(type)]
+               + weights[CENTER_RANK + relativeRank(piece)] + weights[CENTER_FILE + file];
+    }
+
+    /**
+     * Adds the features a piece earns, as computed by {@link #weightedBonus(Piece)}.
+     *
+     * @param piece    the piece
+     * @param features the features to add to
+     * @param sign     <code>1</code> for white's pieces and <code>-1</code> for black's
+     */
+    private static void addFeatures(Piece piece, int[] features, int sign) {
+        int rank = piece.getPosition().getRank(), file = piece.getPosition().getFile();
+        Class<? extends Piece> type = piece.getClass();
+        if (type == Pawn.class) {
+            int advance = piece.getColor() == Color.WHITE ? 6 - rank : rank - 1;
+            features[MATERIAL] += sign;
+            features[PAWN_ADVANCE] += sign * advance;
+            features[PAWN_FILE + file] += sign;
+        } else if (type != King.class) {
+            features[MATERIAL + materialIndex(type)] += sign;
+            features[CENTER_RANK + relativeRank(piece)] += sign;
+            features[CENTER_FILE + file] += sign;
+        }
+    }
+
+    /**
+     * Returns a piece's rank counted from its own side of the board.
+     *
+     * @param piece the piece
+     * @return <code>0</code> on the piece's first rank up to <code>7</code> on its last
+     */
+    private static int relativeRank(Piece piece) {
+        int rank = piece.getPosition().getRank();
+        return piece.getColor() == Color.WHITE ? 7 - rank : rank;
+    }
+
+    /**
+     * Returns the index of a type of piece among the material weights.
+     *
+     * @param type a type of piece other than the king
+     * @return <code>0</code> for pawns up to <code>4</code> for queens
+     */
+    private static int materialIndex(Class<? extends Piece> type) {
+        if (type == Pawn.class) {
+            return 0;
+        } else if (type == Knight.class) {
+            return 1;
+        } else if (type == Bishop.class) {
+            return 2;
+        }
+        return type == Rook.class ? 3 : 4;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,488 @@
+package chess.engine;
+
+import java.util.List;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Solves "mate in N" problems with proof-number search. The player to move is the attacker, who
+ * needs only one good move at each turn, while the defender must be mated after every one of the
+ * defender's replies. Each node of the search tree counts how many leaves would still have to be
+ * shown to be mates to prove it (its proof number) and how many to show that it is not (its
+ * disproof number). Every step expands the most proving leaf, the one that lowers both counts of the root
+ * the most, and updates the counts on the path back up. A new node starts with its number of
+ * legal moves as one of its counts, so checks, which leave the defender few replies, are
+ * explored first. Mates are only sought up to the given number of moves, and they are tried one
+ * move longer at a time, so the mate found is a shortest one.
+ * <br>
+ * The tree lives in a fixed arena of parallel primitive arrays, {@value #NODE_BYTES} bytes per
+ * node, with freed nodes kept in a list for reuse. As soon as a node is solved, the nodes below it
+ * that no longer matter are freed: everything below a node that is not a mate, and the other
+ * moves of an attacker's node once one of them mates. What is left of a solved node is its proof,
+ * and the proofs are freed too when the arena runs out, at the cost of a shorter line in the
+ * result.
+ * <br>
+ * A solver is meant for one thread at a time; a batch of problems is solved in parallel with one
+ * solver per thread.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class MateSolver {
+
+    /**
+     * The outcome of solving a problem.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Status {
+        /** A forced mate was found. */
+        MATE,
+        /** There is no forced mate within the number of moves given. */
+        NO_MATE,
+        /** The search ran out of nodes or memory first. */
+        UNKNOWN
+    }
+
+    /**
+     * The solution of a problem, with the effort it took.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Result {
+
+        private final Status status;
+        private final int mateIn;
+        private final List<Move> line;
+        private final long nodes;
+        private final long millis;
+
+        /**
+         * Creates a result.
+         *
+         * @param status the outcome
+         * @param mateIn the number of the attacker's moves to mate, <code>0</code> if no mate was
+         *               found
+         * @param line   the main line of the mate, with the defender's longest resistance
+         * @param nodes  the number of positions created
+         * @param millis the time spent, in milliseconds
+         */
+        public Result(Status status, int mateIn, List<Move> line, long nodes, long millis) {
+            this.status = status;
+            this.mateIn = mateIn;
+            this.line = line;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+
+        /**
+         * Returns the outcome.
+         *
+         * @return the status
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the length of the mate found.
+         *
+         * @return the number of the attacker's moves, or <code>0</code> if no mate was found
+         */
+        public int getMateIn() {
+            return mateIn;
+        }
+
+        /**
+         * Returns the main line of the mate. It can end before the mate if the solver had to free
+         * part of the proof.
+         *
+         * @return the moves, starting with the attacker's first move; empty if no mate was found
+         */
+        public List<Move> getLine() {
+            return line;
+        }
+
+        /**
+         * Returns the number of positions created, over all the mate lengths tried.
+         *
+         * @return the node count
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the time spent.
+         *
+         * @return the time in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Returns a summary such as "mate in 2: d1h5 g7g6 h5g6 (1520 nodes, 12 ms)".
+         *
+         * @return the outcome, the line and the effort
+         */
+        @Override
+        public String toString() {
+            var text = new StringBuilder();
+            text.append(status == Status.MATE ? "mate in " + mateIn + ":"
+                        : status == Status.NO_MATE ? "no mate" : "unknown");
+            for (Move move: line) {
+                text.append(' ').append(move);
+            }
+            return text.append(" (").append(nodes).append(" nodes, ").append(millis)
+                       .append(" ms)").toString();
+        }
+
+    }
+
+    /** Size of the node arena, in megabytes, used when none is specified. */
+    public static final int DEFAULT_SIZE_MB = 16;
+    /** Memory taken by each node of the tree, in bytes. */
+    public static final int NODE_BYTES = 18;
+
+    private static final int NONE     = -1;
+    private static final int INFINITE = 1 << 30;
+
+    private final int capacity;
+    private final int[] firstChildren;
+    private final int[] siblings; // Also links the free nodes
+    private final short[] moves;
+    private final int[] proofs;
+    private final int[] disproofs;
+    private int freeList;
+    private int top;
+    private long nodes;
+    private int[] path;
+
+    /**
+     * Creates a solver with an arena of {@value #DEFAULT_SIZE_MB} megabytes.
+     */
+    public MateSolver() {
+        this(DEFAULT_SIZE_MB);
+    }
+
+    /**
+     * Creates a solver that takes up at most the specified amount of memory for its tree.
+     *
+     * @param megabytes the memory budget for the tree, at least <code>1</code>
+     */
+    public MateSolver(int megabytes) {
+        capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                                  Math.max(1, megabytes) * (1L << 20) / NODE_BYTES);
+        firstChildren = new int[capacity];
+        siblings = new int[capacity];
+        moves = new short[capacity];
+        proofs = new int[capacity];
+        disproofs = new int[capacity];
+        path = new int[64];
+    }
+
+    /**
+     * Looks for the shortest forced mate for the current player in at most the specified number
+     * of moves.
+     *
+     * @param board     the position; restored to its original state on return
+     * @param maxMoves  the largest number of the attacker's moves to try
+     * @param nodeLimit the largest number of positions to create, or <code>0</code> for no limit
+     * @return the solution
+     */
+    public Result solve(Board board, int maxMoves, long nodeLimit) {
+        long start = System.nanoTime();
+        long limit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+        nodes = 0;
+        Status status = Status.NO_MATE;
+        List<Move> line = List.of();
+        int mateIn = 0;
+        for (int moves = 1; moves <= maxMoves && status == Status.NO_MATE; moves++) {
+            status = search(board, moves * 2 - 1, limit);
+            if (status == Status.MATE) {
+                mateIn = moves;
+                line = mainLine(0, 0);
+            }
+        }
+        return new Result(status, mateIn, line, nodes, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Returns the number of nodes the arena can hold.
+     *
+     * @return the node capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Runs the proof-number search for mates of a fixed length.
+     *
+     * @param board    the position
+     * @param maxPlies the number of plies to the mate, odd
+     * @param limit    the largest number of positions to create in total
+     * @return {@link Status#MATE}, {@link Status#NO_MATE} or, if the limit was reached or the
+     *         arena is full of unsolved nodes, {@link Status#UNKNOWN}
+     */
+    private Status search(Board board, int maxPlies, long limit) {
+        freeList = NONE;
+        top = 0;
+        int root = allocate();
+        List<Move> legalMoves = board.getLegalMoves();
+        if (legalMoves.isEmpty()) {
+            return Status.NO_MATE;
+        }
+        proofs[root] = 1;
+        disproofs[root] = legalMoves.size();
+        while (proofs[root] != 0 && disproofs[root] != 0) {
+            if (nodes >= limit) {
+                return Status.UNKNOWN;
+            }
+            int depth = 0, node = root;
+            path[0] = root;
+            while (firstChildren[node] != NONE) {
+                node = select(node, depth);
+                board.makeMove(Move.unpack(moves[node]));
+                if (++depth == path.length) {
+                    path = java.util.Arrays.copyOf(path, depth * 2);
+                }
+                path[depth] = node;
+            }
+            boolean expanded = expand(board, node, depth, maxPlies);
+            for (int i = depth; i >= 0; i--) {
+                update(path[i], i);
+                if (i > 0) {
+                    board.undoMove();
+                }
+            }
+            if (!expanded) {
+                return Status.UNKNOWN;
+            }
+        }
+        return proofs[root] == 0 ? Status.MATE : Status.NO_MATE;
+    }
+
+    /**
+     * Chooses the child to walk down to: the attacker's move that is closest to a proof, or the
+     * defender's reply that is closest to a disproof.
+     *
+     * @param node  the parent
+     * @param depth the parent's distance from the root; even for the attacker's turns
+     * @return the child
+     */
+    private int select(int node, int depth) {
+        int[] numbers = depth % 2 == 0 ? proofs : disproofs;
+        int best = firstChildren[node];
+        for (int child = siblings[best]; child != NONE; child = siblings[child]) {
+            if (numbers[child] < numbers[best]) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gives a leaf one child per legal move and sets the children's proof and disproof numbers.
+     * Children that end the game, or that are too deep for a mate, are solved at once.
+     *
+     * @param board    the leaf's position
+     * @param node     the leaf
+     * @param depth    the leaf's distance from the root
+     * @param maxPlies the number of plies to the mate
+     * @return <code>false</code> if the arena ran out even after freeing every proof
+     */
+    private boolean expand(Board board, int node, int depth, int maxPlies) {
+        boolean attacker = depth % 2 == 1; // The player to move in the children
+        int last = NONE;
+        for (Move move: board.getLegalMoves()) {
+            int child = allocate();
+            if (child == NONE) {
+                collectProofs(path[0]);
+                child = allocate();
+                if (child == NONE) {
+                    free(firstChildren[node]);
+                    firstChildren[node] = NONE;
+                    return false;
+                }
+            }
+            nodes++;
+            moves[child] = (short) move.pack();
+            board.makeMove(move);
+            List<Move> replies = board.getLegalMoves();
+            if (replies.isEmpty()) {
+                boolean mated = !attacker && board.isInCheck();
+                proofs[child] = mated ? 0 : INFINITE;
+                disproofs[child] = mated ? INFINITE : 0;
+            } else if (depth + 1 >= maxPlies) {
+                proofs[child] = INFINITE;
+                disproofs[child] = 0;
+            } else {
+                proofs[child] = attacker ? 1 : replies.size();
+                disproofs[child] = attacker ? replies.size() : 1;
+            }
+            board.undoMove();
+            if (last == NONE) {
+                firstChildren[node] = child;
+            } else {
+                siblings[last] = child;
+            }
+            last = child;
+        }
+        return true;
+    }
+
+    /**
+     * Recomputes a node's proof and disproof numbers from its children, and frees what is no
+     * longer needed below it once it is solved.
+     *
+     * @param node  the node
+     * @param depth the node's distance from the root; even for the attacker's turns
+     */
+    private void update(int node, int depth) {
+        if (firstChildren[node] == NONE) {
+            return;
+        }
+        boolean attacker = depth % 2 == 0;
+        int smallest = INFINITE;
+        long sum = 0;
+        for (int child = firstChildren[node]; child != NONE; child = siblings[child]) {
+            smallest = Math.min(smallest, attacker ? proofs[child] : disproofs[child]);
+            sum += attacker ? disproofs[child] : proofs[child];
+        }
+        int total = (int) Math.min(INFINITE, sum);
+        proofs[node] = attacker ? smallest : total;
+        disproofs[node] = attacker ? total : smallest;
+        if (disproofs[node] == 0) {
+            free(firstChildren[node]);
+            firstChildren[node] = NONE;
+        } else if (proofs[node] == 0 && attacker) {
+            // Keep only the mating move
+            int mate = firstChildren[node];
+            while (proofs[mate] != 0) {
+                mate = siblings[mate];
+            }
+            for (int child = firstChildren[node]; child != NONE; ) {
+                int next = siblings[child];
+                if (child != mate) {
+                    siblings[child] = NONE;
+                    free(child);
+                }
+                child = next;
+            }
+            firstChildren[node] = mate;
+            siblings[mate] = NONE;
+        }
+    }
+
+    /**
+     * Frees the proofs below every solved node, keeping the nodes' proof and disproof numbers.
+     *
+     * @param root the root of the tree
+     */
+    private void collectProofs(int root) {
+        var pending = new java.util.ArrayDeque<Integer>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            int node = pending.pop();
+            if (firstChildren[node] == NONE) {
+                continue;
+            }
+            if (proofs[node] == 0) {
+                free(firstChildren[node]);
+                firstChildren[node] = NONE;
+                continue;
+            }
+            for (int child = firstChildren[node]; child != NONE; child = siblings[child]) {
+                pending.push(child);
+            }
+        }
+    }
+
+    /**
+     * Takes a node from the free list, or from the unused part of the arena.
+     *
+     * @return the node, with no children, or {@link #NONE} if the arena is full
+     */
+    private int allocate() {
+        int node;
+        if (freeList != NONE) {
+            node = freeList;
+            freeList = siblings[node];
+        } else if (top < capacity) {
+            node = top++;
+        } else {
+            return NONE;
+        }
+        firstChildren[node] = NONE;
+        siblings[node] = NONE;
+        return node;
+    }
+
+    /**
+     * Returns a node, its siblings after it and all their descendants to the free list.
+     *
+     * @param first the first node to free, or {@link #NONE}
+     */
+    private void free(int first) {
+        var pending = new java.util.ArrayDeque<Integer>();
+        if (first != NONE) {
+            pending.push(first);
+        }
+        while (!pending.isEmpty()) {
+            int node = pending.pop();
+            if (siblings[node] != NONE) {
+                pending.push(siblings[node]);
+            }
+            if (firstChildren[node] != NONE) {
+                pending.push(firstChildren[node]);
+            }
+            siblings[node] = freeList;
+            freeList = node;
+        }
+    }
+
+    /**
+     * Follows the proof from a node: the mating move at the attacker's turns and the reply that
+     * resists longest at the defender's.
+     *
+     * @param node  the node
+     * @param depth the node's distance from the root
+     * @return the moves from the node
+     */
+    private List<Move> mainLine(int node, int depth) {
+        var line = new java.util.ArrayList<Move>();
+        while (firstChildren[node] != NONE) {
+            int next = firstChildren[node];
+            if (depth % 2 == 1) {
+                for (int child = siblings[next]; child != NONE; child = siblings[child]) {
+                    if (height(child) > height(next)) {
+                        next = child;
+                    }
+                }
+            }
+            line.add(Move.unpack(moves[next]));
+            node = next;
+            depth++;
+        }
+        return line;
+    }
+
+    /**
+     * Measures the longest path below a node.
+     *
+     * @param node the node
+     * @return the number of plies, <code>1</code> for a node without children
+     */
+    private int height(int node) {
+        int height = 0;
+        for (int child = firstChildren[node]; child != NONE; child = siblings[child]) {
+            height = Math.max(height, height(child));
+        }
+        return height + 1;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,589 @@
+package chess.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import chess.Board;
+import chess.Move;
+import chess.pieces.Pawn;
+
+/**
+ * Monte Carlo tree search with the PUCT selection rule, an alternative to the alpha-beta
+ * {@link Search}. Each playout walks down the tree from the root, choosing at every node the child
+ * with the best mean value plus an exploration bonus proportional to the child's prior, until it
+ * reaches a node that has not been expanded yet. That node's legal moves become its children,
+ * with priors that favour winning captures and promotions, and its position is scored by a
+ * quiescence search. The score, mapped to a value between -1 and 1, is added to every node on the
+ * way back up.
+ * <br>
+ * The tree lives in an arena of parallel primitive arrays indexed by node, {@value #NODE_BYTES}
+ * bytes per node, where the children of a node take consecutive indices; no object is allocated
+ * per node. Several threads run playouts on the same tree. A thread passing through a node counts
+ * a virtual loss there, which it replaces with the playout's value on the way back, so that the
+ * other threads spread over different lines instead of following the same one. Once the arena is
+ * full, playouts go on scoring leaves but the tree stops growing.
+ * <br>
+ * The tree is kept between searches. If the next position is the root or one or two moves away
+ * from it, as after the engine's move and the opponent's reply, that position's subtree is moved
+ * to the start of the arena, keeping its visits, and the rest is discarded.
+ * <br>
+ * Like {@link Search}, only {@link #stop()} may be called while a search is running.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see Search
+ */
+public class Mcts {
+
+    /** Size of the node arena, in megabytes, used when none is specified. */
+    public static final int DEFAULT_SIZE_MB = 64;
+    /** Memory taken by each node of the tree, in bytes. */
+    public static final int NODE_BYTES = 24;
+
+    // Values of firstChildren for nodes without children
+    private static final int UNEXPANDED = -1;
+    private static final int EXPANDING  = -2;
+    private static final int DRAW       = -3;
+    private static final int CHECKMATE  = -4; // The player to move is checkmated
+
+    private static final double EXPLORATION          = 1.5;
+    private static final double FIRST_PLAY_REDUCTION = 0.2;
+    private static final int    VIRTUAL_LOSS         = 3;
+    private static final long   ONE                  = 1 << 16; // Fixed point value of a win
+    private static final double VALUE_SCALE          = 300;     // Centipawns
+    private static final double PRIOR_SCALE          = 200;     // Centipawns
+    private static final double MAX_VALUE            = 0.999;
+    private static final long   REPORT_MILLIS        = 1000;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int capacity;
+    private final int threads;
+    private final Supplier<Evaluator> evaluators;
+    private final Search[] quiescers;
+    private final int[] firstChildren;
+    private final short[] childCounts;
+    private final short[] moves;
+    private final float[] priors;
+    private final int[] visits;
+    private final long[] valueSums; // From the point of view of the player who moved into the node
+    private final java.util.concurrent.atomic.AtomicInteger size;
+    private final java.util.concurrent.atomic.AtomicLong playouts;
+    private final java.util.concurrent.atomic.AtomicLong plies;
+    private volatile boolean stopped;
+    private volatile boolean full;
+    private long nodeLimit;
+    private long startTime;
+    private long deadline;
+    private Board root;
+
+    /**
+     * Creates a search with an arena of the default size that runs on every core and scores
+     * positions with the handcrafted {@link Evaluator}.
+     */
+    public Mcts() {
+        this(DEFAULT_SIZE_MB, Runtime.getRuntime().availableProcessors(), Evaluator::new);
+    }
+
+    /**
+     * Creates a search that takes up at most the specified amount of memory for its tree.
+     *
+     * @param megabytes  the memory budget for the tree, at least <code>1</code>
+     * @param threads    the number of threads that run playouts, at least <code>1</code>
+     * @param evaluators creates an evaluator for each thread
+     */
+    public Mcts(int megabytes, int threads, Supplier<Evaluator> evaluators) {
+        capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                                  Math.max(1, megabytes) * (1L << 20) / NODE_BYTES);
+        this.threads = Math.max(1, threads);
+        this.evaluators = evaluators;
+        quiescers = new Search[this.threads];
+        firstChildren = new int[capacity];
+        childCounts = new short[capacity];
+        moves = new short[capacity];
+        priors = new float[capacity];
+        visits = new int[capacity];
+        valueSums = new long[capacity];
+        size = new java.util.concurrent.atomic.AtomicInteger();
+        playouts = new java.util.concurrent.atomic.AtomicLong();
+        plies = new java.util.concurrent.atomic.AtomicLong();
+        clear();
+    }
+
+    /**
+     * Searches the specified board for the current player's best move, the root move visited
+     * most. Returns when the limits are reached or {@link #stop()} is called. Node limits count
+     * playouts; depth limits are ignored.
+     *
+     * @param board    the position to search; left untouched
+     * @param limits   the limits of the search
+     * @param listener receives progress every second and at the end; can be <code>null</code>.
+     *                 The depth reported is the average length of the playouts.
+     * @return the best move found or <code>null</code> if the current player has no legal moves
+     */
+    public Move search(Board board, Search.Limits limits, Consumer<Search.Info> listener) {
+        stopped = false;
+        startTime = System.nanoTime();
+        deadline = limits.getMillis() > 0 ? startTime + limits.getMillis() * 1_000_000
+                                          : Long.MAX_VALUE;
+        nodeLimit = limits.getNodes() > 0 ? limits.getNodes() : Long.MAX_VALUE;
+        List<Move> legalMoves = board.getLegalMoves();
+        if (legalMoves.isEmpty()) {
+            return null;
+        }
+        int newRoot = findRoot(board);
+        if (newRoot == -1) {
+            clear();
+        } else if (newRoot > 0) {
+            compact(newRoot);
+        }
+        root = new Board(board.toFen());
+        playouts.set(0);
+        plies.set(0);
+
+        String fen = board.toFen();
+        var workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            if (quiescers[i] == null) {
+                quiescers[i] = new Search(new TranspositionTable(0), evaluators.get());
+            }
+            workers[i] = new Thread(new Worker(new Board(fen), quiescers[i]), "mcts-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        boolean interrupted = false;
+        long nextReport = startTime + REPORT_MILLIS * 1_000_000;
+        for (Thread worker: workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join(Math.max(1, (nextReport - System.nanoTime()) / 1_000_000));
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    stopped = true;
+                }
+                if (listener != null && System.nanoTime() >= nextReport) {
+                    listener.accept(info());
+                    nextReport += REPORT_MILLIS * 1_000_000;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (listener != null) {
+            listener.accept(info());
+        }
+        int best = bestChild(0);
+        return best == -1 ? legalMoves.get(0) : Move.unpack(moves[best]);
+    }
+
+    /**
+     * Stops the search in progress, if any, as soon as every thread finishes its playout. Can be
+     * called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Discards the tree, so the next search starts from scratch.
+     */
+    public void clear() {
+        root = null;
+        size.set(1);
+        full = false;
+        firstChildren[0] = UNEXPANDED;
+        childCounts[0] = 0;
+        moves[0] = 0;
+        priors[0] = 1;
+        visits[0] = 0;
+        valueSums[0] = 0;
+    }
+
+    /**
+     * Returns the number of playouts run by the last search.
+     *
+     * @return the playout count
+     */
+    public long getNodes() {
+        return playouts.get();
+    }
+
+    /**
+     * Returns the number of nodes in the tree, including those kept from earlier searches.
+     *
+     * @return the node count
+     */
+    public int getSize() {
+        return Math.min(size.get(), capacity);
+    }
+
+    /**
+     * Returns the number of nodes the arena can hold.
+     *
+     * @return the node capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of threads that run playouts.
+     *
+     * @return the thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs playouts on one thread until the search stops.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private class Worker implements Runnable {
+
+        private final Board board;
+        private final Search quiescer;
+        private int[] path;
+        private long[] keys;
+
+        /**
+         * Creates a worker.
+         *
+         * @param board    the worker's own copy of the root position
+         * @param quiescer scores leaves for this worker
+         */
+        Worker(Board board, Search quiescer) {
+            this.board = board;
+            this.quiescer = quiescer;
+            path = new int[Search.MAX_DEPTH];
+            keys = new long[Search.MAX_DEPTH];
+        }
+
+        /**
+         * Runs playouts, at least one, until the search is stopped or reaches its limits.
+         */
+        @Override
+        public void run() {
+            do {
+                playout();
+            } while (playouts.incrementAndGet() < nodeLimit && !stopped
+                     && System.nanoTime() < deadline);
+        }
+
+        /**
+         * Walks down the tree to a leaf, expands and scores it, and adds the score to every node
+         * on the path.
+         */
+        private void playout() {
+            int node = 0, depth = 0;
+            path[0] = 0;
+            keys[0] = board.getKey();
+            double value;
+            while (true) {
+                int first = (int) INTS.getAcquire(firstChildren, node);
+                if (first >= 0) {
+                    node = select(node, first);
+                    INTS.getAndAdd(visits, node, VIRTUAL_LOSS);
+                    LONGS.getAndAdd(valueSums, node, -VIRTUAL_LOSS * ONE);
+                    board.makeMove(Move.unpack(moves[node]));
+                    if (++depth == path.length) {
+                        path = java.util.Arrays.copyOf(path, depth * 2);
+                        keys = java.util.Arrays.copyOf(keys, depth * 2);
+                    }
+                    path[depth] = node;
+                    keys[depth] = board.getKey();
+                } else if (first == DRAW) {
+                    value = 0;
+                    break;
+                } else if (first == CHECKMATE) {
+                    value = -1;
+                    break;
+                } else if (first == UNEXPANDED && !full
+                           && INTS.compareAndSet(firstChildren, node, UNEXPANDED, EXPANDING)) {
+                    value = expand(node, depth);
+                    break;
+                } else {
+                    // Another thread is expanding the node, or there is no room to expand it
+                    value = score();
+                    break;
+                }
+            }
+            for (int i = depth; i >= 0; i--) {
+                // Each node holds the value for the player who moved into it
+                value = -value;
+                INTS.getAndAdd(visits, path[i], i > 0 ? 1 - VIRTUAL_LOSS : 1);
+                LONGS.getAndAdd(valueSums, path[i],
+                                Math.round(value * ONE) + (i > 0 ? VIRTUAL_LOSS * ONE : 0));
+            }
+            for (int i = 0; i < depth; i++) {
+                board.undoMove();
+            }
+            plies.addAndGet(depth);
+        }
+
+        /**
+         * Gives a leaf its children, one per legal move, or marks it as the end of the game.
+         * Called only by the thread that claimed the node.
+         *
+         * @param node  the leaf, claimed for expansion
+         * @param depth the leaf's distance from the root
+         * @return the value of the leaf for the player to move
+         */
+        private double expand(int node, int depth) {
+            List<Move> legalMoves = board.getLegalMoves();
+            int end = UNEXPANDED;
+            if (legalMoves.isEmpty()) {
+                end = board.isInCheck() ? CHECKMATE : DRAW;
+            } else if (board.getHalfmoveClock() >= 100 || repeats(depth)) {
+                end = DRAW;
+            }
+            if (end != UNEXPANDED) {
+                INTS.setRelease(firstChildren, node, end);
+                return end == CHECKMATE ? -1 : 0;
+            }
+            int count = legalMoves.size();
+            int first = size.getAndAdd(count);
+            if (first > capacity - count) {
+                full = true;
+                INTS.setRelease(firstChildren, node, UNEXPANDED);
+                return score();
+            }
+            double[] logits = new double[count];
+            double max = Double.NEGATIVE_INFINITY, sum = 0;
+            for (int i = 0; i < count; i++) {
+                logits[i] = gain(legalMoves.get(i)) / PRIOR_SCALE;
+                max = Math.max(max, logits[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                logits[i] = Math.exp(logits[i] - max);
+                sum += logits[i];
+            }
+            for (int i = 0; i < count; i++) {
+                int child = first + i;
+                firstChildren[child] = UNEXPANDED;
+                childCounts[child] = 0;
+                moves[child] = (short) legalMoves.get(i).pack();
+                priors[child] = (float) (logits[i] / sum);
+                visits[child] = 0;
+                valueSums[child] = 0;
+            }
+            childCounts[node] = (short) count;
+            INTS.setRelease(firstChildren, node, first);
+            return score();
+        }
+
+        /**
+         * Determines if the current position already occurred on the path from the root.
+         *
+         * @param depth the current position's distance from the root
+         * @return <code>true</code> if the position repeats
+         */
+        private boolean repeats(int depth) {
+            for (int i = depth - 2; i >= 0; i -= 2) {
+                if (keys[i] == keys[depth]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Estimates how much a move wins at once, which sets its prior.
+         *
+         * @param move a legal move in the current position
+         * @return the material won in centipawns, less a tenth of the moving piece's value for
+         *         captures, or <code>0</code> for quiet moves
+         */
+        private double gain(Move move) {
+            double gain = 0;
+            if (!board.isSquareEmpty(move.getTo())) {
+                gain += Evaluator.value(board.getPiece(move.getTo()))
+                        - Evaluator.value(board.getPiece(move.getFrom())) / 10.0;
+            }
+            if (move.getPromotion() != null) {
+                gain += Evaluator.value(move.getPromotion()) - Evaluator.value(Pawn.class);
+            }
+            return gain;
+        }
+
+        /**
+         * Scores the current position with the quiescence search.
+         *
+         * @return the value for the player to move, between -1 and 1
+         */
+        private double score() {
+            return Math.tanh(quiescer.quiescence(board) / VALUE_SCALE);
+        }
+
+    }
+
+    /**
+     * Chooses the child to walk down to with the PUCT rule. Children never visited get their
+     * parent's value, slightly reduced.
+     *
+     * @param node  the parent
+     * @param first the parent's first child
+     * @return the child
+     */
+    private int select(int node, int first) {
+        int parentVisits = (int) INTS.getOpaque(visits, node);
+        double exploration = EXPLORATION * Math.sqrt(Math.max(1, parentVisits));
+        double firstPlay = parentVisits == 0 ? 0
+                         : -value(node, parentVisits) - FIRST_PLAY_REDUCTION;
+        int best = first;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int child = first, end = first + childCounts[node]; child < end; child++) {
+            int n = (int) INTS.getOpaque(visits, child);
+            double score = (n == 0 ? firstPlay : value(child, n))
+                         + exploration * priors[child] / (1 + n);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the mean value of a node for the player who moved into it.
+     *
+     * @param node       the node
+     * @param nodeVisits the node's visits, read once by the caller
+     * @return the mean value, between -1 and 1 once virtual losses are taken back
+     */
+    private double value(int node, int nodeVisits) {
+        return (long) LONGS.getOpaque(valueSums, node) / (double) (ONE * nodeVisits);
+    }
+
+    /**
+     * Finds the most visited child of a node.
+     *
+     * @param node the node
+     * @return the child or <code>-1</code> if the node has no visited children
+     */
+    private int bestChild(int node) {
+        int first = (int) INTS.getAcquire(firstChildren, node);
+        int best = -1, bestVisits = 0;
+        for (int child = first, end = first < 0 ? first : first + childCounts[node]; child < end;
+             child++) {
+            int n = (int) INTS.getOpaque(visits, child);
+            if (n > bestVisits) {
+                bestVisits = n;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Reports the progress of the search: the line of most visited moves, the value of its first
+     * move and the number of playouts.
+     *
+     * @return the report
+     */
+    private Search.Info info() {
+        var line = new java.util.ArrayList<Move>();
+        int best = bestChild(0), score = 0;
+        if (best != -1) {
+            int n = (int) INTS.getOpaque(visits, best);
+            double value = Math.max(-MAX_VALUE, Math.min(MAX_VALUE, value(best, n)));
+            score = (int) Math.round(VALUE_SCALE * 0.5 * Math.log((1 + value) / (1 - value)));
+            if ((int) INTS.getAcquire(firstChildren, best) == CHECKMATE) {
+                score = Search.MATE_SCORE - 1;
+            }
+        }
+        for (int node = best; node != -1 && line.size() < Search.MAX_DEPTH;
+             node = bestChild(node)) {
+            line.add(Move.unpack(moves[node]));
+        }
+        long count = playouts.get();
+        int depth = count == 0 ? 0 : (int) Math.max(1, plies.get() / count);
+        long millis = (System.nanoTime() - startTime) / 1_000_000;
+        return new Search.Info(depth, score, count, millis, line,
+                               (int) (1000L * getSize() / capacity));
+    }
+
+    /**
+     * Finds the node for the specified position among the root and the nodes one or two moves
+     * away from it.
+     *
+     * @param board the position
+     * @return the node or <code>-1</code> if the position is not near the root
+     */
+    private int findRoot(Board board) {
+        if (root == null) {
+            return -1;
+        }
+        if (root.getKey() == board.getKey()) {
+            return 0;
+        }
+        int first = firstChildren[0];
+        for (int child = first; first >= 0 && child < first + childCounts[0]; child++) {
+            root.makeMove(Move.unpack(moves[child]));
+            boolean found = root.getKey() == board.getKey();
+            int grandchild = firstChildren[child];
+            for (int end = grandchild + childCounts[child]; !found && grandchild >= 0
+                 && grandchild < end; grandchild++) {
+                root.makeMove(Move.unpack(moves[grandchild]));
+                found = root.getKey() == board.getKey();
+                root.undoMove();
+                if (found) {
+                    root.undoMove();
+                    return grandchild;
+                }
+            }
+            root.undoMove();
+            if (found) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the subtree of a node to the start of the arena, with the node at index
+     * <code>0</code>, and discards the rest of the tree. Relies on every node coming after its
+     * parent in the arena, so that nodes only move towards the start and kept siblings stay
+     * together. Needs four more bytes per node while it runs.
+     *
+     * @param newRoot the node
+     */
+    private void compact(int newRoot) {
+        int used = getSize();
+        int[] newIndices = new int[used];
+        java.util.Arrays.fill(newIndices, newRoot, used, -1);
+        newIndices[newRoot] = 0;
+        int kept = 0;
+        for (int node = newRoot; node < used; node++) {
+            if (newIndices[node] == -1) {
+                continue;
+            }
+            newIndices[node] = kept;
+            int first = firstChildren[node];
+            for (int child = first; first >= 0 && child < first + childCounts[node]; child++) {
+                newIndices[child] = 0;
+            }
+            firstChildren[kept] = first;
+            childCounts[kept] = childCounts[node];
+            moves[kept] = moves[node];
+            priors[kept] = priors[node];
+            visits[kept] = visits[node];
+            valueSums[kept] = valueSums[node];
+            kept++;
+        }
+        for (int node = 0; node < kept; node++) {
+            if (firstChildren[node] >= 0) {
+                firstChildren[node] = newIndices[firstChildren[node]];
+            }
+        }
+        size.set(kept);
+        full = false;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,392 @@
+package chess.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import chess.Board;
+import chess.SquareListener;
+import chess.pieces.Color;
+import chess.pieces.Piece;
+import chess.pieces.Pawn;
+import chess.pieces.Knight;
+import chess.pieces.Bishop;
+import chess.pieces.Rook;
+import chess.pieces.Queen;
+
+/**
+ * An efficiently updatable neural network evaluation, an optional replacement for the
+ * handcrafted {@link Evaluator}. The first layer has one input for every piece on every square,
+ * seen from each player's side of the board, and its outputs, the accumulators, are kept up to
+ * date as pieces enter and leave squares: the evaluator listens to the board it evaluates, so
+ * every {@link Board#makeMove(chess.Move)} and {@link Board#undoMove()} adds or subtracts one row
+ * of weights per changed square instead of recomputing the layer. The accumulators are rebuilt
+ * from scratch only when a different board is evaluated.
+ * <br>
+ * The accumulators, clipped to [0, 1] and ordered with the player to move first, feed two hidden
+ * layers with rectified linear activations and a single output, the score in centipawns. The
+ * accumulator updates and the dense layers run on a {@link NnueKernel}, written with the Vector
+ * API when the <code>jdk.incubator.vector</code> module is available and in plain Java otherwise.
+ * <br>
+ * An evaluator is not thread-safe; every searcher is expected to own one. Its {@link Network}
+ * is immutable and can be shared by any number of evaluators.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Nnue extends Evaluator implements SquareListener {
+
+    /**
+     * The weights of a network, read from a file. The file is little-endian: the magic number
+     * <code>NNUE</code>, the format version, the sizes of the first layer and of both hidden
+     * layers as 32-bit integers, then the first layer's 16-bit weights, one row per input, and
+     * biases, in accumulator units of 1/{@value Nnue#QUANTIZATION}, then the weights, one row per
+     * output, and biases of the hidden layers and the output layer as 32-bit floats.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Network {
+
+        /** Number of inputs seen from each side: six piece types of two colors on 64 squares. */
+        public static final int INPUTS = 768;
+
+        private static final int MAGIC      = 0x45554E4E; // "NNUE", little-endian
+        private static final int VERSION    = 1;
+        private static final int MAX_SIZE   = 4096;
+
+        private final int hiddenSize;
+        private final short[] featureWeights;
+        private final short[] featureBias;
+        private final float[] weights1;
+        private final float[] bias1;
+        private final float[] weights2;
+        private final float[] bias2;
+        private final float[] outputWeights;
+        private final float[] outputBias;
+
+        /**
+         * Creates a network with all weights set to zero.
+         *
+         * @param hiddenSize the size of the first layer
+         * @param size1      the size of the first hidden layer
+         * @param size2      the size of the second hidden layer
+         */
+        private Network(int hiddenSize, int size1, int size2) {
+            this.hiddenSize = hiddenSize;
+            featureWeights = new short[INPUTS * hiddenSize];
+            featureBias = new short[hiddenSize];
+            weights1 = new float[size1 * 2 * hiddenSize];
+            bias1 = new float[size1];
+            weights2 = new float[size2 * size1];
+            bias2 = new float[size2];
+            outputWeights = new float[size2];
+            outputBias = new float[1];
+        }
+
+        /**
+         * Reads a network from a file.
+         *
+         * @param path the file to read
+         * @return the network
+         * @throws IOException if the file cannot be read or is not a network in this format
+         */
+        public static Network load(Path path) throws IOException {
+            var buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a network: " + path);
+            }
+            int hiddenSize = buffer.getInt(), size1 = buffer.getInt(), size2 = buffer.getInt();
+            if (Math.min(hiddenSize, Math.min(size1, size2)) < 1
+                    || Math.max(hiddenSize, Math.max(size1, size2)) > MAX_SIZE) {
+                throw new IOException("Invalid layer sizes in " + path);
+            }
+            var network = new Network(hiddenSize, size1, size2);
+            if (buffer.remaining() != network.dataBytes()) {
+                throw new IOException("Wrong size for a network of its layers: " + path);
+            }
+            buffer.asShortBuffer().get(network.featureWeights).get(network.featureBias);
+            buffer.position(buffer.position()
+                            + 2 * (network.featureWeights.length + network.featureBias.length));
+            buffer.asFloatBuffer().get(network.weights1).get(network.bias1).get(network.weights2)
+                                  .get(network.bias2).get(network.outputWeights)
+                                  .get(network.outputBias);
+            return network;
+        }
+
+        /**
+         * Writes this network to a file, in the format read by {@link #load(Path)}.
+         *
+         * @param path the file to write
+         * @throws IOException if the file cannot be written
+         */
+        public void save(Path path) throws IOException {
+            var buffer = ByteBuffer.allocate(20 + dataBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(hiddenSize).putInt(bias1.length)
+                  .putInt(bias2.length);
+            buffer.asShortBuffer().put(featureWeights).put(featureBias);
+            buffer.position(buffer.position() + 2 * (featureWeights.length + featureBias.length));
+            buffer.asFloatBuffer().put(weights1).put(bias1).put(weights2).put(bias2)
+                                  .put(outputWeights).put(outputBias);
+            Files.write(path, buffer.array());
+        }
+
+        /**
+         * Creates a network with random weights, which evaluates positions meaninglessly but at
+         * the speed of a trained network of the same size. Meant for tests and benchmarks.
+         *
+         * @param hiddenSize the size of the first layer
+         * @param seed       the seed of the weights
+         * @return the network, with hidden layers of 32 outputs
+         */
+        public static Network random(int hiddenSize, long seed) {
+            var random = new java.util.SplittableRandom(seed);
+            var network = new Network(hiddenSize, 32, 32);
+            for (int i = 0; i < network.featureWeights.length; i++) {
+                network.featureWeights[i] = (short) random.nextInt(-64, 65);
+            }
+            for (int i = 0; i < hiddenSize; i++) {
+                network.featureBias[i] = (short) random.nextInt(0, QUANTIZATION / 2);
+            }
+            fill(random, network.weights1, 1 / Math.sqrt(2 * hiddenSize));
+            fill(random, network.weights2, 1 / Math.sqrt(32));
+            fill(random, network.outputWeights, 100);
+            return network;
+        }
+
+        /**
+         * Returns the size of the first layer, and of each accumulator.
+         *
+         * @return the number of outputs of the first layer
+         */
+        public int getHiddenSize() {
+            return hiddenSize;
+        }
+
+        /**
+         * Describes the layers of this network, such as "768x2 -> 256 -> 32 -> 32 -> 1".
+         *
+         * @return a string representation of this network
+         */
+        @Override
+        public String toString() {
+            return String.format("%dx2 -> %d -> %d -> %d -> 1", INPUTS, hiddenSize, bias1.length,
+                                 bias2.length);
+        }
+
+        /**
+         * Returns the number of bytes of weights and biases in a file holding this network.
+         *
+         * @return the size of the file without its header
+         */
+        private int dataBytes() {
+            return 2 * (featureWeights.length + featureBias.length)
+                   + 4 * (weights1.length + bias1.length + weights2.length + bias2.length
+                          + outputWeights.length + outputBias.length);
+        }
+
+        /**
+         * Fills an array with uniformly distributed random weights.
+         *
+         * @param random the source of randomness
+         * @param values the array to fill
+         * @param range  the largest absolute value
+         */
+        private static void fill(java.util.SplittableRandom random, float[] values, double range) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (float) random.nextDouble(-range, range);
+            }
+        }
+
+    }
+
+    /** Accumulator value of a fully active first-layer output. */
+    public static final int QUANTIZATION = 255;
+
+    private static final float SCALE = 1f / QUANTIZATION;
+
+    private final Network network;
+    private final NnueKernel kernel;
+    private final short[] whiteAccumulator;
+    private final short[] blackAccumulator;
+    private final float[] input;
+    private final float[] hidden1;
+    private final float[] hidden2;
+    private final float[] output;
+    private Board board;
+
+    /**
+     * Creates an evaluator that uses the specified network, with the Vector API if it is
+     * available.
+     *
+     * @param network the network
+     */
+    public Nnue(Network network) {
+        this(network, true);
+    }
+
+    /**
+     * Creates an evaluator that uses the specified network.
+     *
+     * @param network the network
+     * @param vector  <code>true</code> to use the Vector API if it is available, and
+     *                <code>false</code> to always use scalar code
+     */
+    public Nnue(Network network, boolean vector) {
+        super(new PawnTable(1));
+        this.network = network;
+        kernel = NnueKernel.create(vector);
+        whiteAccumulator = new short[network.hiddenSize];
+        blackAccumulator = new short[network.hiddenSize];
+        input = new float[2 * network.hiddenSize];
+        hidden1 = new float[network.bias1.length];
+        hidden2 = new float[network.bias2.length];
+        output = new float[1];
+    }
+
+    /**
+     * Determines if evaluators can use the Vector API, which requires the JVM to be started with
+     * <code>--add-modules jdk.incubator.vector</code>.
+     *
+     * @return <code>true</code> if the <code>jdk.incubator.vector</code> module is loaded
+     */
+    public static boolean isVectorAvailable() {
+        return NnueKernel.isVectorAvailable();
+    }
+
+    /**
+     * Evaluates the specified board. The first time a board is evaluated, this evaluator starts
+     * listening to it, and stops listening to the board it evaluated before.
+     *
+     * @param board the board to evaluate
+     * @return the score in centipawns from the current player's point of view
+     */
+    @Override
+    public int evaluate(Board board) {
+        if (this.board != board || board.getSquareListener() != this) {
+            attach(board);
+        }
+        boolean white = board.getTurn() == Color.WHITE;
+        activate(white ? whiteAccumulator : blackAccumulator, 0);
+        activate(white ? blackAccumulator : whiteAccumulator, network.hiddenSize);
+        kernel.affine(network.weights1, network.bias1, input, hidden1, true);
+        kernel.affine(network.weights2, network.bias2, hidden1, hidden2, true);
+        kernel.affine(network.outputWeights, network.outputBias, hidden2, output, false);
+        return Math.round(output[0]);
+    }
+
+    /**
+     * Adds the piece's row of first-layer weights to both accumulators.
+     *
+     * @param piece  the piece
+     * @param square the square's index
+     */
+    @Override
+    public void pieceAdded(Piece piece, int square) {
+        kernel.add(whiteAccumulator, network.featureWeights, row(piece, square, Color.WHITE));
+        kernel.add(blackAccumulator, network.featureWeights, row(piece, square, Color.BLACK));
+    }
+
+    /**
+     * Subtracts the piece's row of first-layer weights from both accumulators.
+     *
+     * @param piece  the piece
+     * @param square the square's index
+     */
+    @Override
+    public void pieceRemoved(Piece piece, int square) {
+        kernel.subtract(whiteAccumulator, network.featureWeights, row(piece, square, Color.WHITE));
+        kernel.subtract(blackAccumulator, network.featureWeights, row(piece, square, Color.BLACK));
+    }
+
+    /**
+     * Returns the network this evaluator uses.
+     *
+     * @return the network
+     */
+    public Network getNetwork() {
+        return network;
+    }
+
+    /**
+     * Describes this evaluator, such as "NNUE 768x2 -> 256 -> 32 -> 32 -> 1, vector (256-bit)".
+     *
+     * @return the network's layers and the kernel's name
+     */
+    @Override
+    public String toString() {
+        return "NNUE " + network + ", " + kernel;
+    }
+
+    /**
+     * Starts listening to a board, and rebuilds the accumulators from its pieces.
+     *
+     * @param board the board
+     */
+    private void attach(Board board) {
+        if (this.board != null && this.board.getSquareListener() == this) {
+            this.board.setSquareListener(null);
+        }
+        this.board = board;
+        board.setSquareListener(this);
+        System.arraycopy(network.featureBias, 0, whiteAccumulator, 0, network.hiddenSize);
+        System.arraycopy(network.featureBias, 0, blackAccumulator, 0, network.hiddenSize);
+        for (Color color: new Color[] {Color.WHITE, Color.BLACK}) {
+            for (Piece piece: board.getPieces(color)) {
+                var position = piece.getPosition();
+                pieceAdded(piece, position.getRank() * 8 + position.getFile());
+            }
+        }
+    }
+
+    /**
+     * Clips an accumulator to [0, 1] into the input of the first hidden layer.
+     *
+     * @param accumulator the accumulator
+     * @param offset      where its values start in the input
+     */
+    private void activate(short[] accumulator, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            input[offset + i] = Math.min(Math.max(accumulator[i], 0), QUANTIZATION) * SCALE;
+        }
+    }
+
+    /**
+     * Returns where a feature's row of first-layer weights starts. Seen from a player's side,
+     * that player's pieces come first and the board is flipped so that the player's back rank is
+     * the first rank.
+     *
+     * @param piece       the piece
+     * @param square      the piece's square index, <code>rank * 8 + file</code>
+     * @param perspective the side the board is seen from
+     * @return the offset of the row in the first layer's weights
+     */
+    private int row(Piece piece, int square, Color perspective) {
+        int type = typeIndex(piece) + (piece.getColor() == perspective ? 0 : 6);
+        // Rank 0 is black's back rank
+        int relative = perspective == Color.WHITE ? square ^ 56 : square;
+        return (type * 64 + relative) * network.hiddenSize;
+    }
+
+    /**
+     * Returns the index of a piece's type.
+     *
+     * @param piece the piece
+     * @return <code>0</code> for pawns up to <code>5</code> for kings
+     */
+    private static int typeIndex(Piece piece) {
+        Class<? extends Piece> type = piece.getClass();
+        if (type == Pawn.class) {
+            return 0;
+        } else if (type == Knight.class) {
+            return 1;
+        } else if (type == Bishop.class) {
+            return 2;
+        } else if (type == Rook.class) {
+            return 3;
+        }
+        return type == Queen.class ? 4 : 5;
+    }
+
+}
\ No newline at end of file
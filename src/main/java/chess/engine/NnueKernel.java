@@ -0,0 +1,140 @@
+package chess.engine;
+
+/**
+ * The arithmetic of {@link Nnue}: updates of the first-layer accumulators and the dense layers
+ * after them. There is a scalar implementation, which runs anywhere, and one written with the
+ * Vector API, which runs the same loops on the widest SIMD registers the CPU has, such as AVX2,
+ * AVX-512 or NEON. {@link #create(boolean)} picks the vector one when the
+ * <code>jdk.incubator.vector</code> module is available.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.engine.VectorNnueKernel
+ */
+interface NnueKernel {
+
+    /**
+     * Plain Java loops, which the JIT compiler may still auto-vectorize.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    class Scalar implements NnueKernel {
+
+        /**
+         * Adds the weights one element at a time.
+         */
+        @Override
+        public void add(short[] accumulator, short[] weights, int offset) {
+            for (int i = 0; i < accumulator.length; i++) {
+                accumulator[i] += weights[offset + i];
+            }
+        }
+
+        /**
+         * Subtracts the weights one element at a time.
+         */
+        @Override
+        public void subtract(short[] accumulator, short[] weights, int offset) {
+            for (int i = 0; i < accumulator.length; i++) {
+                accumulator[i] -= weights[offset + i];
+            }
+        }
+
+        /**
+         * Computes each output's dot product one element at a time, into four partial sums so
+         * that consecutive additions do not wait for each other.
+         */
+        @Override
+        public void affine(float[] weights, float[] bias, float[] input, float[] output,
+                           boolean relu) {
+            int bound = input.length & ~3;
+            for (int o = 0; o < output.length; o++) {
+                int row = o * input.length;
+                float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+                int i = 0;
+                for (; i < bound; i += 4) {
+                    sum0 += weights[row + i] * input[i];
+                    sum1 += weights[row + i + 1] * input[i + 1];
+                    sum2 += weights[row + i + 2] * input[i + 2];
+                    sum3 += weights[row + i + 3] * input[i + 3];
+                }
+                float sum = bias[o] + (sum0 + sum1) + (sum2 + sum3);
+                for (; i < input.length; i++) {
+                    sum += weights[row + i] * input[i];
+                }
+                output[o] = relu ? Math.max(sum, 0) : sum;
+            }
+        }
+
+        /**
+         * Describes this kernel.
+         *
+         * @return "scalar"
+         */
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+
+    }
+
+    /**
+     * Returns a kernel.
+     *
+     * @param vector <code>true</code> to use the Vector API if it is available
+     * @return the vector kernel if it was asked for and is available; the scalar one otherwise
+     */
+    static NnueKernel create(boolean vector) {
+        if (vector && isVectorAvailable()) {
+            try {
+                return (NnueKernel) Class.forName("chess.engine.VectorNnueKernel")
+                                         .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to scalar code
+            }
+        }
+        return new Scalar();
+    }
+
+    /**
+     * Determines if the Vector API can be used, which requires the JVM to be started with
+     * <code>--add-modules jdk.incubator.vector</code>.
+     *
+     * @return <code>true</code> if the <code>jdk.incubator.vector</code> module is loaded
+     */
+    static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    /**
+     * Adds a feature's weights to an accumulator.
+     *
+     * @param accumulator the accumulator
+     * @param weights     the weights of every feature, one row per feature
+     * @param offset      the start of the feature's row
+     */
+    void add(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Subtracts a feature's weights from an accumulator.
+     *
+     * @param accumulator the accumulator
+     * @param weights     the weights of every feature, one row per feature
+     * @param offset      the start of the feature's row
+     */
+    void subtract(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Computes a dense layer: every output is its bias plus the dot product of its row of
+     * weights with the input.
+     *
+     * @param weights the weights, one row of <code>input.length</code> per output
+     * @param bias    the bias of every output
+     * @param input   the layer's input
+     * @param output  receives the layer's output
+     * @param relu    <code>true</code> to clamp negative outputs to zero
+     */
+    void affine(float[] weights, float[] bias, float[] input, float[] output, boolean relu);
+
+}
\ No newline at end of file
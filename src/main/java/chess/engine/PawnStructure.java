@@ -0,0 +1,120 @@
+package chess.engine;
+
+import chess.pieces.Color;
+
+/**
+ * Static evaluation of pawn structure terms: doubled, isolated and passed pawns, and the pawn
+ * shield in front of each king. Pawns are given as bitboards where bit <code>rank * 8 + file</code>
+ * is set for every occupied square. Scores are in centipawns from white's point of view.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.engine.PawnTable
+ */
+public final class PawnStructure {
+
+    private static final int   DOUBLED_PENALTY      = 12;
+    private static final int   ISOLATED_PENALTY     = 15;
+    private static final int   SHIELD_NEAR_BONUS    = 10;
+    private static final int   SHIELD_FAR_BONUS     = 5;
+    private static final int[] PASSED_BONUS         = {0, 5, 10, 20, 35, 60, 100, 0};
+    private static final long[] FILES               = new long[8];
+    private static final long[] ADJACENT_FILES      = new long[8];
+    private static final long[] WHITE_PASSED_SPAN   = new long[64];
+    private static final long[] BLACK_PASSED_SPAN   = new long[64];
+
+    static {
+        for (int file = 0; file < 8; file++) {
+            FILES[file] = 0x0101010101010101L << file;
+        }
+        for (int file = 0; file < 8; file++) {
+            ADJACENT_FILES[file] = (file > 0 ? FILES[file - 1] : 0) | (file < 7 ? FILES[file + 1] : 0);
+        }
+        for (int square = 0; square < 64; square++) {
+            int rank = square / 8, file = square % 8;
+            long span = FILES[file] | ADJACENT_FILES[file];
+            long above = rank == 0 ? 0 : -1L >>> (64 - rank * 8);
+            long below = rank == 7 ? 0 : -1L << ((rank + 1) * 8);
+            WHITE_PASSED_SPAN[square] = span & above;
+            BLACK_PASSED_SPAN[square] = span & below;
+        }
+    }
+
+    private PawnStructure() {}
+
+    /**
+     * Evaluates doubled, isolated and passed pawns for both players.
+     *
+     * @param whitePawns bitboard of white's pawns
+     * @param blackPawns bitboard of black's pawns
+     * @return the structure score from white's point of view
+     */
+    public static int evaluate(long whitePawns, long blackPawns) {
+        int score = 0;
+        for (int file = 0; file < 8; file++) {
+            int white = Long.bitCount(whitePawns & FILES[file]);
+            int black = Long.bitCount(blackPawns & FILES[file]);
+            score -= Math.max(white - 1, 0) * DOUBLED_PENALTY;
+            score += Math.max(black - 1, 0) * DOUBLED_PENALTY;
+            if ((whitePawns & ADJACENT_FILES[file]) == 0) {
+                score -= white * ISOLATED_PENALTY;
+            }
+            if ((blackPawns & ADJACENT_FILES[file]) == 0) {
+                score += black * ISOLATED_PENALTY;
+            }
+        }
+        for (long bits = passedPawns(whitePawns, blackPawns, Color.WHITE); bits != 0; bits &= bits - 1) {
+            score += PASSED_BONUS[7 - Long.numberOfTrailingZeros(bits) / 8];
+        }
+        for (long bits = passedPawns(blackPawns, whitePawns, Color.BLACK); bits != 0; bits &= bits - 1) {
+            score -= PASSED_BONUS[Long.numberOfTrailingZeros(bits) / 8];
+        }
+        return score;
+    }
+
+    /**
+     * Finds the pawns that have no opposing pawns in front of them on their own or adjacent
+     * files.
+     *
+     * @param pawns         bitboard of the player's pawns
+     * @param opponentPawns bitboard of the opponent's pawns
+     * @param color         the color of the player
+     * @return a bitboard of the player's passed pawns
+     */
+    public static long passedPawns(long pawns, long opponentPawns, Color color) {
+        long[] spans = color == Color.WHITE ? WHITE_PASSED_SPAN : BLACK_PASSED_SPAN;
+        long passed = 0;
+        for (long bits = pawns; bits != 0; bits &= bits - 1) {
+            int square = Long.numberOfTrailingZeros(bits);
+            if ((spans[square] & opponentPawns) == 0) {
+                passed |= 1L << square;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Evaluates the friendly pawns standing one or two ranks in front of a king, on the king's
+     * file or either adjacent file.
+     *
+     * @param pawns      bitboard of the king's own pawns
+     * @param kingSquare the king's square, i.e. <code>rank * 8 + file</code>
+     * @param color      the color of the king
+     * @return the shield bonus, never negative
+     */
+    public static int shield(long pawns, int kingSquare, Color color) {
+        int rank = kingSquare / 8, file = kingSquare % 8;
+        int direction = color == Color.WHITE ? -1 : 1;
+        long files = FILES[file] | ADJACENT_FILES[file];
+        int bonus = 0;
+        int near = rank + direction, far = rank + 2 * direction;
+        if (near >= 0 && near <= 7) {
+            bonus += Long.bitCount(pawns & files & (0xFFL << (near * 8))) * SHIELD_NEAR_BONUS;
+        }
+        if (far >= 0 && far <= 7) {
+            bonus += Long.bitCount(pawns & files & (0xFFL << (far * 8))) * SHIELD_FAR_BONUS;
+        }
+        return bonus;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,208 @@
+package chess.engine;
+
+import chess.Board;
+import chess.pieces.Color;
+import chess.pieces.Position;
+
+/**
+ * A fixed-size cache of pawn structure evaluations, indexed by {@link Board#getPawnKey()}.
+ * Pawn structure changes far less often than the rest of the position, so most probes made
+ * during a search are answered without scanning the pawns again. Each entry also remembers the
+ * king squares its pawn shields were computed for, so a king move only refreshes the shields.
+ * <br>
+ * A table is not thread-safe; every searcher is expected to own one.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.engine.PawnStructure
+ */
+public class PawnTable {
+
+    /**
+     * A cached evaluation of one pawn structure.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Entry {
+
+        private long key;
+        private int score;
+        private long whitePassed;
+        private long blackPassed;
+        private int whiteKingSquare = -1;
+        private int blackKingSquare = -1;
+        private int whiteShield;
+        private int blackShield;
+
+        /**
+         * Returns the structure score plus both king shields.
+         *
+         * @return the score in centipawns from white's point of view
+         */
+        public int getScore() {
+            return score + whiteShield - blackShield;
+        }
+
+        /**
+         * Returns the specified player's passed pawns.
+         *
+         * @param color the color of the player
+         * @return a bitboard of the player's passed pawns
+         */
+        public long getPassedPawns(Color color) {
+            return color == Color.WHITE ? whitePassed : blackPassed;
+        }
+
+    }
+
+    /** Size of the table, in kilobytes, used when none is specified. */
+    public static final int DEFAULT_SIZE_KB = 256;
+
+    // Approximate heap cost of one entry: object header, fields and the array slot.
+    private static final int ENTRY_BYTES = 64;
+
+    private final Entry[] entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a table of {@value #DEFAULT_SIZE_KB} kilobytes.
+     */
+    public PawnTable() {
+        this(DEFAULT_SIZE_KB);
+    }
+
+    /**
+     * Creates a table that takes up at most the specified amount of memory. The number of entries
+     * is rounded down to a power of two, with a minimum of one.
+     *
+     * @param sizeInKilobytes the memory budget for this table
+     */
+    public PawnTable(int sizeInKilobytes) {
+        int count = Integer.highestOneBit(Math.max(1, (int) Math.min(Integer.MAX_VALUE / 2,
+                                                      sizeInKilobytes * 1024L / ENTRY_BYTES)));
+        entries = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new Entry();
+        }
+    }
+
+    /**
+     * Returns the evaluation of the specified board's pawn structure, computing and storing it if
+     * it is not already in this table.
+     *
+     * @param board the board to evaluate
+     * @return the entry for the board's pawn structure
+     */
+    public Entry probe(Board board) {
+        long key = board.getPawnKey();
+        Entry entry = entries[(int) key & (entries.length - 1)];
+        long whitePawns = board.getPawns(Color.WHITE), blackPawns = board.getPawns(Color.BLACK);
+        if (entry.key == key && entry.whiteKingSquare != -1) {
+            hits++;
+        } else {
+            misses++;
+            entry.key = key;
+            entry.score = PawnStructure.evaluate(whitePawns, blackPawns);
+            entry.whitePassed = PawnStructure.passedPawns(whitePawns, blackPawns, Color.WHITE);
+            entry.blackPassed = PawnStructure.passedPawns(blackPawns, whitePawns, Color.BLACK);
+            entry.whiteKingSquare = -1;
+            entry.blackKingSquare = -1;
+        }
+        int whiteKing = square(board.getKing(Color.WHITE).getPosition());
+        int blackKing = square(board.getKing(Color.BLACK).getPosition());
+        if (entry.whiteKingSquare != whiteKing) {
+            entry.whiteKingSquare = whiteKing;
+            entry.whiteShield = PawnStructure.shield(whitePawns, whiteKing, Color.WHITE);
+        }
+        if (entry.blackKingSquare != blackKing) {
+            entry.blackKingSquare = blackKing;
+            entry.blackShield = PawnStructure.shield(blackPawns, blackKing, Color.BLACK);
+        }
+        return entry;
+    }
+
+    /**
+     * Empties this table and resets its statistics.
+     */
+    public void clear() {
+        for (Entry entry: entries) {
+            entry.key = 0;
+            entry.whiteKingSquare = -1;
+            entry.blackKingSquare = -1;
+        }
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Returns the number of entries in this table.
+     *
+     * @return the capacity of this table
+     */
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * Returns the approximate amount of heap memory used by this table.
+     *
+     * @return the size of this table in bytes
+     */
+    public long getMemoryFootprint() {
+        return (long) entries.length * ENTRY_BYTES;
+    }
+
+    /**
+     * Returns the number of probes answered from this table.
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of probes that required evaluating the pawn structure.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of probes answered from this table.
+     *
+     * @return a number in the range [0, 1]; <code>0</code> if the table has never been probed
+     */
+    public double getHitRate() {
+        long probes = hits + misses;
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    /**
+     * Returns a summary of this table's size and statistics, such as
+     * "pawn table: 4096 entries, 256 KB, 1200 hits, 34 misses (97.2% hit rate)".
+     *
+     * @return a string representation of this table
+     */
+    @Override
+    public String toString() {
+        return String.format("pawn table: %d entries, %d KB, %d hits, %d misses (%.1f%% hit rate)",
+                             entries.length, getMemoryFootprint() / 1024, hits, misses,
+                             getHitRate() * 100);
+    }
+
+    /**
+     * Maps a position to its square index.
+     *
+     * @param position the position to map
+     * @return <code>rank * 8 + file</code>
+     */
+    private static int square(Position position) {
+        return position.getRank() * 8 + position.getFile();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,946 @@
+package chess.engine;
+
+import java.util.List;
+import java.util.function.Consumer;
+import chess.Board;
+import chess.Metrics;
+import chess.Move;
+import chess.pieces.Pawn;
+import chess.pieces.Position;
+
+/**
+ * Iterative deepening alpha-beta search with a quiescence search over captures. Moves are tried
+ * in the order: best move from the {@link TranspositionTable}, captures of the most valuable
+ * pieces, then quiet moves that caused cutoffs before (history heuristic). Positions found in
+ * the {@link Tablebase}, if one is set, are scored exactly without being searched. A position
+ * that repeats one from the game played on the board or from the line being searched is scored
+ * as a draw, since either side can repeat it again.
+ * <br>
+ * The search explores positions by making and taking back moves on the board it is given, so the
+ * board must not be used by anything else until {@link #search(Board, Limits, Consumer)} returns.
+ * Only {@link #stop()} may be called from another thread.
+ * <br>
+ * Every search is reported to JDK Flight Recorder with its depth, nodes, cutoffs and hash table
+ * hits, and added to the {@link Metrics} counters when counting is on. With a {@link SearchTrace}
+ * set and tracing on, every node visited is recorded.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Search {
+
+    /**
+     * Limits on how long a search may run. A limit of <code>0</code> means no limit.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Limits {
+
+        /** Searches until stopped. */
+        public static final Limits INFINITE = new Limits(0, 0, 0);
+
+        private final int depth;
+        private final long nodes;
+        private final long millis;
+
+        /**
+         * Creates limits on depth, nodes and time.
+         *
+         * @param depth  the maximum depth in plies
+         * @param nodes  the maximum number of nodes
+         * @param millis the maximum time in milliseconds
+         */
+        public Limits(int depth, long nodes, long millis) {
+            this.depth = depth;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+
+        /**
+         * Returns the maximum depth.
+         *
+         * @return the maximum depth in plies, or <code>0</code> if unlimited
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the maximum number of nodes.
+         *
+         * @return the node limit, or <code>0</code> if unlimited
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the maximum time.
+         *
+         * @return the time limit in milliseconds, or <code>0</code> if unlimited
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+    }
+
+    /**
+     * Progress reported after each completed iteration of a search.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Info {
+
+        private final int depth;
+        private final int score;
+        private final long nodes;
+        private final long millis;
+        private final List<Move> principalVariation;
+        private final int permilleFull;
+        private final int line;
+
+        /**
+         * Creates a progress report for the best line.
+         *
+         * @param depth              the depth completed
+         * @param score              the score of the best move
+         * @param nodes              the number of nodes searched so far
+         * @param millis             the time spent so far, in milliseconds
+         * @param principalVariation the expected line of play, starting with the best move
+         * @param permilleFull       how full the transposition table is
+         */
+        public Info(int depth, int score, long nodes, long millis, List<Move> principalVariation,
+                    int permilleFull) {
+            this(depth, score, nodes, millis, principalVariation, permilleFull, 1);
+        }
+
+        /**
+         * Creates a progress report for one of the best lines.
+         *
+         * @param depth              the depth completed
+         * @param score              the score of the line's first move
+         * @param nodes              the number of nodes searched so far
+         * @param millis             the time spent so far, in milliseconds
+         * @param principalVariation the expected line of play, starting with the line's first move
+         * @param permilleFull       how full the transposition table is
+         * @param line               the rank of the line, <code>1</code> for the best one
+         */
+        public Info(int depth, int score, long nodes, long millis, List<Move> principalVariation,
+                    int permilleFull, int line) {
+            this.depth = depth;
+            this.score = score;
+            this.nodes = nodes;
+            this.millis = millis;
+            this.principalVariation = principalVariation;
+            this.permilleFull = permilleFull;
+            this.line = line;
+        }
+
+        /**
+         * Returns the depth completed.
+         *
+         * @return the depth in plies
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the score of the best move.
+         *
+         * @return the score in centipawns from the current player's point of view
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Determines if the score announces a forced mate.
+         *
+         * @return <code>true</code> if either player can force mate
+         */
+        public boolean isMate() {
+            return Math.abs(score) > MATE_SCORE - MAX_DEPTH * 2;
+        }
+
+        /**
+         * Returns the number of moves until mate, as reported by the UCI protocol.
+         *
+         * @return the number of moves, negative if the current player is getting mated
+         */
+        public int getMateIn() {
+            int moves = (MATE_SCORE - Math.abs(score) + 1) / 2;
+            return score > 0 ? moves : -moves;
+        }
+
+        /**
+         * Returns the number of nodes searched so far.
+         *
+         * @return the node count
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the time spent so far.
+         *
+         * @return the time in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Returns the search speed.
+         *
+         * @return the number of nodes searched per second
+         */
+        public long getNodesPerSecond() {
+            return millis == 0 ? nodes * 1000 : nodes * 1000 / millis;
+        }
+
+        /**
+         * Returns the expected line of play.
+         *
+         * @return the principal variation, starting with the best move
+         */
+        public List<Move> getPrincipalVariation() {
+            return principalVariation;
+        }
+
+        /**
+         * Returns how full the transposition table is.
+         *
+         * @return a number in the range [0, 1000]
+         */
+        public int getPermilleFull() {
+            return permilleFull;
+        }
+
+        /**
+         * Returns the rank of the line this report is about, when a search reports several lines.
+         *
+         * @return <code>1</code> for the best line, <code>2</code> for the second best, and so on
+         * @see Search#setMultiPv(int)
+         */
+        public int getLine() {
+            return line;
+        }
+
+    }
+
+    /**
+     * A search, reported to JDK Flight Recorder with the work it did.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    @jdk.jfr.Name("chess.Search")
+    @jdk.jfr.Label("Search")
+    @jdk.jfr.Category("Chess")
+    @jdk.jfr.StackTrace(false)
+    static class SearchEvent extends jdk.jfr.Event {
+
+        @jdk.jfr.Label("Depth")
+        int depth;
+
+        @jdk.jfr.Label("Nodes")
+        long nodes;
+
+        @jdk.jfr.Label("Cutoffs")
+        long cutoffs;
+
+        @jdk.jfr.Label("Hash Probes")
+        long hashProbes;
+
+        @jdk.jfr.Label("Hash Hits")
+        long hashHits;
+
+    }
+
+    /** Score of a position in which the current player has been checkmated, negated. */
+    public static final int MATE_SCORE = 32000;
+    /** Deepest iteration a search will start. */
+    public static final int MAX_DEPTH = 64;
+
+    private static final int INFINITY = MATE_SCORE + 1;
+    private static final int CHECK_INTERVAL = 1023;
+    private static final int HASH_MOVE_ORDER = 1 << 24;
+    private static final int CAPTURE_ORDER = 1 << 20;
+    private static final int HISTORY_LIMIT = 1 << 16;
+
+    private final TranspositionTable table;
+    private final Evaluator evaluator;
+    private final int[][] historyScores;
+    private Tablebase tablebase;
+    private SearchTrace trace;
+    private volatile boolean stopped;
+    private int multiPv;
+    private long nodes;
+    private long cutoffs;
+    private long hashProbes;
+    private long hashHits;
+    private int completedDepth;
+    private long nodeLimit;
+    private long startTime;
+    private volatile long deadline;
+    private volatile long iterationDeadline;
+
+    /**
+     * Creates a search with a transposition table and evaluator of the default sizes.
+     */
+    public Search() {
+        this(new TranspositionTable(), new Evaluator());
+    }
+
+    /**
+     * Creates a search that uses the specified transposition table and evaluator. Both keep their
+     * contents between searches, so later searches of related positions warm up faster.
+     *
+     * @param table     the transposition table to use
+     * @param evaluator the evaluator to use
+     */
+    public Search(TranspositionTable table, Evaluator evaluator) {
+        this.table = table;
+        this.evaluator = evaluator;
+        historyScores = new int[64][64];
+        multiPv = 1;
+    }
+
+    /**
+     * Sets the number of best lines to search and report. Each completed iteration then reports
+     * one {@link Info} per line, best first. Lines past the first only cost the extra nodes needed
+     * to prove their scores exactly.
+     *
+     * @param lines the number of lines, at least <code>1</code>
+     */
+    public void setMultiPv(int lines) {
+        multiPv = Math.max(1, lines);
+    }
+
+    /**
+     * Returns the number of best lines searched and reported.
+     *
+     * @return the number of lines
+     */
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    /**
+     * Sets the endgame tables to probe. Positions found in them are scored without a search, and
+     * a search that starts in one picks the move that the tables give, reporting it at once.
+     *
+     * @param tablebase the tables, or <code>null</code> to probe none
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Returns the endgame tables probed by this search.
+     *
+     * @return the tables, or <code>null</code> if none are probed
+     */
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * Sets the trace that records the nodes visited by the following searches. Nothing is
+     * recorded unless tracing is on; see {@link SearchTrace#ENABLED}.
+     *
+     * @param trace the trace, or <code>null</code> to record nothing
+     */
+    public void setTrace(SearchTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Returns the trace that records the nodes visited by this search.
+     *
+     * @return the trace, or <code>null</code> if none is set
+     */
+    public SearchTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Searches the specified board for the current player's best move. Returns when the limits
+     * are reached, a forced mate is found, or {@link #stop()} is called.
+     *
+     * @param board    the position to search; restored to its original state on return
+     * @param limits   the limits of the search
+     * @param listener receives progress after each completed iteration; can be <code>null</code>
+     * @return the best move found or <code>null</code> if the current player has no legal moves
+     */
+    public Move search(Board board, Limits limits, Consumer<Info> listener) {
+        var event = new SearchEvent();
+        event.begin();
+        cutoffs = 0;
+        hashProbes = 0;
+        hashHits = 0;
+        completedDepth = 0;
+        try {
+            return deepen(board, limits, listener);
+        } finally {
+            if (Metrics.ENABLED) {
+                Metrics.Counter.SEARCHES.increment();
+                Metrics.Counter.SEARCH_NODES.add(nodes);
+                Metrics.Counter.SEARCH_DEPTH.add(completedDepth);
+                Metrics.Counter.SEARCH_CUTOFFS.add(cutoffs);
+                Metrics.Counter.HASH_PROBES.add(hashProbes);
+                Metrics.Counter.HASH_HITS.add(hashHits);
+            }
+            if (event.shouldCommit()) {
+                event.depth = completedDepth;
+                event.nodes = nodes;
+                event.cutoffs = cutoffs;
+                event.hashProbes = hashProbes;
+                event.hashHits = hashHits;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Searches deeper and deeper until the limits are reached.
+     *
+     * @param board    the position to search; restored to its original state on return
+     * @param limits   the limits of the search
+     * @param listener receives progress after each completed iteration; can be <code>null</code>
+     * @return the best move found or <code>null</code> if the current player has no legal moves
+     */
+    private Move deepen(Board board, Limits limits, Consumer<Info> listener) {
+        stopped = false;
+        nodes = 0;
+        startTime = System.nanoTime();
+        deadline = limits.getMillis() > 0 ? startTime + limits.getMillis() * 1_000_000 : Long.MAX_VALUE;
+        iterationDeadline = limits.getMillis() > 0 ? startTime + limits.getMillis() * 500_000
+                                                   : Long.MAX_VALUE;
+        nodeLimit = limits.getNodes() > 0 ? limits.getNodes() : Long.MAX_VALUE;
+        for (int[] scores: historyScores) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] /= 2;
+            }
+        }
+
+        List<Move> moves = board.getLegalMoves();
+        if (moves.isEmpty()) {
+            return null;
+        }
+        if (tablebase != null && tablebase.probe(board) != Tablebase.UNKNOWN) {
+            Move move = resolve(board, listener);
+            if (move != null) {
+                return move;
+            }
+        }
+        Move best = moves.get(0);
+        int lines = Math.min(multiPv, moves.size());
+        int maxDepth = limits.getDepth() > 0 ? Math.min(limits.getDepth(), MAX_DEPTH) : MAX_DEPTH;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            order(board, moves, best);
+            Move iterationBest = null;
+            int alpha = -INFINITY;
+            // Scores of the best lines so far, best first; a move only needs an exact score if it
+            // beats the worst of them
+            int[] bestScores = new int[lines];
+            java.util.Arrays.fill(bestScores, -INFINITY);
+            var scores = new java.util.HashMap<Move, Integer>();
+            for (Move move: moves) {
+                if (SearchTrace.ENABLED && trace != null) {
+                    trace.enter(1, move);
+                }
+                board.makeMove(move);
+                int score = -alphaBeta(board, depth - 1, -INFINITY, -bestScores[lines - 1], 1);
+                board.undoMove();
+                if (stopped) {
+                    break;
+                }
+                scores.put(move, score);
+                int rank = lines - 1;
+                if (score > bestScores[rank]) {
+                    while (rank > 0 && score > bestScores[rank - 1]) {
+                        bestScores[rank] = bestScores[rank - 1];
+                        rank--;
+                    }
+                    bestScores[rank] = score;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    iterationBest = move;
+                }
+            }
+            if (iterationBest != null) {
+                best = iterationBest;
+            }
+            traced(0, depth, -INFINITY, INFINITY, alpha,
+                   stopped ? SearchTrace.STOPPED : SearchTrace.ROOT);
+            if (stopped) {
+                break;
+            }
+            table.store(board.getKey(), best, alpha, depth, TranspositionTable.EXACT);
+            completedDepth = depth;
+            if (listener != null) {
+                listener.accept(new Info(depth, alpha, nodes, elapsedMillis(),
+                                         principalVariation(board, depth), table.getPermilleFull()));
+                if (lines > 1) {
+                    reportOtherLines(board, depth, best, scores, lines, listener);
+                }
+            }
+            // Another iteration is unlikely to finish if half the time is gone
+            if (Math.abs(alpha) > MATE_SCORE - depth || System.nanoTime() > iterationDeadline) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stops the search in progress, if any, as soon as possible. Can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Gives the search in progress a time limit counted from now, as if it had been started now
+     * with that limit. A search started without a time limit, such as one pondering the
+     * opponent's expected move, becomes a timed one and keeps everything it has searched so far.
+     * Has no effect on a search that has not started yet. Can be called from any thread.
+     *
+     * @param millis the time left, in milliseconds
+     */
+    public void setTimeLimit(long millis) {
+        long now = System.nanoTime();
+        iterationDeadline = now + millis * 500_000;
+        deadline = now + millis * 1_000_000;
+    }
+
+    /**
+     * Determines if the last search was stopped before completing its last iteration.
+     *
+     * @return <code>true</code> if the search was stopped or ran out of time or nodes
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the number of nodes visited by the last search.
+     *
+     * @return the node count
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the transposition table used by this search.
+     *
+     * @return the transposition table
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Returns the evaluator used by this search.
+     *
+     * @return the evaluator
+     */
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * Scores a position with the quiescence search alone, resolving captures and promotions before
+     * evaluating. {@link Mcts} uses it to score the leaves of its tree. Resets the node count and
+     * lifts the limits of the last search.
+     *
+     * @param board the position to score
+     * @return the score in centipawns from the current player's point of view
+     */
+    int quiescence(Board board) {
+        stopped = false;
+        nodes = 0;
+        nodeLimit = Long.MAX_VALUE;
+        deadline = Long.MAX_VALUE;
+        return quiesce(board, -INFINITY, INFINITY, 0);
+    }
+
+    /**
+     * Plays out a position found in the endgame tables, choosing at every ply the move that the
+     * tables score best, and reports the line as a single iteration.
+     *
+     * @param board    the position; restored to its original state on return
+     * @param listener receives the line; can be <code>null</code>
+     * @return the best move or <code>null</code> if no move leads to a position in the tables
+     */
+    private Move resolve(Board board, Consumer<Info> listener) {
+        int score = tablebase.probe(board);
+        var line = new java.util.ArrayList<Move>();
+        for (Move move; line.size() < MAX_DEPTH && (move = tablebaseMove(board)) != null; ) {
+            line.add(move);
+            board.makeMove(move);
+            // A draw has no line to follow
+            if (score == 0) {
+                break;
+            }
+        }
+        for (int i = 0; i < line.size(); i++) {
+            board.undoMove();
+        }
+        if (line.isEmpty()) {
+            return null;
+        } else if (listener != null) {
+            listener.accept(new Info(line.size(), score, nodes, elapsedMillis(), line,
+                                     table.getPermilleFull()));
+        }
+        return line.get(0);
+    }
+
+    /**
+     * Finds the move that the endgame tables score best.
+     *
+     * @param board the position, in the tables
+     * @return the best move or <code>null</code> if no legal move leads to a position in the
+     *         tables
+     */
+    private Move tablebaseMove(Board board) {
+        Move best = null;
+        int bestScore = -INFINITY;
+        for (Move move: board.getLegalMoves()) {
+            board.makeMove(move);
+            int score = tablebase.probe(board);
+            board.undoMove();
+            nodes++;
+            // One ply further from the mate than the position after the move
+            score = score == Tablebase.UNKNOWN ? -INFINITY : -score + Integer.signum(score);
+            if (score > bestScore) {
+                bestScore = score;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches a position to a fixed depth.
+     *
+     * @param board the position to search
+     * @param depth the remaining depth in plies
+     * @param alpha the score the current player is already guaranteed
+     * @param beta  the score the opponent is already guaranteed, negated
+     * @param ply   the distance from the root
+     * @return the score of the position from the current player's point of view
+     */
+    private int alphaBeta(Board board, int depth, int alpha, int beta, int ply) {
+        if (board.getRepetitions() > 0) {
+            return traced(ply, depth, alpha, beta, 0, SearchTrace.REPETITION);
+        }
+        if (depth <= 0) {
+            return quiesce(board, alpha, beta, ply);
+        }
+        if (countNode()) {
+            return traced(ply, depth, alpha, beta, 0, SearchTrace.STOPPED);
+        }
+        if (tablebase != null) {
+            int score = tablebase.probe(board);
+            if (score != Tablebase.UNKNOWN) {
+                return traced(ply, depth, alpha, beta, fromTable(score, ply),
+                              SearchTrace.TABLEBASE);
+            }
+        }
+
+        Move hashMove = null;
+        int slot = table.probe(board.getKey());
+        hashProbes++;
+        if (slot != -1) {
+            hashHits++;
+            hashMove = table.getMove(slot);
+            if (table.getDepth(slot) >= depth) {
+                int score = fromTable(table.getScore(slot), ply);
+                int bound = table.getBound(slot);
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER_BOUND && score >= beta
+                        || bound == TranspositionTable.UPPER_BOUND && score <= alpha) {
+                    return traced(ply, depth, alpha, beta, score, SearchTrace.HASH);
+                }
+            }
+        }
+
+        List<Move> moves = board.getLegalMoves();
+        if (moves.isEmpty()) {
+            return traced(ply, depth, alpha, beta, board.isInCheck() ? -MATE_SCORE + ply : 0,
+                          SearchTrace.TERMINAL);
+        }
+        if (board.getHalfmoveClock() >= 100) {
+            return traced(ply, depth, alpha, beta, 0, SearchTrace.FIFTY_MOVE);
+        }
+
+        order(board, moves, hashMove);
+        int originalAlpha = alpha, bestScore = -INFINITY;
+        Move bestMove = null;
+        for (Move move: moves) {
+            boolean quiet = !isCapture(board, move) && move.getPromotion() == null;
+            if (SearchTrace.ENABLED && trace != null) {
+                trace.enter(ply + 1, move);
+            }
+            board.makeMove(move);
+            int score = -alphaBeta(board, depth - 1, -beta, -alpha, ply + 1);
+            board.undoMove();
+            if (stopped) {
+                return traced(ply, depth, originalAlpha, beta, 0, SearchTrace.STOPPED);
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                cutoffs++;
+                if (quiet) {
+                    int[] scores = historyScores[square(move.getFrom())];
+                    scores[square(move.getTo())] = Math.min(HISTORY_LIMIT,
+                                                            scores[square(move.getTo())] + depth * depth);
+                }
+                break;
+            }
+        }
+
+        int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                  : bestScore >= beta ? TranspositionTable.LOWER_BOUND
+                  : TranspositionTable.EXACT;
+        table.store(board.getKey(), bestMove, toTable(bestScore, ply), depth, bound);
+        return traced(ply, depth, originalAlpha, beta, bestScore,
+                      bestScore >= beta ? SearchTrace.BETA : SearchTrace.SEARCHED);
+    }
+
+    /**
+     * Searches captures and promotions until the position is quiet, so that the static evaluation
+     * is never taken in the middle of an exchange.
+     *
+     * @param board the position to search
+     * @param alpha the score the current player is already guaranteed
+     * @param beta  the score the opponent is already guaranteed, negated
+     * @param ply   the distance from the root
+     * @return the score of the position from the current player's point of view
+     */
+    private int quiesce(Board board, int alpha, int beta, int ply) {
+        if (countNode()) {
+            return traced(ply, 0, alpha, beta, 0, SearchTrace.STOPPED);
+        }
+        int standPat = evaluator.evaluate(board);
+        if (standPat >= beta) {
+            cutoffs++;
+            return traced(ply, 0, alpha, beta, standPat, SearchTrace.STAND_PAT);
+        }
+        int originalAlpha = alpha;
+        alpha = Math.max(alpha, standPat);
+
+        List<Move> moves = board.getLegalMoves();
+        moves.removeIf(move -> !isCapture(board, move) && move.getPromotion() == null);
+        order(board, moves, null);
+        for (Move move: moves) {
+            if (SearchTrace.ENABLED && trace != null) {
+                trace.enter(ply + 1, move);
+            }
+            board.makeMove(move);
+            int score = -quiesce(board, -beta, -alpha, ply + 1);
+            board.undoMove();
+            if (stopped) {
+                return traced(ply, 0, originalAlpha, beta, 0, SearchTrace.STOPPED);
+            }
+            if (score >= beta) {
+                cutoffs++;
+                return traced(ply, 0, originalAlpha, beta, score, SearchTrace.BETA);
+            }
+            alpha = Math.max(alpha, score);
+        }
+        return traced(ply, 0, originalAlpha, beta, alpha, SearchTrace.SEARCHED);
+    }
+
+    /**
+     * Sorts moves so that the most promising ones are searched first.
+     *
+     * @param board    the position the moves belong to
+     * @param moves    the moves to sort
+     * @param hashMove the best move according to the transposition table; can be <code>null</code>
+     */
+    private void order(Board board, List<Move> moves, Move hashMove) {
+        long[] keys = new long[moves.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Move move = moves.get(i);
+            long priority;
+            if (move.equals(hashMove)) {
+                priority = HASH_MOVE_ORDER;
+            } else if (isCapture(board, move) || move.getPromotion() != null) {
+                int victim = board.isSquareEmpty(move.getTo())
+                           ? isCapture(board, move) ? Evaluator.value(Pawn.class) : 0
+                           : Evaluator.value(board.getPiece(move.getTo()));
+                int promotion = move.getPromotion() == null ? 0 : Evaluator.value(move.getPromotion());
+                priority = CAPTURE_ORDER + (victim + promotion) * 8
+                         - Evaluator.value(board.getPiece(move.getFrom())) / 100;
+            } else {
+                priority = historyScores[square(move.getFrom())][square(move.getTo())];
+            }
+            keys[i] = -priority << 8 | i;
+        }
+        java.util.Arrays.sort(keys);
+        Move[] sorted = moves.toArray(new Move[0]);
+        for (int i = 0; i < keys.length; i++) {
+            moves.set(i, sorted[(int) (keys[i] & 0xFF)]);
+        }
+    }
+
+    /**
+     * Reports the lines after the best one at the end of an iteration, in order of score.
+     *
+     * @param board    the root position
+     * @param depth    the depth completed
+     * @param best     the best move, already reported
+     * @param scores   the scores of the root moves searched in the iteration
+     * @param lines    the number of lines to report, including the best one
+     * @param listener receives the reports
+     */
+    private void reportOtherLines(Board board, int depth, Move best,
+                                  java.util.Map<Move, Integer> scores, int lines,
+                                  Consumer<Info> listener) {
+        var others = new java.util.ArrayList<>(scores.keySet());
+        others.remove(best);
+        others.sort((a, b) -> Integer.compare(scores.get(b), scores.get(a)));
+        for (int line = 2; line <= lines && line - 2 < others.size(); line++) {
+            Move move = others.get(line - 2);
+            board.makeMove(move);
+            var variation = new java.util.ArrayList<Move>();
+            variation.add(move);
+            variation.addAll(principalVariation(board, depth - 1));
+            board.undoMove();
+            listener.accept(new Info(depth, scores.get(move), nodes, elapsedMillis(), variation,
+                                     table.getPermilleFull(), line));
+        }
+    }
+
+    /**
+     * Follows the best moves stored in the transposition table from the specified position.
+     *
+     * @param board the root position
+     * @param depth the maximum length of the line
+     * @return the principal variation
+     */
+    private List<Move> principalVariation(Board board, int depth) {
+        var line = new java.util.ArrayList<Move>();
+        var seen = new java.util.HashSet<Long>();
+        while (line.size() < depth && seen.add(board.getKey())) {
+            int slot = table.probe(board.getKey());
+            Move move = slot == -1 ? null : table.getMove(slot);
+            if (move == null || !board.getLegalMoves().contains(move)) {
+                break;
+            }
+            board.makeMove(move);
+            line.add(move);
+        }
+        for (int i = 0; i < line.size(); i++) {
+            board.undoMove();
+        }
+        return line;
+    }
+
+    /**
+     * Counts a visited node and checks the limits of the search every so often.
+     *
+     * @return <code>true</code> if the search has to stop
+     */
+    private boolean countNode() {
+        if ((++nodes & CHECK_INTERVAL) == 0
+                && (nodes >= nodeLimit || System.nanoTime() >= deadline)) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Records a node the search is leaving in the trace, if tracing is on and a trace is set.
+     *
+     * @param ply    the node's distance from the root
+     * @param depth  the node's remaining depth, <code>0</code> in the quiescence search
+     * @param alpha  the lower bound of the node's window
+     * @param beta   the upper bound of the node's window
+     * @param score  the node's score
+     * @param reason why the search left the node
+     * @return <code>score</code>
+     */
+    private int traced(int ply, int depth, int alpha, int beta, int score, int reason) {
+        if (SearchTrace.ENABLED && trace != null) {
+            trace.record(ply, depth, alpha, beta, score, reason);
+        }
+        return score;
+    }
+
+    /**
+     * Returns the time elapsed since the search started.
+     *
+     * @return the time in milliseconds
+     */
+    private long elapsedMillis() {
+        return (System.nanoTime() - startTime) / 1_000_000;
+    }
+
+    /**
+     * Converts a mate score relative to the current node into one relative to the stored
+     * position, so that it stays valid when reached through a different path.
+     *
+     * @param score the score
+     * @param ply   the distance from the root
+     * @return the score to store
+     */
+    private static int toTable(int score, int ply) {
+        return score > MATE_SCORE - MAX_DEPTH * 2 ? score + ply
+             : score < -MATE_SCORE + MAX_DEPTH * 2 ? score - ply
+             : score;
+    }
+
+    /**
+     * Reverses {@link #toTable(int, int)}.
+     *
+     * @param score the stored score
+     * @param ply   the distance from the root
+     * @return the score relative to the current node
+     */
+    private static int fromTable(int score, int ply) {
+        return score > MATE_SCORE - MAX_DEPTH * 2 ? score - ply
+             : score < -MATE_SCORE + MAX_DEPTH * 2 ? score + ply
+             : score;
+    }
+
+    /**
+     * Determines if a move captures a piece, en passant included.
+     *
+     * @param board the position the move belongs to
+     * @param move  the move
+     * @return <code>true</code> if the move captures
+     */
+    private static boolean isCapture(Board board, Move move) {
+        return !board.isSquareEmpty(move.getTo())
+            || board.getPiece(move.getFrom()).getClass() == Pawn.class
+               && move.getFrom().getFile() != move.getTo().getFile();
+    }
+
+    /**
+     * Maps a position to its square index.
+     *
+     * @param position the position to map
+     * @return <code>rank * 8 + file</code>
+     */
+    private static int square(Position position) {
+        return position.getRank() * 8 + position.getFile();
+    }
+
+}
\ No newline at end of file
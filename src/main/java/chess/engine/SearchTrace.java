@@ -0,0 +1,350 @@
+package chess.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import chess.Move;
+
+/**
+ * A record of the nodes visited by a {@link Search}, kept in a ring buffer allocated up front so
+ * that tracing never allocates while searching. Once the buffer is full, every new node
+ * overwrites the oldest one. A node is recorded when the search leaves it, with the move that
+ * led to it, its distance from the root, its remaining depth, the window it was searched with,
+ * its score and the reason the search left it. The nodes are therefore in post-order: every
+ * node comes after its children, and the children of a node at ply <code>p</code> are the nodes
+ * at ply <code>p + 1</code> recorded since the last node at ply <code>p</code> or less.
+ * <br>
+ * Tracing is off unless the JVM is started with <code>-Dchess.trace=true</code>; the flag is a
+ * constant, so the just-in-time compiler drops the tracing code from the search entirely when it
+ * is off, even if a trace is set. A trace is not thread-safe and belongs to a single search.
+ * <br>
+ * The file written by {@link #write(Path)} is a header of an <code>int</code> magic number,
+ * an <code>int</code> version, the <code>long</code> number of nodes in the file and the
+ * <code>long</code> number of nodes recorded, overwritten ones included, followed by one
+ * {@value #RECORD_BYTES}-byte record per node, oldest first: the <code>short</code> move as
+ * packed by {@link Move#pack()}, or <code>0</code> at the root, the unsigned <code>byte</code>
+ * ply, the <code>byte</code> depth, <code>0</code> in the quiescence search, the
+ * <code>byte</code> reason, and the <code>int</code> alpha, beta and score, from the point of
+ * view of the player to move at the node.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see tuning.TraceSummary
+ */
+public class SearchTrace {
+
+    /**
+     * Whether tracing is on, as set by the <code>chess.trace</code> system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("chess.trace");
+
+    /** The node was searched through; its score is exact or an upper bound. */
+    public static final int SEARCHED   = 0;
+    /** A move scored at least beta, so the node's other moves were skipped. */
+    public static final int BETA       = 1;
+    /** The transposition table held a score good enough for the window. */
+    public static final int HASH       = 2;
+    /** The static evaluation of a quiescence node scored at least beta. */
+    public static final int STAND_PAT  = 3;
+    /** The endgame tables scored the node. */
+    public static final int TABLEBASE  = 4;
+    /** The current player was checkmated or stalemated. */
+    public static final int TERMINAL   = 5;
+    /** The node is drawn by the fifty-move rule. */
+    public static final int FIFTY_MOVE = 6;
+    /** The search ran out of time or nodes, or was stopped; the score is meaningless. */
+    public static final int STOPPED    = 7;
+    /** An iteration of the search at the root. */
+    public static final int ROOT       = 8;
+    /** The position repeats one from the game or the line searched, so it is drawn. */
+    public static final int REPETITION = 9;
+
+    /** The number of bytes of every node in a trace file. */
+    public static final int RECORD_BYTES = 17;
+
+    private static final String[] REASONS = {"searched", "beta", "hash", "stand pat", "tablebase",
+                                             "terminal", "fifty moves", "stopped", "root",
+                                             "repetition"};
+    private static final int MAGIC     = 0x53545243; // "STRC"
+    private static final int VERSION   = 1;
+    private static final int LINE_MASK = 255;
+
+    private final int mask;
+    private final short[] moves;
+    private final byte[] plies;
+    private final byte[] depths;
+    private final byte[] reasons;
+    private final int[] alphas;
+    private final int[] betas;
+    private final int[] scores;
+    private final short[] line;
+    private long recorded;
+    private long overwritten; // Nodes lost before the file a trace was read from
+
+    /**
+     * Creates an empty trace.
+     *
+     * @param capacity the number of nodes kept, rounded up to a power of two
+     * @throws IllegalArgumentException if <code>capacity</code> is not positive or above
+     *                                  <code>2^30</code>
+     */
+    public SearchTrace(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity) << (Integer.bitCount(capacity) > 1 ? 1 : 0);
+        mask = size - 1;
+        moves = new short[size];
+        plies = new byte[size];
+        depths = new byte[size];
+        reasons = new byte[size];
+        alphas = new int[size];
+        betas = new int[size];
+        scores = new int[size];
+        line = new short[LINE_MASK + 1];
+    }
+
+    /**
+     * Notes the move about to be searched at some distance from the root, so that the node it
+     * leads to is recorded with it.
+     *
+     * @param ply  the distance from the root of the node the move leads to
+     * @param move the move
+     */
+    void enter(int ply, Move move) {
+        line[ply & LINE_MASK] = (short) move.pack();
+    }
+
+    /**
+     * Records a node the search is leaving, overwriting the oldest node if the trace is full.
+     *
+     * @param ply    the node's distance from the root
+     * @param depth  the node's remaining depth, <code>0</code> in the quiescence search
+     * @param alpha  the lower bound of the node's window
+     * @param beta   the upper bound of the node's window
+     * @param score  the node's score
+     * @param reason why the search left the node, such as {@link #BETA}
+     */
+    void record(int ply, int depth, int alpha, int beta, int score, int reason) {
+        int i = (int) recorded++ & mask;
+        moves[i] = ply == 0 ? 0 : line[ply & LINE_MASK];
+        plies[i] = (byte) ply;
+        depths[i] = (byte) depth;
+        reasons[i] = (byte) reason;
+        alphas[i] = alpha;
+        betas[i] = beta;
+        scores[i] = score;
+    }
+
+    /**
+     * Forgets every node recorded.
+     */
+    public void clear() {
+        recorded = 0;
+        overwritten = 0;
+    }
+
+    /**
+     * Returns the number of nodes kept.
+     *
+     * @return the number of nodes, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(recorded, mask + 1L);
+    }
+
+    /**
+     * Returns the number of nodes recorded since the trace was created or cleared, including the
+     * ones overwritten.
+     *
+     * @return the number of nodes recorded
+     */
+    public long getRecorded() {
+        return overwritten + recorded;
+    }
+
+    /**
+     * Returns the move that led to a node.
+     *
+     * @param node the node's index, from <code>0</code> for the oldest node kept to
+     *             <code>size() - 1</code>
+     * @return the move or <code>null</code> at the root
+     */
+    public Move getMove(int node) {
+        return Move.unpack(moves[slot(node)]);
+    }
+
+    /**
+     * Returns a node's distance from the root.
+     *
+     * @param node the node's index
+     * @return the ply
+     */
+    public int getPly(int node) {
+        return plies[slot(node)] & 0xff;
+    }
+
+    /**
+     * Returns a node's remaining depth.
+     *
+     * @param node the node's index
+     * @return the depth, <code>0</code> in the quiescence search
+     */
+    public int getDepth(int node) {
+        return depths[slot(node)];
+    }
+
+    /**
+     * Returns the lower bound of the window a node was searched with.
+     *
+     * @param node the node's index
+     * @return alpha
+     */
+    public int getAlpha(int node) {
+        return alphas[slot(node)];
+    }
+
+    /**
+     * Returns the upper bound of the window a node was searched with.
+     *
+     * @param node the node's index
+     * @return beta
+     */
+    public int getBeta(int node) {
+        return betas[slot(node)];
+    }
+
+    /**
+     * Returns a node's score.
+     *
+     * @param node the node's index
+     * @return the score from the point of view of the player to move at the node
+     */
+    public int getScore(int node) {
+        return scores[slot(node)];
+    }
+
+    /**
+     * Returns the reason the search left a node.
+     *
+     * @param node the node's index
+     * @return the reason, such as {@link #BETA}
+     */
+    public int getReason(int node) {
+        return reasons[slot(node)];
+    }
+
+    /**
+     * Returns the name of a reason for leaving a node.
+     *
+     * @param reason the reason, such as {@link #BETA}
+     * @return the name, such as "beta"
+     */
+    public static String reasonName(int reason) {
+        return REASONS[reason];
+    }
+
+    /**
+     * Finds the parent of every node kept. Nodes whose parent was overwritten or not recorded
+     * yet, such as the roots, have none.
+     *
+     * @return the index of every node's parent, or <code>-1</code> if it has none
+     */
+    public int[] parents() {
+        int size = size();
+        int[] parents = new int[size];
+        java.util.Arrays.fill(parents, -1);
+        // Nodes waiting for their parent, by ply, as a linked list through next
+        int[] first = new int[LINE_MASK + 2];
+        int[] next = new int[size];
+        java.util.Arrays.fill(first, -1);
+        int deepest = 0;
+        for (int node = 0; node < size; node++) {
+            int ply = getPly(node);
+            for (int child = first[ply + 1]; child != -1; child = next[child]) {
+                parents[child] = node;
+            }
+            // Deeper nodes still waiting lost their parent to the start of the buffer
+            for (int orphans = ply + 1; orphans <= deepest; orphans++) {
+                first[orphans] = -1;
+            }
+            deepest = ply;
+            next[node] = first[ply];
+            first[ply] = node;
+        }
+        return parents;
+    }
+
+    /**
+     * Writes the nodes kept, oldest first.
+     *
+     * @param path the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        try (var out = new DataOutputStream(new java.io.BufferedOutputStream(
+                Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size());
+            out.writeLong(getRecorded());
+            for (int node = 0; node < size(); node++) {
+                int slot = slot(node);
+                out.writeShort(moves[slot]);
+                out.writeByte(plies[slot]);
+                out.writeByte(depths[slot]);
+                out.writeByte(reasons[slot]);
+                out.writeInt(alphas[slot]);
+                out.writeInt(betas[slot]);
+                out.writeInt(scores[slot]);
+            }
+        }
+    }
+
+    /**
+     * Reads a trace written by {@link #write(Path)}.
+     *
+     * @param path the file
+     * @return the trace, holding the file's nodes
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public static SearchTrace read(Path path) throws IOException {
+        try (var in = new DataInputStream(new java.io.BufferedInputStream(
+                Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a search trace: " + path);
+            }
+            long size = in.readLong();
+            long recorded = in.readLong();
+            if (size > 1 << 30 || size > recorded) {
+                throw new IOException("Invalid search trace: " + path);
+            }
+            var trace = new SearchTrace((int) Math.max(size, 1));
+            for (int node = 0; node < size; node++) {
+                trace.moves[node] = in.readShort();
+                trace.plies[node] = in.readByte();
+                trace.depths[node] = in.readByte();
+                trace.reasons[node] = in.readByte();
+                trace.alphas[node] = in.readInt();
+                trace.betas[node] = in.readInt();
+                trace.scores[node] = in.readInt();
+            }
+            trace.recorded = size;
+            trace.overwritten = recorded - size;
+            return trace;
+        }
+    }
+
+    /**
+     * Finds where a node is kept in the buffer.
+     *
+     * @param node the node's index, from <code>0</code> for the oldest node kept
+     * @return the node's slot
+     */
+    private int slot(int node) {
+        return (int) (recorded - size() + node) & mask;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,580 @@
+package chess.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import chess.Board;
+import chess.pieces.Bishop;
+import chess.pieces.Color;
+import chess.pieces.King;
+import chess.pieces.Knight;
+import chess.pieces.Pawn;
+import chess.pieces.Piece;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+
+/**
+ * Endgame tablebases: the exact outcome and distance to mate of every position of small endgames
+ * in which one side has only its king. The tables are built by {@link TablebaseGenerator} and
+ * probed in constant time with {@link #probe(Board)}, so a search that reaches a known endgame
+ * does not need to search it.
+ * <br>
+ * Each table holds one byte per position. Positions are numbered by a perfect index: the side to
+ * move, the stronger king's square, and the squares of the other king and of the pieces, in that
+ * order. Symmetry is used to keep the stronger king in the a1-d1-d4 triangle, or on the queen's
+ * side of the board if there are pawns, so a table has 10 or 32 entries per square of the other
+ * pieces instead of 64. The stronger side is stored as white; positions in which black is the
+ * stronger side are mirrored.
+ * <br>
+ * In a file, the table is split into blocks of {@value #BLOCK_ENTRIES} entries, each compressed
+ * with Deflate and located through an offset table in the header. Files are memory-mapped, and a
+ * probe inflates at most one block, which each thread keeps for its next probes.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see TablebaseGenerator
+ */
+public class Tablebase {
+
+    /**
+     * The endgames with a table. The stronger side has a king and the listed pieces; the other
+     * side has a king only.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Endgame {
+
+        /** King and queen against king. */
+        KQK(List.of(Queen.class)),
+        /** King and rook against king. */
+        KRK(List.of(Rook.class)),
+        /** King and pawn against king. */
+        KPK(List.of(Pawn.class)),
+        /** King, bishop and knight against king. */
+        KBNK(List.of(Bishop.class, Knight.class));
+
+        private final List<Class<? extends Piece>> pieces;
+        private final int kingSquares;
+
+        /**
+         * Creates an endgame.
+         *
+         * @param pieces the stronger side's pieces besides its king
+         */
+        Endgame(List<Class<? extends Piece>> pieces) {
+            this.pieces = pieces;
+            kingSquares = pieces.contains(Pawn.class) ? 32 : 10;
+        }
+
+        /**
+         * Returns the stronger side's pieces besides its king.
+         *
+         * @return the types of the pieces, in the order their squares are indexed
+         */
+        public List<Class<? extends Piece>> getPieces() {
+            return pieces;
+        }
+
+        /**
+         * Returns the number of entries in this endgame's table, including the unused indices of
+         * impossible positions.
+         *
+         * @return the table size
+         */
+        public int size() {
+            return 2 * kingSquares << 6 * (pieces.size() + 1);
+        }
+
+        /**
+         * Returns the name of this endgame's table file.
+         *
+         * @return the file name, such as <code>kqk.tb</code>
+         */
+        public String getFileName() {
+            return name().toLowerCase() + ".tb";
+        }
+
+        /**
+         * Determines if a side's pieces are those of the stronger side of this endgame.
+         *
+         * @param pieces the pieces, including the king
+         * @return <code>true</code> if the pieces match
+         */
+        boolean matches(List<Piece> pieces) {
+            if (pieces.size() != this.pieces.size() + 1) {
+                return false;
+            }
+            for (Class<? extends Piece> type: this.pieces) {
+                if (pieces.stream().noneMatch(piece -> piece.getClass() == type)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Computes the index of a position. The squares are first rearranged into their
+         * canonical form, the unique one of the position's symmetric forms that is indexed.
+         *
+         * @param turn    <code>0</code> if the stronger side is to move, <code>1</code> otherwise
+         * @param squares the squares of the stronger king, the other king and the pieces, in
+         *                {@link #getPieces()} order, as <code>rank * 8 + file</code> with the
+         *                stronger side's pawns moving to rank <code>0</code>; rearranged
+         * @return the index
+         */
+        int index(int turn, int[] squares) {
+            canonicalize(squares, kingSquares == 32);
+            int king = kingSquares == 32 ? (squares[0] >>> 3) * 4 + (squares[0] & 7)
+                                         : TRIANGLE_INDICES[squares[0]];
+            int index = turn * kingSquares + king;
+            for (int i = 1; i < squares.length; i++) {
+                index = index << 6 | squares[i];
+            }
+            return index;
+        }
+
+        /**
+         * Computes the position of an index, the reverse of {@link #index(int, int[])}.
+         *
+         * @param index   the index
+         * @param squares receives the squares of the position
+         * @return the side to move, <code>0</code> for the stronger side
+         */
+        int decode(int index, int[] squares) {
+            for (int i = squares.length - 1; i > 0; i--) {
+                squares[i] = index & 63;
+                index >>>= 6;
+            }
+            int king = index % kingSquares;
+            squares[0] = kingSquares == 32 ? (king / 4) * 8 + king % 4 : TRIANGLE_SQUARES[king];
+            return index / kingSquares;
+        }
+
+        /**
+         * Determines if some squares are in the canonical form that positions are indexed in.
+         *
+         * @param squares the squares of a position
+         * @return <code>true</code> if {@link #index(int, int[])} would not rearrange them
+         */
+        boolean isCanonical(int[] squares) {
+            int[] copy = squares.clone();
+            canonicalize(copy, kingSquares == 32);
+            return java.util.Arrays.equals(copy, squares);
+        }
+
+    }
+
+    /** Result of {@link #probe(Board)} for positions that are not in the tables. */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    /** Number of entries compressed together in a table file. */
+    public static final int BLOCK_ENTRIES = 1024;
+
+    /** Table entry of a draw. A win in n moves is n, and a loss after n moves is -(n + 1). */
+    public static final byte DRAW    = 0;
+    /** Table entry of an index that is not used by a legal position. */
+    public static final byte ILLEGAL = -128;
+
+    static final byte UNSOLVED = -127; // Only while generating
+
+    private static final int MAGIC   = 0x54424c45; // "TBLE"
+    private static final int VERSION = 1;
+    private static final int HEADER  = 24;
+
+    private static final int FLIP_FILE = 1;
+    private static final int FLIP_RANK = 2;
+    private static final int TRANSPOSE = 4;
+    private static final int[] TRIANGLE_SQUARES = {0, 1, 2, 3, 9, 10, 11, 18, 19, 27};
+    private static final int[] TRIANGLE_INDICES = new int[64];
+
+    static {
+        java.util.Arrays.fill(TRIANGLE_INDICES, -1);
+        for (int i = 0; i < TRIANGLE_SQUARES.length; i++) {
+            TRIANGLE_INDICES[TRIANGLE_SQUARES[i]] = i;
+        }
+    }
+
+    /**
+     * Gives access to the entries of a table, in memory or in a file.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private interface Table {
+
+        /**
+         * Returns an entry.
+         *
+         * @param index the position's index
+         * @return the entry
+         */
+        byte get(int index);
+
+    }
+
+    private final java.util.Map<Endgame, Table> tables;
+
+    /**
+     * Creates a tablebase without tables.
+     */
+    public Tablebase() {
+        tables = new java.util.EnumMap<>(Endgame.class);
+    }
+
+    /**
+     * Memory-maps every table file found in a directory.
+     *
+     * @param directory the directory holding the files
+     * @return the tablebase, without the tables whose files are missing
+     * @throws IOException if a file cannot be read or is not a table of its endgame
+     */
+    public static Tablebase load(Path directory) throws IOException {
+        var tablebase = new Tablebase();
+        for (Endgame endgame: Endgame.values()) {
+            Path file = directory.resolve(endgame.getFileName());
+            if (Files.exists(file)) {
+                tablebase.tables.put(endgame, map(file, endgame));
+            }
+        }
+        return tablebase;
+    }
+
+    /**
+     * Writes a table to a file, compressed.
+     *
+     * @param file    the file to write
+     * @param endgame the table's endgame
+     * @param values  the table, as built by {@link TablebaseGenerator}
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Endgame endgame, byte[] values) throws IOException {
+        int blocks = (values.length + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+        var data = new java.io.ByteArrayOutputStream();
+        long[] offsets = new long[blocks + 1];
+        var deflater = new java.util.zip.Deflater(java.util.zip.Deflater.BEST_COMPRESSION);
+        byte[] buffer = new byte[BLOCK_ENTRIES * 2];
+        long start = HEADER + 8L * offsets.length;
+        for (int block = 0; block < blocks; block++) {
+            offsets[block] = start + data.size();
+            int from = block * BLOCK_ENTRIES;
+            deflater.reset();
+            deflater.setInput(values, from, Math.min(BLOCK_ENTRIES, values.length - from));
+            deflater.finish();
+            while (!deflater.finished()) {
+                data.write(buffer, 0, deflater.deflate(buffer));
+            }
+        }
+        deflater.end();
+        offsets[blocks] = start + data.size();
+        try (var out = new java.io.DataOutputStream(new java.io.BufferedOutputStream(
+                Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(endgame.ordinal());
+            out.writeInt(values.length);
+            out.writeInt(BLOCK_ENTRIES);
+            out.writeInt(blocks);
+            for (long offset: offsets) {
+                out.writeLong(offset);
+            }
+            data.writeTo(out);
+        }
+    }
+
+    /**
+     * Adds a table held in memory, replacing any table of the same endgame.
+     *
+     * @param endgame the table's endgame
+     * @param values  the table, as built by {@link TablebaseGenerator}
+     */
+    public void put(Endgame endgame, byte[] values) {
+        tables.put(endgame, index -> values[index]);
+    }
+
+    /**
+     * Determines if this tablebase has the table of an endgame.
+     *
+     * @param endgame the endgame
+     * @return <code>true</code> if the table is loaded
+     */
+    public boolean contains(Endgame endgame) {
+        return tables.containsKey(endgame);
+    }
+
+    /**
+     * Looks up the outcome of a position. Positions with only the two kings, or a king and a
+     * minor piece against a king, are draws without a table. Castling rights and the fifty-move
+     * rule are ignored.
+     *
+     * @param board the position
+     * @return the score from the current player's point of view as {@link Search} reports it:
+     *         <code>Search.MATE_SCORE</code> minus the plies to mate for a win, its negation plus
+     *         the plies for a loss, <code>0</code> for a draw, or {@link #UNKNOWN} if the position
+     *         is not in a loaded table
+     */
+    public int probe(Board board) {
+        List<Piece> white = board.getPieces(Color.WHITE), black = board.getPieces(Color.BLACK);
+        if (white.size() + black.size() > 4 || white.size() > 1 && black.size() > 1) {
+            return UNKNOWN;
+        }
+        Color strong = black.size() == 1 ? Color.WHITE : Color.BLACK;
+        List<Piece> pieces = strong == Color.WHITE ? white : black;
+        Endgame endgame = find(pieces);
+        if (endgame == null) {
+            boolean minor = pieces.size() == 2 && pieces.stream().anyMatch(
+                piece -> piece.getClass() == Bishop.class || piece.getClass() == Knight.class);
+            return pieces.size() == 1 || minor ? 0 : UNKNOWN;
+        }
+        Table table = tables.get(endgame);
+        if (table == null) {
+            return UNKNOWN;
+        }
+        Color weak = strong == Color.WHITE ? Color.BLACK : Color.WHITE;
+        int[] squares = new int[pieces.size() + 1];
+        squares[0] = square(board.getKing(strong), strong);
+        squares[1] = square(board.getKing(weak), strong);
+        for (int i = 0; i < endgame.getPieces().size(); i++) {
+            for (Piece piece: pieces) {
+                if (piece.getClass() == endgame.getPieces().get(i)) {
+                    squares[i + 2] = square(piece, strong);
+                }
+            }
+        }
+        int turn = board.getTurn() == strong ? 0 : 1;
+        return score(table.get(endgame.index(turn, squares)));
+    }
+
+    /**
+     * Lists the endgames whose tables are loaded.
+     *
+     * @return the endgames, such as "tablebase KQK KRK"
+     */
+    @Override
+    public String toString() {
+        var text = new StringBuilder("tablebase");
+        for (Endgame endgame: tables.keySet()) {
+            text.append(' ').append(endgame);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns an entry of a loaded table.
+     *
+     * @param endgame the table's endgame
+     * @param index   the position's index
+     * @return the entry
+     * @throws NullPointerException if the table is not loaded
+     */
+    byte get(Endgame endgame, int index) {
+        return tables.get(endgame).get(index);
+    }
+
+    /**
+     * Returns the entry for a win in the specified number of plies.
+     *
+     * @param plies the plies to mate, odd
+     * @return the entry
+     */
+    static byte win(int plies) {
+        return (byte) ((plies + 1) / 2);
+    }
+
+    /**
+     * Returns the entry for a loss in the specified number of plies.
+     *
+     * @param plies the plies to mate, even; <code>0</code> if checkmated
+     * @return the entry
+     */
+    static byte loss(int plies) {
+        return (byte) -(plies / 2 + 1);
+    }
+
+    /**
+     * Returns the plies to mate of a win or a loss.
+     *
+     * @param entry the entry of a win or a loss
+     * @return the plies
+     */
+    static int plies(byte entry) {
+        return entry > 0 ? entry * 2 - 1 : -entry * 2 - 2;
+    }
+
+    /**
+     * Converts an entry into a score.
+     *
+     * @param entry the entry
+     * @return the score in the form of {@link #probe(Board)}
+     */
+    private static int score(byte entry) {
+        if (entry == DRAW || entry == UNSOLVED) {
+            return 0;
+        } else if (entry == ILLEGAL) {
+            return UNKNOWN;
+        }
+        return entry > 0 ? Search.MATE_SCORE - plies(entry) : -Search.MATE_SCORE + plies(entry);
+    }
+
+    /**
+     * Finds the endgame of the stronger side's pieces.
+     *
+     * @param pieces the stronger side's pieces, including its king
+     * @return the endgame or <code>null</code> if there is no such endgame
+     */
+    private static Endgame find(List<Piece> pieces) {
+        for (Endgame endgame: Endgame.values()) {
+            if (endgame.matches(pieces)) {
+                return endgame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the square of a piece, mirrored if the stronger side is black so that its pawns
+     * move to rank <code>0</code> as white's do.
+     *
+     * @param piece  the piece
+     * @param strong the stronger side
+     * @return the square as <code>rank * 8 + file</code>
+     */
+    private static int square(Piece piece, Color strong) {
+        int rank = piece.getPosition().getRank();
+        return (strong == Color.WHITE ? rank : 7 - rank) * 8 + piece.getPosition().getFile();
+    }
+
+    /**
+     * Rearranges the squares of a position into its canonical form. The stronger king is moved
+     * into the a1-d1-d4 triangle, or onto files <code>a</code> to <code>d</code> if there are
+     * pawns; if it ends up on the diagonal, the form with the lower squares for the other pieces
+     * is chosen.
+     *
+     * @param squares the squares of the stronger king, the other king and the pieces
+     * @param pawns   whether the position has pawns, which rules out all but the left-right
+     *                symmetry
+     */
+    private static void canonicalize(int[] squares, boolean pawns) {
+        int king = squares[0];
+        int symmetry = (king & 7) > 3 ? FLIP_FILE : 0;
+        if (!pawns) {
+            symmetry |= (king >>> 3) > 3 ? FLIP_RANK : 0;
+            king = transform(king, symmetry);
+            if ((king >>> 3) > (king & 7)) {
+                symmetry |= TRANSPOSE;
+            } else if ((king >>> 3) == (king & 7)) {
+                for (int i = 1; i < squares.length; i++) {
+                    int plain = transform(squares[i], symmetry);
+                    int transposed = transform(squares[i], symmetry | TRANSPOSE);
+                    if (plain != transposed) {
+                        symmetry |= transposed < plain ? TRANSPOSE : 0;
+                        break;
+                    }
+                }
+            }
+        }
+        if (symmetry != 0) {
+            for (int i = 0; i < squares.length; i++) {
+                squares[i] = transform(squares[i], symmetry);
+            }
+        }
+    }
+
+    /**
+     * Applies a symmetry of the board to a square.
+     *
+     * @param square   the square
+     * @param symmetry the flips to apply, in the order file, rank, then the transposition
+     * @return the transformed square
+     */
+    private static int transform(int square, int symmetry) {
+        int rank = square >>> 3, file = square & 7;
+        if ((symmetry & FLIP_FILE) != 0) {
+            file = 7 - file;
+        }
+        if ((symmetry & FLIP_RANK) != 0) {
+            rank = 7 - rank;
+        }
+        return (symmetry & TRANSPOSE) != 0 ? file * 8 + rank : rank * 8 + file;
+    }
+
+    /**
+     * Memory-maps a table file.
+     *
+     * @param file    the file
+     * @param endgame the endgame the file must hold
+     * @return the table
+     * @throws IOException if the file cannot be read or holds something else
+     */
+    private static Table map(Path file, Endgame endgame) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != endgame.ordinal() || buffer.getInt(12) != endgame.size()) {
+            throw new IOException("Not a " + endgame + " table: " + file);
+        }
+        int blockEntries = buffer.getInt(16);
+        var blocks = ThreadLocal.withInitial(() -> new InflatedBlock(blockEntries));
+        return index -> blocks.get().get(buffer, index / blockEntries)[index % blockEntries];
+    }
+
+    /**
+     * The block of a table file that a thread inflated last.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class InflatedBlock {
+
+        private final java.util.zip.Inflater inflater;
+        private final byte[] values;
+        private byte[] input;
+        private int block;
+
+        /**
+         * Creates an empty block.
+         *
+         * @param entries the number of entries per block
+         */
+        InflatedBlock(int entries) {
+            inflater = new java.util.zip.Inflater();
+            values = new byte[entries];
+            input = new byte[entries];
+            block = -1;
+        }
+
+        /**
+         * Returns the entries of a block, inflating it unless it is the one inflated last.
+         *
+         * @param buffer the mapped file
+         * @param block  the block's number
+         * @return the block's entries
+         */
+        byte[] get(ByteBuffer buffer, int block) {
+            if (block != this.block) {
+                int start = (int) buffer.getLong(HEADER + 8 * block);
+                int length = (int) buffer.getLong(HEADER + 8 * (block + 1)) - start;
+                if (input.length < length) {
+                    input = new byte[length];
+                }
+                buffer.get(start, input, 0, length);
+                inflater.reset();
+                inflater.setInput(input, 0, length);
+                try {
+                    inflater.inflate(values);
+                } catch (java.util.zip.DataFormatException e) {
+                    throw new IllegalStateException("Corrupt tablebase block " + block, e);
+                }
+                this.block = block;
+            }
+            return values;
+        }
+
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,575 @@
+package chess.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import chess.engine.Tablebase.Endgame;
+import chess.pieces.Bishop;
+import chess.pieces.Knight;
+import chess.pieces.Pawn;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+
+/**
+ * Builds the tables of a {@link Tablebase} by retrograde analysis. The first pass finds the
+ * checkmates and stalemates. Each following pass then starts only from the positions solved by
+ * the one before: an odd pass unmakes the stronger side's moves from the positions lost in
+ * <code>d - 1</code> plies, which gives positions won in <code>d</code>; an even pass unmakes the
+ * king moves from the positions won in <code>d - 1</code> plies, and a predecessor is lost in
+ * <code>d</code> once all of its moves are verified to lead to wins. The positions left unsolved
+ * when the passes run dry are draws.
+ * <br>
+ * Positions are kept as arrays of squares rather than {@link chess.Board}s, with a small move
+ * generator for the few pieces of these endgames, and every pass is split into blocks of
+ * positions scanned in parallel. Entries are updated with compare-and-set, so each position is
+ * solved once even when several threads reach it.
+ * <br>
+ * Pawn endgames need the tables of their promotions: a promotion is looked up in the queen's or
+ * the rook's table, and the position becomes a win as soon as the pass reaches the promotion's
+ * distance to mate. Promotions to a bishop or a knight are not generated, since against a lone
+ * king they never win faster than a promotion to a queen or a rook.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see Tablebase
+ */
+public class TablebaseGenerator {
+
+    private static final int BLOCK = 1 << 14; // Positions per parallel task
+
+    private static final int KING   = 0;
+    private static final int QUEEN  = 1;
+    private static final int ROOK   = 2;
+    private static final int BISHOP = 3;
+    private static final int KNIGHT = 4;
+    private static final int PAWN   = 5;
+
+    private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1},
+                                               {1, -1}, {1, 0}, {1, 1}};
+    private static final int[][] ROOK_STEPS = {{-1, 0}, {0, -1}, {0, 1}, {1, 0}};
+    private static final int[][] BISHOP_STEPS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+    private static final int[][] KNIGHT_JUMPS = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2},
+                                                 {1, 2}, {2, -1}, {2, 1}};
+
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final Endgame endgame;
+    private final Tablebase subtables;
+    private final ForkJoinPool pool;
+    private final int[] types;
+    private final byte[] values;
+    private final byte[] promotions;
+
+    /**
+     * Creates a generator.
+     *
+     * @param endgame   the endgame
+     * @param subtables the tables of the endgames that promotions lead to
+     * @param threads   the number of threads
+     */
+    private TablebaseGenerator(Endgame endgame, Tablebase subtables, int threads) {
+        this.endgame = endgame;
+        this.subtables = subtables;
+        pool = new ForkJoinPool(threads);
+        types = new int[endgame.getPieces().size() + 2];
+        for (int i = 2; i < types.length; i++) {
+            Class<?> type = endgame.getPieces().get(i - 2);
+            types[i] = type == Queen.class ? QUEEN : type == Rook.class ? ROOK
+                     : type == Bishop.class ? BISHOP : type == Knight.class ? KNIGHT : PAWN;
+        }
+        values = new byte[endgame.size()];
+        promotions = endgame.getPieces().contains(Pawn.class) ? new byte[endgame.size() / 2] : null;
+    }
+
+    /**
+     * Builds the table of an endgame.
+     *
+     * @param endgame   the endgame
+     * @param subtables the tables of the endgames that promotions lead to; for pawn endgames, it
+     *                  must contain {@link Endgame#KQK} and {@link Endgame#KRK}
+     * @param threads   the number of threads
+     * @return the table, to be added to a {@link Tablebase} or written to a file
+     * @throws IllegalArgumentException if a table needed for promotions is missing
+     */
+    public static byte[] generate(Endgame endgame, Tablebase subtables, int threads) {
+        if (endgame.getPieces().contains(Pawn.class)
+                && !(subtables.contains(Endgame.KQK) && subtables.contains(Endgame.KRK))) {
+            throw new IllegalArgumentException(endgame + " needs the KQK and KRK tables");
+        }
+        var generator = new TablebaseGenerator(endgame, subtables, threads);
+        try {
+            return generator.run();
+        } finally {
+            generator.pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the passes.
+     *
+     * @return the table
+     */
+    private byte[] run() {
+        int longestPromotion = forEachBlock(0, values.length, this::initialize, Math::max);
+        for (int plies = 1, found = 1; found > 0 || plies <= longestPromotion; plies++) {
+            found = plies % 2 == 1 ? findWins(plies) : findLosses(plies);
+        }
+        forEachBlock(0, values.length, (from, to) -> {
+            for (int index = from; index < to; index++) {
+                if (values[index] == Tablebase.UNSOLVED) {
+                    values[index] = Tablebase.DRAW;
+                }
+            }
+            return 0;
+        }, Integer::sum);
+        return values;
+    }
+
+    /**
+     * Runs an odd pass.
+     *
+     * @param plies the plies to mate of the wins to find
+     * @return the number of positions found
+     */
+    private int findWins(int plies) {
+        int half = values.length / 2;
+        int found = forEachBlock(half, values.length, (from, to) -> findWins(from, to, plies),
+                                 Integer::sum);
+        if (promotions != null) {
+            found += forEachBlock(0, half, (from, to) -> promote(from, to, plies), Integer::sum);
+        }
+        return found;
+    }
+
+    /**
+     * Runs an even pass.
+     *
+     * @param plies the plies to mate of the losses to find
+     * @return the number of positions found
+     */
+    private int findLosses(int plies) {
+        return forEachBlock(0, values.length / 2, (from, to) -> findLosses(from, to, plies),
+                            Integer::sum);
+    }
+
+    /**
+     * Works on a range of positions, scanned in blocks of positions in parallel.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private interface BlockTask {
+
+        /**
+         * Works on a block of positions.
+         *
+         * @param from the first index
+         * @param to   the index after the last
+         * @return a count, combined over the blocks
+         */
+        int apply(int from, int to);
+
+    }
+
+    /**
+     * Runs a task on a range of positions, in parallel.
+     *
+     * @param from    the first index
+     * @param to      the index after the last
+     * @param task    the task
+     * @param combine combines the counts of two blocks
+     * @return the combined counts of all the blocks
+     */
+    private int forEachBlock(int from, int to, BlockTask task,
+                             java.util.function.IntBinaryOperator combine) {
+        int blocks = (to - from + BLOCK - 1) / BLOCK;
+        return pool.submit(() -> IntStream.range(0, blocks).parallel().map(block -> {
+            int start = from + block * BLOCK;
+            return task.apply(start, Math.min(start + BLOCK, to));
+        }).reduce(0, combine)).join();
+    }
+
+    /**
+     * Marks the impossible and non-canonical positions, the checkmates and the stalemates, and
+     * records the distance to mate of every winning promotion.
+     *
+     * @param from the first index
+     * @param to   the index after the last
+     * @return the plies of the longest winning promotion
+     */
+    private int initialize(int from, int to) {
+        int[] squares = new int[types.length];
+        int longest = 0;
+        for (int index = from; index < to; index++) {
+            int turn = endgame.decode(index, squares);
+            byte value = Tablebase.UNSOLVED;
+            if (!isLegal(turn, squares) || !endgame.isCanonical(squares)) {
+                value = Tablebase.ILLEGAL;
+            } else if (turn == 1 && weakMoves(squares, false) == 0) {
+                value = attacked(squares, squares[1], -1) ? Tablebase.loss(0) : Tablebase.DRAW;
+            } else if (turn == 0 && !hasStrongMove(squares)) {
+                value = Tablebase.DRAW;
+            } else if (turn == 0 && promotions != null) {
+                promotions[index] = (byte) promotionPlies(squares);
+                longest = Math.max(longest, promotions[index]);
+            }
+            values[index] = value;
+        }
+        return longest;
+    }
+
+    /**
+     * Finds the positions won in the specified number of plies by unmaking the stronger side's
+     * moves from the positions lost in one ply less.
+     *
+     * @param from  the first index, of a position with the weaker side to move
+     * @param to    the index after the last
+     * @param plies the plies to mate, odd
+     * @return the number of positions found
+     */
+    private int findWins(int from, int to, int plies) {
+        byte lost = Tablebase.loss(plies - 1), won = Tablebase.win(plies);
+        int[] squares = new int[types.length], predecessor = new int[types.length];
+        int found = 0;
+        for (int index = from; index < to; index++) {
+            if (values[index] != lost) {
+                continue;
+            }
+            endgame.decode(index, squares);
+            for (int slot = 0; slot < types.length; slot = slot == 0 ? 2 : slot + 1) {
+                int square = squares[slot];
+                if (types[slot] == PAWN) {
+                    int back = square + 8;
+                    if (square >>> 3 < 6 && isEmpty(squares, back)) {
+                        found += unmake(squares, predecessor, slot, back, won);
+                        if (square >>> 3 == 4 && isEmpty(squares, back + 8)) {
+                            found += unmake(squares, predecessor, slot, back + 8, won);
+                        }
+                    }
+                    continue;
+                }
+                boolean slides = types[slot] != KING && types[slot] != KNIGHT;
+                for (int[] step: steps(types[slot])) {
+                    for (int back = step(square, step); back >= 0 && isEmpty(squares, back);
+                         back = slides ? step(back, step) : -1) {
+                        found += unmake(squares, predecessor, slot, back, won);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Marks a predecessor of a position as won, unless it is impossible or already solved.
+     *
+     * @param squares     the position
+     * @param predecessor receives the predecessor
+     * @param slot        the moved piece
+     * @param back        the square the piece moved from
+     * @param won         the entry to store
+     * @return <code>1</code> if the predecessor was marked, <code>0</code> otherwise
+     */
+    private int unmake(int[] squares, int[] predecessor, int slot, int back, byte won) {
+        System.arraycopy(squares, 0, predecessor, 0, squares.length);
+        predecessor[slot] = back;
+        if (!isLegal(0, predecessor)) {
+            return 0;
+        }
+        int index = endgame.index(0, predecessor);
+        return BYTES.compareAndSet(values, index, Tablebase.UNSOLVED, won) ? 1 : 0;
+    }
+
+    /**
+     * Marks the positions whose best move is a promotion that wins in the specified number of
+     * plies.
+     *
+     * @param from  the first index, of a position with the stronger side to move
+     * @param to    the index after the last
+     * @param plies the plies to mate, odd
+     * @return the number of positions marked
+     */
+    private int promote(int from, int to, int plies) {
+        byte won = Tablebase.win(plies);
+        int found = 0;
+        for (int index = from; index < to; index++) {
+            if (promotions[index] == plies
+                    && BYTES.compareAndSet(values, index, Tablebase.UNSOLVED, won)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the positions lost in the specified number of plies by unmaking the weaker king's
+     * moves from the positions won in one ply less and verifying that every move of the
+     * predecessor leads to a win.
+     *
+     * @param from  the first index, of a position with the stronger side to move
+     * @param to    the index after the last
+     * @param plies the plies to mate, even
+     * @return the number of positions found
+     */
+    private int findLosses(int from, int to, int plies) {
+        byte won = Tablebase.win(plies - 1), lost = Tablebase.loss(plies);
+        int[] squares = new int[types.length], predecessor = new int[types.length];
+        int found = 0;
+        for (int index = from; index < to; index++) {
+            if (values[index] != won) {
+                continue;
+            }
+            endgame.decode(index, squares);
+            for (int[] step: KING_STEPS) {
+                int back = step(squares[1], step);
+                if (back < 0 || !isEmpty(squares, back) || isAdjacent(squares[0], back)) {
+                    continue;
+                }
+                System.arraycopy(squares, 0, predecessor, 0, squares.length);
+                predecessor[1] = back;
+                int previous = endgame.index(1, predecessor);
+                if (values[previous] == Tablebase.UNSOLVED && weakMoves(predecessor, true) > 0
+                        && BYTES.compareAndSet(values, previous, Tablebase.UNSOLVED, lost)) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Counts the weaker king's legal moves.
+     *
+     * @param squares the position, with the weaker side to move
+     * @param verify  whether to stop at the first move that does not lead to a known win
+     * @return the number of moves, or <code>-1</code> if verifying and a move escapes
+     */
+    private int weakMoves(int[] squares, boolean verify) {
+        int[] successor = verify ? new int[squares.length] : null;
+        int moves = 0;
+        for (int[] step: KING_STEPS) {
+            int to = step(squares[1], step);
+            if (to < 0 || isAdjacent(squares[0], to)) {
+                continue;
+            }
+            int captured = -1;
+            for (int slot = 2; slot < squares.length; slot++) {
+                captured = squares[slot] == to ? slot : captured;
+            }
+            if (attacked(squares, to, captured)) {
+                continue;
+            }
+            moves++;
+            if (verify) {
+                if (captured >= 0) {
+                    return -1;
+                }
+                System.arraycopy(squares, 0, successor, 0, squares.length);
+                successor[1] = to;
+                if (values[endgame.index(0, successor)] <= 0) {
+                    return -1;
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Determines if the stronger side has a legal move.
+     *
+     * @param squares the position, with the stronger side to move
+     * @return <code>false</code> if it is stalemated
+     */
+    private boolean hasStrongMove(int[] squares) {
+        for (int[] step: KING_STEPS) {
+            int to = step(squares[0], step);
+            if (to >= 0 && !isAdjacent(squares[1], to) && isEmpty(squares, to)) {
+                return true;
+            }
+        }
+        for (int slot = 2; slot < squares.length; slot++) {
+            boolean moves = types[slot] == PAWN ? isEmpty(squares, squares[slot] - 8)
+                                                : hasStep(squares, slot);
+            if (moves) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines if a piece other than a king or a pawn can move.
+     *
+     * @param squares the position
+     * @param slot    the piece
+     * @return <code>true</code> if one of the squares next to it in its directions is empty
+     */
+    private boolean hasStep(int[] squares, int slot) {
+        for (int[] step: steps(types[slot])) {
+            int to = step(squares[slot], step);
+            if (to >= 0 && isEmpty(squares, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks up the best promotion in the tables of the promoted endgames.
+     *
+     * @param squares the position, with the stronger side to move
+     * @return the plies to mate after promoting, or <code>0</code> if no promotion wins
+     */
+    private int promotionPlies(int[] squares) {
+        int pawn = squares[2], best = 0;
+        if (pawn >>> 3 != 1 || !isEmpty(squares, pawn - 8)) {
+            return 0;
+        }
+        for (Endgame promoted: new Endgame[] {Endgame.KQK, Endgame.KRK}) {
+            byte value = subtables.get(promoted, promoted.index(1, new int[] {squares[0],
+                                                                             squares[1],
+                                                                             pawn - 8}));
+            if (value < 0 && value > Tablebase.UNSOLVED) {
+                int plies = Tablebase.plies(value) + 1;
+                best = best == 0 ? plies : Math.min(best, plies);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Determines if a position can occur: the pieces are on different squares, the kings are
+     * not next to each other, no pawn is on the first or last rank, and the side not to move is
+     * not in check.
+     *
+     * @param turn    the side to move, <code>0</code> for the stronger side
+     * @param squares the position
+     * @return <code>true</code> if the position is legal
+     */
+    private boolean isLegal(int turn, int[] squares) {
+        for (int i = 0; i < squares.length; i++) {
+            for (int j = i + 1; j < squares.length; j++) {
+                if (squares[i] == squares[j]) {
+                    return false;
+                }
+            }
+            int rank = squares[i] >>> 3;
+            if (types[i] == PAWN && i > 1 && (rank == 0 || rank == 7)) {
+                return false;
+            }
+        }
+        return !isAdjacent(squares[0], squares[1])
+            && (turn == 1 || !attacked(squares, squares[1], -1));
+    }
+
+    /**
+     * Determines if the stronger side attacks a square. The weaker king is ignored as a blocker,
+     * so that it cannot step back along the line of a slider that checks it.
+     *
+     * @param squares  the position
+     * @param target   the square
+     * @param captured a piece that the weaker king captures on the square, or <code>-1</code>
+     * @return <code>true</code> if the square is attacked
+     */
+    private boolean attacked(int[] squares, int target, int captured) {
+        if (isAdjacent(squares[0], target)) {
+            return true;
+        }
+        for (int slot = 2; slot < squares.length; slot++) {
+            if (slot != captured && attacks(squares, slot, target, captured)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines if one of the stronger side's pieces, other than its king, attacks a square.
+     *
+     * @param squares  the position
+     * @param slot     the piece
+     * @param target   the square
+     * @param captured a piece to ignore as a blocker, or <code>-1</code>
+     * @return <code>true</code> if the piece attacks the square
+     */
+    private boolean attacks(int[] squares, int slot, int target, int captured) {
+        int from = squares[slot];
+        int ranks = (target >>> 3) - (from >>> 3), files = (target & 7) - (from & 7);
+        int type = types[slot];
+        if (type == PAWN) {
+            return ranks == -1 && Math.abs(files) == 1;
+        } else if (type == KNIGHT) {
+            return ranks * ranks + files * files == 5;
+        }
+        boolean straight = (ranks == 0) != (files == 0);
+        boolean diagonal = ranks != 0 && Math.abs(ranks) == Math.abs(files);
+        if (!(type != BISHOP && straight || type != ROOK && diagonal)) {
+            return false;
+        }
+        int step = Integer.signum(ranks) * 8 + Integer.signum(files);
+        for (int square = from + step; square != target; square += step) {
+            for (int other = 0; other < squares.length; other++) {
+                if (other != 1 && other != captured && squares[other] == square) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if no piece stands on a square.
+     *
+     * @param squares the position
+     * @param square  the square
+     * @return <code>true</code> if the square is empty
+     */
+    private static boolean isEmpty(int[] squares, int square) {
+        for (int occupied: squares) {
+            if (occupied == square) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if two squares are next to each other or the same.
+     *
+     * @param a a square
+     * @param b another square
+     * @return <code>true</code> if a king on one attacks the other
+     */
+    private static boolean isAdjacent(int a, int b) {
+        return Math.abs((a >>> 3) - (b >>> 3)) <= 1 && Math.abs((a & 7) - (b & 7)) <= 1;
+    }
+
+    /**
+     * Moves from a square by a step.
+     *
+     * @param square the square
+     * @param step   the ranks and files to move by
+     * @return the square reached or <code>-1</code> if it is off the board
+     */
+    private static int step(int square, int[] step) {
+        int rank = (square >>> 3) + step[0], file = (square & 7) + step[1];
+        return rank < 0 || rank > 7 || file < 0 || file > 7 ? -1 : rank * 8 + file;
+    }
+
+    /**
+     * Returns the steps a piece moves by.
+     *
+     * @param type the piece type, other than a pawn
+     * @return the steps, repeated by sliding pieces
+     */
+    private static int[][] steps(int type) {
+        return switch (type) {
+            case KING, QUEEN -> KING_STEPS;
+            case ROOK -> ROOK_STEPS;
+            case BISHOP -> BISHOP_STEPS;
+            default -> KNIGHT_JUMPS;
+        };
+    }
+
+}
\ No newline at end of file
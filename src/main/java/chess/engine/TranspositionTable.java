@@ -0,0 +1,154 @@
+package chess.engine;
+
+import chess.Move;
+
+/**
+ * A fixed-size hash table of search results indexed by {@link chess.Board#getKey()}. Each slot
+ * holds the full key and one packed <code>long</code> with the best move, score, depth and bound
+ * type, and is always replaced by newer results.
+ * <br>
+ * A table is not thread-safe; every searcher is expected to own one.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.engine.Search
+ */
+public class TranspositionTable {
+
+    /** The score is exact. */
+    public static final int EXACT = 0;
+    /** The score is a lower bound: the search failed high. */
+    public static final int LOWER_BOUND = 1;
+    /** The score is an upper bound: the search failed low. */
+    public static final int UPPER_BOUND = 2;
+
+    /** Size of the table, in megabytes, used when none is specified. */
+    public static final int DEFAULT_SIZE_MB = 16;
+
+    private static final int SLOT_BYTES = 16;
+
+    private final long[] keys;
+    private final long[] data;
+
+    /**
+     * Creates a table of {@value #DEFAULT_SIZE_MB} megabytes.
+     */
+    public TranspositionTable() {
+        this(DEFAULT_SIZE_MB);
+    }
+
+    /**
+     * Creates a table that takes up at most the specified amount of memory. The number of slots
+     * is rounded down to a power of two, with a minimum of one.
+     *
+     * @param sizeInMegabytes the memory budget for this table
+     */
+    public TranspositionTable(int sizeInMegabytes) {
+        int count = Integer.highestOneBit(Math.max(1, (int) Math.min(1 << 30,
+                                                      sizeInMegabytes * (1L << 20) / SLOT_BYTES)));
+        keys = new long[count];
+        data = new long[count];
+    }
+
+    /**
+     * Looks up the slot that holds the result for the specified key.
+     *
+     * @param key the position's key
+     * @return the index of the slot or <code>-1</code> if the table has no result for the key
+     */
+    public int probe(long key) {
+        int slot = (int) key & (keys.length - 1);
+        return keys[slot] == key && data[slot] != 0 ? slot : -1;
+    }
+
+    /**
+     * Stores a search result, replacing whatever the key's slot held.
+     *
+     * @param key   the position's key
+     * @param move  the best move found; can be <code>null</code>
+     * @param score the score of the position
+     * @param depth the depth the position was searched to
+     * @param bound {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+     */
+    public void store(long key, Move move, int score, int depth, int bound) {
+        int slot = (int) key & (keys.length - 1);
+        keys[slot] = key;
+        data[slot] = (move == null ? 0 : move.pack())
+                   | (score & 0xFFFFFFFFL) << 16
+                   | (long) (depth & 0xFF) << 48
+                   | (long) (bound + 1) << 56;
+    }
+
+    /**
+     * Returns the best move stored in a slot.
+     *
+     * @param slot a slot returned by {@link #probe(long)}
+     * @return the move or <code>null</code> if none was stored
+     */
+    public Move getMove(int slot) {
+        return Move.unpack((int) (data[slot] & 0xFFFF));
+    }
+
+    /**
+     * Returns the score stored in a slot.
+     *
+     * @param slot a slot returned by {@link #probe(long)}
+     * @return the score
+     */
+    public int getScore(int slot) {
+        return (int) (data[slot] >>> 16);
+    }
+
+    /**
+     * Returns the depth stored in a slot.
+     *
+     * @param slot a slot returned by {@link #probe(long)}
+     * @return the depth
+     */
+    public int getDepth(int slot) {
+        return (int) (data[slot] >>> 48) & 0xFF;
+    }
+
+    /**
+     * Returns the type of bound stored in a slot.
+     *
+     * @param slot a slot returned by {@link #probe(long)}
+     * @return {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+     */
+    public int getBound(int slot) {
+        return (int) (data[slot] >>> 56) - 1;
+    }
+
+    /**
+     * Empties this table.
+     */
+    public void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(data, 0);
+    }
+
+    /**
+     * Returns how full this table is, in permille, by sampling its first thousand slots.
+     *
+     * @return a number in the range [0, 1000]
+     */
+    public int getPermilleFull() {
+        int sample = Math.min(1000, data.length), used = 0;
+        for (int i = 0; i < sample; i++) {
+            if (data[i] != 0) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    /**
+     * Returns the amount of memory used by this table.
+     *
+     * @return the size of this table in bytes
+     */
+    public long getMemoryFootprint() {
+        return (long) keys.length * SLOT_BYTES;
+    }
+
+}
\ No newline at end of file
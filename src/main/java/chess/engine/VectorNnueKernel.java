@@ -0,0 +1,98 @@
+package chess.engine;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link NnueKernel} written with the Vector API, using the preferred species, so each
+ * operation covers as many lanes as the CPU's widest SIMD registers hold. Loops finish with
+ * scalar code for the lanes left over. Only loaded, by reflection, when the
+ * <code>jdk.incubator.vector</code> module is available.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class VectorNnueKernel implements NnueKernel {
+
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Adds the weights a vector at a time.
+     */
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                       .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                       .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    /**
+     * Subtracts the weights a vector at a time.
+     */
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                       .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                       .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    /**
+     * Computes each output's dot product with fused multiply-adds into two vectors of partial
+     * sums, so that consecutive operations do not wait for each other, which are reduced at the
+     * end of the row.
+     */
+    @Override
+    public void affine(float[] weights, float[] bias, float[] input, float[] output,
+                       boolean relu) {
+        int lanes = FLOATS.length();
+        int bound = FLOATS.loopBound(input.length);
+        int pairBound = input.length - input.length % (2 * lanes);
+        for (int o = 0; o < output.length; o++) {
+            int row = o * input.length;
+            var sums0 = FloatVector.zero(FLOATS);
+            var sums1 = FloatVector.zero(FLOATS);
+            int i = 0;
+            for (; i < pairBound; i += 2 * lanes) {
+                sums0 = FloatVector.fromArray(FLOATS, weights, row + i)
+                                   .fma(FloatVector.fromArray(FLOATS, input, i), sums0);
+                sums1 = FloatVector.fromArray(FLOATS, weights, row + i + lanes)
+                                   .fma(FloatVector.fromArray(FLOATS, input, i + lanes), sums1);
+            }
+            for (; i < bound; i += lanes) {
+                sums0 = FloatVector.fromArray(FLOATS, weights, row + i)
+                                   .fma(FloatVector.fromArray(FLOATS, input, i), sums0);
+            }
+            float sum = bias[o] + sums0.add(sums1).reduceLanes(VectorOperators.ADD);
+            for (; i < input.length; i++) {
+                sum += weights[row + i] * input[i];
+            }
+            output[o] = relu ? Math.max(sum, 0) : sum;
+        }
+    }
+
+    /**
+     * Describes this kernel, such as "vector (256-bit)".
+     *
+     * @return the kernel's name and register width
+     */
+    @Override
+    public String toString() {
+        return "vector (" + FLOATS.vectorBitSize() + "-bit)";
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,5 @@
+/**
+ * Contains classes used by the computer player to evaluate and search positions on a
+ * {@link chess.Board}.
+ */
+package chess.engine;
\ No newline at end of file
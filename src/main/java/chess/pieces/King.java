@@ -20,7 +20,7 @@ public class King extends Piece {
     }
 
     @Override
-    public List<Position> getLegalMoves() {
+    protected List<Position> findLegalMoves() {
         var moves = new java.util.LinkedList<Position>();
         int rank = getPosition().getRank(), file = getPosition().getFile();
 
@@ -97,8 +97,8 @@ public class King extends Piece {
      * @return <code>true</code> if this king can legally move to <code>move</code>
      */
     private boolean canCastle(Position move, Position rookPosition, Position sq1, Position sq2) {
-        var board = chess.Board.getInstance();
-        var history = chess.History.getInstance();
+        var board = getBoard();
+        var history = board.getHistory();
         Piece rook = board.getPiece(rookPosition);
         return history.getMoveCount(this) == 0
             && rook != null 
@@ -20,7 +20,7 @@ public class Knight extends Piece {
     }
 
     @Override
-    public List<Position> getLegalMoves() {
+    protected List<Position> findLegalMoves() {
         var positions = new java.util.LinkedList<Position>();
         int rank = getPosition().getRank(), file = getPosition().getFile();
 
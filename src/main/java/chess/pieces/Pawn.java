@@ -21,7 +21,7 @@ public class Pawn extends Piece {
     }
 
     @Override
-    public List<Position> getLegalMoves() {
+    protected List<Position> findLegalMoves() {
         var moves = new java.util.LinkedList<Position>();
         int rank = getPosition().getRank(), file = getPosition().getFile();
 
@@ -64,7 +64,7 @@ public class Pawn extends Piece {
      * @return <code>true</code> if the square is empty
      */
     private boolean squareIsEmpty(int rank, int file) {
-        return Board.getInstance().isSquareEmpty(new Position(rank, file));
+        return getBoard().isSquareEmpty(new Position(rank, file));
     }
 
     /**
@@ -76,14 +76,17 @@ public class Pawn extends Piece {
      * @return <code>true</code> if the square has an opponent's piece
      */
     private boolean enPassantOrSquareHasOpponent(int rank, int file) {
-        Board board = Board.getInstance();
+        Board board = getBoard();
         Color opponentColor = getColor() == Color.WHITE ? Color.BLACK : Color.WHITE;
         if (board.getPieceColor(new Position(rank, file)) == opponentColor) {
             return true;
         }
-        var history = chess.History.getInstance();
+        // Only a pawn that just moved two squares lands beside one on this rank
+        int rankBeside = getColor() == Color.WHITE ? 3 : 4;
+        var history = board.getHistory();
         Piece pawn = board.getPiece(new Position(getPosition().getRank(), file));
-        return pawn != null && pawn.getClass() == Pawn.class
+        return getPosition().getRank() == rankBeside
+            && pawn != null && pawn.getClass() == Pawn.class
             && pawn.getColor() == opponentColor 
             && history.getLastMovedPiece() == pawn
             && history.getMoveCount(pawn) == 1;
@@ -14,6 +14,7 @@ public abstract class Piece {
 
     private Color color;
     private Position position;
+    private Board board;
 
     /**
      * Creates a piece of the specified color.
@@ -26,10 +27,26 @@ public abstract class Piece {
 
     /**
      * Returns a list of all the positions on the board that this piece can legally move to.
+     * Calls are counted by {@link chess.Metrics} when counting is on.
      * 
      * @return the legal moves for this piece
      */
-    public abstract List<Position> getLegalMoves();
+    public List<Position> getLegalMoves() {
+        if (!chess.Metrics.ENABLED) {
+            return findLegalMoves();
+        }
+        long start = System.nanoTime();
+        List<Position> moves = findLegalMoves();
+        chess.Metrics.Timer.LEGAL_MOVES.record(start);
+        return moves;
+    }
+
+    /**
+     * Finds all the positions on the board that this piece can legally move to.
+     * 
+     * @return the legal moves for this piece
+     */
+    protected abstract List<Position> findLegalMoves();
 
     /**
      * Determines if the specified move is legal for this piece.
@@ -68,6 +85,25 @@ public abstract class Piece {
         this.position = position;
     }
 
+    /**
+     * Returns the board this piece has been placed on.
+     *
+     * @return the board of this piece or <code>null</code> if it has not been placed on one
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Sets the board this piece is placed on. Pieces look up the state of the game on this board
+     * when determining their legal moves.
+     *
+     * @param board the board of this piece
+     */
+    public void setBoard(Board board) {
+        this.board = board;
+    }
+
     /**
      * Compares the specified object with this piece for equality. Returns
      * <code>true</code> if and only if the specified object is also a piece, both
@@ -120,8 +156,8 @@ public abstract class Piece {
      */
     protected boolean addMoveIfLegal(int rank, int file, List<Position> legalMoves) {
         Position move = new Position(rank, file);
-        Color squareColor = Board.getInstance().getPieceColor(move);
-        if (squareColor != color && !Board.getInstance().moveCausesCheck(this, move)) {
+        Color squareColor = board.getPieceColor(move);
+        if (squareColor != color && !board.moveCausesCheck(this, move)) {
             legalMoves.add(move);
         }
         return squareColor != Color.NONE;
@@ -62,6 +62,16 @@ public class Position {
         return rank == other.rank && file == other.file;
     }
 
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * @return a hash code for this position
+     */
+    @Override
+    public int hashCode() {
+        return rank * 8 + file;
+    }
+
     /**
      * Returns "(&lt;r&gt;, &lt;f&gt;)", where &lt;r&gt; is the rank and &lt;f&gt; is the file.
      *
@@ -0,0 +1,858 @@
+package explorer;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import chess.Board;
+import chess.Move;
+import chess.Pgn;
+
+/**
+ * Builds a {@link PositionIndex} from files in Portable Game Notation with a parallel external
+ * sort, so that the number of games is not limited by memory:
+ * <ol>
+ *   <li>The calling thread cuts the files into games and hands them out in batches, writing each
+ *   game's line to <code>games.txt</code> as it goes. Worker threads parse the games and append
+ *   one posting per ply, keyed by the position's Zobrist key, to a buffer of
+ *   {@value #RUN_POSTINGS} postings. A full buffer is sorted and written to the worker's run
+ *   file as a sorted run, together with where each of the {@value #PARTITIONS} key ranges
+ *   starts in it.</li>
+ *   <li>The key ranges are then merged in parallel: each range gathers its part of every run,
+ *   merges the parts, writes its postings straight to their final place in
+ *   <code>postings.idx</code>, whose layout is known from the run sizes, and its distinct keys
+ *   and the counts of the moves played from them to temporary files. The key and move files are
+ *   concatenated into <code>positions.idx</code> and <code>moves.idx</code> last.</li>
+ * </ol>
+ * Memory stays bounded by one buffer per worker and one key range per merging thread.
+ * Games that cannot be parsed are skipped and counted.
+ * <br>
+ * Usage: <code>IndexBuilder directory threads games.pgn [more.pgn ...]</code>, where
+ * <code>0</code> threads means one per core.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class IndexBuilder {
+
+    /**
+     * A sorted run in a worker's run file.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Run {
+
+        private final int file;
+        private final long start;
+        private final int[] partitionStarts;
+
+        /**
+         * Creates a run.
+         *
+         * @param file            the number of the run file, which is the worker's
+         * @param start           the number of the run's first record in the file
+         * @param partitionStarts where each key range starts in the run, plus the run's length
+         */
+        Run(int file, long start, int[] partitionStarts) {
+            this.file = file;
+            this.start = start;
+            this.partitionStarts = partitionStarts;
+        }
+
+    }
+
+    /**
+     * Consecutive games handed to a worker at once.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Batch {
+
+        private final int firstGame;
+        private final List<String> games;
+
+        /**
+         * Creates a batch.
+         *
+         * @param firstGame the number of the first game
+         * @param games     the games' texts
+         */
+        Batch(int firstGame, List<String> games) {
+            this.firstGame = firstGame;
+            this.games = games;
+        }
+
+    }
+
+    private static final int RUN_POSTINGS    = 1 << 20; // Postings sorted in memory at once
+    private static final int BATCH_GAMES     = 256;
+    private static final int PARTITION_BITS  = 10;
+    private static final int PARTITIONS      = 1 << PARTITION_BITS;
+    private static final int RUN_RECORD      = 16;
+    private static final int WRITE_BUFFER    = 1 << 16;
+    private static final Batch NO_MORE_GAMES = new Batch(0, List.of());
+
+    private final Path directory;
+    private final int threads;
+    private final List<Run> runs;
+    private final AtomicLong postingCount;
+    private final AtomicLong skippedGames;
+    private int gameCount;
+    private long positionCount;
+
+    /**
+     * Creates a builder.
+     *
+     * @param directory the directory to build the index in; created if needed
+     * @param threads   the number of threads
+     */
+    public IndexBuilder(Path directory, int threads) {
+        this.directory = directory;
+        this.threads = threads;
+        runs = java.util.Collections.synchronizedList(new ArrayList<>());
+        postingCount = new AtomicLong();
+        skippedGames = new AtomicLong();
+    }
+
+    /**
+     * Builds an index and prints its size and the time each phase took.
+     *
+     * @param args the index directory, the number of threads and the game files
+     * @throws IOException          if a file cannot be read or written
+     * @throws InterruptedException if the build is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: IndexBuilder directory threads games.pgn [more.pgn ...]");
+            System.exit(2);
+        }
+        int threads = Integer.parseInt(args[1]);
+        threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        var files = new ArrayList<Path>();
+        for (int i = 2; i < args.length; i++) {
+            files.add(Path.of(args[i]));
+        }
+        var builder = new IndexBuilder(Path.of(args[0]), threads);
+        long start = System.nanoTime();
+        builder.build(files);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d games (%,d skipped), %,d postings, %,d positions in %.1f s: "
+                          + "%,.0f games/s on %d threads%n", builder.getGameCount(),
+                          builder.getSkippedGames(), builder.getPostingCount(),
+                          builder.getPositionCount(), seconds, builder.getGameCount() / seconds,
+                          threads);
+    }
+
+    /**
+     * Builds the index of some game files, replacing any index in the directory.
+     *
+     * @param files the files, in Portable Game Notation
+     * @throws IOException          if a file cannot be read or written
+     * @throws InterruptedException if the build is interrupted
+     */
+    public void build(List<Path> files) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempDirectory(directory, "build");
+        try {
+            long start = System.nanoTime();
+            generateRuns(files, temporary);
+            long merge = System.nanoTime();
+            merge(temporary);
+            System.out.printf("sorted %,d runs in %.1f s, merged them in %.1f s%n", runs.size(),
+                              (merge - start) / 1e9, (System.nanoTime() - merge) / 1e9);
+        } finally {
+            try (var paths = Files.list(temporary)) {
+                for (Path path: (Iterable<Path>) paths::iterator) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(temporary);
+        }
+    }
+
+    /**
+     * Returns the number of games read by the last build, including the skipped ones.
+     *
+     * @return the game count
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Returns the number of games that could not be parsed in the last build.
+     *
+     * @return the skipped game count
+     */
+    public long getSkippedGames() {
+        return skippedGames.get();
+    }
+
+    /**
+     * Returns the number of postings written by the last build.
+     *
+     * @return the posting count
+     */
+    public long getPostingCount() {
+        return postingCount.get();
+    }
+
+    /**
+     * Returns the number of distinct positions written by the last build.
+     *
+     * @return the position count
+     */
+    public long getPositionCount() {
+        return positionCount;
+    }
+
+    /**
+     * Reads the games, writes the game files, and has the workers write the sorted runs.
+     *
+     * @param files     the game files
+     * @param temporary the directory for the run files
+     * @throws IOException          if a file cannot be read or written
+     * @throws InterruptedException if the build is interrupted
+     */
+    private void generateRuns(List<Path> files, Path temporary)
+            throws IOException, InterruptedException {
+        var batches = new java.util.concurrent.ArrayBlockingQueue<Batch>(threads * 2);
+        var failure = new java.util.concurrent.atomic.AtomicReference<IOException>();
+        var workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            int file = t;
+            var worker = new Thread(() -> {
+                try (var out = new DataOutputStream(new java.io.BufferedOutputStream(
+                        Files.newOutputStream(runFile(temporary, file)), WRITE_BUFFER))) {
+                    var buffer = new RunBuffer(file, out);
+                    for (Batch batch; (batch = batches.take()) != NO_MORE_GAMES; ) {
+                        for (int i = 0; i < batch.games.size(); i++) {
+                            buffer.addGame(batch.firstGame + i, batch.games.get(i));
+                        }
+                    }
+                    buffer.spill();
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "index-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+
+        int games = 0;
+        try (var text = new java.io.BufferedOutputStream(
+                 Files.newOutputStream(directory.resolve(PositionIndex.GAME_TEXT_FILE)),
+                 WRITE_BUFFER);
+             var offsets = new DataOutputStream(new java.io.BufferedOutputStream(
+                 Files.newOutputStream(directory.resolve(PositionIndex.GAMES_FILE)),
+                 WRITE_BUFFER))) {
+            writeHeader(offsets, 0);
+            long offset = 0;
+            var batch = new ArrayList<String>(BATCH_GAMES);
+            for (Path file: files) {
+                try (BufferedReader reader = Files.newBufferedReader(file,
+                                                                     StandardCharsets.UTF_8)) {
+                    for (String game; (game = Pgn.readGame(reader)) != null; ) {
+                        byte[] line = (describe(Pgn.parseTags(game)) + "\n")
+                                      .getBytes(StandardCharsets.UTF_8);
+                        text.write(line);
+                        offsets.writeLong(offset);
+                        offset += line.length;
+                        batch.add(game);
+                        if (batch.size() == BATCH_GAMES) {
+                            batches.put(new Batch(games, batch));
+                            games += batch.size();
+                            batch = new ArrayList<>(BATCH_GAMES);
+                        }
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.put(new Batch(games, batch));
+                games += batch.size();
+            }
+        } finally {
+            for (int t = 0; t < threads; t++) {
+                batches.put(NO_MORE_GAMES);
+            }
+            for (Thread worker: workers) {
+                worker.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        gameCount = games;
+        try (var channel = FileChannel.open(directory.resolve(PositionIndex.GAMES_FILE),
+                                            StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, gameCount), 8);
+        }
+    }
+
+    /**
+     * Merges the runs, one key range per task, into the postings and positions files.
+     *
+     * @param temporary the directory of the run files
+     * @throws IOException if a file cannot be read or written
+     */
+    private void merge(Path temporary) throws IOException {
+        long[] partitionStarts = new long[PARTITIONS + 1];
+        for (Run run: runs) {
+            for (int p = 0; p < PARTITIONS; p++) {
+                partitionStarts[p + 1] += run.partitionStarts[p + 1] - run.partitionStarts[p];
+            }
+        }
+        for (int p = 0; p < PARTITIONS; p++) {
+            partitionStarts[p + 1] += partitionStarts[p];
+        }
+
+        long[] moveCounts = new long[PARTITIONS];
+        var runFiles = new FileChannel[threads];
+        Path postingsPath = directory.resolve(PositionIndex.POSTINGS_FILE);
+        var pool = new ForkJoinPool(threads);
+        try (var postings = FileChannel.open(postingsPath, StandardOpenOption.CREATE,
+                                             StandardOpenOption.TRUNCATE_EXISTING,
+                                             StandardOpenOption.WRITE)) {
+            for (int t = 0; t < threads; t++) {
+                runFiles[t] = FileChannel.open(runFile(temporary, t), StandardOpenOption.READ);
+            }
+            var header = ByteBuffer.allocate(PositionIndex.HEADER);
+            header.putInt(PositionIndex.MAGIC).putInt(PositionIndex.VERSION)
+                  .putLong(postingCount.get()).flip();
+            postings.write(header, 0);
+            positionCount = pool.submit(() -> IntStream.range(0, PARTITIONS).parallel()
+                .mapToLong(p -> {
+                    try {
+                        return mergePartition(p, partitionStarts[p], runFiles, postings,
+                                              temporary, moveCounts);
+                    } catch (IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                }).sum()).join();
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+            for (FileChannel runFile: runFiles) {
+                if (runFile != null) {
+                    runFile.close();
+                }
+            }
+        }
+
+        // The key files number their moves from each range's start
+        try (var positions = new DataOutputStream(new java.io.BufferedOutputStream(
+                 Files.newOutputStream(directory.resolve(PositionIndex.POSITIONS_FILE)),
+                 WRITE_BUFFER));
+             var moves = new DataOutputStream(new java.io.BufferedOutputStream(
+                 Files.newOutputStream(directory.resolve(PositionIndex.MOVES_FILE)),
+                 WRITE_BUFFER))) {
+            writeHeader(positions, positionCount);
+            writeHeader(moves, java.util.Arrays.stream(moveCounts).sum());
+            long firstMove = 0;
+            for (int p = 0; p < PARTITIONS; p++) {
+                try (var keys = new java.io.DataInputStream(new java.io.BufferedInputStream(
+                        Files.newInputStream(keyFile(temporary, p)), WRITE_BUFFER))) {
+                    for (long k = Files.size(keyFile(temporary, p))
+                                  / PositionIndex.POSITION_BYTES; k > 0; k--) {
+                        positions.writeLong(keys.readLong());
+                        positions.writeLong(keys.readLong());
+                        positions.writeLong(firstMove + keys.readLong());
+                    }
+                }
+                Files.copy(moveFile(temporary, p), moves);
+                firstMove += moveCounts[p];
+            }
+        }
+    }
+
+    /**
+     * Merges one key range of every run.
+     *
+     * @param partition  the key range
+     * @param first      the number of the range's first posting in the postings file
+     * @param runFiles   the run files
+     * @param postings   the postings file
+     * @param temporary  the directory for the range's key and move files
+     * @param moveCounts where to store the number of moves written for the range
+     * @return the number of distinct keys in the range
+     * @throws IOException if a file cannot be read or written
+     */
+    private long mergePartition(int partition, long first, FileChannel[] runFiles,
+                                FileChannel postings, Path temporary, long[] moveCounts)
+            throws IOException {
+        // Gather the range's part of every run, one after the other
+        List<Run> parts = new ArrayList<>();
+        int total = 0;
+        for (Run run: runs) {
+            int length = run.partitionStarts[partition + 1] - run.partitionStarts[partition];
+            if (length > 0) {
+                parts.add(run);
+                total += length;
+            }
+        }
+        long[] keys = new long[total], values = new long[total];
+        int[] starts = new int[parts.size() + 1];
+        for (int i = 0; i < parts.size(); i++) {
+            Run run = parts.get(i);
+            int length = run.partitionStarts[partition + 1] - run.partitionStarts[partition];
+            var bytes = ByteBuffer.allocate(length * RUN_RECORD);
+            long position = (run.start + run.partitionStarts[partition]) * RUN_RECORD;
+            while (bytes.hasRemaining()) {
+                if (runFiles[run.file].read(bytes, position + bytes.position()) < 0) {
+                    throw new IOException("Truncated run file");
+                }
+            }
+            bytes.flip();
+            starts[i + 1] = starts[i] + length;
+            for (int j = starts[i]; j < starts[i + 1]; j++) {
+                keys[j] = bytes.getLong();
+                values[j] = bytes.getLong();
+            }
+        }
+
+        // Merge the parts with a heap of their current heads
+        int[] heads = starts.clone();
+        int[] heap = new int[parts.size()];
+        int size = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            heap[size++] = i;
+            siftUp(heap, size - 1, heads, keys, values);
+        }
+        var out = ByteBuffer.allocate(WRITE_BUFFER);
+        long written = first, distinct = 0, moves = 0;
+        var counter = new MoveCounter();
+        try (var keyOut = new DataOutputStream(new java.io.BufferedOutputStream(
+                 Files.newOutputStream(keyFile(temporary, partition)), WRITE_BUFFER));
+             var moveOut = new DataOutputStream(new java.io.BufferedOutputStream(
+                 Files.newOutputStream(moveFile(temporary, partition)), WRITE_BUFFER))) {
+            long lastKey = 0;
+            while (size > 0) {
+                int part = heap[0], head = heads[part]++;
+                if (written == first || keys[head] != lastKey) {
+                    moves += counter.write(moveOut);
+                    keyOut.writeLong(keys[head]);
+                    keyOut.writeLong(written);
+                    keyOut.writeLong(moves);
+                    lastKey = keys[head];
+                    distinct++;
+                }
+                counter.add(values[head]);
+                out.putLong(values[head]);
+                written++;
+                if (!out.hasRemaining()) {
+                    writeFully(postings, out, PositionIndex.HEADER + (written - out.position()
+                                                                      / 8) * 8);
+                }
+                if (heads[part] == starts[part + 1]) {
+                    heap[0] = heap[--size];
+                }
+                siftDown(heap, size, heads, keys, values);
+            }
+            moves += counter.write(moveOut);
+        }
+        writeFully(postings, out, PositionIndex.HEADER + (written - out.position() / 8) * 8);
+        moveCounts[partition] = moves;
+        return distinct;
+    }
+
+    /**
+     * Counts the games and results of every move played from one position, as its postings go by
+     * in order, and writes the counts as the position's move records.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class MoveCounter {
+
+        private int[] codes = new int[64];
+        private int[] results = new int[64 * 4];
+        private int size;
+        private int previousGame = -1;
+
+        /**
+         * Counts a posting of the position. Repetitions of the position in the same game count
+         * once, for the move first played from it.
+         *
+         * @param posting the posting
+         */
+        void add(long posting) {
+            int game = (int) (posting >>> 32);
+            if (game == previousGame) {
+                return;
+            }
+            previousGame = game;
+            int code = (int) posting & 0xffff, move = 0;
+            while (move < size && codes[move] != code) {
+                move++;
+            }
+            if (move == size) {
+                if (size == codes.length) {
+                    codes = java.util.Arrays.copyOf(codes, size * 2);
+                    results = java.util.Arrays.copyOf(results, size * 2 * 4);
+                }
+                codes[size++] = code;
+            }
+            results[move * 4 + ((int) (posting >>> 30) & 3)]++;
+        }
+
+        /**
+         * Writes the counted moves, most played first, and starts counting the next position.
+         *
+         * @param out the partition's move file
+         * @return the number of move records written
+         * @throws IOException if the records cannot be written
+         */
+        int write(DataOutputStream out) throws IOException {
+            // Positions have few distinct moves, so an insertion sort is enough
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                int j = i;
+                for (; j > 0 && games(order[j - 1]) < games(i); j--) {
+                    order[j] = order[j - 1];
+                }
+                order[j] = i;
+            }
+            for (int move: order) {
+                out.writeInt(codes[move]);
+                for (int result = 0; result < 4; result++) {
+                    out.writeInt(results[move * 4 + result]);
+                }
+            }
+            java.util.Arrays.fill(results, 0, size * 4, 0);
+            int written = size;
+            size = 0;
+            previousGame = -1;
+            return written;
+        }
+
+        /**
+         * Returns the number of games in which a counted move was played.
+         *
+         * @param move the move's place in the counter
+         * @return the game count
+         */
+        private int games(int move) {
+            return results[move * 4] + results[move * 4 + 1] + results[move * 4 + 2]
+                   + results[move * 4 + 3];
+        }
+
+    }
+
+    /**
+     * Accumulates a worker's postings and writes them as sorted runs.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private class RunBuffer {
+
+        private final int file;
+        private final DataOutputStream out;
+        private final long[] keys;
+        private final long[] values;
+        private int size;
+        private long written;
+
+        /**
+         * Creates an empty buffer.
+         *
+         * @param file the number of the worker's run file
+         * @param out  the run file
+         */
+        RunBuffer(int file, DataOutputStream out) {
+            this.file = file;
+            this.out = out;
+            keys = new long[RUN_POSTINGS];
+            values = new long[RUN_POSTINGS];
+        }
+
+        /**
+         * Parses a game and adds a posting for every position it reached. Games that cannot be
+         * parsed are counted and skipped.
+         *
+         * @param game the game's number
+         * @param text the game's text
+         * @throws IOException if a full buffer cannot be written
+         */
+        void addGame(int game, String text) throws IOException {
+            Pgn.Game parsed;
+            Board board;
+            try {
+                parsed = Pgn.parse(text);
+                board = new Board(parsed.getStartFen());
+            } catch (IllegalArgumentException e) {
+                skippedGames.incrementAndGet();
+                return;
+            }
+            long result = PositionIndex.resultCode(parsed.getResult());
+            List<Move> moves = parsed.getMoves();
+            int plies = Math.min(moves.size(), PositionIndex.MAX_PLY);
+            for (int ply = 0; ply <= plies; ply++) {
+                int move = ply < moves.size() ? moves.get(ply).pack() : 0;
+                add(board.getKey(), (long) game << 32 | result << 30 | (long) ply << 16 | move);
+                if (ply < plies) {
+                    board.makeMove(moves.get(ply));
+                }
+            }
+        }
+
+        /**
+         * Adds a posting, writing a run first if the buffer is full.
+         *
+         * @param key   the position's key
+         * @param value the posting
+         * @throws IOException if the run cannot be written
+         */
+        private void add(long key, long value) throws IOException {
+            if (size == RUN_POSTINGS) {
+                spill();
+            }
+            keys[size] = key;
+            values[size++] = value;
+        }
+
+        /**
+         * Sorts the buffered postings and appends them to the run file as a run.
+         *
+         * @throws IOException if the run cannot be written
+         */
+        void spill() throws IOException {
+            if (size == 0) {
+                return;
+            }
+            sort(keys, values, 0, size);
+            int[] partitionStarts = new int[PARTITIONS + 1];
+            for (int i = 0; i < size; i++) {
+                partitionStarts[(int) (keys[i] >>> (64 - PARTITION_BITS)) + 1]++;
+                out.writeLong(keys[i]);
+                out.writeLong(values[i]);
+            }
+            for (int p = 0; p < PARTITIONS; p++) {
+                partitionStarts[p + 1] += partitionStarts[p];
+            }
+            runs.add(new Run(file, written, partitionStarts));
+            postingCount.addAndGet(size);
+            written += size;
+            size = 0;
+        }
+
+    }
+
+    /**
+     * Writes the header of an index file.
+     *
+     * @param out     the file
+     * @param records the number of records
+     * @throws IOException if the header cannot be written
+     */
+    private static void writeHeader(DataOutputStream out, long records) throws IOException {
+        out.writeInt(PositionIndex.MAGIC);
+        out.writeInt(PositionIndex.VERSION);
+        out.writeLong(records);
+    }
+
+    /**
+     * Writes a buffer's contents at a position of a file and empties the buffer.
+     *
+     * @param channel  the file
+     * @param buffer   the buffer, ready to be written to
+     * @param position the position in the file
+     * @throws IOException if the buffer cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Describes a game in one line for <code>games.txt</code>.
+     *
+     * @param tags the game's tags
+     * @return the players, event, date and result
+     */
+    private static String describe(java.util.Map<String, String> tags) {
+        return String.join(", ", tags.getOrDefault("White", "?") + " - "
+                                 + tags.getOrDefault("Black", "?"),
+                           tags.getOrDefault("Event", "?"), tags.getOrDefault("Date", "?"),
+                           tags.getOrDefault("Result", Pgn.UNKNOWN_RESULT));
+    }
+
+    /**
+     * Returns the path of a worker's run file.
+     *
+     * @param temporary the directory of the run files
+     * @param worker    the worker's number
+     * @return the path
+     */
+    private static Path runFile(Path temporary, int worker) {
+        return temporary.resolve("run-" + worker + ".tmp");
+    }
+
+    /**
+     * Returns the path of a key range's key file.
+     *
+     * @param temporary the directory of the run files
+     * @param partition the key range
+     * @return the path
+     */
+    private static Path keyFile(Path temporary, int partition) {
+        return temporary.resolve("keys-" + partition + ".tmp");
+    }
+
+    /**
+     * Returns the path of a key range's move file.
+     *
+     * @param temporary the directory of the run files
+     * @param partition the key range
+     * @return the path
+     */
+    private static Path moveFile(Path temporary, int partition) {
+        return temporary.resolve("moves-" + partition + ".tmp");
+    }
+
+    /**
+     * Compares two postings by key, as an unsigned number, then by value.
+     *
+     * @return a negative number, zero or a positive number as the first posting is smaller,
+     *         equal or larger
+     */
+    private static int compare(long key1, long value1, long key2, long value2) {
+        int comparison = Long.compareUnsigned(key1, key2);
+        return comparison != 0 ? comparison : Long.compare(value1, value2);
+    }
+
+    /**
+     * Sorts a range of postings held in two parallel arrays, with quicksort.
+     *
+     * @param keys   the keys
+     * @param values the values
+     * @param from   the first index
+     * @param to     the index after the last
+     */
+    private static void sort(long[] keys, long[] values, int from, int to) {
+        while (to - from > 16) {
+            int middle = (from + to) >>> 1;
+            long pivotKey = keys[middle], pivotValue = values[middle];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            // Recurse into the smaller side and loop on the larger one
+            if (j + 1 - from < to - i) {
+                sort(keys, values, from, j + 1);
+                from = i;
+            } else {
+                sort(keys, values, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compare(keys[j - 1], values[j - 1], keys[j], values[j]) > 0;
+                 j--) {
+                swap(keys, values, j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * Swaps two postings.
+     *
+     * @param keys   the keys
+     * @param values the values
+     * @param i      a posting
+     * @param j      another posting
+     */
+    private static void swap(long[] keys, long[] values, int i, int j) {
+        long key = keys[i], value = values[i];
+        keys[i] = keys[j];
+        values[i] = values[j];
+        keys[j] = key;
+        values[j] = value;
+    }
+
+    /**
+     * Moves a part up the merge heap until its head is not smaller than its parent's.
+     *
+     * @param heap  the parts, ordered by their heads
+     * @param i     the part's place in the heap
+     * @param heads the current head of every part
+     * @param keys  the keys
+     * @param values the values
+     */
+    private static void siftUp(int[] heap, int i, int[] heads, long[] keys, long[] values) {
+        while (i > 0 && isSmaller(heap[i], heap[(i - 1) / 2], heads, keys, values)) {
+            int parent = (i - 1) / 2, part = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = part;
+            i = parent;
+        }
+    }
+
+    /**
+     * Moves the part at the top of the merge heap down until its head is not larger than its
+     * children's.
+     *
+     * @param heap   the parts, ordered by their heads
+     * @param size   the number of parts in the heap
+     * @param heads  the current head of every part
+     * @param keys   the keys
+     * @param values the values
+     */
+    private static void siftDown(int[] heap, int size, int[] heads, long[] keys, long[] values) {
+        for (int i = 0; 2 * i + 1 < size; ) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && isSmaller(heap[child + 1], heap[child], heads, keys, values)) {
+                child++;
+            }
+            if (!isSmaller(heap[child], heap[i], heads, keys, values)) {
+                break;
+            }
+            int part = heap[i];
+            heap[i] = heap[child];
+            heap[child] = part;
+            i = child;
+        }
+    }
+
+    /**
+     * Determines if a part's head comes before another's.
+     *
+     * @param a      a part
+     * @param b      another part
+     * @param heads  the current head of every part
+     * @param keys   the keys
+     * @param values the values
+     * @return <code>true</code> if the head of <code>a</code> is smaller
+     */
+    private static boolean isSmaller(int a, int b, int[] heads, long[] keys, long[] values) {
+        return compare(keys[heads[a]], values[heads[a]], keys[heads[b]], values[heads[b]]) < 0;
+    }
+
+}
\ No newline at end of file
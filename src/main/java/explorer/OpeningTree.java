@@ -0,0 +1,454 @@
+package explorer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Counts how often each move was played from each position of a collection of games, how those
+ * games ended, and how strong the players who chose the move were. Positions are identified by
+ * their Zobrist keys, so transpositions share their counts.
+ * <br>
+ * The counts are kept in one open-addressing table of primitive arrays with a fixed number of
+ * entries, so memory does not grow with the number of games. When the table fills up, the rarest
+ * entries are dropped: first those played once, then those played less than twice as often, and
+ * so on until half the table is free. A move dropped this way may come back later with a lower
+ * count, so counts below {@link #getMinGames()} are not exact; counts above it are exact, except
+ * for the occurrences seen before a prune dropped the move, which is rare for common moves.
+ * <br>
+ * Entries with the same position are found by scanning from the position's home slot, which is
+ * what linear probing on the position's key alone allows, so all the moves of a position can be
+ * listed without an index.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class OpeningTree {
+
+    /**
+     * How often a move was played from a position, how those games ended, and the average rating
+     * of the players who played it.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Entry {
+
+        private final Move move;
+        private final int games;
+        private final int whiteWins;
+        private final int draws;
+        private final int blackWins;
+        private final int averageRating;
+
+        /**
+         * Creates an entry.
+         *
+         * @param move          the move
+         * @param games         the number of games
+         * @param whiteWins     the number of these games that white won
+         * @param draws         the number of these games that were drawn
+         * @param blackWins     the number of these games that black won
+         * @param averageRating the average rating of the players who played the move, or
+         *                      <code>0</code> if none was rated
+         */
+        Entry(Move move, int games, int whiteWins, int draws, int blackWins, int averageRating) {
+            this.move = move;
+            this.games = games;
+            this.whiteWins = whiteWins;
+            this.draws = draws;
+            this.blackWins = blackWins;
+            this.averageRating = averageRating;
+        }
+
+        /**
+         * Returns the move.
+         *
+         * @return the move
+         */
+        public Move getMove() {
+            return move;
+        }
+
+        /**
+         * Returns the number of games in which the move was played.
+         *
+         * @return the game count
+         */
+        public int getGames() {
+            return games;
+        }
+
+        /**
+         * Returns the number of these games that white won.
+         *
+         * @return the game count
+         */
+        public int getWhiteWins() {
+            return whiteWins;
+        }
+
+        /**
+         * Returns the number of these games that were drawn.
+         *
+         * @return the game count
+         */
+        public int getDraws() {
+            return draws;
+        }
+
+        /**
+         * Returns the number of these games that black won.
+         *
+         * @return the game count
+         */
+        public int getBlackWins() {
+            return blackWins;
+        }
+
+        /**
+         * Returns white's score in the games with a known result.
+         *
+         * @return the score between <code>0</code> and <code>1</code>, or <code>0.5</code> if no
+         *         result is known
+         */
+        public double getWhiteScore() {
+            int decided = whiteWins + draws + blackWins;
+            return decided == 0 ? 0.5 : (whiteWins + draws / 2.0) / decided;
+        }
+
+        /**
+         * Returns the average rating of the players who played the move.
+         *
+         * @return the rating, or <code>0</code> if none of them was rated
+         */
+        public int getAverageRating() {
+            return averageRating;
+        }
+
+        /**
+         * Describes the entry, such as "e2e4 1,234 games, white scores 54.1%, rated 2315".
+         *
+         * @return the description
+         */
+        @Override
+        public String toString() {
+            return String.format("%s %,d games, white scores %.1f%%, rated %d", move, games,
+                                 100 * getWhiteScore(), averageRating);
+        }
+
+    }
+
+    private static final int MAGIC   = 0x4f545245; // "OTRE"
+    private static final int VERSION = 1;
+
+    private final int maxEntries;
+    private final int mask;
+    private final long[] keys;
+    private final short[] moves; // Packed moves; 0 marks a free slot
+    private final int[] games;
+    private final int[] whiteWins;
+    private final int[] draws;
+    private final int[] blackWins;
+    private final long[] ratingSums;
+    private final int[] ratedGames;
+    private int size;
+    private int minGames;
+
+    /**
+     * Creates an empty tree.
+     *
+     * @param maxEntries the number of position and move pairs kept before the rarest are dropped
+     * @throws IllegalArgumentException if <code>maxEntries</code> is not positive or above
+     *                                  <code>2<sup>28</sup></code>
+     */
+    public OpeningTree(int maxEntries) {
+        if (maxEntries < 1 || maxEntries > 1 << 28) {
+            throw new IllegalArgumentException("Invalid number of entries: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        int capacity = Integer.highestOneBit(maxEntries) << 2; // At most half full
+        mask = capacity - 1;
+        keys = new long[capacity];
+        moves = new short[capacity];
+        games = new int[capacity];
+        whiteWins = new int[capacity];
+        draws = new int[capacity];
+        blackWins = new int[capacity];
+        ratingSums = new long[capacity];
+        ratedGames = new int[capacity];
+        minGames = 1;
+    }
+
+    /**
+     * Counts one game in which a move was played from a position.
+     *
+     * @param key    the position's Zobrist key
+     * @param move   the move
+     * @param result the game's result: "1-0", "0-1", "1/2-1/2" or "*"
+     * @param rating the rating of the player who played the move, or <code>0</code> if unknown
+     */
+    public void add(long key, Move move, String result, int rating) {
+        int code = PositionIndex.resultCode(result);
+        add(key, (short) move.pack(), 1, code == PositionIndex.WHITE_WINS ? 1 : 0,
+            code == PositionIndex.DRAW ? 1 : 0, code == PositionIndex.BLACK_WINS ? 1 : 0,
+            rating, rating > 0 ? 1 : 0);
+    }
+
+    /**
+     * Adds the counts of another tree to this one. The other tree is left unchanged.
+     *
+     * @param other the other tree
+     * @return this tree
+     */
+    public OpeningTree merge(OpeningTree other) {
+        for (int slot = 0; slot <= other.mask; slot++) {
+            if (other.moves[slot] != 0) {
+                add(other.keys[slot], other.moves[slot], other.games[slot], other.whiteWins[slot],
+                    other.draws[slot], other.blackWins[slot], other.ratingSums[slot],
+                    other.ratedGames[slot]);
+            }
+        }
+        minGames = Math.max(minGames, other.minGames);
+        return this;
+    }
+
+    /**
+     * Drops the entries played in fewer games than a limit.
+     *
+     * @param limit the number of games an entry needs to be kept
+     */
+    public void prune(int limit) {
+        if (limit <= 1) {
+            return;
+        }
+        int kept = 0, free = -1;
+        for (int slot = 0; slot <= mask; slot++) {
+            if (moves[slot] != 0 && games[slot] < limit) {
+                moves[slot] = 0;
+            }
+            if (moves[slot] != 0) {
+                kept++;
+            } else if (free < 0) {
+                free = slot;
+            }
+        }
+        // The dropped entries left holes in the probe sequences of the kept ones. Reinserting
+        // the kept entries in slot order, starting after a free slot, only moves them back into
+        // those holes and never opens a hole before an entry that was already placed.
+        for (int i = 1; i <= mask; i++) {
+            int from = (free + i) & mask;
+            if (moves[from] == 0) {
+                continue;
+            }
+            int to = (int) keys[from] & mask;
+            while (moves[to] != 0 && to != from) {
+                to = (to + 1) & mask;
+            }
+            if (to != from) {
+                keys[to] = keys[from];
+                moves[to] = moves[from];
+                games[to] = games[from];
+                whiteWins[to] = whiteWins[from];
+                draws[to] = draws[from];
+                blackWins[to] = blackWins[from];
+                ratingSums[to] = ratingSums[from];
+                ratedGames[to] = ratedGames[from];
+                moves[from] = 0;
+            }
+        }
+        size = kept;
+        minGames = Math.max(minGames, limit);
+    }
+
+    /**
+     * Lists the moves played from a position.
+     *
+     * @param board the position
+     * @return the moves, most played first; empty if the position is not in the tree
+     */
+    public List<Entry> getMoves(Board board) {
+        return getMoves(board.getKey());
+    }
+
+    /**
+     * Lists the moves played from a position.
+     *
+     * @param key the position's Zobrist key
+     * @return the moves, most played first; empty if the position is not in the tree
+     */
+    public List<Entry> getMoves(long key) {
+        var entries = new java.util.ArrayList<Entry>();
+        for (int slot = (int) key & mask; moves[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                entries.add(entry(slot));
+            }
+        }
+        entries.sort(java.util.Comparator.comparingInt(Entry::getGames).reversed());
+        return entries;
+    }
+
+    /**
+     * Returns the number of position and move pairs in the tree.
+     *
+     * @return the entry count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of games below which an entry may have been dropped, so that counts
+     * below it are not exact.
+     *
+     * @return the highest limit a prune used, or <code>1</code> if nothing was pruned
+     */
+    public int getMinGames() {
+        return minGames;
+    }
+
+    /**
+     * Writes the tree to a compressed file. Entries are written by position, in the order of
+     * their keys, so each key is written once and similar records sit together.
+     *
+     * @param path the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        int[] slots = java.util.stream.IntStream.rangeClosed(0, mask)
+                                                .filter(slot -> moves[slot] != 0).boxed()
+                                                .sorted((a, b) -> Long.compareUnsigned(keys[a],
+                                                                                      keys[b]))
+                                                .mapToInt(Integer::intValue).toArray();
+        try (var out = new DataOutputStream(new java.io.BufferedOutputStream(
+                new java.util.zip.GZIPOutputStream(Files.newOutputStream(path))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(minGames);
+            for (int i = 0, next; i < slots.length; i = next) {
+                next = i + 1;
+                while (next < slots.length && keys[slots[next]] == keys[slots[i]]) {
+                    next++;
+                }
+                out.writeLong(keys[slots[i]]);
+                out.writeShort(next - i);
+                for (int j = i; j < next; j++) {
+                    int slot = slots[j];
+                    out.writeShort(moves[slot]);
+                    out.writeInt(games[slot]);
+                    out.writeInt(whiteWins[slot]);
+                    out.writeInt(draws[slot]);
+                    out.writeInt(blackWins[slot]);
+                    out.writeShort(averageRating(slot));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a tree written by {@link #write(Path)}. The tree read has room for its entries and
+     * no more, so adding to it drops rare entries.
+     *
+     * @param path the file
+     * @return the tree
+     * @throws IOException if the file cannot be read or is not a tree
+     */
+    public static OpeningTree read(Path path) throws IOException {
+        try (var in = new DataInputStream(new java.io.BufferedInputStream(
+                new java.util.zip.GZIPInputStream(Files.newInputStream(path))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an opening tree: " + path);
+            }
+            int entries = in.readInt();
+            var tree = new OpeningTree(Math.max(entries, 1));
+            tree.minGames = in.readInt();
+            while (tree.size < entries) {
+                long key = in.readLong();
+                for (int moveCount = in.readUnsignedShort(); moveCount > 0; moveCount--) {
+                    short move = in.readShort();
+                    int games = in.readInt(), whiteWins = in.readInt(), draws = in.readInt();
+                    int blackWins = in.readInt(), rating = in.readUnsignedShort();
+                    // The average is kept by counting every game as rated at that rating
+                    tree.add(key, move, games, whiteWins, draws, blackWins,
+                             (long) rating * games, rating > 0 ? games : 0);
+                }
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * Adds counts to an entry, creating it if needed. If the table is full, the rarest entries
+     * are dropped first.
+     *
+     * @param key            the position's Zobrist key
+     * @param move           the packed move
+     * @param gameCount      the number of games to add
+     * @param whiteWinCount  the number of these games that white won
+     * @param drawCount      the number of these games that were drawn
+     * @param blackWinCount  the number of these games that black won
+     * @param ratingSum      the sum of the ratings of the rated players who played the move
+     * @param ratedGameCount the number of games in which the player was rated
+     */
+    private void add(long key, short move, int gameCount, int whiteWinCount, int drawCount,
+                     int blackWinCount, long ratingSum, int ratedGameCount) {
+        int slot = (int) key & mask;
+        while (moves[slot] != 0 && (keys[slot] != key || moves[slot] != move)) {
+            slot = (slot + 1) & mask;
+        }
+        if (moves[slot] == 0) {
+            if (size == maxEntries) {
+                for (int limit = 2; size > maxEntries / 2; limit *= 2) {
+                    prune(limit);
+                }
+                add(key, move, gameCount, whiteWinCount, drawCount, blackWinCount, ratingSum,
+                    ratedGameCount);
+                return;
+            }
+            // A slot freed by a prune still holds the counts of the entry dropped from it
+            keys[slot] = key;
+            moves[slot] = move;
+            games[slot] = 0;
+            whiteWins[slot] = 0;
+            draws[slot] = 0;
+            blackWins[slot] = 0;
+            ratingSums[slot] = 0;
+            ratedGames[slot] = 0;
+            size++;
+        }
+        games[slot] += gameCount;
+        whiteWins[slot] += whiteWinCount;
+        draws[slot] += drawCount;
+        blackWins[slot] += blackWinCount;
+        ratingSums[slot] += ratingSum;
+        ratedGames[slot] += ratedGameCount;
+    }
+
+    /**
+     * Returns the entry in a slot.
+     *
+     * @param slot an occupied slot
+     * @return the entry
+     */
+    private Entry entry(int slot) {
+        return new Entry(Move.unpack(moves[slot]), games[slot], whiteWins[slot], draws[slot],
+                         blackWins[slot], averageRating(slot));
+    }
+
+    /**
+     * Returns the average rating of the players who played the move in a slot.
+     *
+     * @param slot an occupied slot
+     * @return the rating, or <code>0</code> if none of them was rated
+     */
+    private int averageRating(int slot) {
+        return ratedGames[slot] == 0 ? 0 : (int) (ratingSums[slot] / ratedGames[slot]);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+package explorer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import chess.Board;
+import chess.Move;
+import chess.Pgn;
+import chess.pieces.Color;
+
+/**
+ * Builds an {@link OpeningTree} from files in Portable Game Notation in one streaming pass. The
+ * calling thread cuts the files into games and hands them out in batches; every worker thread
+ * parses its games up to the ply limit and counts them in a tree of its own, so the workers
+ * never share anything. When the files are read, the workers' trees are merged pairwise in
+ * parallel, the entries played in fewer games than the limit are dropped, and the result is
+ * written to a compressed file.
+ * <br>
+ * Every tree holds a fixed number of entries and drops its rarest ones when full, so memory is
+ * bounded by the number of threads, whatever the number of games.
+ * <br>
+ * Usage: <code>OpeningTreeBuilder tree.bin threads plies minGames entries games.pgn
+ * [more.pgn ...]</code>, where <code>0</code> threads means one per core and
+ * <code>entries</code> is the number of position and move pairs kept per thread.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class OpeningTreeBuilder {
+
+    private static final int BATCH_GAMES = 256;
+    private static final List<String> NO_MORE_GAMES = List.of();
+
+    private final int threads;
+    private final int plies;
+    private final int minGames;
+    private final int entries;
+    private final AtomicLong skippedGames;
+    private long gameCount;
+
+    /**
+     * Creates a builder.
+     *
+     * @param threads  the number of threads
+     * @param plies    the number of plies of every game counted
+     * @param minGames the number of games a move needs to be kept in the tree
+     * @param entries  the number of position and move pairs kept per thread
+     */
+    public OpeningTreeBuilder(int threads, int plies, int minGames, int entries) {
+        this.threads = threads;
+        this.plies = plies;
+        this.minGames = minGames;
+        this.entries = entries;
+        skippedGames = new AtomicLong();
+    }
+
+    /**
+     * Builds a tree, writes it and prints its size and how long it took.
+     *
+     * @param args the output file, the number of threads, plies, minimum games and entries, and
+     *             the game files
+     * @throws IOException          if a file cannot be read or written
+     * @throws InterruptedException if the build is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 6) {
+            System.err.println("Usage: OpeningTreeBuilder tree.bin threads plies minGames entries"
+                               + " games.pgn [more.pgn ...]");
+            System.exit(2);
+        }
+        int threads = Integer.parseInt(args[1]);
+        threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        var files = new ArrayList<Path>();
+        for (int i = 5; i < args.length; i++) {
+            files.add(Path.of(args[i]));
+        }
+        var builder = new OpeningTreeBuilder(threads, Integer.parseInt(args[2]),
+                                             Integer.parseInt(args[3]),
+                                             Integer.parseInt(args[4]));
+        long start = System.nanoTime();
+        OpeningTree tree = builder.build(files);
+        Path output = Path.of(args[0]);
+        tree.write(output);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d games (%,d skipped), %,d entries of at least %,d games, %,d bytes"
+                          + " in %.1f s: %,.0f games/s on %d threads%n", builder.getGameCount(),
+                          builder.getSkippedGames(), tree.size(), tree.getMinGames(),
+                          Files.size(output), seconds, builder.getGameCount() / seconds, threads);
+        var board = new Board(Board.START_FEN);
+        for (OpeningTree.Entry entry: tree.getMoves(board)) {
+            System.out.println(entry);
+        }
+    }
+
+    /**
+     * Builds the tree of some game files.
+     *
+     * @param files the files, in Portable Game Notation
+     * @return the tree, with the entries played in fewer than the minimum games dropped
+     * @throws IOException          if a file cannot be read
+     * @throws InterruptedException if the build is interrupted
+     */
+    public OpeningTree build(List<Path> files) throws IOException, InterruptedException {
+        var batches = new java.util.concurrent.ArrayBlockingQueue<List<String>>(threads * 2);
+        var trees = new ArrayList<OpeningTree>();
+        var workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            var tree = new OpeningTree(entries);
+            trees.add(tree);
+            var worker = new Thread(() -> {
+                try {
+                    for (List<String> batch; (batch = batches.take()) != NO_MORE_GAMES; ) {
+                        for (String game: batch) {
+                            addGame(tree, game);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "opening-tree-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+
+        long games = 0;
+        try {
+            var batch = new ArrayList<String>(BATCH_GAMES);
+            for (Path file: files) {
+                try (BufferedReader reader = Files.newBufferedReader(file,
+                                                                     StandardCharsets.UTF_8)) {
+                    for (String game; (game = Pgn.readGame(reader)) != null; ) {
+                        batch.add(game);
+                        if (batch.size() == BATCH_GAMES) {
+                            batches.put(batch);
+                            games += batch.size();
+                            batch = new ArrayList<>(BATCH_GAMES);
+                        }
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.put(batch);
+                games += batch.size();
+            }
+        } finally {
+            for (int t = 0; t < threads; t++) {
+                batches.put(NO_MORE_GAMES);
+            }
+            for (Thread worker: workers) {
+                worker.join();
+            }
+        }
+        gameCount = games;
+
+        var pool = new ForkJoinPool(threads);
+        try {
+            OpeningTree tree = pool.submit(() -> trees.parallelStream()
+                                                      .reduce(OpeningTree::merge).get())
+                                   .join();
+            tree.prune(minGames);
+            return tree;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the number of games read by the last build, including the skipped ones.
+     *
+     * @return the game count
+     */
+    public long getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Returns the number of games that could not be parsed in the last build.
+     *
+     * @return the skipped game count
+     */
+    public long getSkippedGames() {
+        return skippedGames.get();
+    }
+
+    /**
+     * Parses the start of a game and counts its moves in a tree. Games that cannot be parsed are
+     * counted and skipped.
+     *
+     * @param tree the worker's tree
+     * @param text the game's text
+     */
+    private void addGame(OpeningTree tree, String text) {
+        Pgn.Game game;
+        Board board;
+        try {
+            game = Pgn.parse(text, plies);
+            board = new Board(game.getStartFen());
+        } catch (IllegalArgumentException e) {
+            skippedGames.incrementAndGet();
+            return;
+        }
+        int whiteRating = rating(game.getTag("WhiteElo"));
+        int blackRating = rating(game.getTag("BlackElo"));
+        for (Move move: game.getMoves()) {
+            tree.add(board.getKey(), move, game.getResult(),
+                     board.getTurn() == Color.WHITE ? whiteRating : blackRating);
+            board.makeMove(move);
+        }
+    }
+
+    /**
+     * Reads a player's rating from a tag.
+     *
+     * @param value the tag's value, or <code>null</code> if the game has no such tag
+     * @return the rating, or <code>0</code> if it is missing or not a number
+     */
+    private static int rating(String value) {
+        try {
+            return value == null ? 0 : Math.max(0, Integer.parseInt(value.strip()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
\ No newline at end of file
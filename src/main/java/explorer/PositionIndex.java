@@ -0,0 +1,483 @@
+package explorer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import chess.Board;
+import chess.Move;
+
+/**
+ * An index of the positions reached in a collection of games, which answers "which games reached
+ * this position, and what was played next" in a binary search. Positions are identified by their
+ * 64-bit Zobrist key, as returned by {@link Board#getKey()}. An index is built by
+ * {@link IndexBuilder} into a directory of five files, which are memory-mapped when the index is
+ * opened:
+ * <table>
+ *   <caption>Index files</caption>
+ *   <tr><th>File</th><th>Records</th></tr>
+ *   <tr><td><code>positions.idx</code></td><td>one per position, 24 bytes: the key, the number
+ *   of the position's first posting and the number of its first move; sorted by key, as an
+ *   unsigned number</td></tr>
+ *   <tr><td><code>moves.idx</code></td><td>one per move played from every position, 20 bytes:
+ *   the move as packed by {@link Move#pack()}, or <code>0</code> for the games that ended there,
+ *   then the number of games for each result code; most played first within a position</td></tr>
+ *   <tr><td><code>postings.idx</code></td><td>one per ply of every game, 8 bytes: the game's
+ *   number, its result in two bits, the ply in fourteen, and the next move as packed by
+ *   {@link Move#pack()}, or <code>0</code> if the game ended; sorted by key, game and ply</td></tr>
+ *   <tr><td><code>games.idx</code></td><td>one per game, 8 bytes: the offset of its line in
+ *   <code>games.txt</code></td></tr>
+ *   <tr><td><code>games.txt</code></td><td>one line per game: players, event, date and
+ *   result</td></tr>
+ * </table>
+ * Every <code>.idx</code> file starts with a 16-byte header: a magic number, the format version
+ * and the number of records. Files larger than the 2 GB that a single mapping can hold are mapped
+ * in several parts. The move counts are gathered when the index is built, so a query reads a
+ * position's moves directly and only looks at postings for its first few games. Queries only read
+ * the mapped files, so any number of threads can run them at once.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see IndexBuilder
+ */
+public class PositionIndex {
+
+    /**
+     * How often a move was played from a position, and how the games went on.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class MoveStats {
+
+        private final Move move;
+        private final int[] results;
+
+        /**
+         * Creates the statistics of a move.
+         *
+         * @param move    the move
+         * @param results the number of games for each result code
+         */
+        MoveStats(Move move, int[] results) {
+            this.move = move;
+            this.results = results;
+        }
+
+        /**
+         * Returns the move.
+         *
+         * @return the move
+         */
+        public Move getMove() {
+            return move;
+        }
+
+        /**
+         * Returns the number of games in which the move was played.
+         *
+         * @return the game count
+         */
+        public int getGames() {
+            return results[UNKNOWN] + results[WHITE_WINS] + results[DRAW] + results[BLACK_WINS];
+        }
+
+        /**
+         * Returns the number of these games that white won.
+         *
+         * @return the game count
+         */
+        public int getWhiteWins() {
+            return results[WHITE_WINS];
+        }
+
+        /**
+         * Returns the number of these games that were drawn.
+         *
+         * @return the game count
+         */
+        public int getDraws() {
+            return results[DRAW];
+        }
+
+        /**
+         * Returns the number of these games that black won.
+         *
+         * @return the game count
+         */
+        public int getBlackWins() {
+            return results[BLACK_WINS];
+        }
+
+        /**
+         * Returns white's score in the games with a known result.
+         *
+         * @return the score between <code>0</code> and <code>1</code>, or <code>0.5</code> if no
+         *         result is known
+         */
+        public double getWhiteScore() {
+            int decided = results[WHITE_WINS] + results[DRAW] + results[BLACK_WINS];
+            return decided == 0 ? 0.5 : (results[WHITE_WINS] + results[DRAW] / 2.0) / decided;
+        }
+
+        /**
+         * Describes the statistics, such as "e2e4 1,234 games, white scores 54.1%".
+         *
+         * @return the description
+         */
+        @Override
+        public String toString() {
+            return String.format("%s %,d games, white scores %.1f%%", move == null ? "end" : move,
+                                 getGames(), 100 * getWhiteScore());
+        }
+
+    }
+
+    /**
+     * The games that reached a position: how many there were, how they went on and ended, and the
+     * first few of them.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Stats {
+
+        private final MoveStats total;
+        private final List<MoveStats> moves;
+        private final List<Integer> sampleGames;
+
+        /**
+         * Creates the statistics of a position.
+         *
+         * @param total       the results of all the games
+         * @param moves       the statistics of every move played, most played first
+         * @param sampleGames the numbers of the first games that reached the position
+         */
+        Stats(MoveStats total, List<MoveStats> moves, List<Integer> sampleGames) {
+            this.total = total;
+            this.moves = List.copyOf(moves);
+            this.sampleGames = List.copyOf(sampleGames);
+        }
+
+        /**
+         * Returns the number of games that reached the position. A game that reached it more
+         * than once counts once.
+         *
+         * @return the game count
+         */
+        public int getGames() {
+            return total.getGames();
+        }
+
+        /**
+         * Returns the results of all the games that reached the position.
+         *
+         * @return the statistics, without a move
+         */
+        public MoveStats getTotal() {
+            return total;
+        }
+
+        /**
+         * Returns the moves played from the position.
+         *
+         * @return the statistics of every move, most played first
+         */
+        public List<MoveStats> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Returns the first games that reached the position, in the order they were imported.
+         *
+         * @return up to {@value PositionIndex#SAMPLE_GAMES} game numbers
+         * @see PositionIndex#getGame(int)
+         */
+        public List<Integer> getSampleGames() {
+            return sampleGames;
+        }
+
+    }
+
+    /** Number of games listed by {@link Stats#getSampleGames()}. */
+    public static final int SAMPLE_GAMES = 10;
+
+    static final String POSITIONS_FILE = "positions.idx";
+    static final String POSTINGS_FILE  = "postings.idx";
+    static final String MOVES_FILE     = "moves.idx";
+    static final String GAMES_FILE     = "games.idx";
+    static final String GAME_TEXT_FILE = "games.txt";
+    static final int    MAGIC          = 0x50494458; // "PIDX"
+    static final int    VERSION        = 2;
+    static final int    HEADER         = 16;
+    static final int    POSITION_BYTES = 24;
+    static final int    POSTING_BYTES  = 8;
+    static final int    MOVE_BYTES     = 20;
+    static final int    MAX_PLY        = (1 << 14) - 1;
+
+    // Result codes
+    static final int UNKNOWN    = 0;
+    static final int WHITE_WINS = 1;
+    static final int DRAW       = 2;
+    static final int BLACK_WINS = 3;
+
+    private static final int SEGMENT_BITS = 30;
+
+    private final MappedFile positions;
+    private final MappedFile postings;
+    private final MappedFile moves;
+    private final MappedFile games;
+    private final MappedFile gameText;
+    private final long positionCount;
+    private final long postingCount;
+    private final long moveCount;
+    private final int gameCount;
+
+    /**
+     * Opens an index.
+     *
+     * @param directory the directory the index was built in
+     * @throws IOException if a file is missing, cannot be read or is not part of an index
+     */
+    public PositionIndex(Path directory) throws IOException {
+        positions = new MappedFile(directory.resolve(POSITIONS_FILE));
+        postings = new MappedFile(directory.resolve(POSTINGS_FILE));
+        moves = new MappedFile(directory.resolve(MOVES_FILE));
+        games = new MappedFile(directory.resolve(GAMES_FILE));
+        gameText = new MappedFile(directory.resolve(GAME_TEXT_FILE));
+        positionCount = positions.getRecordCount();
+        postingCount = postings.getRecordCount();
+        moveCount = moves.getRecordCount();
+        gameCount = (int) games.getRecordCount();
+    }
+
+    /**
+     * Looks up the games that reached the current position of a board.
+     *
+     * @param board the board
+     * @return the statistics of the position; without games if no game reached it
+     */
+    public Stats query(Board board) {
+        return query(board.getKey());
+    }
+
+    /**
+     * Looks up the games that reached a position.
+     *
+     * @param key the position's Zobrist key
+     * @return the statistics of the position; without games if no game reached it
+     */
+    public Stats query(long key) {
+        long low = 0, high = positionCount - 1, found = -1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            int comparison = Long.compareUnsigned(positions.getLong(HEADER + middle
+                                                                    * POSITION_BYTES), key);
+            if (comparison == 0) {
+                found = middle;
+                break;
+            } else if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        int[] totals = new int[4];
+        var moveStats = new java.util.ArrayList<MoveStats>();
+        var sampleGames = new java.util.ArrayList<Integer>();
+        if (found >= 0) {
+            long record = HEADER + found * POSITION_BYTES;
+            long firstMove = positions.getLong(record + 16);
+            long endMove = found + 1 < positionCount
+                           ? positions.getLong(record + POSITION_BYTES + 16)
+                           : moveCount;
+            for (long move = firstMove; move < endMove; move++) {
+                long offset = HEADER + move * MOVE_BYTES;
+                int code = moves.getInt(offset);
+                int[] results = new int[4];
+                for (int result = 0; result < 4; result++) {
+                    results[result] = moves.getInt(offset + 4 + result * 4);
+                    totals[result] += results[result];
+                }
+                if (code != 0) {
+                    moveStats.add(new MoveStats(Move.unpack(code), results));
+                }
+            }
+
+            long first = positions.getLong(record + 8);
+            long end = found + 1 < positionCount
+                       ? positions.getLong(record + POSITION_BYTES + 8)
+                       : postingCount;
+            for (long posting = first; posting < end && sampleGames.size() < SAMPLE_GAMES;
+                 posting++) {
+                int game = (int) (postings.getLong(HEADER + posting * POSTING_BYTES) >>> 32);
+                // Repetitions of the position in the same game count once
+                if (sampleGames.isEmpty() || sampleGames.get(sampleGames.size() - 1) != game) {
+                    sampleGames.add(game);
+                }
+            }
+        }
+        return new Stats(new MoveStats(null, totals), moveStats, sampleGames);
+    }
+
+    /**
+     * Describes a game of the index.
+     *
+     * @param game the game's number, from <code>0</code>
+     * @return the game's line, such as "Anand, V - Carlsen, M, World Championship, 2013.11.22,
+     *         1/2-1/2"
+     * @throws IndexOutOfBoundsException if there is no such game
+     */
+    public String getGame(int game) {
+        java.util.Objects.checkIndex(game, gameCount);
+        long start = games.getLong(HEADER + (long) game * 8);
+        var bytes = new java.io.ByteArrayOutputStream();
+        for (long i = start; i < gameText.size() && gameText.get(i) != '\n'; i++) {
+            bytes.write(gameText.get(i));
+        }
+        return bytes.toString(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of games in the index.
+     *
+     * @return the game count
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Returns the number of distinct positions in the index.
+     *
+     * @return the position count
+     */
+    public long getPositionCount() {
+        return positionCount;
+    }
+
+    /**
+     * Returns the number of times a game reached a position, summed over all the games.
+     *
+     * @return the posting count
+     */
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    /**
+     * Encodes a result for the postings.
+     *
+     * @param result "1-0", "1/2-1/2", "0-1" or anything else for an unknown result
+     * @return the result code
+     */
+    static int resultCode(String result) {
+        return switch (result) {
+            case "1-0"     -> WHITE_WINS;
+            case "1/2-1/2" -> DRAW;
+            case "0-1"     -> BLACK_WINS;
+            default        -> UNKNOWN;
+        };
+    }
+
+    /**
+     * A read-only file mapped into memory in parts of at most 1 GB, so that files larger than a
+     * single mapping can be read. Integers and longs at offsets that are a multiple of their size
+     * never cross two parts.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class MappedFile {
+
+        private final ByteBuffer[] parts;
+        private final long size;
+        private final Path path;
+
+        /**
+         * Maps a file.
+         *
+         * @param path the file
+         * @throws IOException if the file cannot be read
+         */
+        MappedFile(Path path) throws IOException {
+            this.path = path;
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                size = channel.size();
+                parts = new ByteBuffer[(int) ((size >>> SEGMENT_BITS) + 1)];
+                for (int i = 0; i < parts.length; i++) {
+                    long start = (long) i << SEGMENT_BITS;
+                    parts[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                           Math.min(1L << SEGMENT_BITS, size - start));
+                }
+            }
+        }
+
+        /**
+         * Returns the number of records announced by the header of an index file.
+         *
+         * @return the record count
+         * @throws IOException if the file does not start with an index header
+         */
+        long getRecordCount() throws IOException {
+            if (size < HEADER || getInt(0) != MAGIC || getInt(4) != VERSION) {
+                throw new IOException("Not a position index file: " + path);
+            }
+            return getLong(8);
+        }
+
+        /**
+         * Returns the size of the file.
+         *
+         * @return the size in bytes
+         */
+        long size() {
+            return size;
+        }
+
+        /**
+         * Reads a byte.
+         *
+         * @param position the byte's offset in the file
+         * @return the byte
+         */
+        byte get(long position) {
+            return parts[(int) (position >>> SEGMENT_BITS)].get(offset(position));
+        }
+
+        /**
+         * Reads a big-endian integer.
+         *
+         * @param position the integer's offset in the file
+         * @return the integer
+         */
+        int getInt(long position) {
+            return parts[(int) (position >>> SEGMENT_BITS)].getInt(offset(position));
+        }
+
+        /**
+         * Reads a big-endian long.
+         *
+         * @param position the long's offset in the file
+         * @return the long
+         */
+        long getLong(long position) {
+            return parts[(int) (position >>> SEGMENT_BITS)].getLong(offset(position));
+        }
+
+        /**
+         * Returns the offset of a position within its part.
+         *
+         * @param position the offset in the file
+         * @return the offset in the part
+         */
+        private static int offset(long position) {
+            return (int) (position & ((1L << SEGMENT_BITS) - 1));
+        }
+
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,6 @@
+/**
+ * Contains the game database behind the opening explorer: an index of the positions reached in a
+ * collection of games, built from files in Portable Game Notation by a parallel external sort and
+ * queried by binary search over memory-mapped files.
+ */
+package explorer;
\ No newline at end of file
@@ -0,0 +1,151 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import chess.pieces.Color;
+
+/**
+ * A client connected to the server. Each connection is served by its own thread, which reads
+ * the client's commands; lines pushed by the client's game may be sent from the opponent's
+ * thread.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see server.GameServer
+ */
+class Connection implements Runnable {
+
+    private final Socket socket;
+    private final GameServer server;
+    private PrintWriter out;
+    private Game game;
+
+    /**
+     * Creates a connection for an accepted socket.
+     *
+     * @param socket the client's socket
+     * @param server the server that accepted it
+     */
+    Connection(Socket socket, GameServer server) {
+        this.socket = socket;
+        this.server = server;
+    }
+
+    /**
+     * Reads and executes the client's commands until it quits or disconnects.
+     */
+    @Override
+    public void run() {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            var in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                              StandardCharsets.UTF_8));
+            synchronized (this) {
+                out = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
+            }
+            String line;
+            while ((line = in.readLine()) != null && execute(line.trim().split("\\s+"))) {
+                // Keep reading
+            }
+        } catch (IOException e) {
+            // The client disconnected
+        } finally {
+            leaveGame();
+            server.disconnected(socket);
+        }
+    }
+
+    /**
+     * Sends a line to the client. Safe to call from any thread.
+     *
+     * @param line the line to send
+     */
+    synchronized void send(String line) {
+        if (out != null) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    /**
+     * Executes one command.
+     *
+     * @param tokens the command's tokens
+     * @return <code>false</code> if the client quit
+     */
+    private boolean execute(String[] tokens) {
+        switch (tokens[0].toUpperCase()) {
+            case "NEW" -> {
+                leaveGame();
+                joinGame(server.createGame(), null);
+            }
+            case "JOIN" -> {
+                Game requested = tokens.length > 1 ? server.findGame(tokens[1]) : null;
+                Color color = tokens.length > 2 ? parseColor(tokens[2]) : null;
+                if (requested == null) {
+                    send("ERROR No such game");
+                } else if (tokens.length > 2 && color == null) {
+                    send("ERROR Unknown color " + tokens[2]);
+                } else {
+                    leaveGame();
+                    joinGame(requested, color);
+                }
+            }
+            case "MOVE" -> {
+                if (game == null || tokens.length < 2 || !game.move(this, tokens[1])) {
+                    send("ILLEGAL " + (tokens.length < 2 ? "" : tokens[1]));
+                }
+            }
+            case "RESIGN" -> leaveGame();
+            case "QUIT" -> {
+                return false;
+            }
+            default -> send("ERROR Unknown command " + tokens[0]);
+        }
+        return true;
+    }
+
+    /**
+     * Takes a seat at the specified game.
+     *
+     * @param requested the game to join
+     * @param color     the side to sit at, or <code>null</code> for the first free one
+     */
+    private void joinGame(Game requested, Color color) {
+        if (color == null ? requested.join(this) : requested.join(this, color)) {
+            game = requested;
+        } else {
+            send("ERROR Game is full");
+        }
+    }
+
+    /**
+     * Parses the color a client asks to play.
+     *
+     * @param text "WHITE" or "BLACK", in any case
+     * @return the color or <code>null</code> if <code>text</code> is neither
+     */
+    private static Color parseColor(String text) {
+        return switch (text.toUpperCase()) {
+            case "WHITE" -> Color.WHITE;
+            case "BLACK" -> Color.BLACK;
+            default      -> null;
+        };
+    }
+
+    /**
+     * Leaves the current game, if any, resigning it if it was still being played.
+     */
+    private void leaveGame() {
+        if (game != null) {
+            game.leave(this);
+            server.removeIfAbandoned(game);
+            game = null;
+        }
+    }
+
+}
\ No newline at end of file
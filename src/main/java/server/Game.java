@@ -0,0 +1,426 @@
+package server;
+
+import chess.Board;
+import chess.Metrics;
+import chess.Move;
+import chess.MoveEvent;
+import chess.pieces.Color;
+
+/**
+ * A game hosted by the server. Each game owns its own {@link Board}, and therefore its own
+ * history, and serializes the moves of its two players. If the server keeps a
+ * {@link MoveJournal}, every move is logged, and confirmed to the players only once it is durable;
+ * a game whose moves can no longer be logged stops, so that it can be recovered where it was.
+ * A game left idle can be parked in an {@link IdleGameStore}, which drops its board until the next
+ * move arrives; the rebuilt board starts a new history.
+ * How long each move takes to handle is reported to JDK Flight Recorder and {@link Metrics}.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class Game {
+
+    /**
+     * A move handled by a game, reported to JDK Flight Recorder. Its duration runs from the
+     * moment the game takes the move until both players are told, waiting for the journal
+     * included.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    @jdk.jfr.Name("chess.ServerMove")
+    @jdk.jfr.Label("Server Move")
+    @jdk.jfr.Category("Chess")
+    @jdk.jfr.StackTrace(false)
+    static class MoveHandledEvent extends jdk.jfr.Event {
+
+        @jdk.jfr.Label("Game")
+        int game;
+
+        @jdk.jfr.Label("Move")
+        String move;
+
+        @jdk.jfr.Label("Made")
+        boolean made;
+
+    }
+
+    /**
+     * The lines telling both players about a move, sent once the move is durable. Moves are sent
+     * in the order they were made, even if their players' threads wake up in another order.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static final class Outgoing {
+
+        private final long sequence;
+        private final Connection white;
+        private final Connection black;
+        private java.util.List<String> lines;
+        private volatile boolean ready;
+
+        /**
+         * Creates the lines of a move.
+         *
+         * @param sequence the sequence number of the move's journal record, or <code>-1</code>
+         * @param white    the white player when the move was made
+         * @param black    the black player when the move was made
+         * @param lines    the lines to send to both players
+         */
+        private Outgoing(long sequence, Connection white, Connection black,
+                         java.util.List<String> lines) {
+            this.sequence = sequence;
+            this.white = white;
+            this.black = black;
+            this.lines = lines;
+        }
+
+    }
+
+    private final int id;
+    private final MoveJournal journal;
+    private final java.util.Queue<Outgoing> outbox =
+            new java.util.concurrent.ConcurrentLinkedQueue<>();
+    private final java.util.concurrent.locks.ReentrantLock sending =
+            new java.util.concurrent.locks.ReentrantLock();
+    private Board board;
+    private IdleGameStore parkedIn;
+    private long lastActive;
+    private Connection white;
+    private Connection black;
+    private boolean started;
+    private boolean over;
+    private MoveEvent lastMove;
+
+    /**
+     * Creates a game in the starting position.
+     *
+     * @param id the game's identifier
+     */
+    Game(int id) {
+        this(id, new Board(), null, false);
+    }
+
+    /**
+     * Creates a game in the specified position, such as one recovered from a journal.
+     *
+     * @param id      the game's identifier
+     * @param board   the game's board
+     * @param journal the journal moves are logged to; can be <code>null</code>
+     * @param started whether both players had already joined, as in a recovered game
+     */
+    Game(int id, Board board, MoveJournal journal, boolean started) {
+        this.id = id;
+        this.journal = journal;
+        this.started = started;
+        attach(board);
+    }
+
+    /**
+     * Returns this game's identifier.
+     *
+     * @return the identifier
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Seats a player at the first free side of the board, white first, and tells the player its
+     * color. Both players are told when the second one arrives.
+     *
+     * @param player the player joining
+     * @return <code>false</code> if the game is full or over
+     */
+    synchronized boolean join(Connection player) {
+        return join(player, white == null ? Color.WHITE : Color.BLACK);
+    }
+
+    /**
+     * Seats a player at the specified side of the board, such as a player returning to a game
+     * recovered after a restart, and tells the player its color. Both players are told when the
+     * second one arrives.
+     *
+     * @param player the player joining
+     * @param color  the side to seat the player at
+     * @return <code>false</code> if that side is taken, the player is already seated or the game
+     *         is over
+     */
+    synchronized boolean join(Connection player, Color color) {
+        if (over || player == white || player == black
+                || (color == Color.WHITE ? white : black) != null) {
+            return false;
+        }
+        if (color == Color.WHITE) {
+            white = player;
+        } else {
+            black = player;
+        }
+        lastActive = System.nanoTime();
+        player.send("GAME " + id + " " + color);
+        if (white != null && black != null) {
+            started = true;
+            broadcast("START " + id);
+        }
+        return true;
+    }
+
+    /**
+     * Makes a move for a player if it is legal and the player's turn, then sends the move and the
+     * resulting status (check, checkmate or stalemate) to both players. The status comes from the
+     * board's move event, so it is computed only once. The game is unlocked while the move is
+     * made durable and sent, so that its other players' calls and snapshots are not held up.
+     *
+     * @param player the player making the move
+     * @param text   the move in long algebraic notation
+     * @return <code>true</code> if the move was made
+     */
+    boolean move(Connection player, String text) {
+        var event = new MoveHandledEvent();
+        event.begin();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Outgoing outgoing;
+        synchronized (this) {
+            outgoing = play(player, text);
+        }
+        boolean made = outgoing != null;
+        if (made) {
+            deliver(outgoing);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.Timer.SERVER_MOVE.record(start);
+        }
+        if (event.shouldCommit()) {
+            event.game = id;
+            event.move = text;
+            event.made = made;
+            event.commit();
+        }
+        return made;
+    }
+
+    /**
+     * Makes a move for a player if it is legal and the player's turn, and logs it. The lines
+     * telling both players are queued, to be sent by {@link #deliver(Outgoing)}.
+     *
+     * @param player the player making the move
+     * @param text   the move in long algebraic notation
+     * @return the lines about the move or <code>null</code> if the move was not made
+     */
+    private Outgoing play(Connection player, String text) {
+        if (over || white == null || black == null) {
+            return null;
+        }
+        if (board == null) {
+            attach(parkedIn.remove(id));
+            parkedIn = null;
+        }
+        lastActive = System.nanoTime();
+        if (player != (board.getTurn() == Color.WHITE ? white : black)) {
+            return null;
+        }
+        Move move;
+        try {
+            move = Move.parse(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!board.movePiece(move)) {
+            return null;
+        }
+        long sequence = journal == null ? -1 : journal.recordMove(id, move);
+        var lines = new java.util.ArrayList<String>(2);
+        lines.add("MOVED " + lastMove.getMove());
+        if (lastMove.is(MoveEvent.Type.CHECKMATE)) {
+            lines.add("CHECKMATE " + lastMove.getColor());
+            end();
+        } else if (lastMove.is(MoveEvent.Type.STALEMATE)) {
+            lines.add("STALEMATE");
+            end();
+        } else if (lastMove.is(MoveEvent.Type.CHECK)) {
+            lines.add("CHECK " + board.getTurn());
+        }
+        var outgoing = new Outgoing(sequence, white, black, lines);
+        outbox.add(outgoing);
+        return outgoing;
+    }
+
+    /**
+     * Waits until a move is durable, then sends every queued move that is ready, in order. A move
+     * that cannot be made durable is replaced with an error and stops the game. Called without
+     * the game's lock.
+     *
+     * @param outgoing the lines about the move
+     */
+    private void deliver(Outgoing outgoing) {
+        if (outgoing.sequence >= 0 && !awaitDurable(outgoing.sequence)) {
+            synchronized (this) {
+                over = true;
+            }
+            outgoing.lines = java.util.List.of("ERROR Game " + id + " cannot be saved");
+        }
+        outgoing.ready = true;
+        sending.lock();
+        try {
+            for (var next = outbox.peek(); next != null && next.ready; next = outbox.peek()) {
+                outbox.remove();
+                for (String line : next.lines) {
+                    if (next.white != null) {
+                        next.white.send(line);
+                    }
+                    if (next.black != null) {
+                        next.black.send(line);
+                    }
+                }
+            }
+        } finally {
+            sending.unlock();
+        }
+    }
+
+    /**
+     * Removes a player who resigned or disconnected. The opponent wins if both were seated and
+     * the game was still being played, and a game that never started ends with it. A player
+     * leaving a started game before the opponent returns to it, as after a restart, leaves the
+     * game waiting for both of them.
+     *
+     * @param player the player leaving
+     */
+    synchronized void leave(Connection player) {
+        Color color = player == white ? Color.WHITE : player == black ? Color.BLACK : Color.NONE;
+        if (color == Color.NONE) {
+            return;
+        }
+        if (!over && white != null && black != null) {
+            broadcast("RESIGNED " + color);
+            end();
+        } else if (!over && !started) {
+            end();
+        }
+        if (color == Color.WHITE) {
+            white = null;
+        } else {
+            black = null;
+        }
+    }
+
+    /**
+     * Determines if both players have left.
+     *
+     * @return <code>true</code> if nobody is seated at this game
+     */
+    synchronized boolean isAbandoned() {
+        return white == null && black == null;
+    }
+
+    /**
+     * Determines if this game is over.
+     *
+     * @return <code>true</code> if the game ended or can no longer be played
+     */
+    synchronized boolean isOver() {
+        return over;
+    }
+
+    /**
+     * Determines if this game is parked.
+     *
+     * @return <code>true</code> if the game's board is kept in an idle game store
+     */
+    synchronized boolean isParked() {
+        return board == null;
+    }
+
+    /**
+     * Parks this game if it is still being played but nobody has joined it or moved in it for
+     * the specified time. Its board is stored off-heap and dropped, and rebuilt from the store
+     * when the next move arrives.
+     *
+     * @param store     the store to park the game in
+     * @param idleNanos how long the game must have been idle, in nanoseconds
+     * @return <code>true</code> if the game was parked
+     */
+    synchronized boolean park(IdleGameStore store, long idleNanos) {
+        if (over || board == null || System.nanoTime() - lastActive < idleNanos) {
+            return false;
+        }
+        store.put(id, board);
+        board = null;
+        parkedIn = store;
+        return true;
+    }
+
+    /**
+     * Captures this game's state for a snapshot of the journal. A parked game stays parked.
+     *
+     * @return the state or <code>null</code> if the game is over or has no journal
+     */
+    synchronized MoveJournal.GameState capture() {
+        if (over || journal == null) {
+            return null;
+        }
+        String fen = board == null ? parkedIn.get(id).toFen() : board.toFen();
+        return new MoveJournal.GameState(id, fen, journal.nextSequence(id));
+    }
+
+    /**
+     * Makes a board this game's board, listening to the moves made on it.
+     *
+     * @param board the board
+     */
+    private void attach(Board board) {
+        this.board = board;
+        board.addListener(event -> lastMove = event);
+        lastActive = System.nanoTime();
+    }
+
+    /**
+     * Marks this game as over and logs its end, so that it is not recovered after a restart.
+     * A parked game leaves its store.
+     */
+    private void end() {
+        over = true;
+        if (board == null) {
+            parkedIn.remove(id);
+            parkedIn = null;
+        }
+        if (journal != null) {
+            journal.recordEnd(id);
+        }
+    }
+
+    /**
+     * Waits until a journal record is durable. The wait is cut short if the thread is interrupted,
+     * which only happens when the server shuts down, and the record is then taken as not durable.
+     *
+     * @param sequence the record's sequence number
+     * @return <code>false</code> if the record is not known to be durable
+     */
+    private boolean awaitDurable(long sequence) {
+        try {
+            journal.awaitDurable(id, sequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (java.io.IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends a line to both players.
+     *
+     * @param line the line to send
+     */
+    private void broadcast(String line) {
+        if (white != null) {
+            white.send(line);
+        }
+        if (black != null) {
+            black.send(line);
+        }
+    }
+
+}
\ No newline at end of file
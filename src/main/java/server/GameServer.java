@@ -0,0 +1,315 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts any number of concurrent games between human players. Clients connect over TCP and
+ * exchange lines of text:
+ * <ul>
+ *   <li><code>NEW</code> creates a game and seats the client as white,</li>
+ *   <li><code>JOIN &lt;id&gt; [WHITE|BLACK]</code> seats the client in an existing game, as black
+ *       or at the specified side,</li>
+ *   <li><code>MOVE &lt;move&gt;</code> makes a move in long algebraic notation, such as
+ *       <code>e2e4</code>,</li>
+ *   <li><code>RESIGN</code> leaves the current game, and</li>
+ *   <li><code>QUIT</code> closes the connection.</li>
+ * </ul>
+ * The server answers with <code>GAME &lt;id&gt; &lt;color&gt;</code>, <code>START &lt;id&gt;</code>,
+ * <code>MOVED &lt;move&gt;</code>, <code>CHECK &lt;color&gt;</code>,
+ * <code>CHECKMATE &lt;winner&gt;</code>, <code>STALEMATE</code>, <code>RESIGNED &lt;color&gt;</code>,
+ * <code>ILLEGAL &lt;move&gt;</code> and <code>ERROR &lt;message&gt;</code>. Everything about a
+ * move is sent to both players.
+ * <br>
+ * Each connection is served by its own thread. On Java 21 or later these are virtual threads, so
+ * thousands of idle players cost little more than their sockets; on older runtimes they are
+ * pooled platform threads. This class does not depend on Processing.
+ * <br>
+ * A server given a {@link MoveJournal} logs every game and move to it, snapshots the live games
+ * periodically, and on startup hosts again the games that were live when it stopped. Players
+ * return to such a game with <code>JOIN &lt;id&gt; &lt;color&gt;</code>; it waits for both of them,
+ * and is only resigned by a player leaving once both are back. Game identifiers are never reused,
+ * even across restarts.
+ * <br>
+ * Games in which nobody has moved for {@value #IDLE_SECONDS} seconds, such as correspondence games
+ * or recovered games waiting for their players, are parked in an {@link IdleGameStore}, off the
+ * Java heap, and rebuilt when their next move arrives.
+ * <br>
+ * When run with the <code>chess.metrics.port</code> system property, the server also serves its
+ * {@link chess.Metrics} counters, such as the time taken to handle each move, on that port.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class GameServer implements Closeable {
+
+    /** Port used when none is specified. */
+    public static final int DEFAULT_PORT = 4000;
+    /** Interval between journal snapshots, in seconds. */
+    public static final long SNAPSHOT_SECONDS = 60;
+    /** Time without moves after which a game is parked, in seconds. */
+    public static final long IDLE_SECONDS = 300;
+    /** System property with the port of the {@link MetricsEndpoint} started by the server. */
+    public static final String METRICS_PORT_PROPERTY = "chess.metrics.port";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final java.util.Set<Socket> sockets;
+    private final Map<Integer, Game> games;
+    private final AtomicInteger nextId;
+    private final MoveJournal journal;
+    private final IdleGameStore parked;
+    private final java.util.concurrent.ScheduledExecutorService scheduler;
+    private Thread acceptor;
+
+    /**
+     * Creates a server listening on the specified port. The server does not accept connections
+     * until {@link #start()} is called.
+     *
+     * @param port the port to listen on, or <code>0</code> for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    public GameServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Creates a server listening on the specified port that logs its games to a journal, and
+     * hosts the games recovered from it. A snapshot is taken every {@value #SNAPSHOT_SECONDS}
+     * seconds. The server does not accept connections until {@link #start()} is called.
+     *
+     * @param port    the port to listen on, or <code>0</code> for any free port
+     * @param journal the journal; can be <code>null</code>, in which case games are only kept in
+     *                memory
+     * @throws IOException if the port cannot be opened
+     */
+    public GameServer(int port, MoveJournal journal) throws IOException {
+        serverSocket = new ServerSocket(port);
+        connections = newThreadPerTaskExecutor();
+        sockets = java.util.concurrent.ConcurrentHashMap.newKeySet();
+        games = new java.util.concurrent.ConcurrentHashMap<>();
+        this.journal = journal;
+        parked = new IdleGameStore();
+        scheduler = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "game-server-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> parkIdleGames(IDLE_SECONDS * 1_000_000_000),
+                                         IDLE_SECONDS, IDLE_SECONDS,
+                                         java.util.concurrent.TimeUnit.SECONDS);
+        int lastId = 0;
+        if (journal != null) {
+            for (var entry: journal.getRecoveredGames().entrySet()) {
+                games.put(entry.getKey(),
+                          new Game(entry.getKey(), entry.getValue(), journal, true));
+            }
+            lastId = journal.getLastGameId();
+            scheduler.scheduleWithFixedDelay(this::snapshot, SNAPSHOT_SECONDS, SNAPSHOT_SECONDS,
+                                             java.util.concurrent.TimeUnit.SECONDS);
+        }
+        nextId = new AtomicInteger(lastId + 1);
+    }
+
+    /**
+     * Runs a server until the process is killed, and a {@link MetricsEndpoint} if the
+     * {@value #METRICS_PORT_PROPERTY} system property is set.
+     *
+     * @param args an optional port number, {@value #DEFAULT_PORT} by default, and an optional
+     *             journal directory
+     * @throws IOException if the port cannot be opened or the journal cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        MoveJournal journal = args.length > 1 ? new MoveJournal(Path.of(args[1])) : null;
+        var server = new GameServer(port, journal);
+        server.start();
+        System.out.println("Listening on port " + server.getPort()
+                           + (journal == null ? "" : ", " + server.getGameCount()
+                                                     + " games recovered"));
+        Integer metricsPort = Integer.getInteger(METRICS_PORT_PROPERTY);
+        if (metricsPort != null) {
+            var endpoint = new MetricsEndpoint(metricsPort);
+            System.out.println("Serving metrics on port " + endpoint.getPort()
+                               + (chess.Metrics.ENABLED ? "" : " (counting is off)"));
+        }
+    }
+
+    /**
+     * Starts accepting connections on a dedicated thread.
+     */
+    public synchronized void start() {
+        if (acceptor != null) {
+            return;
+        }
+        acceptor = new Thread(this::acceptConnections, "game-server-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port this server listens on.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of games currently hosted.
+     *
+     * @return the number of games not yet over, with or without players
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * Returns the number of games currently parked.
+     *
+     * @return the number of games whose boards are kept off-heap
+     */
+    public int getParkedGameCount() {
+        return parked.size();
+    }
+
+    /**
+     * Stops accepting connections and closes the ones that are open, as well as the journal.
+     *
+     * @throws IOException if the server socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdown();
+        for (Socket socket: sockets) {
+            socket.close();
+        }
+        scheduler.shutdown();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Forgets a connection's socket once the connection is over.
+     *
+     * @param socket the socket that was closed
+     */
+    void disconnected(Socket socket) {
+        sockets.remove(socket);
+    }
+
+    /**
+     * Creates a new game with no players. The game is listed before its creation is logged, so
+     * that a snapshot taken in between either captures the game or keeps the segment logging it.
+     *
+     * @return the new game
+     */
+    Game createGame() {
+        int id = nextId.getAndIncrement();
+        var game = new Game(id, new chess.Board(), journal, false);
+        games.put(id, game);
+        if (journal != null) {
+            journal.recordCreate(id);
+        }
+        return game;
+    }
+
+    /**
+     * Looks up a game by its identifier.
+     *
+     * @param id the identifier sent by a client
+     * @return the game or <code>null</code> if there is no such game
+     */
+    Game findGame(String id) {
+        try {
+            return games.get(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forgets a game once it is over and both of its players have left. A game left by its
+     * players before it ended stays, for them to return to.
+     *
+     * @param game the game to check
+     */
+    void removeIfAbandoned(Game game) {
+        if (game.isAbandoned() && game.isOver()) {
+            games.remove(game.getId(), game);
+        }
+    }
+
+    /**
+     * Parks every game that nobody has joined or moved in for the specified time.
+     *
+     * @param idleNanos how long a game must have been idle, in nanoseconds
+     * @return the number of games parked
+     */
+    int parkIdleGames(long idleNanos) {
+        int count = 0;
+        for (Game game: games.values()) {
+            if (game.park(parked, idleNanos)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread if the runtime supports
+     * them, or on a pooled platform thread otherwise.
+     *
+     * @return the executor
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                                                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Accepts connections until the server socket is closed.
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                connections.execute(new Connection(socket, this));
+            } catch (IOException e) {
+                // The server socket was closed
+            } catch (java.util.concurrent.RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the journal with the state of every live game. Failures are left for
+     * the next snapshot to retry; the journal still holds every record until one succeeds.
+     */
+    private void snapshot() {
+        try {
+            journal.snapshot(() -> games.values().stream()
+                                        .map(Game::capture)
+                                        .filter(java.util.Objects::nonNull)
+                                        .toList());
+        } catch (IOException e) {
+            System.err.println("Snapshot failed: " + e.getMessage());
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,410 @@
+package server;
+
+import java.nio.ByteBuffer;
+import chess.Board;
+import chess.Move;
+import chess.PositionSnapshot;
+import chess.pieces.Bishop;
+import chess.pieces.Color;
+import chess.pieces.King;
+import chess.pieces.Knight;
+import chess.pieces.Pawn;
+import chess.pieces.Piece;
+import chess.pieces.Position;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+
+/**
+ * Keeps the positions of idle games, such as correspondence games waiting for a move, outside the
+ * Java heap. A live {@link Board} is an object graph of squares, pieces, positions, lists and a
+ * history that costs kilobytes of heap; here every game takes a fixed {@value #SLOT_BYTES}-byte
+ * slot in direct memory, and a board is rebuilt from the slot when the game is needed again.
+ * <br>
+ * A slot holds the game's identifier, one nibble per square and the move counters:
+ * <table>
+ *   <caption>Slot layout</caption>
+ *   <tr><th>Bytes</th><th>Contents</th></tr>
+ *   <tr><td>0-3</td><td>game identifier; <code>0</code> marks a free slot</td></tr>
+ *   <tr><td>4-35</td><td>the 64 squares, from a8 to h1, two per byte</td></tr>
+ *   <tr><td>36</td><td>halfmove clock, capped at 255</td></tr>
+ *   <tr><td>37-38</td><td>fullmove number shifted left once, plus one if black is to move</td></tr>
+ * </table>
+ * A square's nibble is <code>0</code> if it is empty, one more than the piece's index in
+ * "PNBRQKpnbrqk" otherwise, except for two extra values that carry the rest of the position:
+ * {@value #EN_PASSANT_PAWN} marks the pawn that may be captured en passant, and
+ * {@value #CASTLING_ROOK} a rook its king may still castle with. Their colors follow from the
+ * side to move and the rook's rank.
+ * <br>
+ * Slots form an open-addressing hash table with linear probing, split into direct buffers of at
+ * most {@value #SEGMENT_SLOTS} slots. The table doubles when it is three quarters full. Only the
+ * handful of buffer objects live on the heap, so millions of stored games add nothing for the
+ * garbage collector to trace. This class is thread-safe.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see server.IdleGameStoreBenchmark
+ */
+public class IdleGameStore {
+
+    /** Bytes of direct memory taken by each slot. */
+    public static final int SLOT_BYTES = 40;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int SEGMENT_SLOTS    = 1 << 20;
+    private static final int ID               = 0;
+    private static final int SQUARES          = 4;
+    private static final int HALFMOVE_CLOCK   = 36;
+    private static final int FULLMOVE         = 37;
+    private static final int EN_PASSANT_PAWN  = 13;
+    private static final int CASTLING_ROOK    = 14;
+    private static final String PIECES        = "PNBRQKpnbrqk";
+    private static final java.util.List<Class<? extends Piece>> TYPES =
+        java.util.List.of(Pawn.class, Knight.class, Bishop.class, Rook.class, Queen.class,
+                          King.class);
+
+    private ByteBuffer[] segments;
+    private int segmentShift;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates an empty store.
+     */
+    public IdleGameStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with room for the specified number of games before it grows.
+     *
+     * @param expectedGames the number of games expected
+     */
+    public IdleGameStore(int expectedGames) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedGames / 3 * 4 + 1) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Stores a game's position, replacing any position stored for the same game. The board is
+     * not modified, and may be discarded afterwards.
+     *
+     * @param gameId the game's identifier; must be positive
+     * @param board  the game's board
+     * @throws IllegalArgumentException if <code>gameId</code> is not positive
+     */
+    public synchronized void put(int gameId, Board board) {
+        if (gameId <= 0) {
+            throw new IllegalArgumentException("Invalid game identifier: " + gameId);
+        }
+        int slot = find(gameId);
+        if (slot < 0) {
+            if ((size + 1) * 4L > (mask + 1L) * 3) {
+                grow();
+                slot = find(gameId);
+            }
+            slot = -slot - 1;
+            size++;
+        }
+        encode(gameId, board, segment(slot), offset(slot));
+    }
+
+    /**
+     * Rebuilds the board of a stored game. The game stays stored.
+     *
+     * @param gameId the game's identifier
+     * @return a new board or <code>null</code> if the game is not stored
+     */
+    public synchronized Board get(int gameId) {
+        int slot = find(gameId);
+        return slot < 0 ? null : decode(segment(slot), offset(slot));
+    }
+
+    /**
+     * Rebuilds the board of a stored game and removes the game from this store, such as when a
+     * move arrives and the game becomes live again.
+     *
+     * @param gameId the game's identifier
+     * @return a new board or <code>null</code> if the game is not stored
+     */
+    public synchronized Board remove(int gameId) {
+        int slot = find(gameId);
+        if (slot < 0) {
+            return null;
+        }
+        Board board = decode(segment(slot), offset(slot));
+        delete(slot);
+        size--;
+        return board;
+    }
+
+    /**
+     * Determines if a game is stored.
+     *
+     * @param gameId the game's identifier
+     * @return <code>true</code> if the game's position is stored
+     */
+    public synchronized boolean contains(int gameId) {
+        return find(gameId) >= 0;
+    }
+
+    /**
+     * Returns the number of games stored.
+     *
+     * @return the number of games
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots, used or not.
+     *
+     * @return the capacity of the hash table
+     */
+    public synchronized int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the amount of direct memory this store takes.
+     *
+     * @return the size of every slot, in bytes
+     */
+    public synchronized long getMemoryFootprint() {
+        return (mask + 1L) * SLOT_BYTES;
+    }
+
+    /**
+     * Returns the number of games stored, the capacity and the memory footprint.
+     *
+     * @return a string representation of this store
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%d games in %d slots, %.1f MB off-heap, %.1f bytes per game",
+                             size, mask + 1, getMemoryFootprint() / 1e6,
+                             size == 0 ? 0.0 : (double) getMemoryFootprint() / size);
+    }
+
+    /**
+     * Allocates empty segments for the specified number of slots.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        int segmentSlots = Math.min(capacity, SEGMENT_SLOTS);
+        segments = new ByteBuffer[capacity / segmentSlots];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentSlots * SLOT_BYTES);
+        }
+        segmentShift = Integer.numberOfTrailingZeros(segmentSlots);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Doubles the number of slots, moving every stored game to its slot in the larger table.
+     */
+    private void grow() {
+        ByteBuffer[] old = segments;
+        int oldCapacity = mask + 1;
+        int oldShift = segmentShift;
+        allocate(oldCapacity * 2);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer from = old[slot >>> oldShift];
+            int offset = (slot & ((1 << oldShift) - 1)) * SLOT_BYTES;
+            int id = from.getInt(offset + ID);
+            if (id != 0) {
+                int to = -find(id) - 1;
+                segment(to).put(offset(to), from, offset, SLOT_BYTES);
+            }
+        }
+    }
+
+    /**
+     * Looks up a game's slot.
+     *
+     * @param gameId the game's identifier
+     * @return the game's slot if it is stored, or <code>-(slot + 1)</code> where
+     *         <code>slot</code> is the free slot it would be stored in
+     */
+    private int find(int gameId) {
+        for (int slot = home(gameId); ; slot = (slot + 1) & mask) {
+            int id = segment(slot).getInt(offset(slot) + ID);
+            if (id == gameId) {
+                return slot;
+            } else if (id == 0) {
+                return -slot - 1;
+            }
+        }
+    }
+
+    /**
+     * Frees a slot, moving back later games of the same probe sequence so that every game stays
+     * reachable from its home slot without leaving markers behind.
+     *
+     * @param slot the slot to free
+     */
+    private void delete(int slot) {
+        int hole = slot;
+        for (int next = (hole + 1) & mask; ; next = (next + 1) & mask) {
+            int id = segment(next).getInt(offset(next) + ID);
+            if (id == 0) {
+                break;
+            }
+            if (((next - home(id)) & mask) >= ((next - hole) & mask)) {
+                segment(hole).put(offset(hole), segment(next), offset(next), SLOT_BYTES);
+                hole = next;
+            }
+        }
+        segment(hole).putInt(offset(hole) + ID, 0);
+    }
+
+    /**
+     * Returns the slot a game is stored in if there are no collisions.
+     *
+     * @param gameId the game's identifier
+     * @return the game's home slot
+     */
+    private int home(int gameId) {
+        int hash = gameId * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    /**
+     * Returns the segment holding a slot.
+     *
+     * @param slot the slot
+     * @return the slot's segment
+     */
+    private ByteBuffer segment(int slot) {
+        return segments[slot >>> segmentShift];
+    }
+
+    /**
+     * Returns the offset of a slot within its segment.
+     *
+     * @param slot the slot
+     * @return the offset of the slot's first byte
+     */
+    private int offset(int slot) {
+        return (slot & ((1 << segmentShift) - 1)) * SLOT_BYTES;
+    }
+
+    /**
+     * Writes a game to a slot.
+     *
+     * @param gameId  the game's identifier
+     * @param board   the game's board
+     * @param segment the slot's segment
+     * @param offset  the slot's offset
+     */
+    private static void encode(int gameId, Board board, ByteBuffer segment, int offset) {
+        PositionSnapshot position = board.snapshot();
+        boolean black = position.getTurn() == Color.BLACK;
+        Position target = position.getEnPassantTarget();
+        int enPassant = target == null ? -1
+                                       : (target.getRank() + (black ? -1 : 1)) * 8
+                                         + target.getFile();
+        segment.putInt(offset + ID, gameId);
+        for (int i = 0; i < 32; i++) {
+            segment.put(offset + SQUARES + i, (byte) (nibble(position, 2 * i, enPassant) << 4
+                                                      | nibble(position, 2 * i + 1, enPassant)));
+        }
+        segment.put(offset + HALFMOVE_CLOCK, (byte) Math.min(255, position.getHalfmoveClock()));
+        int fullmove = Math.min(Short.MAX_VALUE, position.getFullmoveNumber());
+        segment.putShort(offset + FULLMOVE, (short) (fullmove << 1 | (black ? 1 : 0)));
+    }
+
+    /**
+     * Returns the nibble of a square of a position.
+     *
+     * @param position  the position
+     * @param square    the square, as <code>rank * 8 + file</code>
+     * @param enPassant the square of the pawn that may be captured en passant, or
+     *                  <code>-1</code>
+     * @return the square's nibble
+     */
+    private static int nibble(PositionSnapshot position, int square, int enPassant) {
+        if (square == enPassant) {
+            return EN_PASSANT_PAWN;
+        }
+        var at = new Position(square / 8, square % 8);
+        Class<? extends Piece> type = position.getPieceType(at);
+        if (type == null) {
+            return 0;
+        }
+        Color color = position.getPieceColor(at);
+        if (type == Rook.class && (square == 63 && position.canCastle(Color.WHITE, true)
+                                   || square == 56 && position.canCastle(Color.WHITE, false)
+                                   || square == 7 && position.canCastle(Color.BLACK, true)
+                                   || square == 0 && position.canCastle(Color.BLACK, false))) {
+            return CASTLING_ROOK;
+        }
+        return TYPES.indexOf(type) + (color == Color.BLACK ? 6 : 0) + 1;
+    }
+
+    /**
+     * Rebuilds a board from a slot.
+     *
+     * @param segment the slot's segment
+     * @param offset  the slot's offset
+     * @return a new board
+     */
+    private static Board decode(ByteBuffer segment, int offset) {
+        int fullmove = segment.getShort(offset + FULLMOVE) & 0xFFFF;
+        boolean black = (fullmove & 1) != 0;
+        var placement = new StringBuilder(72);
+        var castling = new StringBuilder(4);
+        String enPassant = "-";
+        for (int rank = 0; rank < 8; rank++) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int nibble = square(segment, offset, rank * 8 + file);
+                if (nibble == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    placement.append(empty);
+                    empty = 0;
+                }
+                if (nibble == EN_PASSANT_PAWN) {
+                    placement.append(black ? 'P' : 'p');
+                    enPassant = Move.squareName(new Position(rank + (black ? 1 : -1), file));
+                } else if (nibble == CASTLING_ROOK) {
+                    placement.append(rank == 7 ? 'R' : 'r');
+                } else {
+                    placement.append(PIECES.charAt(nibble - 1));
+                }
+            }
+            if (empty > 0) {
+                placement.append(empty);
+            }
+            if (rank < 7) {
+                placement.append('/');
+            }
+        }
+        int[] corners = {63, 56, 7, 0};
+        for (int i = 0; i < corners.length; i++) {
+            if (square(segment, offset, corners[i]) == CASTLING_ROOK) {
+                castling.append("KQkq".charAt(i));
+            }
+        }
+        return new Board(placement + (black ? " b " : " w ")
+                         + (castling.length() == 0 ? "-" : castling) + " " + enPassant + " "
+                         + (segment.get(offset + HALFMOVE_CLOCK) & 0xFF) + " " + (fullmove >>> 1));
+    }
+
+    /**
+     * Reads a square's nibble from a slot.
+     *
+     * @param segment the slot's segment
+     * @param offset  the slot's offset
+     * @param square  the square, as <code>rank * 8 + file</code>
+     * @return the square's nibble
+     */
+    private static int square(ByteBuffer segment, int offset, int square) {
+        return segment.get(offset + SQUARES + square / 2) >> (square % 2 == 0 ? 4 : 0) & 15;
+    }
+
+}
\ No newline at end of file
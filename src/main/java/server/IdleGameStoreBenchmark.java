@@ -0,0 +1,127 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Measures the {@link IdleGameStore}: how many bytes each stored game takes, compared with the
+ * heap taken by a live {@link Board}, how fast games are stored, and how long rebuilding the board
+ * of a stored game takes. The games are in positions reached by random legal moves, and every
+ * rebuilt board is checked against the position that was stored.
+ * <br>
+ * Usage: <code>IdleGameStoreBenchmark [games] [lookups]</code>.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class IdleGameStoreBenchmark {
+
+    private static final int DEFAULT_GAMES   = 1_000_000;
+    private static final int DEFAULT_LOOKUPS = 100_000;
+    private static final int POSITIONS       = 1024;
+    private static final int LIVE_BOARDS     = 10_000;
+
+    private IdleGameStoreBenchmark() {}
+
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args the number of games to store and the number of boards to rebuild, both optional
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LOOKUPS;
+        var random = new java.util.SplittableRandom(0);
+        List<String> positions = new ArrayList<>();
+        while (positions.size() < POSITIONS) {
+            positions.add(randomPosition(random, random.nextInt(120)).toFen());
+        }
+
+        long before = usedHeap();
+        var live = new Board[LIVE_BOARDS];
+        for (int i = 0; i < live.length; i++) {
+            live[i] = new Board(positions.get(i % POSITIONS));
+        }
+        long perBoard = (usedHeap() - before) / live.length;
+        live = null;
+        System.out.printf("live board: about %d bytes of heap%n", perBoard);
+
+        var boards = new Board[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            boards[i] = new Board(positions.get(i));
+        }
+        before = usedHeap();
+        var store = new IdleGameStore();
+        long start = System.nanoTime();
+        for (int id = 1; id <= games; id++) {
+            store.put(id, boards[id % POSITIONS]);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("stored %d games in %.2f s (%.0f games/s)%n",
+                          games, seconds, games / seconds);
+        System.out.println(store);
+        System.out.printf("heap growth: %.1f MB; %d live boards would take %.1f MB%n",
+                          (usedHeap() - before) / 1e6, games, (double) perBoard * games / 1e6);
+
+        long[] latencies = new long[lookups];
+        int wrong = 0;
+        for (int i = 0; i < lookups; i++) {
+            int id = 1 + random.nextInt(games);
+            long sent = System.nanoTime();
+            Board board = store.get(id);
+            latencies[i] = System.nanoTime() - sent;
+            if (!board.toFen().equals(positions.get(id % POSITIONS))) {
+                wrong++;
+            }
+        }
+        java.util.Arrays.sort(latencies);
+        System.out.printf("rehydrate: p50 %.1f us, p99 %.1f us, max %.1f us; %d of %d wrong%n",
+                          Latencies.percentile(latencies, 50) / 1e3,
+                          Latencies.percentile(latencies, 99) / 1e3,
+                          latencies[lookups - 1] / 1e3, wrong, lookups);
+
+        for (int id = 1; id <= games; id += 2) {
+            store.remove(id);
+        }
+        long missing = java.util.stream.IntStream.rangeClosed(1, games)
+                                                 .filter(id -> store.contains(id) != (id % 2 == 0))
+                                                 .count();
+        System.out.printf("after removing odd games: %d stored, %d misplaced%n",
+                          store.size(), missing);
+    }
+
+    /**
+     * Plays random legal moves from the starting position.
+     *
+     * @param random the source of randomness
+     * @param plies  the number of moves to play, unless the game ends first
+     * @return the board after the moves
+     */
+    private static Board randomPosition(java.util.SplittableRandom random, int plies) {
+        var board = new Board();
+        for (int i = 0; i < plies; i++) {
+            List<Move> moves = board.getLegalMoves();
+            if (moves.isEmpty()) {
+                break;
+            }
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+        return board;
+    }
+
+    /**
+     * Returns the heap in use after a garbage collection.
+     *
+     * @return the used heap, in bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
\ No newline at end of file
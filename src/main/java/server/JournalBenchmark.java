@@ -0,0 +1,206 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Measures the {@link MoveJournal}: how many durable moves per second it sustains when many
+ * games log moves at once, and how long it takes to recover a number of games, first by replaying
+ * every move and then from a snapshot. Every game plays the same line of random legal moves, so
+ * the recovered positions can be checked.
+ * <br>
+ * Usage: <code>JournalBenchmark [games] [plies] [threads] [sync millis]</code>. The journal is
+ * written to a temporary directory, which is deleted afterwards.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class JournalBenchmark {
+
+    private static final int DEFAULT_GAMES   = 1000;
+    private static final int DEFAULT_PLIES   = 60;
+    private static final int DEFAULT_THREADS = 64;
+
+    private JournalBenchmark() {}
+
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args the number of games, the number of plies per game, the number of threads logging
+     *             moves and the journal's sync interval, all optional
+     * @throws Exception if the journal cannot be written or the benchmark is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_THREADS;
+        long syncMillis = args.length > 3 ? Long.parseLong(args[3])
+                                          : MoveJournal.DEFAULT_SYNC_MILLIS;
+        List<Move> line = randomLine(plies);
+        Board expected = new Board();
+        line.forEach(expected::makeMove);
+        Path directory = Files.createTempDirectory("move-journal");
+        try {
+            try (var journal = new MoveJournal(directory, MoveJournal.DEFAULT_SHARDS, syncMillis)) {
+                logGames(journal, games, line, threads);
+            }
+            System.out.printf("journal: %.1f MB%n", size(directory) / 1e6);
+
+            long start = System.nanoTime();
+            try (var journal = new MoveJournal(directory, MoveJournal.DEFAULT_SHARDS, syncMillis)) {
+                report("replay", journal, start, games, expected);
+                journal.snapshot(() -> capture(journal));
+            }
+            System.out.printf("journal after snapshot: %.1f MB%n", size(directory) / 1e6);
+
+            start = System.nanoTime();
+            try (var journal = new MoveJournal(directory, MoveJournal.DEFAULT_SHARDS, syncMillis)) {
+                report("snapshot", journal, start, games, expected);
+            }
+        } finally {
+            try (var files = Files.walk(directory)) {
+                for (Path path: files.sorted(java.util.Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays random legal moves from the starting position.
+     *
+     * @param plies the number of moves to play, unless the game ends first
+     * @return the moves played
+     */
+    private static List<Move> randomLine(int plies) {
+        var random = new java.util.SplittableRandom(0);
+        var board = new Board();
+        var line = new ArrayList<Move>();
+        while (line.size() < plies) {
+            List<Move> moves = board.getLegalMoves();
+            if (moves.isEmpty()) {
+                break;
+            }
+            Move move = moves.get(random.nextInt(moves.size()));
+            board.makeMove(move);
+            line.add(move);
+        }
+        return line;
+    }
+
+    /**
+     * Logs the creation of every game and then its moves, from several threads at once. Like a
+     * server confirming moves, each thread waits for a move to be durable before logging its next
+     * one. Prints the throughput and the latency of durable moves.
+     *
+     * @param journal the journal
+     * @param games   the number of games
+     * @param line    the moves of every game
+     * @param threads the number of threads logging moves
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    private static void logGames(MoveJournal journal, int games, List<Move> line, int threads)
+            throws InterruptedException {
+        var latencies = new java.util.concurrent.ConcurrentLinkedQueue<long[]>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int first = t + 1;
+            pool.execute(() -> {
+                var ids = new ArrayList<Integer>();
+                for (int id = first; id <= games; id += threads) {
+                    journal.recordCreate(id);
+                    ids.add(id);
+                }
+                long[] times = new long[ids.size() * line.size()];
+                int count = 0;
+                try {
+                    for (Move move: line) {
+                        for (int id: ids) {
+                            long sent = System.nanoTime();
+                            journal.awaitDurable(id, journal.recordMove(id, move));
+                            times[count++] = System.nanoTime() - sent;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    System.err.println("Journal failed: " + e.getMessage());
+                }
+                latencies.add(java.util.Arrays.copyOf(times, count));
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] all = latencies.stream().flatMapToLong(java.util.Arrays::stream).sorted().toArray();
+        System.out.printf("%d games, %d moves logged by %d threads in %.2f s: %.0f moves/s%n",
+                          games, all.length, threads, seconds, all.length / seconds);
+        if (all.length > 0) {
+            System.out.printf("durable move latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                              Latencies.percentile(all, 50) / 1e6,
+                              Latencies.percentile(all, 99) / 1e6,
+                              all[all.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Captures the state of every game recovered by a journal.
+     *
+     * @param journal the journal
+     * @return the states of its games
+     */
+    private static List<MoveJournal.GameState> capture(MoveJournal journal) {
+        var states = new ArrayList<MoveJournal.GameState>();
+        for (var entry: journal.getRecoveredGames().entrySet()) {
+            states.add(new MoveJournal.GameState(entry.getKey(), entry.getValue().toFen(),
+                                                 journal.nextSequence(entry.getKey())));
+        }
+        return states;
+    }
+
+    /**
+     * Prints how long recovery took and whether every game was rebuilt correctly.
+     *
+     * @param name     the kind of recovery
+     * @param journal  the journal that was just opened
+     * @param start    the time the journal started opening, in nanoseconds
+     * @param games    the number of games logged
+     * @param expected the position every game should be in
+     */
+    private static void report(String name, MoveJournal journal, long start, int games,
+                               Board expected) {
+        double millis = (System.nanoTime() - start) / 1e6;
+        var recovered = journal.getRecoveredGames();
+        String fen = expected.toFen();
+        long correct = recovered.values().stream().filter(b -> b.toFen().equals(fen)).count();
+        System.out.printf("recovery (%s): %d of %d games in %.1f ms, %d correct%n",
+                          name, recovered.size(), games, millis, correct);
+    }
+
+    /**
+     * Returns the total size of the files in a directory.
+     *
+     * @param directory the directory
+     * @return the size in bytes
+     * @throws IOException if the directory cannot be listed
+     */
+    private static long size(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            long total = 0;
+            for (Path path: files.toList()) {
+                total += Files.size(path);
+            }
+            return total;
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package server;
+
+/**
+ * Summarizes the latencies measured by the server's benchmarks.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+final class Latencies {
+
+    private Latencies() {}
+
+    /**
+     * Returns a percentile of sorted latencies, by the nearest-rank method.
+     *
+     * @param sorted     the latencies in ascending order, in nanoseconds
+     * @param percentile the percentile, in the range [0, 100]
+     * @return the latency in nanoseconds
+     */
+    static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+}
\ No newline at end of file
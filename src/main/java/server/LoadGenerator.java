@@ -0,0 +1,211 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Plays many simulated games against a {@link GameServer} and reports the latency of moves and
+ * the number of games completed per second and per core. Each simulated game opens one connection
+ * per player and makes random legal moves until the game ends or a ply limit is reached. A move's
+ * latency is the time between sending it and its player receiving the server's confirmation.
+ * <br>
+ * Usage: <code>LoadGenerator [games] [concurrent games] [max plies] [host port]</code>. Without a
+ * host, a server is started in the same process on a free port.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class LoadGenerator {
+
+    /**
+     * A connection of one simulated player.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        /**
+         * Connects to a server.
+         *
+         * @param host the server's host
+         * @param port the server's port
+         * @throws IOException if the connection fails
+         */
+        Client(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                          StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Sends a command.
+         *
+         * @param line the command
+         */
+        void send(String line) {
+            out.println(line);
+        }
+
+        /**
+         * Reads lines until one starts with the specified prefix.
+         *
+         * @param prefix the prefix to wait for
+         * @return the matching line
+         * @throws IOException if the server closes the connection first
+         */
+        String await(String prefix) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+            throw new IOException("Connection closed while waiting for " + prefix);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+    }
+
+    private static final int DEFAULT_GAMES      = 200;
+    private static final int DEFAULT_CONCURRENT = 50;
+    private static final int DEFAULT_MAX_PLIES  = 80;
+
+    private LoadGenerator() {}
+
+    /**
+     * Runs the load test and prints the report.
+     *
+     * @param args the number of games, the number of concurrent games, the maximum number of plies
+     *             per game, and the server's host and port, all optional
+     * @throws Exception if the server cannot be started or the test is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int concurrent = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONCURRENT;
+        int maxPlies = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_PLIES;
+        GameServer embedded = null;
+        String host = "localhost";
+        int port;
+        if (args.length > 4) {
+            host = args[3];
+            port = Integer.parseInt(args[4]);
+        } else {
+            embedded = new GameServer(0);
+            embedded.start();
+            port = embedded.getPort();
+        }
+
+        var latencies = new java.util.concurrent.ConcurrentLinkedQueue<long[]>();
+        var failures = new java.util.concurrent.atomic.AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrent);
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            long seed = i;
+            String serverHost = host;
+            pool.execute(() -> {
+                try {
+                    latencies.add(playGame(serverHost, port, maxPlies, seed));
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (embedded != null) {
+            embedded.close();
+        }
+        report(latencies, games - failures.get(), failures.get(), seconds);
+    }
+
+    /**
+     * Plays one game with random legal moves.
+     *
+     * @param host     the server's host
+     * @param port     the server's port
+     * @param maxPlies the number of plies after which the game is abandoned
+     * @param seed     the seed for choosing moves
+     * @return the latency of every move, in nanoseconds
+     * @throws IOException if a connection fails
+     */
+    private static long[] playGame(String host, int port, int maxPlies, long seed)
+            throws IOException {
+        var random = new java.util.SplittableRandom(seed);
+        var board = new Board();
+        var latencies = new long[maxPlies];
+        int plies = 0;
+        try (var white = new Client(host, port); var black = new Client(host, port)) {
+            white.send("NEW");
+            String id = white.await("GAME").split(" ")[1];
+            black.send("JOIN " + id);
+            black.await("START");
+            white.await("START");
+            while (plies < maxPlies) {
+                List<Move> moves = board.getLegalMoves();
+                if (moves.isEmpty()) {
+                    break;
+                }
+                Move move = moves.get(random.nextInt(moves.size()));
+                board.makeMove(move);
+                Client mover = plies % 2 == 0 ? white : black;
+                Client opponent = plies % 2 == 0 ? black : white;
+                long sent = System.nanoTime();
+                mover.send("MOVE " + move);
+                mover.await("MOVED");
+                latencies[plies++] = System.nanoTime() - sent;
+                opponent.await("MOVED");
+            }
+            white.send("QUIT");
+            black.send("QUIT");
+        }
+        return java.util.Arrays.copyOf(latencies, plies);
+    }
+
+    /**
+     * Prints latency percentiles and throughput.
+     *
+     * @param latencies the latencies of every game
+     * @param games     the number of games completed
+     * @param failures  the number of games that failed
+     * @param seconds   the duration of the test
+     */
+    private static void report(java.util.Collection<long[]> latencies, int games, int failures,
+                               double seconds) {
+        long[] all = latencies.stream().flatMapToLong(java.util.Arrays::stream).sorted().toArray();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d games (%d failed), %d moves in %.2f s%n",
+                          games, failures, all.length, seconds);
+        if (all.length > 0) {
+            System.out.printf("move latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                              Latencies.percentile(all, 50) / 1e6,
+                              Latencies.percentile(all, 90) / 1e6,
+                              Latencies.percentile(all, 99) / 1e6,
+                              all[all.length - 1] / 1e6);
+        }
+        System.out.printf("%.1f moves/s, %.2f games/s, %.2f games/s per core (%d cores)%n",
+                          all.length / seconds, games / seconds, games / seconds / cores, cores);
+    }
+
+}
\ No newline at end of file
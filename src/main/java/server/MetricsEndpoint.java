@@ -0,0 +1,87 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import chess.Metrics;
+
+/**
+ * Serves a snapshot of the {@link Metrics} counters over HTTP in the Prometheus text format, at
+ * <code>/metrics</code>. Requests are answered one at a time on a single daemon thread; taking a
+ * snapshot only sums the counters, so it never slows down the threads counting. The counters
+ * are all zero unless counting is on.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see chess.Metrics
+ */
+public class MetricsEndpoint implements Closeable {
+
+    private static final String PATH         = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final java.util.concurrent.ExecutorService executor;
+
+    /**
+     * Starts serving the counters.
+     *
+     * @param port the port to listen on, or <code>0</code> for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    public MetricsEndpoint(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PATH, this::handle);
+        executor = java.util.concurrent.Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the port this endpoint listens on.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving the counters.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Answers a request with a snapshot of the counters.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.snapshot().toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,719 @@
+package server;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import chess.Board;
+import chess.Move;
+
+/**
+ * An append-only, sharded log of the moves made in hosted games, from which the games can be
+ * rebuilt after the process crashes. Games are assigned to shards by identifier; every shard
+ * writes fixed-size seven-byte records (game identifier, record type, packed move) to segment
+ * files named after the sequence number of their first record.
+ * <br>
+ * Appends only copy the record into memory. A background thread writes and fsyncs every shard once
+ * per sync interval (group commit), and callers that need durability wait for the fsync that
+ * covers their record with {@link #awaitDurable(int, long)}. A record is never reported durable
+ * before it is on disk: a failed write is retried, and a shard that cannot recover from one fails
+ * its waiting callers instead.
+ * <br>
+ * A snapshot stores the position of every live game in Forsyth-Edwards Notation, together with
+ * the sequence number of the next record of its shard, and the highest game identifier ever
+ * created, so that identifiers are not reused once the records of ended games are deleted.
+ * Taking one starts new segments and deletes the old ones, so recovery only replays what was
+ * logged since the last snapshot.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see server.GameServer
+ */
+public class MoveJournal implements Closeable {
+
+    /**
+     * The state of a game captured for a snapshot.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class GameState {
+
+        private final int id;
+        private final String fen;
+        private final long sequence;
+
+        /**
+         * Creates a captured game state.
+         *
+         * @param id       the game's identifier
+         * @param fen      the game's position
+         * @param sequence the sequence number of the next record of the game's shard
+         */
+        public GameState(int id, String fen, long sequence) {
+            this.id = id;
+            this.fen = fen;
+            this.sequence = sequence;
+        }
+
+    }
+
+    /**
+     * The log of one shard. A batch that cannot be written is put back in front of the records
+     * appended since, after the segment is truncated back to its last whole record, and written
+     * again by the next flush. If the segment cannot be truncated, or the batch keeps failing, the
+     * shard stops: its records are dropped and the callers waiting for them are failed.
+     * <br>
+     * Callers wait on a {@link java.util.concurrent.locks.Condition} rather than an object
+     * monitor, so that a virtual thread waiting for durability does not pin its carrier thread.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private class Shard {
+
+        private final int index;
+        private final Object io = new Object();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition durableChanged = lock.newCondition();
+        private FileChannel channel;
+        private long size;
+        private int failures;
+        private ByteBuffer pending = ByteBuffer.allocate(RECORD_BYTES * 1024);
+        private long appended;
+        private long durable;
+        private IOException failure;
+        private boolean stopped;
+
+        /**
+         * Creates the log of a shard, opening a new segment after the existing ones.
+         *
+         * @param index    the shard's index
+         * @param sequence the sequence number of the shard's next record
+         * @throws IOException if the segment cannot be created
+         */
+        Shard(int index, long sequence) throws IOException {
+            this.index = index;
+            appended = sequence;
+            durable = sequence;
+            openSegment(sequence);
+        }
+
+        /**
+         * Appends a record to memory. Nothing is kept once the shard has failed.
+         *
+         * @param gameId the game's identifier
+         * @param type   the record's type
+         * @param move   the packed move, or <code>0</code>
+         * @return the record's sequence number
+         */
+        long append(int gameId, byte type, short move) {
+            lock.lock();
+            try {
+                if (failure != null) {
+                    return appended++;
+                }
+                if (pending.remaining() < RECORD_BYTES) {
+                    var larger = ByteBuffer.allocate(pending.capacity() * 2);
+                    pending.flip();
+                    pending = larger.put(pending);
+                }
+                pending.putInt(gameId).put(type).putShort(move);
+                return appended++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Writes and fsyncs the records appended so far, then wakes up their waiting callers.
+         *
+         * @throws IOException if the segment cannot be written, or the shard has failed
+         */
+        void flush() throws IOException {
+            synchronized (io) {
+                ByteBuffer batch;
+                long upTo;
+                lock.lock();
+                try {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (pending.position() == 0) {
+                        return;
+                    }
+                    batch = pending.flip();
+                    upTo = appended;
+                    pending = ByteBuffer.allocate(batch.capacity());
+                } finally {
+                    lock.unlock();
+                }
+                write(batch, upTo);
+            }
+        }
+
+        /**
+         * Flushes the current segment and starts a new one.
+         *
+         * @return the sequence number the new segment starts at
+         * @throws IOException if a segment cannot be written or created, or the shard has failed
+         */
+        long rotate() throws IOException {
+            synchronized (io) {
+                ByteBuffer batch;
+                long start;
+                lock.lock();
+                try {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    batch = pending.flip();
+                    start = appended;
+                    pending = ByteBuffer.allocate(batch.capacity());
+                } finally {
+                    lock.unlock();
+                }
+                write(batch, start);
+                channel.close();
+                openSegment(start);
+                return start;
+            }
+        }
+
+        /**
+         * Deletes the segments that start before the specified sequence number.
+         *
+         * @param start the sequence number of the oldest segment to keep
+         * @throws IOException if a segment cannot be deleted
+         */
+        void deleteSegmentsBefore(long start) throws IOException {
+            for (var segment: segments(directory, index)) {
+                if (segment.getKey() < start) {
+                    Files.deleteIfExists(segment.getValue());
+                }
+            }
+        }
+
+        /**
+         * Waits until the record with the specified sequence number has been fsynced.
+         *
+         * @param sequence the record's sequence number
+         * @throws InterruptedException if the calling thread is interrupted
+         * @throws IOException          if the shard failed or was closed before the record was
+         *                              fsynced
+         */
+        void awaitDurable(long sequence) throws InterruptedException, IOException {
+            lock.lock();
+            try {
+                while (durable <= sequence && !stopped && failure == null) {
+                    durableChanged.await();
+                }
+                if (durable > sequence) {
+                    return;
+                } else if (failure != null) {
+                    throw new IOException("Shard " + index + " of the journal failed", failure);
+                }
+                throw new IOException("The journal was closed before record " + sequence
+                                      + " of shard " + index + " was durable");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the sequence number of the next record.
+         *
+         * @return the number of records ever appended to this shard
+         */
+        long getAppended() {
+            lock.lock();
+            try {
+                return appended;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wakes up every waiting caller for good, once the journal is closed. Records that were
+         * not fsynced by then never will be.
+         */
+        void stop() {
+            lock.lock();
+            try {
+                stopped = true;
+                durableChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Writes and fsyncs a batch of records, then wakes up the callers waiting for them. If
+         * that fails, the batch is kept to be written again, or the shard fails. Called while
+         * holding the I/O lock.
+         *
+         * @param batch the records to write
+         * @param upTo  the sequence number following the batch's last record
+         * @throws IOException if the segment cannot be written
+         */
+        private void write(ByteBuffer batch, long upTo) throws IOException {
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                retry(batch, e);
+                throw e;
+            }
+            size += batch.limit();
+            failures = 0;
+            lock.lock();
+            try {
+                durable = upTo;
+                durableChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Truncates the segment back to its last whole record, which drops whatever part of a
+         * batch did reach it, and puts the batch back in front of the pending records. The shard
+         * fails instead if the segment cannot be truncated or too many writes failed in a row.
+         * Called while holding the I/O lock.
+         *
+         * @param batch the records that could not be written
+         * @param cause the reason they could not be written
+         */
+        private void retry(ByteBuffer batch, IOException cause) {
+            try {
+                channel.truncate(size);
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+                failures = MAX_WRITE_FAILURES;
+            }
+            lock.lock();
+            try {
+                if (++failures >= MAX_WRITE_FAILURES) {
+                    failure = cause;
+                    pending = ByteBuffer.allocate(0);
+                    durableChanged.signalAll();
+                    return;
+                }
+                pending.flip();
+                batch.rewind();
+                var merged = ByteBuffer.allocate(Math.max(pending.capacity(),
+                                                          batch.limit() + pending.limit()));
+                pending = merged.put(batch).put(pending);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Opens a new segment file.
+         *
+         * @param start the sequence number of the segment's first record
+         * @throws IOException if the file cannot be created
+         */
+        private void openSegment(long start) throws IOException {
+            channel = FileChannel.open(segmentPath(directory, index, start),
+                                       StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                       StandardOpenOption.APPEND);
+            size = channel.size();
+        }
+
+    }
+
+    /** Record written when a game is created. */
+    public static final byte CREATE = 1;
+    /** Record written when a move is made. */
+    public static final byte MOVE = 2;
+    /** Record written when a game ends. */
+    public static final byte END = 3;
+
+    /** Number of shards used when none is specified. */
+    public static final int DEFAULT_SHARDS = 8;
+    /** Sync interval, in milliseconds, used when none is specified. */
+    public static final long DEFAULT_SYNC_MILLIS = 5;
+
+    private static final int RECORD_BYTES       = 7;
+    private static final int MAX_WRITE_FAILURES = 100;
+    private static final int SNAPSHOT_MAGIC = 0x43484A53; // "CHJS"
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    private final Path directory;
+    private final Shard[] shards;
+    private final Map<Integer, Board> recovered;
+    private final java.util.concurrent.atomic.AtomicInteger lastGameId;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * Opens the journal in the specified directory with {@value #DEFAULT_SHARDS} shards and a sync
+     * interval of {@value #DEFAULT_SYNC_MILLIS} milliseconds.
+     *
+     * @param directory the directory holding the journal; created if missing
+     * @throws IOException if the journal cannot be read or created
+     */
+    public MoveJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SHARDS, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * Opens the journal in the specified directory, rebuilding every game that was live when the
+     * journal was last used. The rebuilt games are available through {@link #getRecoveredGames()}.
+     *
+     * @param directory  the directory holding the journal; created if missing
+     * @param shardCount the number of shards; must match the count the journal was written with
+     * @param syncMillis the interval between fsyncs, in milliseconds
+     * @throws IOException if the journal cannot be read or created
+     */
+    public MoveJournal(Path directory, int shardCount, long syncMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        long[] next = new long[shardCount];
+        int[] lastId = new int[1];
+        recovered = recover(directory, shardCount, next, lastId);
+        lastGameId = new java.util.concurrent.atomic.AtomicInteger(lastId[0]);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, next[i]);
+        }
+        long interval = Math.max(1, syncMillis);
+        flusher = new Thread(() -> flushPeriodically(interval), "move-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Returns the games rebuilt when this journal was opened, by identifier. Games that ended are
+     * not included.
+     *
+     * @return the recovered games
+     */
+    public Map<Integer, Board> getRecoveredGames() {
+        return recovered;
+    }
+
+    /**
+     * Returns the highest identifier of a game ever created in this journal, including games
+     * that ended and were not recovered.
+     *
+     * @return the highest game identifier, or <code>0</code> if no game was created
+     */
+    public int getLastGameId() {
+        return lastGameId.get();
+    }
+
+    /**
+     * Logs the creation of a game.
+     *
+     * @param gameId the game's identifier
+     * @return the record's sequence number within the game's shard
+     */
+    public long recordCreate(int gameId) {
+        lastGameId.accumulateAndGet(gameId, Math::max);
+        return shard(gameId).append(gameId, CREATE, (short) 0);
+    }
+
+    /**
+     * Logs a move.
+     *
+     * @param gameId the game's identifier
+     * @param move   the move that was made
+     * @return the record's sequence number within the game's shard
+     */
+    public long recordMove(int gameId, Move move) {
+        return shard(gameId).append(gameId, MOVE, (short) move.pack());
+    }
+
+    /**
+     * Logs the end of a game, after which it is no longer recovered.
+     *
+     * @param gameId the game's identifier
+     * @return the record's sequence number within the game's shard
+     */
+    public long recordEnd(int gameId) {
+        return shard(gameId).append(gameId, END, (short) 0);
+    }
+
+    /**
+     * Waits until a record has been fsynced.
+     *
+     * @param gameId   the identifier of the record's game
+     * @param sequence the record's sequence number
+     * @throws InterruptedException if the calling thread is interrupted
+     * @throws IOException          if the record's shard failed, or the journal was closed,
+     *                              before the record was fsynced
+     */
+    public void awaitDurable(int gameId, long sequence) throws InterruptedException, IOException {
+        shard(gameId).awaitDurable(sequence);
+    }
+
+    /**
+     * Returns the sequence number the next record of a game's shard will get. Called while the
+     * game cannot change, to capture its state for a snapshot.
+     *
+     * @param gameId the game's identifier
+     * @return the next sequence number
+     */
+    public long nextSequence(int gameId) {
+        return shard(gameId).getAppended();
+    }
+
+    /**
+     * Takes a snapshot. New segments are started first, then the states of all live games are
+     * captured; once the snapshot is safely on disk, the segments it makes obsolete are deleted.
+     *
+     * @param capture captures the state of every live game
+     * @throws IOException if the snapshot or segments cannot be written
+     */
+    public synchronized void snapshot(java.util.function.Supplier<List<GameState>> capture)
+            throws IOException {
+        long[] starts = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            starts[i] = shards[i].rotate();
+        }
+        List<GameState> games = capture.get();
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (var out = new DataOutputStream(new java.io.BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(shards.length);
+            for (long start: starts) {
+                out.writeLong(start);
+            }
+            out.writeInt(lastGameId.get());
+            out.writeInt(games.size());
+            for (GameState game: games) {
+                out.writeInt(game.id);
+                out.writeLong(game.sequence);
+                out.writeUTF(game.fen);
+            }
+        }
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE),
+                   StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].deleteSegmentsBefore(starts[i]);
+        }
+    }
+
+    /**
+     * Flushes every shard, stops the background thread and closes the segment files.
+     *
+     * @throws IOException if a segment cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        java.util.concurrent.locks.LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException failure = null;
+        for (Shard shard: shards) {
+            try {
+                shard.flush();
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+            shard.stop();
+            shard.channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Flushes every shard once per interval until the journal is closed. The thread is woken up
+     * rather than interrupted when the journal closes: interrupting it during a write would close
+     * the segment's channel.
+     *
+     * @param interval the interval in milliseconds
+     */
+    private void flushPeriodically(long interval) {
+        while (!closed) {
+            java.util.concurrent.locks.LockSupport.parkNanos(interval * 1_000_000);
+            if (closed) {
+                return;
+            }
+            for (Shard shard: shards) {
+                try {
+                    shard.flush();
+                } catch (IOException e) {
+                    // The shard kept the batch for the next round, or failed its waiters
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shard a game is logged to.
+     *
+     * @param gameId the game's identifier
+     * @return the game's shard
+     */
+    private Shard shard(int gameId) {
+        return shards[Math.floorMod(gameId, shards.length)];
+    }
+
+    /**
+     * Rebuilds the live games from the snapshot, if any, and the segments written after it.
+     * Replay of a shard stops at the first record that is torn or invalid, such as a move that is
+     * not legal in its game: the segment is truncated back to the record before it, and the
+     * shard's later segments are deleted, so that the shard logs its next records after the last
+     * valid one.
+     *
+     * @param directory  the journal's directory
+     * @param shardCount the number of shards
+     * @param next       receives the sequence number of each shard's next record
+     * @param lastId     receives the highest identifier of a game ever created
+     * @return the recovered games by identifier
+     * @throws IOException if the journal cannot be read
+     */
+    private static Map<Integer, Board> recover(Path directory, int shardCount, long[] next,
+                                               int[] lastId) throws IOException {
+        var games = new java.util.HashMap<Integer, Board>();
+        var snapshotSequences = new java.util.HashMap<Integer, Long>();
+        long[] starts = new long[shardCount];
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (var in = new DataInputStream(new java.io.BufferedInputStream(
+                    Files.newInputStream(snapshot)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != shardCount) {
+                    throw new IOException("Snapshot does not match " + shardCount + " shards");
+                }
+                for (int i = 0; i < shardCount; i++) {
+                    starts[i] = in.readLong();
+                }
+                lastId[0] = in.readInt();
+                for (int count = in.readInt(); count > 0; count--) {
+                    int id = in.readInt();
+                    snapshotSequences.put(id, in.readLong());
+                    games.put(id, new Board(in.readUTF()));
+                }
+            }
+        }
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            next[shard] = starts[shard];
+            boolean valid = true;
+            for (var segment: segments(directory, shard)) {
+                if (segment.getKey() < starts[shard]) {
+                    continue;
+                }
+                if (!valid) {
+                    Files.delete(segment.getValue());
+                    continue;
+                }
+                byte[] bytes = Files.readAllBytes(segment.getValue());
+                var buffer = ByteBuffer.wrap(bytes);
+                long sequence = segment.getKey();
+                while (valid && buffer.remaining() >= RECORD_BYTES) {
+                    int id = buffer.getInt();
+                    byte type = buffer.get();
+                    short move = buffer.getShort();
+                    if (Math.floorMod(id, shardCount) != shard) {
+                        valid = false;
+                    } else if (sequence >= snapshotSequences.getOrDefault(id, Long.MIN_VALUE)) {
+                        switch (type) {
+                            case CREATE -> {
+                                games.put(id, new Board());
+                                lastId[0] = Math.max(lastId[0], id);
+                            }
+                            case MOVE   -> valid = !games.containsKey(id)
+                                                   || replay(games.get(id), move);
+                            case END    -> games.remove(id);
+                            default     -> valid = false;
+                        }
+                    }
+                    if (valid) {
+                        sequence++;
+                    }
+                }
+                long length = (sequence - segment.getKey()) * RECORD_BYTES;
+                if (length < bytes.length) {
+                    valid = false;
+                    try (var channel = FileChannel.open(segment.getValue(),
+                                                        StandardOpenOption.WRITE)) {
+                        channel.truncate(length);
+                        channel.force(false);
+                    }
+                }
+                next[shard] = Math.max(next[shard], sequence);
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Replays a logged move if it is legal.
+     *
+     * @param board the game's board
+     * @param move  the packed move
+     * @return <code>false</code> if the record does not hold a move that is legal on the board
+     */
+    private static boolean replay(Board board, short move) {
+        int code = move & 0xFFFF;
+        return code != 0 && code >>> 12 <= 4 && board.movePiece(Move.unpack(code));
+    }
+
+    /**
+     * Lists a shard's segment files in order.
+     *
+     * @param directory the journal's directory
+     * @param shard     the shard's index
+     * @return the segments, keyed by the sequence number of their first record
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<Map.Entry<Long, Path>> segments(Path directory, int shard)
+            throws IOException {
+        String prefix = "shard-" + shard + "-";
+        try (var files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)
+                                        && path.getFileName().toString().endsWith(".log"))
+                        .map(path -> {
+                            String name = path.getFileName().toString();
+                            long start = Long.parseLong(name.substring(prefix.length(),
+                                                                       name.length() - 4));
+                            return Map.entry(start, path);
+                        })
+                        .sorted(Map.Entry.comparingByKey())
+                        .toList();
+        }
+    }
+
+    /**
+     * Returns the path of a segment file.
+     *
+     * @param directory the journal's directory
+     * @param shard     the shard's index
+     * @param start     the sequence number of the segment's first record
+     * @return the segment's path
+     */
+    private static Path segmentPath(Path directory, int shard, long start) {
+        return directory.resolve(String.format("shard-%d-%016d.log", shard, start));
+    }
+
+}
\ No newline at end of file
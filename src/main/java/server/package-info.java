@@ -0,0 +1,5 @@
+/**
+ * Contains a headless server that hosts many concurrent games between human players over a
+ * line-based socket protocol, and a load generator for measuring it.
+ */
+package server;
\ No newline at end of file
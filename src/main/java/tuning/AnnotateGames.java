@@ -0,0 +1,140 @@
+package tuning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import chess.Pgn;
+import chess.engine.Annotator;
+import chess.engine.Search;
+import chess.engine.TranspositionTable;
+
+/**
+ * Reviews every game of a file with the {@link Annotator} and writes the games back annotated,
+ * in the order they were read. A window of games is kept in review at once, so every worker has
+ * positions to search while memory stays bounded. Reports the throughput, the time each game
+ * took from submission to review, and how many inaccuracies, mistakes and blunders were found.
+ * Games that cannot be parsed are skipped.
+ * <br>
+ * Usage: <code>AnnotateGames input.pgn output.pgn [threads] [node limit] [megabytes per
+ * thread]</code>.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class AnnotateGames {
+
+    /**
+     * A game under review.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Pending {
+
+        private final Pgn.Game game;
+        private final long submitted;
+        private final CompletableFuture<List<Annotator.Review>> reviews;
+        private final CompletableFuture<Long> finished;
+
+        /**
+         * Submits a game for review.
+         *
+         * @param annotator the annotator
+         * @param game      the game
+         */
+        Pending(Annotator annotator, Pgn.Game game) {
+            this.game = game;
+            submitted = System.nanoTime();
+            reviews = annotator.review(game);
+            finished = reviews.thenApply(result -> System.nanoTime());
+        }
+
+    }
+
+    private static final long DEFAULT_NODE_LIMIT = 100_000;
+    private static final int  GAMES_PER_THREAD   = 4; // Games kept in review per thread
+
+    private AnnotateGames() {}
+
+    /**
+     * Annotates the games and prints the report.
+     *
+     * @param args the input and output files, then the number of threads, the node limit of each
+     *             position and the memory of each worker, all three optional
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: AnnotateGames input.pgn output.pgn [threads] [node limit]"
+                               + " [megabytes per thread]");
+            System.exit(2);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                                      : Runtime.getRuntime().availableProcessors();
+        long nodeLimit = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_NODE_LIMIT;
+        int megabytes = args.length > 4 ? Integer.parseInt(args[4])
+                                        : TranspositionTable.DEFAULT_SIZE_MB;
+        System.out.printf("%d threads, %,d nodes per position, %d MB per worker%n", threads,
+                          nodeLimit, megabytes);
+
+        var window = new java.util.ArrayDeque<Pending>();
+        int[] judgements = new int[Annotator.Judgement.values().length];
+        long games = 0, skipped = 0, plies = 0, latency = 0, slowest = 0;
+        long start = System.nanoTime();
+        try (var annotator = new Annotator(threads, new Search.Limits(0, nodeLimit, 0),
+                                           megabytes);
+             BufferedReader reader = Files.newBufferedReader(Path.of(args[0]),
+                                                             StandardCharsets.UTF_8);
+             Writer writer = Files.newBufferedWriter(Path.of(args[1]), StandardCharsets.UTF_8)) {
+            String text = Pgn.readGame(reader);
+            while (text != null || !window.isEmpty()) {
+                if (text != null && window.size() < threads * GAMES_PER_THREAD) {
+                    try {
+                        window.add(new Pending(annotator, Pgn.parse(text)));
+                    } catch (IllegalArgumentException e) {
+                        skipped++;
+                    }
+                    text = Pgn.readGame(reader);
+                    continue;
+                }
+                Pending pending = window.remove();
+                List<Annotator.Review> reviews;
+                long millis;
+                try {
+                    reviews = pending.reviews.join();
+                    millis = (pending.finished.join() - pending.submitted) / 1_000_000;
+                } catch (java.util.concurrent.CompletionException e) {
+                    skipped++;
+                    continue;
+                }
+                writer.write(Annotator.toPgn(pending.game, reviews));
+                for (Annotator.Review review: reviews) {
+                    judgements[review.getJudgement().ordinal()]++;
+                }
+                games++;
+                plies += reviews.size();
+                latency += millis;
+                slowest = Math.max(slowest, millis);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%,d games (%,d skipped), %,d moves in %.1f s: %,.1f games/s, "
+                          + "%,.1f positions/s per thread, %.0f ms per game on average, "
+                          + "%d ms at most%n", games, skipped, plies, seconds, games / seconds,
+                          (plies + games) / seconds / threads,
+                          (double) latency / Math.max(1, games), slowest);
+        for (Annotator.Judgement judgement: Annotator.Judgement.values()) {
+            if (judgement != Annotator.Judgement.GOOD) {
+                System.out.printf("%s: %,d%n", judgement.getName(),
+                                  judgements[judgement.ordinal()]);
+            }
+        }
+    }
+
+}
\ No newline at end of file
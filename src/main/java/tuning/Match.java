@@ -0,0 +1,382 @@
+package tuning;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import chess.Board;
+import chess.Move;
+import chess.engine.Search;
+import chess.engine.TranspositionTable;
+import chess.engine.Evaluator;
+import chess.engine.PawnTable;
+import chess.pieces.Color;
+
+/**
+ * Plays a headless match between two engine configurations, many games at a time, to tell
+ * whether a change to the engine makes it stronger. Every game has its own board and one
+ * {@link Search} per side, so games share nothing and run on as many threads as there are cores.
+ * Each opening position is played twice, once with each engine as white.
+ * <br>
+ * Both sides play on a clock with an increment; a side whose clock runs out loses. Games end on
+ * checkmate or stalemate, as detected by the {@link Board}, and are drawn by the fifty-move rule,
+ * threefold repetition or after {@value #MAX_PLIES} plies. Results are printed as the games
+ * finish, with the Elo estimate and the state of a {@link Sprt} test, and the match stops as soon
+ * as the test decides. The final report includes games per second and core utilization.
+ * <br>
+ * Usage: <code>Match [games] [threads] [base+increment] [engine A] [engine B] [openings]</code>.
+ * The time control is in seconds, such as <code>1+0.01</code>. Engines are written as
+ * comma-separated settings, such as <code>depth=6,hash=8</code> (see {@link Engine#parse}). The
+ * openings file has one position in Forsyth-Edwards Notation per line; a built-in set of openings
+ * is used when none is given.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Match {
+
+    /**
+     * The settings of one side of a match. Every game creates its own searchers from them.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public static class Engine {
+
+        private final String name;
+        private final int depth;
+        private final long nodes;
+        private final int hashMegabytes;
+        private final int[] weights;
+
+        /**
+         * Creates engine settings.
+         *
+         * @param name          the name shown in reports
+         * @param depth         the maximum depth per move, or <code>0</code> for no limit
+         * @param nodes         the maximum nodes per move, or <code>0</code> for no limit
+         * @param hashMegabytes the size of each searcher's transposition table
+         * @param weights       the evaluation weights
+         */
+        public Engine(String name, int depth, long nodes, int hashMegabytes, int[] weights) {
+            this.name = name;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.hashMegabytes = hashMegabytes;
+            this.weights = weights.clone();
+        }
+
+        /**
+         * Parses comma-separated settings: <code>depth=</code>, <code>nodes=</code>,
+         * <code>hash=</code> (megabytes) and <code>weights=</code> (a file written by
+         * {@link Tuner}). Settings that are left out keep their defaults: no depth or node limit,
+         * a {@value #DEFAULT_HASH_MB} MB table and the default evaluation weights.
+         *
+         * @param spec the settings, such as <code>depth=6,hash=8</code>; the name of the engine
+         * @return the engine settings
+         * @throws IllegalArgumentException if a setting is unknown or not a number
+         * @throws IOException              if the weights file cannot be read
+         */
+        public static Engine parse(String spec) throws IOException {
+            int depth = 0, hash = DEFAULT_HASH_MB;
+            long nodes = 0;
+            int[] weights = Evaluator.getDefaultWeights();
+            for (String setting: spec.split(",")) {
+                if (setting.isBlank()) {
+                    continue;
+                }
+                String[] parts = setting.split("=", 2);
+                String value = parts.length > 1 ? parts[1].trim() : "";
+                switch (parts[0].trim()) {
+                    case "depth"   -> depth = Integer.parseInt(value);
+                    case "nodes"   -> nodes = Long.parseLong(value);
+                    case "hash"    -> hash = Integer.parseInt(value);
+                    case "weights" -> weights = Tuner.readWeights(Path.of(value));
+                    default        -> throw new IllegalArgumentException("Unknown setting: "
+                                                                     + setting);
+                }
+            }
+            return new Engine(spec, depth, nodes, hash, weights);
+        }
+
+        /**
+         * Creates a searcher with these settings, with its own transposition table and
+         * evaluator.
+         *
+         * @return a new searcher
+         */
+        public Search newSearch() {
+            return new Search(new TranspositionTable(hashMegabytes),
+                              new Evaluator(new PawnTable(), weights));
+        }
+
+        /**
+         * Returns the limits for a move, given the time allotted to it.
+         *
+         * @param millis the time for the move, in milliseconds
+         * @return the search limits
+         */
+        public Search.Limits limits(long millis) {
+            return new Search.Limits(depth, nodes, millis);
+        }
+
+        /**
+         * Returns the name of this engine.
+         *
+         * @return the settings it was parsed from
+         */
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    /** Size of each searcher's transposition table when none is specified, in megabytes. */
+    public static final int DEFAULT_HASH_MB = 4;
+
+    private static final int    DEFAULT_GAMES  = 1000;
+    private static final String DEFAULT_TIME   = "1+0.01";
+    private static final String DEFAULT_ENGINE = "hash=" + DEFAULT_HASH_MB;
+    private static final int    MAX_PLIES      = 400;
+    private static final int    MOVES_TO_GO    = 30;
+    private static final long   TIME_MARGIN    = 5; // Milliseconds kept in reserve
+    private static final double ELO0           = 0;
+    private static final double ELO1           = 5;
+    private static final double ALPHA          = 0.05;
+    private static final double BETA           = 0.05;
+    private static final String[] OPENINGS = {
+        "e2e4 e7e5 g1f3 b8c6 f1b5",
+        "e2e4 e7e5 g1f3 b8c6 f1c4",
+        "e2e4 c7c5 g1f3 d7d6",
+        "e2e4 c7c5 b1c3 b8c6",
+        "e2e4 e7e6 d2d4 d7d5",
+        "e2e4 c7c6 d2d4 d7d5",
+        "e2e4 d7d5 e4d5 d8d5",
+        "d2d4 d7d5 c2c4 e7e6",
+        "d2d4 d7d5 c2c4 c7c6",
+        "d2d4 g8f6 c2c4 g7g6",
+        "d2d4 g8f6 c2c4 e7e6 g1f3",
+        "d2d4 f7f5 g2g3 g8f6",
+        "c2c4 e7e5 b1c3 g8f6",
+        "c2c4 c7c5 g1f3 b8c6",
+        "g1f3 d7d5 g2g3 g8f6",
+        "g1f3 g8f6 c2c4 b7b6"
+    };
+
+    private final Engine first;
+    private final Engine second;
+    private final long baseMillis;
+    private final long incrementMillis;
+    private final List<String> openings;
+    private final Sprt sprt;
+    private final AtomicInteger nextGame;
+    private long startTime;
+
+    /**
+     * Creates a match that has not started.
+     *
+     * @param first           the engine the results are given for
+     * @param second          its opponent
+     * @param baseMillis      each side's time at the start of a game, in milliseconds
+     * @param incrementMillis the time added to a side's clock after each of its moves
+     * @param openings        the starting positions, in Forsyth-Edwards Notation
+     */
+    public Match(Engine first, Engine second, long baseMillis, long incrementMillis,
+                 List<String> openings) {
+        this.first = first;
+        this.second = second;
+        this.baseMillis = baseMillis;
+        this.incrementMillis = incrementMillis;
+        this.openings = List.copyOf(openings);
+        sprt = new Sprt(ELO0, ELO1, ALPHA, BETA);
+        nextGame = new AtomicInteger();
+    }
+
+    /**
+     * Runs a match and prints the results.
+     *
+     * @param args the number of games, the number of games played at once, the time control, both
+     *             engines and the openings file, all optional
+     * @throws IOException          if the openings file cannot be read
+     * @throws InterruptedException if the match is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        String[] time = (args.length > 2 ? args[2] : DEFAULT_TIME).split("\\+");
+        long base = Math.round(Double.parseDouble(time[0]) * 1000);
+        long increment = time.length > 1 ? Math.round(Double.parseDouble(time[1]) * 1000) : 0;
+        Engine first = Engine.parse(args.length > 3 ? args[3] : DEFAULT_ENGINE);
+        Engine second = Engine.parse(args.length > 4 ? args[4] : DEFAULT_ENGINE);
+        List<String> openings = args.length > 5 ? readOpenings(Path.of(args[5]))
+                                                : builtInOpenings();
+
+        System.out.printf("%s vs %s, %d games on %d threads, %d+%d ms, %d openings%n",
+                          first, second, games, threads, base, increment, openings.size());
+        new Match(first, second, base, increment, openings).run(games, threads);
+    }
+
+    /**
+     * Plays up to the specified number of games, stopping early if the test decides, and prints
+     * every result and the final report.
+     *
+     * @param games   the maximum number of games
+     * @param threads the number of games played at once
+     * @return the statistics of the games played
+     * @throws InterruptedException if the match is interrupted
+     */
+    public Sprt run(int games, int threads) throws InterruptedException {
+        var cpuNanos = new java.util.concurrent.atomic.AtomicLong();
+        var workers = new ArrayList<Thread>();
+        startTime = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            var worker = new Thread(() -> {
+                for (int game; (game = nextGame.getAndIncrement()) < games && !isDecided(); ) {
+                    String opening = openings.get(game / 2 % openings.size());
+                    boolean firstIsWhite = game % 2 == 0;
+                    String[] result = play(opening, firstIsWhite);
+                    record(game, firstIsWhite, result[0], result[1]);
+                }
+                var threadBean = java.lang.management.ManagementFactory.getThreadMXBean();
+                cpuNanos.addAndGet(threadBean.getCurrentThreadCpuTime());
+            }, "match-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        int cores = Runtime.getRuntime().availableProcessors();
+        synchronized (sprt) {
+            System.out.printf("%d games in %.1f s: %.2f games/s, %.0f%% of %d cores busy%n",
+                              sprt.getGames(), seconds, sprt.getGames() / seconds,
+                              100 * cpuNanos.get() / 1e9 / seconds / cores, cores);
+            System.out.println(sprt);
+            System.out.println(switch (sprt.getDecision()) {
+                case ACCEPT_H1 -> "H1 accepted: " + first + " is stronger";
+                case ACCEPT_H0 -> "H0 accepted: " + first + " is not stronger";
+                case CONTINUE  -> "inconclusive";
+            });
+        }
+        return sprt;
+    }
+
+    /**
+     * Plays one game.
+     *
+     * @param opening      the starting position
+     * @param firstIsWhite whether the first engine plays white
+     * @return the result from white's point of view, such as "1-0", and the reason the game ended
+     */
+    private String[] play(String opening, boolean firstIsWhite) {
+        var board = new Board(opening);
+        Engine white = firstIsWhite ? first : second, black = firstIsWhite ? second : first;
+        Search whiteSearch = white.newSearch(), blackSearch = black.newSearch();
+        long whiteClock = baseMillis, blackClock = baseMillis;
+        for (int ply = 0; ; ply++) {
+            boolean whiteToMove = board.getTurn() == Color.WHITE;
+            if (board.isCheckmate()) {
+                return new String[] {whiteToMove ? "0-1" : "1-0", "checkmate"};
+            } else if (board.isStalemate()) {
+                return new String[] {"1/2-1/2", "stalemate"};
+            } else if (board.getHalfmoveClock() >= 100) {
+                return new String[] {"1/2-1/2", "fifty moves"};
+            } else if (board.getRepetitions() >= 2) {
+                return new String[] {"1/2-1/2", "repetition"};
+            } else if (ply >= MAX_PLIES) {
+                return new String[] {"1/2-1/2", "move limit"};
+            }
+
+            long clock = whiteToMove ? whiteClock : blackClock;
+            long budget = Math.max(1, Math.min(clock / MOVES_TO_GO + incrementMillis * 3 / 4,
+                                               clock - TIME_MARGIN));
+            Engine engine = whiteToMove ? white : black;
+            Search search = whiteToMove ? whiteSearch : blackSearch;
+            long sent = System.nanoTime();
+            Move move = search.search(board, engine.limits(budget), null);
+            clock -= (System.nanoTime() - sent) / 1_000_000;
+            if (clock < 0) {
+                return new String[] {whiteToMove ? "0-1" : "1-0", "time"};
+            }
+            clock += incrementMillis;
+            if (whiteToMove) {
+                whiteClock = clock;
+            } else {
+                blackClock = clock;
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /**
+     * Adds a game's result to the statistics and prints it with the running totals.
+     *
+     * @param game         the game's number, counting from zero
+     * @param firstIsWhite whether the first engine played white
+     * @param result       the result from white's point of view
+     * @param reason       the reason the game ended
+     */
+    private void record(int game, boolean firstIsWhite, String result, String reason) {
+        double whiteScore = result.equals("1-0") ? 1 : result.equals("0-1") ? 0 : 0.5;
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        synchronized (sprt) {
+            sprt.add(firstIsWhite ? whiteScore : 1 - whiteScore);
+            System.out.printf("game %d: %s %s %s (%s) | %s | %.2f games/s%n", game + 1,
+                              firstIsWhite ? first : second, result, firstIsWhite ? second : first,
+                              reason, sprt, sprt.getGames() / seconds);
+        }
+    }
+
+    /**
+     * Determines if the test has decided, so that no more games need to start.
+     *
+     * @return <code>true</code> if either hypothesis was accepted
+     */
+    private boolean isDecided() {
+        synchronized (sprt) {
+            return sprt.getDecision() != Sprt.Decision.CONTINUE;
+        }
+    }
+
+    /**
+     * Reads opening positions, one per line. Blank lines and lines starting with <code>#</code>
+     * are skipped.
+     *
+     * @param path the file to read
+     * @return the positions
+     * @throws IOException if the file cannot be read
+     */
+    private static List<String> readOpenings(Path path) throws IOException {
+        List<String> openings = Files.readAllLines(path).stream().map(String::trim)
+                                     .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                                     .toList();
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException("No openings in " + path);
+        }
+        return openings;
+    }
+
+    /**
+     * Plays the built-in opening lines from the starting position.
+     *
+     * @return the positions at the end of the lines
+     */
+    private static List<String> builtInOpenings() {
+        var openings = new ArrayList<String>();
+        for (String line: OPENINGS) {
+            var board = new Board();
+            for (String move: line.split(" ")) {
+                board.makeMove(Move.parse(move));
+            }
+            openings.add(board.toFen());
+        }
+        return openings;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+package tuning;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import chess.Board;
+import chess.Move;
+import chess.engine.MateSolver;
+
+/**
+ * Solves a suite of mate problems in parallel with the {@link MateSolver}, one solver per thread,
+ * and reports the solve time and nodes of each problem and of the whole suite. A problem counts
+ * as solved if a mate of the expected length is found and, when the problem gives a key move,
+ * the mate starts with it.
+ * <br>
+ * Usage: <code>MateSuite [suite file] [threads] [megabytes per thread] [node limit]</code>. Each
+ * line of a suite file holds a FEN, the number of moves to mate and, optionally, the key move in
+ * coordinate notation, such as <code>e1e5</code>. Blank lines and lines starting with
+ * <code>#</code> are skipped. Without a file, a built-in suite of short mates is solved.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class MateSuite {
+
+    private static final long DEFAULT_NODE_LIMIT = 10_000_000;
+
+    private static final String[] PROBLEMS = {
+        "6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1 1 a1a8",
+        "r1bqkbnr/pppp1ppp/2n5/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 2 4 1 h5f7",
+        "rnbqkbnr/pppp1ppp/8/4p3/6P1/5P2/PPPPP2P/RNBQKBNR b KQkq - 0 2 1 d8h4",
+        "6rk/6pp/8/6N1/8/8/8/6K1 w - - 0 1 1 g5f7",
+        "3r2k1/5ppp/8/8/8/8/5PPP/3RR1K1 w - - 0 1 1 d1d8",
+        "4k3/8/4K3/8/8/8/8/7R w - - 0 1 1 h1h8",
+        "6k1/8/8/8/8/8/R7/1R4K1 w - - 0 1 2",
+        "r6k/6pp/7N/8/8/1Q6/8/6K1 w - - 0 1 2 b3g8",
+        "kbK5/pp6/1P6/8/8/8/8/R7 w - - 0 1 2 a1a6",
+        "r2qk2r/pb4pp/1n2Pb2/2B2Q2/p1p5/2P5/2B2PPP/RN2R1K1 w - - 1 1 2 f5g6",
+        "6k1/pp4p1/2p5/2bp4/8/P5Pb/1P3rrP/2BRRN1K b - - 0 1 2 g2g1",
+        "5rk1/1p1q2bp/p2pN1p1/2pP2Bn/2P3P1/1P6/P4QKP/5R2 w - - 1 1 2 f2f8",
+        "r5rk/5p1p/5R2/4B3/8/8/7P/7K w - - 0 1 3 f6a6",
+        "r1b1kb1r/pppp1ppp/5q2/4n3/3KP3/2N3PN/PPP4P/R1BQ1B1R b kq - 0 1 3 f8c5",
+        "8/8/8/8/8/5k2/8/4QK2 w - - 0 1 4 e1e5"
+    };
+
+    private MateSuite() {}
+
+    /**
+     * Solves the suite and prints the report.
+     *
+     * @param args the suite file, the number of threads, the memory of each solver and the node
+     *             limit per problem, all optional
+     * @throws IOException          if the suite file cannot be read
+     * @throws InterruptedException if the run is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> problems = args.length > 0 ? readProblems(Path.of(args[0]))
+                                                : List.of(PROBLEMS);
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : MateSolver.DEFAULT_SIZE_MB;
+        long nodeLimit = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_NODE_LIMIT;
+        System.out.printf("%d problems on %d threads, %d MB per solver, %,d nodes at most%n",
+                          problems.size(), threads, megabytes, nodeLimit);
+
+        var results = new MateSolver.Result[problems.size()];
+        var next = new java.util.concurrent.atomic.AtomicInteger();
+        var workers = new java.util.ArrayList<Thread>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            var worker = new Thread(() -> {
+                var solver = new MateSolver(megabytes);
+                for (int i; (i = next.getAndIncrement()) < problems.size(); ) {
+                    String[] problem = split(problems.get(i));
+                    results[i] = solver.solve(new Board(problem[0]), Integer.parseInt(problem[1]),
+                                              nodeLimit);
+                    synchronized (results) {
+                        System.out.printf("%3d %-7s %s%n", i + 1,
+                                          isSolved(problem, results[i]) ? "solved" : "FAILED",
+                                          results[i]);
+                    }
+                }
+            }, "mate-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int solved = 0;
+        long nodes = 0, millis = 0, slowest = 0;
+        for (int i = 0; i < results.length; i++) {
+            solved += isSolved(split(problems.get(i)), results[i]) ? 1 : 0;
+            nodes += results[i].getNodes();
+            millis += results[i].getMillis();
+            slowest = Math.max(slowest, results[i].getMillis());
+        }
+        System.out.printf("solved %d/%d in %.2f s: %,d nodes, %,.0f nodes/s per thread, "
+                          + "%.1f ms per problem on average, %d ms at most%n", solved,
+                          results.length, seconds, nodes, nodes * 1000.0 / Math.max(1, millis),
+                          (double) millis / results.length, slowest);
+    }
+
+    /**
+     * Determines if a problem was solved.
+     *
+     * @param problem the problem's FEN, number of moves and optional key move
+     * @param result  the solver's result
+     * @return <code>true</code> if the mate has the expected length and starts with the key move
+     */
+    private static boolean isSolved(String[] problem, MateSolver.Result result) {
+        return result.getStatus() == MateSolver.Status.MATE
+            && result.getMateIn() == Integer.parseInt(problem[1])
+            && (problem[2] == null || result.getLine().get(0).equals(Move.parse(problem[2])));
+    }
+
+    /**
+     * Splits a line of a suite into its FEN, number of moves and key move.
+     *
+     * @param line the line
+     * @return the FEN, the number of moves and the key move, which is <code>null</code> if the
+     *         line has none
+     */
+    private static String[] split(String line) {
+        String[] fields = line.trim().split("\\s+");
+        return new String[] {String.join(" ", java.util.Arrays.copyOf(fields, 6)), fields[6],
+                             fields.length > 7 ? fields[7] : null};
+    }
+
+    /**
+     * Reads a suite of problems, one per line, skipping blank lines and comments.
+     *
+     * @param path the file to read
+     * @return the problems
+     * @throws IOException if the file cannot be read
+     */
+    private static List<String> readProblems(Path path) throws IOException {
+        return Files.readAllLines(path).stream().map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#")).toList();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+package tuning;
+
+import chess.Board;
+import chess.engine.Evaluator;
+import chess.engine.Mcts;
+import chess.engine.Search;
+
+/**
+ * Measures how the Monte Carlo tree search scales with threads, next to the single-threaded
+ * alpha-beta search. Each configuration searches a set of positions for a fixed time, with a
+ * fresh tree, and the report gives playouts per second, the speedup over one thread, and the
+ * alpha-beta search's nodes per second for reference. A playout costs a quiescence search, so
+ * the two rates are not directly comparable; what matters is how the first grows with threads.
+ * <br>
+ * Usage: <code>MctsBenchmark [seconds per position] [maximum threads] [megabytes]</code>. The
+ * number of threads doubles from one up to the number of cores by default.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class MctsBenchmark {
+
+    private static final double DEFAULT_SECONDS = 2;
+
+    private static final String[] POSITIONS = {
+        Board.START_FEN,
+        "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+        "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 9",
+        "8/5pk1/6p1/3R4/5P2/6P1/r7/6K1 b - - 0 40"
+    };
+
+    private MctsBenchmark() {}
+
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args the time per position, the largest number of threads and the size of the tree,
+     *             all optional
+     */
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_SECONDS;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                                         : Runtime.getRuntime().availableProcessors();
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : Mcts.DEFAULT_SIZE_MB;
+        var limits = new Search.Limits(0, 0, (long) (seconds * 1000));
+        System.out.printf("%d positions, %.1f s each, %d MB tree (%,d nodes)%n", POSITIONS.length,
+                          seconds, megabytes, (long) megabytes * (1 << 20) / Mcts.NODE_BYTES);
+
+        var search = new Search();
+        long nodes = 0, nanos = 0;
+        for (String fen: POSITIONS) {
+            long start = System.nanoTime();
+            search.search(new Board(fen), limits, null);
+            nanos += System.nanoTime() - start;
+            nodes += search.getNodes();
+        }
+        System.out.printf("%-12s %,14.0f nodes/s%n", "alpha-beta", nodes * 1e9 / nanos);
+
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads)) {
+            var mcts = new Mcts(megabytes, threads, Evaluator::new);
+            long playouts = 0;
+            nanos = 0;
+            for (String fen: POSITIONS) {
+                mcts.clear();
+                long start = System.nanoTime();
+                mcts.search(new Board(fen), limits, null);
+                nanos += System.nanoTime() - start;
+                playouts += mcts.getNodes();
+            }
+            double rate = playouts * 1e9 / nanos;
+            single = threads == 1 ? rate : single;
+            System.out.printf("%-12s %,14.0f playouts/s  %.2fx%n", "mcts " + threads + "t", rate,
+                              rate / single);
+        }
+    }
+
+    /**
+     * Returns the next thread count to measure: the double of the last one, or the maximum if it
+     * is not a power of two.
+     *
+     * @param threads    the last thread count
+     * @param maxThreads the largest thread count
+     * @return the next thread count, larger than the maximum when done
+     */
+    private static int nextThreads(int threads, int maxThreads) {
+        return threads < maxThreads && threads * 2 > maxThreads ? maxThreads : threads * 2;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+package tuning;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import chess.Board;
+import chess.Move;
+import chess.engine.Evaluator;
+import chess.engine.Nnue;
+
+/**
+ * Measures evaluations per second of the handcrafted {@link Evaluator} and of the {@link Nnue}
+ * evaluator, with scalar code and, when the <code>jdk.incubator.vector</code> module is loaded,
+ * with the Vector API. Like a search, the benchmark walks the positions reached by every legal
+ * move from a set of positions, making the move, evaluating and taking the move back, so the
+ * neural network's accumulators are updated incrementally; the cost of making and taking back
+ * the moves alone is reported too. Before measuring, every score of the scalar and vector kernels
+ * is checked against a network evaluating each position from scratch.
+ * <br>
+ * Usage: <code>NnueBenchmark [network file | hidden size] [seconds]</code>. Without a file, a
+ * network with random weights and a first layer of the given size, 256 by default, is used.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class NnueBenchmark {
+
+    private static final int    DEFAULT_HIDDEN_SIZE = 256;
+    private static final double DEFAULT_SECONDS     = 3;
+    private static final int    POSITIONS           = 1000;
+
+    // Keeps the results alive so that the evaluations cannot be optimized away
+    private static volatile long sink;
+
+    private NnueBenchmark() {}
+
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args the network file or the size of a random network's first layer, and the time
+     *             spent measuring each evaluator, both optional
+     * @throws IOException if the network file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        Nnue.Network network;
+        if (args.length > 0 && !args[0].chars().allMatch(Character::isDigit)) {
+            network = Nnue.Network.load(Path.of(args[0]));
+        } else {
+            int hiddenSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_HIDDEN_SIZE;
+            network = Nnue.Network.random(hiddenSize, 0);
+        }
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_SECONDS;
+        List<Board> boards = randomPositions();
+        var scalar = new Nnue(network, false);
+        var vector = new Nnue(network, true);
+        System.out.printf("%s, %d positions%n", vector, boards.size());
+        if (!Nnue.isVectorAvailable()) {
+            System.out.println("vector API not available: run with --add-modules "
+                               + "jdk.incubator.vector");
+        }
+        System.out.printf("max difference from a fresh evaluation: scalar %d, vector %d%n",
+                          check(boards, network, scalar), check(boards, network, vector));
+
+        double baseline = measure("make/unmake only", boards, null, seconds, 0);
+        double handcrafted = measure("handcrafted", boards, new Evaluator(), seconds, baseline);
+        double scalarNanos = measure("nnue scalar", boards, scalar, seconds, baseline);
+        System.out.printf("nnue scalar is %.1fx slower than handcrafted%n",
+                          scalarNanos / handcrafted);
+        if (Nnue.isVectorAvailable()) {
+            double vectorNanos = measure("nnue vector", boards, vector, seconds, baseline);
+            System.out.printf("nnue vector is %.1fx slower than handcrafted, %.1fx faster than "
+                              + "scalar%n", vectorNanos / handcrafted, scalarNanos / vectorNanos);
+        }
+    }
+
+    /**
+     * Compares the scores of an evaluator, updated incrementally, with those of a new evaluator
+     * for every position.
+     *
+     * @param boards    the positions
+     * @param network   the network
+     * @param evaluator the evaluator to check
+     * @return the largest difference, in centipawns
+     */
+    private static int check(List<Board> boards, Nnue.Network network, Nnue evaluator) {
+        int largest = 0;
+        for (Board board: boards) {
+            for (Move move: board.getLegalMoves()) {
+                board.makeMove(move);
+                int incremental = evaluator.evaluate(board);
+                board.undoMove();
+                Board fresh = new Board(board.toFen());
+                fresh.makeMove(move);
+                largest = Math.max(largest, Math.abs(incremental
+                                                     - new Nnue(network, false).evaluate(fresh)));
+            }
+            board.setSquareListener(null);
+        }
+        return largest;
+    }
+
+    /**
+     * Walks the moves of every position for a while and prints the rate of evaluations.
+     *
+     * @param name      the name of the evaluator
+     * @param boards    the positions
+     * @param evaluator the evaluator, or <code>null</code> to only make and take back the moves
+     * @param seconds   the time to measure for, after the same time of warm-up
+     * @param baseline  the nanoseconds per move of making and taking back the moves alone
+     * @return the nanoseconds per move, without the baseline
+     */
+    private static double measure(String name, List<Board> boards, Evaluator evaluator,
+                                  double seconds, double baseline) {
+        long sum = 0;
+        long moves = 0, start = 0;
+        long warmUpEnd = System.nanoTime() + (long) (seconds * 1e9), end = 0;
+        for (boolean measuring = false; ; ) {
+            for (Board board: boards) {
+                for (Move move: board.getLegalMoves()) {
+                    board.makeMove(move);
+                    sum += evaluator == null ? board.getKey() : evaluator.evaluate(board);
+                    board.undoMove();
+                    moves++;
+                }
+            }
+            long now = System.nanoTime();
+            if (!measuring && now >= warmUpEnd) {
+                measuring = true;
+                moves = 0;
+                start = now;
+                end = now + (long) (seconds * 1e9);
+            } else if (measuring && now >= end) {
+                double perMove = (double) (now - start) / moves - baseline;
+                System.out.printf("%-20s %,14.0f %s/s (%.0f ns each)%n", name, 1e9 / perMove,
+                                  evaluator == null ? "moves" : "evaluations", perMove);
+                sink = sum;
+                for (Board board: boards) {
+                    board.setSquareListener(null);
+                }
+                return perMove;
+            }
+        }
+    }
+
+    /**
+     * Plays random legal moves from the starting position to reach a set of positions.
+     *
+     * @return boards in the positions
+     */
+    private static List<Board> randomPositions() {
+        var random = new java.util.SplittableRandom(0);
+        var boards = new ArrayList<Board>();
+        while (boards.size() < POSITIONS) {
+            var board = new Board();
+            int plies = random.nextInt(80);
+            for (int i = 0; i < plies && !board.getLegalMoves().isEmpty(); i++) {
+                List<Move> moves = board.getLegalMoves();
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            if (!board.getLegalMoves().isEmpty()) {
+                boards.add(new Board(board.toFen()));
+            }
+        }
+        return boards;
+    }
+
+}
\ No newline at end of file
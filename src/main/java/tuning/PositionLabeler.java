@@ -0,0 +1,301 @@
+package tuning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import chess.Board;
+import chess.Move;
+import chess.engine.Evaluator;
+import chess.engine.Search;
+import chess.engine.TranspositionTable;
+
+/**
+ * Labels positions for training: reads a file of positions in Forsyth-Edwards Notation, one per
+ * line, and writes for each its static evaluation, the score and best move of a shallow search,
+ * and its number of legal moves, as fixed-size binary records in the order of the input.
+ * <br>
+ * The file is streamed: the calling thread reads chunks of {@value #CHUNK_LINES} lines into a
+ * bounded queue, worker threads label whole chunks, each with its own search, and a writer
+ * thread writes the chunks back in order. Chunks finished early wait in a reorder buffer of a few
+ * chunks per worker, and a worker that gets too far ahead waits for the writer, so memory stays
+ * bounded whatever the size of the file. Only the first six fields of a line are read, so lines
+ * can carry more, such as a result; a line with only four fields gets default move counters.
+ * Lines that are not valid positions are skipped and counted.
+ * <br>
+ * The output starts with a 16-byte header: the magic number <code>PLBL</code>, the version and
+ * the number of records. Each record takes {@value #RECORD_BYTES} bytes, big-endian:
+ * <ul>
+ *   <li>8 bytes: the occupied squares, bit <code>i</code> for the <code>i</code>-th square in
+ *   the order of the notation, from a8 to h1;</li>
+ *   <li>16 bytes: the piece on each occupied square, in the same order, four bits each with the
+ *   high bits first: <code>1</code> to <code>6</code> for a white pawn, knight, bishop, rook,
+ *   queen and king, <code>9</code> to <code>14</code> for a black one;</li>
+ *   <li>2 bytes: black to move in bit 0, castling rights KQkq in bits 1 to 4, the en passant
+ *   file plus one in bits 5 to 8, and the halfmove clock, capped at 127, in bits 9 to 15;</li>
+ *   <li>2 bytes each: the static evaluation, the search score, and the best move as packed by
+ *   {@link Move#pack()}, <code>0</code> if there is none; scores are in centipawns from the point
+ *   of view of the player to move;</li>
+ *   <li>2 bytes: the number of legal moves.</li>
+ * </ul>
+ * Usage: <code>PositionLabeler input.fen output.bin [threads] [depth]</code>.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class PositionLabeler {
+
+    /**
+     * Lines of the input read at once, with their place in it.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Chunk {
+
+        private final long sequence;
+        private final List<String> lines;
+
+        /**
+         * Creates a chunk.
+         *
+         * @param sequence the chunk's place in the input, from <code>0</code>
+         * @param lines    the lines
+         */
+        Chunk(long sequence, List<String> lines) {
+            this.sequence = sequence;
+            this.lines = lines;
+        }
+
+    }
+
+    private static final int    MAGIC             = 0x504c424c; // "PLBL"
+    private static final int    VERSION           = 1;
+    private static final int    HEADER            = 16;
+    private static final int    RECORD_BYTES      = 34;
+    private static final int    POSITION_BYTES    = 26;
+    private static final int    CHUNK_LINES       = 1024;
+    private static final int    CHUNKS_PER_THREAD = 4; // Chunks queued and reordered per worker
+    private static final int    DEFAULT_DEPTH     = 2;
+    private static final int    SEARCH_MB         = 4;
+    private static final Chunk  NO_MORE_LINES     = new Chunk(-1, List.of());
+    private static final String PIECE_LETTERS     = " PNBRQK";
+
+    private PositionLabeler() {}
+
+    /**
+     * Labels the positions of a file and prints the throughput.
+     *
+     * @param args the input and output files, then the number of threads and the search depth,
+     *             both optional
+     * @throws IOException          if a file cannot be read or written
+     * @throws InterruptedException if the run is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: PositionLabeler input.fen output.bin [threads] [depth]");
+            System.exit(2);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                                      : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_DEPTH;
+        var chunks = new java.util.concurrent.ArrayBlockingQueue<Chunk>(threads
+                                                                        * CHUNKS_PER_THREAD);
+        var reorder = new ReorderBuffer(threads * CHUNKS_PER_THREAD);
+        var skipped = new java.util.concurrent.atomic.AtomicLong();
+        var failure = new java.util.concurrent.atomic.AtomicReference<IOException>();
+        long start = System.nanoTime();
+
+        var workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            var worker = new Thread(() -> {
+                var search = new Search(new TranspositionTable(SEARCH_MB), new Evaluator());
+                var limits = new Search.Limits(depth, 0, 0);
+                try {
+                    for (Chunk chunk; (chunk = chunks.take()) != NO_MORE_LINES; ) {
+                        var records = ByteBuffer.allocate(chunk.lines.size() * RECORD_BYTES);
+                        for (String line: chunk.lines) {
+                            if (!label(line, search, limits, records)) {
+                                skipped.incrementAndGet();
+                            }
+                        }
+                        reorder.put(chunk.sequence, records.flip());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "labeler-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+
+        long[] written = new long[1];
+        Path output = Path.of(args[1]);
+        var writer = new Thread(() -> {
+            try {
+                writeRecords(output, reorder, written);
+            } catch (IOException e) {
+                failure.set(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // After a failure, the rest is dropped so that no worker waits for the writer
+            try {
+                reorder.drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "labeler-writer");
+        writer.start();
+
+        long sequence = 0, lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(args[0]),
+                                                             StandardCharsets.UTF_8)) {
+            var batch = new ArrayList<String>(CHUNK_LINES);
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                batch.add(line);
+                lines++;
+                if (batch.size() == CHUNK_LINES) {
+                    chunks.put(new Chunk(sequence++, batch));
+                    batch = new ArrayList<>(CHUNK_LINES);
+                }
+            }
+            if (!batch.isEmpty()) {
+                chunks.put(new Chunk(sequence++, batch));
+            }
+        } finally {
+            for (int t = 0; t < threads; t++) {
+                chunks.put(NO_MORE_LINES);
+            }
+            for (Thread worker: workers) {
+                worker.join();
+            }
+            reorder.finish(sequence);
+            writer.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d positions (%,d skipped) in %.1f s at depth %d: %,.0f positions/s,"
+                          + " %,.0f per thread on %d threads, %,d bytes%n", lines, skipped.get(),
+                          seconds, depth, written[0] / seconds, written[0] / seconds / threads,
+                          threads, Files.size(output));
+    }
+
+    /**
+     * Writes the labeled chunks in the order of the input, then the header.
+     *
+     * @param output  the output file
+     * @param reorder the labeled chunks
+     * @param written receives the number of records written
+     * @throws IOException          if the file cannot be written
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    private static void writeRecords(Path output, ReorderBuffer reorder, long[] written)
+            throws IOException, InterruptedException {
+        try (var channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                                            StandardOpenOption.TRUNCATE_EXISTING,
+                                            StandardOpenOption.WRITE)) {
+            channel.position(HEADER);
+            for (ByteBuffer records; (records = reorder.take()) != null; ) {
+                written[0] += records.remaining() / RECORD_BYTES;
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+            }
+            var header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION)
+                                   .putLong(written[0]).flip();
+            channel.write(header, 0);
+        }
+    }
+
+    /**
+     * Labels one position and appends its record.
+     *
+     * @param line    the line holding the position
+     * @param search  the worker's search
+     * @param limits  the limits of the shallow search
+     * @param records the chunk's records
+     * @return <code>false</code> if the line is not a valid position, and nothing was appended
+     */
+    private static boolean label(String line, Search search, Search.Limits limits,
+                                 ByteBuffer records) {
+        String[] fields = line.strip().split("\\s+");
+        if (fields.length < 4) {
+            return false;
+        }
+        String fen = fields.length < 6 ? String.join(" ", List.of(fields).subList(0, 4)) + " 0 1"
+                                       : String.join(" ", List.of(fields).subList(0, 6));
+        try {
+            var board = new Board(fen);
+            byte[] position = encode(fen);
+            if (position == null) {
+                return false;
+            }
+            int legalMoves = board.getLegalMoves().size();
+            int staticScore = search.getEvaluator().evaluate(board);
+            int[] score = new int[1];
+            Move best = search.search(board, limits, info -> score[0] = info.getScore());
+            if (best == null) {
+                score[0] = board.isInCheck() ? -Search.MATE_SCORE : 0;
+            }
+            records.put(position).putShort((short) staticScore).putShort((short) score[0])
+                   .putShort((short) (best == null ? 0 : best.pack()))
+                   .putShort((short) legalMoves);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Encodes the position part of a record: the occupied squares, the pieces and the state.
+     *
+     * @param fen a position accepted by {@link Board}
+     * @return the {@value #POSITION_BYTES} bytes, or <code>null</code> if the position has more
+     *         than 32 pieces
+     */
+    private static byte[] encode(String fen) {
+        String[] fields = fen.split(" ");
+        var position = ByteBuffer.allocate(POSITION_BYTES);
+        long occupied = 0;
+        int square = 0, count = 0;
+        for (char c: fields[0].toCharArray()) {
+            if (Character.isDigit(c)) {
+                square += c - '0';
+            } else if (c != '/') {
+                if (count == 32) {
+                    return null;
+                }
+                int code = PIECE_LETTERS.indexOf(Character.toUpperCase(c))
+                           | (Character.isLowerCase(c) ? 8 : 0);
+                int index = 8 + count / 2;
+                position.put(index, (byte) (position.get(index)
+                                            | (count % 2 == 0 ? code << 4 : code)));
+                occupied |= 1L << square++;
+                count++;
+            }
+        }
+        int state = fields[1].equals("b") ? 1 : 0;
+        for (int i = 0; i < 4; i++) {
+            state |= fields[2].indexOf("KQkq".charAt(i)) >= 0 ? 2 << i : 0;
+        }
+        if (!fields[3].equals("-")) {
+            state |= (fields[3].charAt(0) - 'a' + 1) << 5;
+        }
+        state |= Math.min(127, Integer.parseInt(fields[4])) << 9;
+        return position.putLong(0, occupied).putShort(24, (short) state).array();
+    }
+
+}
\ No newline at end of file
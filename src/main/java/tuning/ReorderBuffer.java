@@ -0,0 +1,87 @@
+package tuning;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hands the labeled chunks of a {@link PositionLabeler} to its writer in the order of the input.
+ * Holds at most a fixed number of chunks past the next one to write; workers with later chunks
+ * wait.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class ReorderBuffer {
+
+    private final ByteBuffer[] slots;
+    private long next;
+    private long end;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param capacity the number of chunks held at most
+     */
+    ReorderBuffer(int capacity) {
+        slots = new ByteBuffer[capacity];
+        end = Long.MAX_VALUE;
+    }
+
+    /**
+     * Adds a labeled chunk, first waiting until it is close enough to the next one to write.
+     *
+     * @param sequence the chunk's place in the input
+     * @param records  the chunk's records
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    synchronized void put(long sequence, ByteBuffer records) throws InterruptedException {
+        while (sequence >= next + slots.length) {
+            wait();
+        }
+        slots[(int) (sequence % slots.length)] = records;
+        notifyAll();
+    }
+
+    /**
+     * Removes the next chunk to write, waiting until it is labeled.
+     *
+     * @return the chunk's records, or <code>null</code> once every chunk was written
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    synchronized ByteBuffer take() throws InterruptedException {
+        int slot = (int) (next % slots.length);
+        while (next < end && slots[slot] == null) {
+            wait();
+        }
+        if (next == end) {
+            return null;
+        }
+        ByteBuffer records = slots[slot];
+        slots[slot] = null;
+        next++;
+        notifyAll();
+        return records;
+    }
+
+    /**
+     * Removes and drops every chunk until the last one, for a writer that can no longer write
+     * them, so that no worker waits for it.
+     *
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    void drain() throws InterruptedException {
+        while (take() != null) {
+            continue;
+        }
+    }
+
+    /**
+     * Sets the number of chunks, once the input is read.
+     *
+     * @param chunks the number of chunks
+     */
+    synchronized void finish(long chunks) {
+        end = chunks;
+        notifyAll();
+    }
+
+}
\ No newline at end of file
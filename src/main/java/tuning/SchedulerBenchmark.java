@@ -0,0 +1,147 @@
+package tuning;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import chess.Board;
+import chess.PositionSnapshot;
+import chess.engine.AnalysisScheduler;
+import chess.engine.Search;
+import chess.engine.TranspositionTable;
+
+/**
+ * Measures how long interactive jobs wait in an {@link AnalysisScheduler} whose workers are all
+ * kept busy with bulk jobs. Bulk jobs with a node budget are submitted faster than the workers
+ * can search them, while interactive jobs with a time budget arrive at a fixed interval; the
+ * report gives the percentiles of the interactive jobs' waits and total latencies, the bulk
+ * throughput, and the preemptions it took.
+ * <br>
+ * Usage: <code>SchedulerBenchmark [seconds] [threads] [interval] [megabytes]</code>: the length
+ * of the run, 10 seconds by default, the number of workers, the number of cores by default, the
+ * milliseconds between interactive jobs, 100 by default, and the size of each transposition
+ * table.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class SchedulerBenchmark {
+
+    private static final double DEFAULT_SECONDS   = 10;
+    private static final long DEFAULT_INTERVAL    = 100;
+    private static final long BULK_NODES          = 200_000;
+    private static final long INTERACTIVE_MILLIS  = 50;
+    private static final int BULK_JOBS_PER_THREAD = 4;
+
+    private static final String[] POSITIONS = {
+        Board.START_FEN,
+        "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+        "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 9",
+        "8/5pk1/6p1/3R4/5P2/6P1/r7/6K1 b - - 0 40"
+    };
+
+    private SchedulerBenchmark() {}
+
+    /**
+     * Runs the benchmark and prints the report.
+     *
+     * @param args the length of the run, the number of workers, the interval between interactive
+     *             jobs and the size of the tables, all optional
+     * @throws InterruptedException if interrupted while waiting for a job
+     */
+    public static void main(String[] args) throws InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_SECONDS;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        long interval = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_INTERVAL;
+        int megabytes = args.length > 3 ? Integer.parseInt(args[3])
+                                        : TranspositionTable.DEFAULT_SIZE_MB;
+        PositionSnapshot[] positions = new PositionSnapshot[POSITIONS.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new Board(POSITIONS[i]).snapshot();
+        }
+        var bulkBudget = new Search.Limits(0, BULK_NODES, 0);
+        var interactiveBudget = new Search.Limits(0, 0, INTERACTIVE_MILLIS);
+        System.out.printf("%d workers, %,d-node bulk jobs, %d ms interactive jobs every %d ms%n",
+                          threads, BULK_NODES, INTERACTIVE_MILLIS, interval);
+
+        var interactive = new java.util.ArrayList<CompletableFuture<AnalysisScheduler.Result>>();
+        long bulkNodes = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        try (var scheduler = new AnalysisScheduler(threads, megabytes)) {
+            var bulk = new java.util.ArrayDeque<CompletableFuture<AnalysisScheduler.Result>>();
+            int next = 0;
+            for (long now = start; now < end; now = System.nanoTime()) {
+                // Keep more bulk jobs queued than there are workers
+                while (bulk.size() < threads * BULK_JOBS_PER_THREAD) {
+                    bulk.add(scheduler.submit(positions[next++ % positions.length],
+                                              AnalysisScheduler.Priority.BULK, bulkBudget));
+                }
+                interactive.add(scheduler.submit(positions[next++ % positions.length],
+                                                 AnalysisScheduler.Priority.INTERACTIVE,
+                                                 interactiveBudget));
+                long wake = now + interval * 1_000_000;
+                while (System.nanoTime() < wake) {
+                    for (var it = bulk.iterator(); it.hasNext(); ) {
+                        var job = it.next();
+                        if (job.isDone()) {
+                            bulkNodes += job.join().getNodes();
+                            it.remove();
+                        }
+                    }
+                    Thread.sleep(1);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            for (var job: interactive) {
+                job.join();
+            }
+            report(interactive, scheduler.getStats(), bulkNodes, elapsed);
+        }
+    }
+
+    /**
+     * Prints the interactive latencies and the bulk throughput.
+     *
+     * @param interactive the interactive jobs, all done
+     * @param stats       the scheduler's counts at the end of the run
+     * @param bulkNodes   the nodes searched by the bulk jobs that completed
+     * @param nanos       the length of the run
+     */
+    private static void report(List<CompletableFuture<AnalysisScheduler.Result>> interactive,
+                               AnalysisScheduler.Stats stats, long bulkNodes, long nanos) {
+        double[] waits = new double[interactive.size()];
+        double[] latencies = new double[interactive.size()];
+        for (int i = 0; i < waits.length; i++) {
+            AnalysisScheduler.Result result = interactive.get(i).join();
+            waits[i] = result.getWaitMillis();
+            latencies[i] = result.getWaitMillis() + result.getSearchMillis();
+        }
+        java.util.Arrays.sort(waits);
+        java.util.Arrays.sort(latencies);
+        System.out.printf("%d interactive jobs%n", waits.length);
+        System.out.printf("interactive wait:    p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                          percentile(waits, 50), percentile(waits, 99),
+                          waits[waits.length - 1]);
+        System.out.printf("interactive latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                          percentile(latencies, 50), percentile(latencies, 99),
+                          latencies[latencies.length - 1]);
+        var bulk = AnalysisScheduler.Priority.BULK;
+        System.out.printf("bulk: %,d jobs completed, %,.0f nodes/s, average wait %.1f ms, "
+                          + "%d queued%n", stats.getCompleted(bulk), bulkNodes * 1e9 / nanos,
+                          stats.getAverageWaitMillis(bulk), stats.getQueueDepth(bulk));
+        System.out.printf("preemptions: %,d%n", stats.getPreemptions());
+    }
+
+    /**
+     * Returns a percentile of sorted latencies.
+     *
+     * @param sorted     the latencies, in ascending order
+     * @param percentile the percentile, in the range [0, 100]
+     * @return the latency below which the specified percentage of latencies fall
+     */
+    private static double percentile(double[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+package tuning;
+
+/**
+ * Running statistics of a match between two engines: the wins, draws and losses of the first
+ * engine, its Elo difference estimate, and a sequential probability ratio test that decides,
+ * as early as the results allow, whether the first engine is stronger by at least
+ * <code>elo1</code> or by at most <code>elo0</code>. The log-likelihood ratio uses the normal
+ * approximation of the generalized test, computed from the score's mean and variance.
+ * <br>
+ * Instances are not thread-safe.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ * @see tuning.Match
+ */
+public class Sprt {
+
+    /**
+     * The state of the test.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    public enum Decision {
+
+        /** The results do not yet decide between the hypotheses. */
+        CONTINUE,
+        /** The first engine is stronger by at least <code>elo1</code>. */
+        ACCEPT_H1,
+        /** The first engine is stronger by at most <code>elo0</code>. */
+        ACCEPT_H0
+
+    }
+
+    private static final double Z_95 = 1.959964;
+
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+    private int wins;
+    private int draws;
+    private int losses;
+
+    /**
+     * Creates a test with no results.
+     *
+     * @param elo0  the Elo difference of the null hypothesis
+     * @param elo1  the Elo difference of the alternative hypothesis, greater than
+     *              <code>elo0</code>
+     * @param alpha the probability of accepting H1 when H0 is true
+     * @param beta  the probability of accepting H0 when H1 is true
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Adds the result of a game.
+     *
+     * @param score the first engine's score: <code>1</code> for a win, <code>0.5</code> for a draw
+     *              and <code>0</code> for a loss
+     */
+    public void add(double score) {
+        if (score > 0.5) {
+            wins++;
+        } else if (score < 0.5) {
+            losses++;
+        } else {
+            draws++;
+        }
+    }
+
+    /**
+     * Returns the number of games added.
+     *
+     * @return the number of games
+     */
+    public int getGames() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * Returns the first engine's average score.
+     *
+     * @return a number in the range [0, 1]; <code>0.5</code> if no game was added
+     */
+    public double getScore() {
+        int games = getGames();
+        return games == 0 ? 0.5 : (wins + draws / 2.0) / games;
+    }
+
+    /**
+     * Returns the estimated Elo difference of the first engine over the second.
+     *
+     * @return the Elo difference; infinite if one engine won every game
+     */
+    public double getElo() {
+        return elo(getScore());
+    }
+
+    /**
+     * Returns half the width of the 95% confidence interval of the Elo difference.
+     *
+     * @return the margin in Elo; infinite if one engine won every game
+     */
+    public double getEloMargin() {
+        int games = getGames();
+        // The Elo difference itself is infinite, and the difference of two infinities is not
+        if (games == 0 || wins == games || losses == games) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double deviation = Math.sqrt(variance() / games) * Z_95;
+        double score = getScore();
+        return (elo(Math.min(1, score + deviation)) - elo(Math.max(0, score - deviation))) / 2;
+    }
+
+    /**
+     * Returns the log-likelihood ratio of H1 over H0.
+     *
+     * @return the ratio; <code>0</code> while the results have no variance
+     */
+    public double getLlr() {
+        double variance = variance();
+        if (variance == 0) {
+            return 0;
+        }
+        double s0 = expectedScore(elo0), s1 = expectedScore(elo1);
+        return getGames() * (s1 - s0) * (2 * getScore() - s0 - s1) / (2 * variance);
+    }
+
+    /**
+     * Decides between the hypotheses if the log-likelihood ratio has crossed either bound.
+     *
+     * @return the decision
+     */
+    public Decision getDecision() {
+        double llr = getLlr();
+        if (llr >= upperBound) {
+            return Decision.ACCEPT_H1;
+        } else if (llr <= lowerBound) {
+            return Decision.ACCEPT_H0;
+        }
+        return Decision.CONTINUE;
+    }
+
+    /**
+     * Returns a summary of the results, such as
+     * "W 40 D 25 L 35, Elo +17.4 +/- 59.6, LLR 0.08 [-2.94, 2.94]".
+     *
+     * @return a string representation of this test
+     */
+    @Override
+    public String toString() {
+        return String.format("W %d D %d L %d, Elo %+.1f +/- %.1f, LLR %.2f [%.2f, %.2f]", wins,
+                             draws, losses, getElo(), getEloMargin(), getLlr(), lowerBound,
+                             upperBound);
+    }
+
+    /**
+     * Returns the variance of a single game's score.
+     *
+     * @return the variance
+     */
+    private double variance() {
+        int games = getGames();
+        if (games == 0) {
+            return 0;
+        }
+        double score = getScore();
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+    }
+
+    /**
+     * Converts an Elo difference into the expected score of the stronger side.
+     *
+     * @param elo the Elo difference
+     * @return the expected score
+     */
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Converts an expected score into an Elo difference.
+     *
+     * @param score the expected score
+     * @return the Elo difference
+     */
+    private static double elo(double score) {
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+}
\ No newline at end of file
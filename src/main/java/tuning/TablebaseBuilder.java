@@ -0,0 +1,129 @@
+package tuning;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import chess.Board;
+import chess.engine.Tablebase;
+import chess.engine.TablebaseGenerator;
+
+/**
+ * Generates the endgame tables of every {@link Tablebase.Endgame} on all cores, writes them to a
+ * directory and checks the written files. For each endgame, the report gives the generation
+ * time, the number of won, drawn and lost positions, the longest mate and the compressed size of
+ * the file. The files are then memory-mapped and probed on random positions, which must score as
+ * the tables just generated, and the average probe time is reported.
+ * <br>
+ * Usage: <code>TablebaseBuilder [directory] [threads]</code>. The directory is created if needed
+ * and can be given to the engine with the UCI option <code>TablebasePath</code>.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class TablebaseBuilder {
+
+    private static final String DEFAULT_DIRECTORY = "tablebases";
+    private static final int    PROBES            = 200_000;
+
+    private TablebaseBuilder() {}
+
+    /**
+     * Generates the tables and prints the report.
+     *
+     * @param args the directory to write the tables to and the number of threads, both optional
+     * @throws IOException if a table cannot be written or read back
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : DEFAULT_DIRECTORY);
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        Files.createDirectories(directory);
+        System.out.printf("generating into %s on %d threads%n", directory, threads);
+
+        var generated = new Tablebase();
+        for (Tablebase.Endgame endgame: Tablebase.Endgame.values()) {
+            long start = System.nanoTime();
+            byte[] values = TablebaseGenerator.generate(endgame, generated, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            generated.put(endgame, values);
+            Path file = directory.resolve(endgame.getFileName());
+            Tablebase.write(file, endgame, values);
+
+            int wins = 0, draws = 0, losses = 0, longest = 0;
+            for (byte value: values) {
+                if (value == Tablebase.DRAW) {
+                    draws++;
+                } else if (value > 0) {
+                    wins++;
+                    longest = Math.max(longest, value);
+                } else if (value != Tablebase.ILLEGAL) {
+                    losses++;
+                }
+            }
+            System.out.printf("%-5s %6.2f s  %,10d won %,10d drawn %,10d lost  mate in %2d  "
+                              + "%,10d bytes (%.1f%%)%n", endgame, seconds, wins, draws, losses,
+                              longest, Files.size(file), 100.0 * Files.size(file) / values.length);
+        }
+
+        Tablebase mapped = Tablebase.load(directory);
+        var random = new java.util.Random(1);
+        var boards = new java.util.ArrayList<Board>();
+        while (boards.size() < PROBES) {
+            Board board = randomPosition(random);
+            if (board != null && generated.probe(board) != Tablebase.UNKNOWN) {
+                boards.add(board);
+            }
+        }
+        int mismatches = 0;
+        long checksum = 0, start = System.nanoTime();
+        for (Board board: boards) {
+            checksum += mapped.probe(board);
+        }
+        long nanos = System.nanoTime() - start;
+        for (Board board: boards) {
+            mismatches += mapped.probe(board) != generated.probe(board) ? 1 : 0;
+        }
+        System.out.printf("%,d probes of the mapped files: %d mismatches, %.0f ns per probe "
+                          + "(checksum %d)%n", boards.size(), mismatches,
+                          (double) nanos / boards.size(), checksum);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Places the pieces of a random endgame on random squares.
+     *
+     * @param random the source of randomness
+     * @return the position, or <code>null</code> if two pieces fell on the same square
+     */
+    private static Board randomPosition(java.util.Random random) {
+        var endgames = Tablebase.Endgame.values();
+        var endgame = endgames[random.nextInt(endgames.length)];
+        boolean whiteIsStronger = random.nextBoolean();
+        var pieces = new StringBuilder("Kk");
+        for (var type: endgame.getPieces()) {
+            pieces.append(type.getSimpleName().equals("Knight") ? 'N'
+                          : type.getSimpleName().charAt(0));
+        }
+        char[] squares = new char[64];
+        java.util.Arrays.fill(squares, '1');
+        for (int i = 0; i < pieces.length(); i++) {
+            int square = random.nextInt(64);
+            if (squares[square] != '1') {
+                return null;
+            }
+            char piece = pieces.charAt(i);
+            boolean strong = i != 1;
+            squares[square] = strong == whiteIsStronger ? Character.toUpperCase(piece)
+                                                        : Character.toLowerCase(piece);
+        }
+        var fen = new StringBuilder();
+        for (int rank = 0; rank < 8; rank++) {
+            fen.append(squares, rank * 8, 8).append(rank < 7 ? "/" : "");
+        }
+        fen.append(random.nextBoolean() ? " w" : " b").append(" - - 0 1");
+        return new Board(fen.toString());
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package tuning;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import chess.Board;
+import chess.Move;
+import chess.engine.Evaluator;
+import chess.engine.Search;
+import chess.engine.SearchTrace;
+import chess.engine.TranspositionTable;
+
+/**
+ * Searches a position with a {@link SearchTrace} set and writes the trace, for
+ * {@link TraceSummary} to show what the search did. Tracing must be on, so the JVM has to be
+ * started with <code>-Dchess.trace=true</code>.
+ * <br>
+ * Usage: <code>TraceSearch trace.bin depth [capacity] [fen]</code>, where the capacity is the
+ * number of nodes kept, 4,194,304 by default, and the position is the starting one by default.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class TraceSearch {
+
+    private static final int DEFAULT_CAPACITY = 1 << 22;
+
+    private TraceSearch() {}
+
+    /**
+     * Runs the search and writes the trace.
+     *
+     * @param args the trace file, the depth, and optionally the capacity and the position
+     * @throws IOException if the trace cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TraceSearch trace.bin depth [capacity] [fen]");
+            System.exit(2);
+        }
+        if (!SearchTrace.ENABLED) {
+            System.err.println("Tracing is off; run with -Dchess.trace=true");
+            System.exit(2);
+        }
+        int depth = Integer.parseInt(args[1]);
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CAPACITY;
+        var board = new Board(args.length > 3 ? args[3] : Board.START_FEN);
+        var trace = new SearchTrace(capacity);
+        var search = new Search(new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB),
+                                new Evaluator());
+        search.setTrace(trace);
+        Move best = search.search(board, new Search.Limits(depth, 0, 0), info ->
+                System.out.printf("depth %d score %d nodes %,d%n", info.getDepth(),
+                                  info.getScore(), info.getNodes()));
+        trace.write(Path.of(args[0]));
+        System.out.printf("Best move %s, %,d nodes traced, %,d kept%n", best,
+                          trace.getRecorded(), trace.size());
+    }
+
+}
\ No newline at end of file
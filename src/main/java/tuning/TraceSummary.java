@@ -0,0 +1,171 @@
+package tuning;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import chess.engine.SearchTrace;
+
+/**
+ * Summarizes a {@link SearchTrace} file: lists the iterations at the root, then for every ply
+ * the number of nodes, the branching factor and why the search left the nodes. Given a node, it
+ * also prints the subtree under it, one node per line.
+ * <br>
+ * The branching factor of a ply is the average number of children of the nodes of that ply that
+ * have any; nodes cut off by the transposition table, the endgame tables or the static
+ * evaluation have none. The first-move rate is the share of beta cutoffs caused by the first
+ * move searched, which is high when moves are well ordered.
+ * <br>
+ * Usage: <code>TraceSummary trace.bin [node [plies]]</code>, where the node is an index printed
+ * by a previous run, such as that of an iteration, and the subtree is printed two plies deep by
+ * default.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class TraceSummary {
+
+    private static final int DEFAULT_PLIES = 2;
+    private static final int REASONS       = SearchTrace.REPETITION + 1;
+
+    private final SearchTrace trace;
+    private final int[] firstChild;
+    private final int[] children;
+
+    /**
+     * Links every node of a trace to its children.
+     *
+     * @param trace the trace
+     */
+    private TraceSummary(SearchTrace trace) {
+        this.trace = trace;
+        int[] parents = trace.parents();
+        firstChild = new int[trace.size() + 1];
+        for (int parent: parents) {
+            if (parent != -1) {
+                firstChild[parent + 1]++;
+            }
+        }
+        for (int node = 0; node < trace.size(); node++) {
+            firstChild[node + 1] += firstChild[node];
+        }
+        children = new int[firstChild[trace.size()]];
+        int[] filled = new int[trace.size()];
+        for (int node = 0; node < parents.length; node++) {
+            int parent = parents[node];
+            if (parent != -1) {
+                children[firstChild[parent] + filled[parent]++] = node;
+            }
+        }
+    }
+
+    /**
+     * Prints the summary and the requested subtree.
+     *
+     * @param args the trace file, and optionally a node and the depth of its subtree
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TraceSummary trace.bin [node [plies]]");
+            System.exit(2);
+        }
+        var summary = new TraceSummary(SearchTrace.read(Path.of(args[0])));
+        if (args.length > 1) {
+            int node = Integer.parseInt(args[1]);
+            int plies = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PLIES;
+            if (node < 0 || node >= summary.trace.size()) {
+                System.err.println("No such node: " + node);
+                System.exit(2);
+            }
+            summary.printSubtree(node, 0, plies);
+        } else {
+            summary.printSummary();
+        }
+    }
+
+    /**
+     * Prints the iterations at the root and the statistics of every ply.
+     */
+    private void printSummary() {
+        int size = trace.size();
+        System.out.printf("%,d nodes kept of %,d recorded%n", size, trace.getRecorded());
+        int maxPly = 0;
+        for (int node = 0; node < size; node++) {
+            maxPly = Math.max(maxPly, trace.getPly(node));
+            if (trace.getPly(node) == 0) {
+                System.out.printf("iteration: node %d, depth %d, score %d, %s%n", node,
+                                  trace.getDepth(node), trace.getScore(node),
+                                  SearchTrace.reasonName(trace.getReason(node)));
+            }
+        }
+
+        long[] nodes = new long[maxPly + 1];
+        long[] quiescence = new long[maxPly + 1];
+        long[] expanded = new long[maxPly + 1];
+        long[] childCount = new long[maxPly + 1];
+        long[] firstMoveCutoffs = new long[maxPly + 1];
+        long[][] reasons = new long[maxPly + 1][REASONS];
+        for (int node = 0; node < size; node++) {
+            int ply = trace.getPly(node);
+            int count = firstChild[node + 1] - firstChild[node];
+            nodes[ply]++;
+            if (trace.getDepth(node) == 0) {
+                quiescence[ply]++;
+            }
+            if (count > 0) {
+                expanded[ply]++;
+                childCount[ply] += count;
+            }
+            reasons[ply][trace.getReason(node)]++;
+            if (trace.getReason(node) == SearchTrace.BETA && count == 1) {
+                firstMoveCutoffs[ply]++;
+            }
+        }
+
+        System.out.println(" ply        nodes  quiescence  branching     beta  first move"
+                           + "     hash  stand pat  stopped");
+        for (int ply = 0; ply <= maxPly; ply++) {
+            long[] left = reasons[ply];
+            System.out.printf("%4d %,12d %10.1f%% %10.2f %,8d %10.1f%% %,8d %,10d %,8d%n", ply,
+                              nodes[ply], percent(quiescence[ply], nodes[ply]),
+                              expanded[ply] == 0 ? 0.0 : (double) childCount[ply] / expanded[ply],
+                              left[SearchTrace.BETA],
+                              percent(firstMoveCutoffs[ply], left[SearchTrace.BETA]),
+                              left[SearchTrace.HASH], left[SearchTrace.STAND_PAT],
+                              left[SearchTrace.STOPPED]);
+        }
+    }
+
+    /**
+     * Prints a node and its descendants, each indented by its distance from the first.
+     *
+     * @param node   the node
+     * @param indent the node's distance from the first node printed
+     * @param plies  the number of plies of descendants still to print
+     */
+    private void printSubtree(int node, int indent, int plies) {
+        int count = firstChild[node + 1] - firstChild[node];
+        System.out.printf("%s#%d %s depth %d [%d, %d] %d %s, %d children%n", "  ".repeat(indent),
+                          node, trace.getMove(node) == null ? "root" : trace.getMove(node),
+                          trace.getDepth(node), trace.getAlpha(node), trace.getBeta(node),
+                          trace.getScore(node), SearchTrace.reasonName(trace.getReason(node)),
+                          count);
+        if (plies > 0) {
+            for (int i = firstChild[node]; i < firstChild[node + 1]; i++) {
+                printSubtree(children[i], indent + 1, plies - 1);
+            }
+        }
+    }
+
+    /**
+     * Computes a percentage.
+     *
+     * @param part  the part
+     * @param total the total
+     * @return <code>part</code> as a percentage of <code>total</code>, or <code>0</code> if the
+     *         total is <code>0</code>
+     */
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,427 @@
+package tuning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import chess.Board;
+import chess.engine.Evaluator;
+import chess.engine.PawnTable;
+
+/**
+ * Tunes the {@link Evaluator}'s weights on positions labeled with the result of the game they
+ * come from, in the style of Texel's tuning method: the weights are changed to minimize the mean
+ * squared difference between every result and the win probability predicted from the static
+ * evaluation, <code>1 / (1 + 10^(-k * eval / 400))</code>. The scale <code>k</code> is fitted
+ * once, for the starting weights, and then kept.
+ * <br>
+ * Apart from pawn structure, which is not tuned, the evaluation is linear in its weights, so each
+ * position's features are computed once, when the dataset is loaded, and kept in primitive
+ * arrays: one byte per feature, the pawn structure score and the result, about 25 bytes per
+ * position. Every iteration then only recomputes dot products. The error and its gradient are
+ * summed in parallel over blocks of positions, so an iteration scales with the number of cores,
+ * and the weights are optimized by gradient descent with per-weight step sizes (Adam).
+ * <br>
+ * Each line of the dataset is a position in Forsyth-Edwards Notation followed by the result from
+ * white's point of view: <code>1-0</code>, <code>1/2-1/2</code> or <code>0-1</code>, or
+ * <code>1</code>, <code>0.5</code> or <code>0</code>, optionally in brackets or quotes. Lines that
+ * cannot be read are skipped. Positions should be quiet, since they are evaluated without a
+ * search.
+ * <br>
+ * Usage: <code>Tuner dataset [iterations] [output] [threads]</code>. The tuned weights are
+ * written to the output file, which {@link Match} can load with <code>weights=</code>.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+public class Tuner {
+
+    private static final int    DEFAULT_ITERATIONS = 500;
+    private static final String DEFAULT_OUTPUT     = "weights.txt";
+    private static final int    CHUNK_LINES        = 1 << 16; // Lines parsed in parallel at once
+    private static final int    BLOCK              = 1 << 14; // Positions per parallel task
+    private static final int    REPORT_INTERVAL    = 10;
+    private static final double LEARNING_RATE      = 1.0; // Centipawns per step
+    private static final double BETA1              = 0.9;
+    private static final double BETA2              = 0.999;
+    private static final double EPSILON            = 1e-8;
+    private static final double LOG_10             = Math.log(10);
+
+    private final ForkJoinPool pool;
+    private int size;
+    private byte[] features;
+    private short[] pawnScores;
+    private byte[] results;
+
+    /**
+     * Creates a tuner with no positions.
+     *
+     * @param threads the number of threads used for loading and tuning
+     */
+    public Tuner(int threads) {
+        pool = new ForkJoinPool(threads);
+        features = new byte[CHUNK_LINES * Evaluator.WEIGHTS];
+        pawnScores = new short[CHUNK_LINES];
+        results = new byte[CHUNK_LINES];
+    }
+
+    /**
+     * Tunes the weights on a dataset and writes them to a file.
+     *
+     * @param args the dataset, then optionally the number of iterations, the output file and the
+     *             number of threads
+     * @throws IOException if the dataset cannot be read or the weights cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: Tuner dataset [iterations] [output] [threads]");
+            System.exit(2);
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        Path output = Path.of(args.length > 2 ? args[2] : DEFAULT_OUTPUT);
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                                      : Runtime.getRuntime().availableProcessors();
+
+        var tuner = new Tuner(threads);
+        long start = System.nanoTime();
+        int skipped = tuner.load(Path.of(args[0]));
+        System.out.printf("loaded %d positions (%d skipped) in %.1f s, %.1f MB%n", tuner.size(),
+                          skipped, (System.nanoTime() - start) / 1e9,
+                          tuner.getMemoryFootprint() / 1e6);
+        int[] weights = tuner.tune(Evaluator.getDefaultWeights(), iterations);
+        writeWeights(output, weights);
+        System.out.println("weights written to " + output);
+    }
+
+    /**
+     * Loads the labeled positions of a dataset, adding them to those already loaded. Lines are
+     * parsed in parallel, a chunk at a time.
+     *
+     * @param path the dataset
+     * @return the number of lines skipped because they could not be read
+     * @throws IOException if the dataset cannot be read
+     */
+    public int load(Path path) throws IOException {
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            List<String> lines = new ArrayList<>(CHUNK_LINES);
+            for (String line; ; ) {
+                line = reader.readLine();
+                if (line != null && !line.isBlank()) {
+                    lines.add(line);
+                }
+                if (lines.size() == CHUNK_LINES || line == null && !lines.isEmpty()) {
+                    skipped += addChunk(lines);
+                    lines.clear();
+                }
+                if (line == null) {
+                    return skipped;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of positions loaded.
+     *
+     * @return the number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the memory taken by the loaded positions.
+     *
+     * @return the size of the arrays holding them, in bytes
+     */
+    public long getMemoryFootprint() {
+        return features.length + pawnScores.length * 2L + results.length;
+    }
+
+    /**
+     * Optimizes weights, printing the error as it goes.
+     *
+     * @param initial    the starting weights
+     * @param iterations the number of gradient steps
+     * @return the tuned weights, rounded to centipawns
+     */
+    public int[] tune(int[] initial, int iterations) {
+        double[] weights = new double[Evaluator.WEIGHTS];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = initial[i];
+        }
+        double scale = fitScale(weights);
+        System.out.printf("k = %.4f, error %.6f on %d threads%n", scale, error(weights, scale),
+                          pool.getParallelism());
+
+        double[] gradient = new double[Evaluator.WEIGHTS];
+        double[] mean = new double[Evaluator.WEIGHTS];
+        double[] variance = new double[Evaluator.WEIGHTS];
+        long start = System.nanoTime();
+        for (int t = 1; t <= iterations; t++) {
+            double error = gradient(weights, scale, gradient);
+            for (int i = 0; i < weights.length; i++) {
+                mean[i] = BETA1 * mean[i] + (1 - BETA1) * gradient[i];
+                variance[i] = BETA2 * variance[i] + (1 - BETA2) * gradient[i] * gradient[i];
+                double correctedMean = mean[i] / (1 - Math.pow(BETA1, t));
+                double correctedVariance = variance[i] / (1 - Math.pow(BETA2, t));
+                weights[i] -= LEARNING_RATE * correctedMean
+                              / (Math.sqrt(correctedVariance) + EPSILON);
+            }
+            if (t % REPORT_INTERVAL == 0 || t == iterations) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("iteration %d: error %.6f, %.1f M positions/s%n", t, error,
+                                  (double) size * t / seconds / 1e6);
+            }
+        }
+
+        int[] tuned = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            tuned[i] = (int) Math.round(weights[i]);
+        }
+        return tuned;
+    }
+
+    /**
+     * Reads weights written by {@link #writeWeights(Path, int[])}, one "name value" pair per line.
+     * Weights the file leaves out keep their default values.
+     *
+     * @param path the file to read
+     * @return the weights
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a line names an unknown weight or has no number
+     */
+    public static int[] readWeights(Path path) throws IOException {
+        int[] weights = Evaluator.getDefaultWeights();
+        var indices = new java.util.HashMap<String, Integer>();
+        for (int i = 0; i < Evaluator.WEIGHTS; i++) {
+            indices.put(Evaluator.getWeightName(i), i);
+        }
+        for (String line: Files.readAllLines(path)) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].isEmpty() || tokens[0].startsWith("#")) {
+                continue;
+            }
+            Integer index = indices.get(tokens[0]);
+            if (index == null || tokens.length < 2) {
+                throw new IllegalArgumentException("Invalid weight: " + line);
+            }
+            weights[index] = Integer.parseInt(tokens[1]);
+        }
+        return weights;
+    }
+
+    /**
+     * Writes weights, one "name value" pair per line.
+     *
+     * @param path    the file to write
+     * @param weights the weights
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeWeights(Path path, int[] weights) throws IOException {
+        var lines = new ArrayList<String>();
+        for (int i = 0; i < weights.length; i++) {
+            lines.add(Evaluator.getWeightName(i) + " " + weights[i]);
+        }
+        Files.write(path, lines);
+    }
+
+    /**
+     * Parses a chunk of lines in parallel and appends the positions that could be read.
+     *
+     * @param lines the lines
+     * @return the number of lines that could not be read
+     */
+    private int addChunk(List<String> lines) {
+        int n = lines.size();
+        byte[] chunkFeatures = new byte[n * Evaluator.WEIGHTS];
+        short[] chunkPawnScores = new short[n];
+        byte[] chunkResults = new byte[n];
+        var pawnTables = ThreadLocal.withInitial(() -> new PawnTable(1));
+        pool.submit(() -> IntStream.range(0, n).parallel().forEach(i -> {
+            chunkResults[i] = -1;
+            String line = lines.get(i).trim();
+            int split = line.lastIndexOf(' ');
+            int result = split < 0 ? -1 : parseResult(line.substring(split + 1));
+            if (result < 0) {
+                return;
+            }
+            String fen = line.substring(0, split).trim();
+            if (fen.endsWith("|") || fen.endsWith(";")) {
+                fen = fen.substring(0, fen.length() - 1);
+            }
+            Board board;
+            try {
+                board = new Board(fen);
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+            int[] values = new int[Evaluator.WEIGHTS];
+            Evaluator.features(board, values);
+            for (int j = 0; j < values.length; j++) {
+                chunkFeatures[i * Evaluator.WEIGHTS + j] = (byte) values[j];
+            }
+            int pawnScore = pawnTables.get().probe(board).getScore();
+            chunkPawnScores[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE,
+                                                                            pawnScore));
+            chunkResults[i] = (byte) result;
+        })).join();
+
+        int skipped = 0;
+        for (int i = 0; i < n; i++) {
+            if (chunkResults[i] < 0) {
+                skipped++;
+                continue;
+            }
+            if (size == results.length) {
+                grow();
+            }
+            System.arraycopy(chunkFeatures, i * Evaluator.WEIGHTS, features,
+                             size * Evaluator.WEIGHTS, Evaluator.WEIGHTS);
+            pawnScores[size] = chunkPawnScores[i];
+            results[size++] = chunkResults[i];
+        }
+        return skipped;
+    }
+
+    /**
+     * Doubles the capacity of the arrays holding the positions, up to the largest that a single
+     * feature array can index.
+     *
+     * @throws IllegalStateException if the arrays cannot grow any further
+     */
+    private void grow() {
+        int capacity = (int) Math.min(results.length * 2L, Integer.MAX_VALUE / Evaluator.WEIGHTS);
+        if (capacity == results.length) {
+            throw new IllegalStateException("Too many positions: " + size);
+        }
+        features = java.util.Arrays.copyOf(features, capacity * Evaluator.WEIGHTS);
+        pawnScores = java.util.Arrays.copyOf(pawnScores, capacity);
+        results = java.util.Arrays.copyOf(results, capacity);
+    }
+
+    /**
+     * Parses a result from white's point of view.
+     *
+     * @param token the result, such as "1-0" or "[0.5]"
+     * @return the result in half points, from <code>0</code> to <code>2</code>, or <code>-1</code>
+     *         if the token is not a result
+     */
+    private static int parseResult(String token) {
+        return switch (token.replaceAll("[\\[\\]\";]", "")) {
+            case "1-0", "1", "1.0"         -> 2;
+            case "1/2-1/2", "0.5", "1/2"   -> 1;
+            case "0-1", "0", "0.0"         -> 0;
+            default                        -> -1;
+        };
+    }
+
+    /**
+     * Finds the scale that minimizes the error for the specified weights, by golden-section
+     * search.
+     *
+     * @param weights the weights
+     * @return the scale
+     */
+    private double fitScale(double[] weights) {
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = 0.1, high = 3;
+        double a = high - ratio * (high - low), b = low + ratio * (high - low);
+        double errorA = error(weights, a), errorB = error(weights, b);
+        while (high - low > 1e-4) {
+            if (errorA < errorB) {
+                high = b;
+                b = a;
+                errorB = errorA;
+                a = high - ratio * (high - low);
+                errorA = error(weights, a);
+            } else {
+                low = a;
+                a = b;
+                errorA = errorB;
+                b = low + ratio * (high - low);
+                errorB = error(weights, b);
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Computes the mean squared error over all positions, in parallel.
+     *
+     * @param weights the weights
+     * @param scale   the scale of the win probability
+     * @return the error
+     */
+    private double error(double[] weights, double scale) {
+        int blocks = (size + BLOCK - 1) / BLOCK;
+        double sum = pool.submit(() -> IntStream.range(0, blocks).parallel().mapToDouble(block -> {
+            double blockSum = 0;
+            for (int p = block * BLOCK, end = Math.min(size, p + BLOCK); p < end; p++) {
+                double difference = results[p] / 2.0 - probability(weights, scale, p);
+                blockSum += difference * difference;
+            }
+            return blockSum;
+        }).sum()).join();
+        return sum / size;
+    }
+
+    /**
+     * Computes the mean squared error and its gradient over all positions, in parallel.
+     *
+     * @param weights  the weights
+     * @param scale    the scale of the win probability
+     * @param gradient receives the derivative of the error with respect to every weight
+     * @return the error
+     */
+    private double gradient(double[] weights, double scale, double[] gradient) {
+        int blocks = (size + BLOCK - 1) / BLOCK;
+        int n = Evaluator.WEIGHTS;
+        double factor = scale * LOG_10 / 400;
+        double[] sums = pool.submit(() -> IntStream.range(0, blocks).parallel().mapToObj(block -> {
+            double[] blockSums = new double[n + 1];
+            for (int p = block * BLOCK, end = Math.min(size, p + BLOCK); p < end; p++) {
+                double probability = probability(weights, scale, p);
+                double difference = probability - results[p] / 2.0;
+                blockSums[n] += difference * difference;
+                double slope = 2 * difference * probability * (1 - probability) * factor;
+                for (int i = 0, offset = p * n; i < n; i++) {
+                    blockSums[i] += slope * features[offset + i];
+                }
+            }
+            return blockSums;
+        }).reduce(new double[n + 1], (x, y) -> {
+            double[] total = new double[n + 1];
+            for (int i = 0; i <= n; i++) {
+                total[i] = x[i] + y[i];
+            }
+            return total;
+        })).join();
+        for (int i = 0; i < n; i++) {
+            gradient[i] = sums[i] / size;
+        }
+        return sums[n] / size;
+    }
+
+    /**
+     * Predicts white's score in a position from its evaluation.
+     *
+     * @param weights  the weights
+     * @param scale    the scale of the win probability
+     * @param position the index of the position
+     * @return the predicted score, in the range (0, 1)
+     */
+    private double probability(double[] weights, double scale, int position) {
+        double evaluation = pawnScores[position];
+        for (int i = 0, offset = position * Evaluator.WEIGHTS; i < Evaluator.WEIGHTS; i++) {
+            evaluation += weights[i] * features[offset + i];
+        }
+        return 1 / (1 + Math.exp(-scale * LOG_10 * evaluation / 400));
+    }
+
+}
\ No newline at end of file
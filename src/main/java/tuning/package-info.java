@@ -0,0 +1,5 @@
+/**
+ * Contains headless tools for measuring and tuning the engine, such as a self-play match runner
+ * that decides between two engine configurations with a sequential probability ratio test.
+ */
+package tuning;
\ No newline at end of file
@@ -0,0 +1,69 @@
+package app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import chess.engine.Nnue;
+
+/**
+ * Tests that the UCI front end reads option names and values that contain spaces, and reports
+ * the options it cannot set.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class UciTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * A network whose path contains spaces is loaded, while malformed commands, unknown options
+     * and files that are not networks are reported.
+     */
+    @Test
+    void setsOptionsWithSpaces() throws Exception {
+        Path folder = Files.createDirectories(directory.resolve("my networks"));
+        Path network = folder.resolve("small net.nnue");
+        Nnue.Network.random(16, 1).save(network);
+        Path missing = folder.resolve("no such net.nnue");
+        List<String> lines = run("setoption name EvalFile value " + network,
+                                 "setoption name EvalFile value " + missing,
+                                 "setoption name Clear  Hash value true",
+                                 "setoption name Hash",
+                                 "setoption name Hash value 2");
+        assertEquals("info string using " + new Nnue(Nnue.Network.load(network)),
+                     lines.get(0));
+        assertTrue(lines.get(1).startsWith("info string cannot load " + missing + ": "),
+                   lines.get(1));
+        assertEquals("info string unknown option Clear  Hash", lines.get(2));
+        assertEquals("info string malformed option: setoption name Hash", lines.get(3));
+        assertEquals(4, lines.size());
+    }
+
+    /**
+     * Runs commands, then <code>quit</code>.
+     *
+     * @param commands the commands
+     * @return the lines written in response
+     * @throws Exception if the commands cannot be run
+     */
+    private static List<String> run(String... commands) throws Exception {
+        var output = new ByteArrayOutputStream();
+        var uci = new Uci(new PrintStream(output, true, StandardCharsets.UTF_8));
+        String input = String.join("\n", commands) + "\nquit\n";
+        uci.run(new BufferedReader(new StringReader(input)));
+        return output.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the set-up of boards from FEN, taking moves back, and the keys updated with every move.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class BoardTest {
+
+    private static final List<String> POSITIONS = List.of(
+        Board.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 11 40",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 b kq - 3 12");
+    private static final int PLAYOUTS = 8;
+    private static final int PLIES    = 120;
+
+    /**
+     * Setting up a board and writing it back gives the same FEN.
+     */
+    @Test
+    void fenRoundTrips() {
+        for (String fen: POSITIONS) {
+            assertEquals(fen, new Board(fen).toFen());
+        }
+    }
+
+    /**
+     * Malformed FEN and positions without exactly one king of each color are rejected.
+     */
+    @Test
+    void rejectsInvalidFen() {
+        assertThrows(IllegalArgumentException.class, () -> new Board("8/8/8 w - -"));
+        assertThrows(IllegalArgumentException.class, () -> new Board("8/8/8/8/8/8/8/8 w - - 0 1"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new Board("kk6/8/8/8/8/8/8/7K w - - 0 1"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new Board("k7/8/8/8/8/8/8/7K x - - 0 1"));
+    }
+
+    /**
+     * Along random games, the incrementally updated keys always match the keys of a board set up
+     * from scratch in the same position, and taking every move back restores the position.
+     */
+    @Test
+    void keysMatchAFreshBoardAndUndoRestoresThePosition() {
+        var random = new java.util.Random(1);
+        for (String fen: POSITIONS) {
+            for (int game = 0; game < PLAYOUTS; game++) {
+                var board = new Board(fen);
+                var fens = new java.util.ArrayDeque<String>();
+                for (int ply = 0; ply < PLIES; ply++) {
+                    List<Move> moves = board.getLegalMoves();
+                    if (moves.isEmpty()) {
+                        break;
+                    }
+                    fens.push(board.toFen());
+                    board.makeMove(moves.get(random.nextInt(moves.size())));
+                    var fresh = new Board(board.toFen());
+                    assertEquals(fresh.getKey(), board.getKey(), board.toFen());
+                    assertEquals(fresh.getPawnKey(), board.getPawnKey(), board.toFen());
+                    assertEquals(fresh.getPawns(chess.pieces.Color.WHITE),
+                                 board.getPawns(chess.pieces.Color.WHITE));
+                    assertEquals(fresh.getPawns(chess.pieces.Color.BLACK),
+                                 board.getPawns(chess.pieces.Color.BLACK));
+                }
+                long key = new Board(fen).getKey();
+                while (!fens.isEmpty()) {
+                    board.undoMove();
+                    assertEquals(fens.pop(), board.toFen());
+                }
+                assertEquals(key, board.getKey());
+            }
+        }
+    }
+
+    /**
+     * Repetitions are counted with the same player to move, until a pawn move resets them.
+     */
+    @Test
+    void countsRepetitions() {
+        var board = new Board();
+        for (int cycle = 1; cycle <= 2; cycle++) {
+            for (String move: List.of("g1f3", "g8f6", "f3g1", "f6g8")) {
+                board.makeMove(Move.parse(move));
+            }
+            assertEquals(cycle, board.getRepetitions());
+        }
+        board.makeMove(Move.parse("g1f3"));
+        assertEquals(2, board.getRepetitions());
+        board.makeMove(Move.parse("e7e5"));
+        assertEquals(0, board.getRepetitions());
+        board.undoMove();
+        assertEquals(2, board.getRepetitions());
+    }
+
+    /**
+     * Undoing a move takes back captures en passant, castling and promotions exactly.
+     */
+    @Test
+    void undoTakesBackSpecialMoves() {
+        String fen = "r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1";
+        for (String text: List.of("e5d6", "e1g1", "e1c1", "b7a8q", "b7b8n")) {
+            var board = new Board(fen);
+            long key = board.getKey();
+            board.makeMove(Move.parse(text));
+            board.undoMove();
+            assertEquals(fen, board.toFen(), text);
+            assertEquals(key, board.getKey(), text);
+        }
+    }
+
+    /**
+     * Moves played with <code>movePiece</code> or <code>playMove</code> notify the listeners with
+     * their status, while moves made with <code>makeMove</code>, which the search uses, and
+     * illegal moves do not.
+     */
+    @Test
+    void notifiesListenersOfPlayedMoves() {
+        var board = new Board();
+        var events = new java.util.ArrayList<MoveEvent>();
+        board.addListener(events::add);
+        board.makeMove(Move.parse("f2f3"));
+        assertEquals(List.of(), events);
+        for (String text: List.of("e7e5", "g2g4")) {
+            assertTrue(board.movePiece(Move.parse(text)));
+        }
+        board.playMove(Move.parse("d8h4"));
+        assertFalse(board.movePiece(Move.parse("e2e4")));
+        assertEquals(3, events.size());
+        assertEquals(Move.parse("d8h4"), events.get(2).getMove());
+        assertTrue(events.get(2).is(MoveEvent.Type.CHECKMATE));
+        assertEquals(board.toFen(), events.get(2).getFen());
+    }
+
+}
\ No newline at end of file
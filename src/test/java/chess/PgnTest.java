@@ -0,0 +1,147 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import chess.pieces.Position;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests reading and writing games in Portable Game Notation, and moves in standard algebraic
+ * notation.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class PgnTest {
+
+    private static final List<String> POSITIONS = List.of(
+        Board.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 b kq - 3 12",
+        "1k6/8/8/8/8/8/8/R1N1N2K w - - 0 1");
+    private static final int GAMES = 8;
+    private static final int PLIES = 120;
+
+    /**
+     * Every legal move of random games written in standard algebraic notation reads back as the
+     * same move.
+     */
+    @Test
+    void sanRoundTrips() {
+        var random = new Random(1);
+        for (String fen: POSITIONS) {
+            var board = new Board(fen);
+            for (int ply = 0; ply < PLIES && !board.getLegalMoves().isEmpty(); ply++) {
+                List<Move> moves = board.getLegalMoves();
+                for (Move move: moves) {
+                    assertEquals(move, Pgn.parseSan(board, Pgn.toSan(board, move)),
+                                 board.toFen());
+                }
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
+    /**
+     * Moves are written with the least disambiguation needed, and with check and mate marks.
+     */
+    @Test
+    void writesStandardNotation() {
+        var board = new Board("1k6/8/8/8/8/8/8/R1N1N2K w - - 0 1");
+        assertEquals("Ncd3", Pgn.toSan(board, Pgn.parseSan(board, "Nc1d3")));
+        assertEquals("Ra8+", Pgn.toSan(board, Pgn.parseSan(board, "Ra8")));
+        var black = new Board("4k3/8/8/8/8/8/1p6/R3K3 b - - 0 1");
+        var castling = new Board(POSITIONS.get(1));
+        assertEquals("O-O", Pgn.toSan(castling, Pgn.parseSan(castling, "0-0")));
+        assertEquals("O-O-O", Pgn.toSan(castling, Pgn.parseSan(castling, "O-O-O")));
+        assertEquals("bxa1=N", Pgn.toSan(black, Pgn.parseSan(black, "bxa1N")));
+        assertEquals("Qd7+", Pgn.toSan(new Board("4k3/8/8/8/8/8/8/3QK3 w - - 0 1"),
+                                       new Move(new Position(7, 3), new Position(1, 3))));
+        assertEquals("Qd8#", Pgn.toSan(new Board("6k1/8/6K1/8/8/8/8/3Q4 w - - 0 1"),
+                                       new Move(new Position(7, 3), new Position(0, 3))));
+        assertThrows(IllegalArgumentException.class, () -> Pgn.parseSan(black, "Nc3"));
+        assertThrows(IllegalArgumentException.class, () -> Pgn.parseSan(board, "Nd3"));
+    }
+
+    /**
+     * Random games written as text parse back with the same tags, moves and result.
+     */
+    @Test
+    void gamesRoundTrip() {
+        var random = new Random(2);
+        for (int i = 0; i < GAMES; i++) {
+            String fen = POSITIONS.get(i % POSITIONS.size());
+            var board = new Board(fen);
+            var moves = new ArrayList<Move>();
+            var annotations = new ArrayList<String>();
+            for (int ply = 0; ply < PLIES && !board.getLegalMoves().isEmpty(); ply++) {
+                List<Move> legalMoves = board.getLegalMoves();
+                Move move = legalMoves.get(random.nextInt(legalMoves.size()));
+                moves.add(move);
+                annotations.add(ply % 5 == 0 ? "{Played \"quickly\"}" : null);
+                board.makeMove(move);
+            }
+            var tags = new LinkedHashMap<String, String>();
+            tags.put("Event", "Test \"" + i + "\"");
+            tags.put("White", "A\\B");
+            if (!fen.equals(Board.START_FEN)) {
+                tags.put("SetUp", "1");
+                tags.put("FEN", fen);
+            }
+            var game = new Pgn.Game(tags, fen, moves, i % 2 == 0 ? "1/2-1/2" : "*");
+
+            Pgn.Game parsed = Pgn.parse(Pgn.format(game, annotations));
+            assertEquals(moves, parsed.getMoves());
+            assertEquals(game.getResult(), parsed.getResult());
+            assertEquals(fen, parsed.getStartFen());
+            assertEquals("Test \"" + i + "\"", parsed.getTag("Event"));
+            assertEquals("A\\B", parsed.getTag("White"));
+        }
+    }
+
+    /**
+     * Comments, variations and numeric annotations are skipped, and the result ends the moves.
+     */
+    @Test
+    void skipsCommentsAndVariations() {
+        Pgn.Game game = Pgn.parse("[Event \"?\"]\n\n1. e4 {Best by test} (1. d4 d5 (1... Nf6))"
+                                  + " e5 $1 ; Open\n2. Nf3! 1-0 3. Nc3\n");
+        var board = new Board(Board.START_FEN);
+        var expected = new ArrayList<Move>();
+        for (String san: List.of("e4", "e5", "Nf3")) {
+            expected.add(Pgn.parseSan(board, san));
+            board.makeMove(expected.get(expected.size() - 1));
+        }
+        assertEquals(expected, game.getMoves());
+        assertEquals("1-0", game.getResult());
+        assertThrows(IllegalArgumentException.class, () -> Pgn.parse("1. e4 e5 2. Ke3 *"));
+    }
+
+    /**
+     * A stream of games is read one game at a time, each with its tags and moves.
+     */
+    @Test
+    void readsGamesOneAtATime() throws Exception {
+        var reader = new BufferedReader(new StringReader(
+            "[Event \"First\"]\n[Result \"1-0\"]\n\n1. f3 e5 2. g4 Qh4# 0-1\n\n"
+            + "[Event \"Second\"]\n\n1. d4 *\n"));
+        String first = Pgn.readGame(reader), second = Pgn.readGame(reader);
+        assertNull(Pgn.readGame(reader));
+        assertEquals("First", Pgn.parseTags(first).get("Event"));
+        assertEquals(4, Pgn.parse(first).getMoves().size());
+        assertEquals("0-1", Pgn.parse(first).getResult());
+        assertEquals(2, Pgn.parse(first, 2).getMoves().size());
+        assertEquals("1-0", Pgn.parse(first, 2).getResult());
+        assertEquals("Second", Pgn.parseTags(second).get("Event"));
+        assertEquals(1, Pgn.parse(second).getMoves().size());
+    }
+
+}
\ No newline at end of file
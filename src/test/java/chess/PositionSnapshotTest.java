@@ -0,0 +1,107 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import chess.pieces.Color;
+import chess.pieces.King;
+import chess.pieces.Pawn;
+import chess.pieces.Position;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests position snapshots: their move generation against the board's, and their independence
+ * from the board they were taken from.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class PositionSnapshotTest {
+
+    private static final List<String> POSITIONS = List.of(
+        Board.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 11 40",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 b kq - 3 12",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8");
+    private static final int PLAYOUTS = 8;
+    private static final int PLIES    = 120;
+
+    /**
+     * Along random games, a snapshot generates the same legal moves as its board, and agrees with
+     * it on check, FEN and key.
+     */
+    @Test
+    void generatesTheBoardsLegalMoves() {
+        var random = new Random(1);
+        for (String fen: POSITIONS) {
+            for (int playout = 0; playout < PLAYOUTS; playout++) {
+                var board = new Board(fen);
+                for (int ply = 0; ply < PLIES; ply++) {
+                    PositionSnapshot snapshot = board.snapshot();
+                    List<Move> moves = board.getLegalMoves();
+                    assertEquals(new HashSet<>(moves), new HashSet<>(snapshot.getLegalMoves()),
+                                 board.toFen());
+                    assertEquals(moves.size(), snapshot.getLegalMoves().size(), board.toFen());
+                    assertEquals(board.isInCheck(), snapshot.isInCheck(), board.toFen());
+                    assertEquals(board.toFen(), snapshot.toFen());
+                    assertEquals(board.getKey(), snapshot.getKey());
+                    if (moves.isEmpty()) {
+                        break;
+                    }
+                    board.makeMove(moves.get(random.nextInt(moves.size())));
+                }
+            }
+        }
+    }
+
+    /**
+     * A snapshot keeps its position while its board moves on, and equals a snapshot of the same
+     * position taken from another board.
+     */
+    @Test
+    void keepsItsPositionWhileTheBoardMoves() {
+        var board = new Board(POSITIONS.get(2));
+        PositionSnapshot snapshot = board.snapshot();
+        for (Move move: board.getLegalMoves().subList(0, 4)) {
+            board.makeMove(move);
+            assertEquals(POSITIONS.get(2), snapshot.toFen());
+            board.undoMove();
+        }
+        board.makeMove(board.getLegalMoves().get(0));
+        assertFalse(snapshot.equals(board.snapshot()));
+        PositionSnapshot copy = snapshot.toBoard().snapshot();
+        assertEquals(snapshot, copy);
+        assertEquals(snapshot.hashCode(), copy.hashCode());
+    }
+
+    /**
+     * The pieces, rights and counters read from a snapshot are those of the position.
+     */
+    @Test
+    void readsThePosition() {
+        PositionSnapshot snapshot = new Board(POSITIONS.get(2)).snapshot();
+        assertEquals(Color.WHITE, snapshot.getTurn());
+        assertEquals(King.class, snapshot.getPieceType(new Position(7, 4)));
+        assertEquals(Color.BLACK, snapshot.getPieceColor(new Position(3, 3)));
+        assertEquals(Pawn.class, snapshot.getPieceType(new Position(3, 3)));
+        assertTrue(snapshot.isSquareEmpty(new Position(4, 4)));
+        assertNull(snapshot.getPieceType(new Position(4, 4)));
+        assertEquals(Color.NONE, snapshot.getPieceColor(new Position(4, 4)));
+        assertTrue(snapshot.canCastle(Color.BLACK, false));
+        assertEquals(new Position(2, 5), snapshot.getEnPassantTarget());
+        assertEquals(3, snapshot.getFullmoveNumber());
+        assertEquals(0, snapshot.getHalfmoveClock());
+        PositionSnapshot endgame = new Board(POSITIONS.get(3)).snapshot();
+        assertFalse(endgame.canCastle(Color.WHITE, true));
+        assertNull(endgame.getEnPassantTarget());
+        assertEquals(11, endgame.getHalfmoveClock());
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import chess.Board;
+import chess.PositionSnapshot;
+
+/**
+ * Tests the analysis scheduler: budgets, cancellation of running jobs, and preemption of bulk
+ * jobs by interactive ones.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class AnalysisSchedulerTest {
+
+    private static final PositionSnapshot START = new Board(Board.START_FEN).snapshot();
+    private static final int MEGABYTES = 4;
+    private static final Search.Limits FOREVER = new Search.Limits(0, 0, 600_000);
+    private static final Search.Limits QUICK   = new Search.Limits(2, 0, 0);
+    private static final long RUN_MILLIS       = 1500;
+    private static final double MAX_WAIT       = 200;
+
+    /**
+     * Jobs complete with a legal move, within their node budget and in the order of their
+     * priorities.
+     */
+    @Test
+    @Timeout(60)
+    void completesJobsWithinTheirBudget() {
+        try (var scheduler = new AnalysisScheduler(2, MEGABYTES)) {
+            var bulk = scheduler.submit(START, AnalysisScheduler.Priority.BULK,
+                                        new Search.Limits(0, 20_000, 0));
+            var interactive = scheduler.submit(START, AnalysisScheduler.Priority.INTERACTIVE,
+                                               QUICK);
+            AnalysisScheduler.Result result = bulk.join();
+            assertTrue(START.getLegalMoves().contains(result.getBestMove()));
+            assertTrue(result.getNodes() <= 20_000 + 4096, Long.toString(result.getNodes()));
+            assertEquals(2, interactive.join().getInfo().getDepth());
+            AnalysisScheduler.Stats stats = scheduler.getStats();
+            assertEquals(1, stats.getCompleted(AnalysisScheduler.Priority.BULK));
+            assertEquals(1, stats.getCompleted(AnalysisScheduler.Priority.INTERACTIVE));
+        }
+    }
+
+    /**
+     * Cancelling a running job frees its worker at once, not when its current iteration ends, and
+     * the job does not count as completed.
+     */
+    @Test
+    @Timeout(60)
+    void cancellingARunningJobFreesItsWorker() throws Exception {
+        try (var scheduler = new AnalysisScheduler(1, MEGABYTES)) {
+            var running = scheduler.submit(START, AnalysisScheduler.Priority.INTERACTIVE,
+                                           FOREVER);
+            TimeUnit.MILLISECONDS.sleep(RUN_MILLIS);
+            running.cancel(false);
+            var next = scheduler.submit(START, AnalysisScheduler.Priority.INTERACTIVE, QUICK);
+            double wait = next.join().getWaitMillis();
+            assertTrue(wait < MAX_WAIT, wait + " ms");
+            assertTrue(running.isCancelled());
+            assertEquals(1, scheduler.getStats()
+                                     .getCompleted(AnalysisScheduler.Priority.INTERACTIVE));
+        }
+    }
+
+    /**
+     * An interactive job takes the worker of a running bulk job, which resumes afterwards with
+     * the rest of its budget.
+     */
+    @Test
+    @Timeout(60)
+    void interactiveJobsPreemptBulkJobs() throws Exception {
+        try (var scheduler = new AnalysisScheduler(1, MEGABYTES)) {
+            var bulk = scheduler.submit(START, AnalysisScheduler.Priority.BULK,
+                                        new Search.Limits(0, 0, 2 * RUN_MILLIS));
+            TimeUnit.MILLISECONDS.sleep(RUN_MILLIS);
+            var interactive = scheduler.submit(START, AnalysisScheduler.Priority.INTERACTIVE,
+                                               QUICK);
+            double wait = interactive.join().getWaitMillis();
+            assertTrue(wait < MAX_WAIT, wait + " ms");
+            AnalysisScheduler.Result result = bulk.join();
+            assertEquals(1, result.getPreemptions());
+            assertEquals(1, scheduler.getStats().getPreemptions());
+            assertTrue(result.getSearchMillis() < 3 * RUN_MILLIS,
+                       result.getSearchMillis() + " ms");
+        }
+    }
+
+    /**
+     * Jobs need a budget, and closing the scheduler cancels the jobs it still holds.
+     */
+    @Test
+    @Timeout(60)
+    void closingCancelsQueuedJobs() {
+        var scheduler = new AnalysisScheduler(1, MEGABYTES);
+        assertThrows(IllegalArgumentException.class,
+                     () -> scheduler.submit(START, AnalysisScheduler.Priority.BULK,
+                                            new Search.Limits(0, 0, 0)));
+        scheduler.submit(START, AnalysisScheduler.Priority.BULK, FOREVER);
+        var queued = scheduler.submit(START, AnalysisScheduler.Priority.BULK, FOREVER);
+        scheduler.close();
+        assertTrue(queued.isCancelled());
+        assertThrows(IllegalStateException.class,
+                     () -> scheduler.submit(START, AnalysisScheduler.Priority.BULK, QUICK));
+    }
+
+}
\ No newline at end of file
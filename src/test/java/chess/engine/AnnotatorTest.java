@@ -0,0 +1,135 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import chess.Board;
+import chess.Move;
+import chess.Pgn;
+
+/**
+ * Tests the judgements of the {@link Annotator}, on moves that hang a piece, allow a mate or
+ * give away a win by stalemate, and the annotations it writes for them.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class AnnotatorTest {
+
+    private static final Search.Limits LIMITS = new Search.Limits(4, 0, 0);
+
+    /**
+     * A move is judged by the worst threshold its loss reaches.
+     */
+    @Test
+    void judgesByLoss() {
+        assertEquals(Annotator.Judgement.GOOD, Annotator.Judgement.of(0));
+        assertEquals(Annotator.Judgement.GOOD, Annotator.Judgement.of(49));
+        assertEquals(Annotator.Judgement.INACCURACY, Annotator.Judgement.of(50));
+        assertEquals(Annotator.Judgement.INACCURACY, Annotator.Judgement.of(99));
+        assertEquals(Annotator.Judgement.MISTAKE, Annotator.Judgement.of(100));
+        assertEquals(Annotator.Judgement.MISTAKE, Annotator.Judgement.of(299));
+        assertEquals(Annotator.Judgement.BLUNDER, Annotator.Judgement.of(300));
+        assertEquals(4, Annotator.Judgement.BLUNDER.getNag());
+        assertEquals(2, Annotator.Judgement.MISTAKE.getNag());
+        assertEquals(6, Annotator.Judgement.INACCURACY.getNag());
+    }
+
+    /**
+     * A queen left where a knight takes it is a blunder, annotated with <code>$4</code> and the
+     * best move in standard algebraic notation, while taking the queen is not.
+     */
+    @Test
+    @Timeout(60)
+    void marksAHungQueenAsABlunder() throws Exception {
+        var game = Pgn.parse("[Result \"1-0\"]\n\n1. e4 e5 2. Nf3 Qg5 3. Nxg5 1-0");
+        List<Annotator.Review> reviews = review(game);
+        Annotator.Review blunder = reviews.get(3);
+        assertEquals(Annotator.Judgement.BLUNDER, blunder.getJudgement());
+        assertTrue(blunder.getLoss() >= 300, Integer.toString(blunder.getLoss()));
+        assertNotEquals(blunder.getMove(), blunder.getBestMove());
+        assertEquals(Annotator.Judgement.GOOD, reviews.get(4).getJudgement());
+
+        String best = Pgn.toSan(position(game, 3), blunder.getBestMove());
+        String pgn = Annotator.toPgn(game, reviews).replaceAll("\\s+", " ");
+        assertTrue(pgn.contains("[Annotator \"Processing 3 Chess\"]"), pgn);
+        assertTrue(pgn.contains("Qg5 $4 {"), pgn);
+        assertTrue(pgn.contains(" Blunder. Best was " + best + " ("), pgn);
+    }
+
+    /**
+     * A game ending in checkmate is reviewed although the last position has no best move: the
+     * mating move is scored as mate on the board, and the move that allowed it is a blunder.
+     */
+    @Test
+    @Timeout(60)
+    void scoresACheckmate() throws Exception {
+        var game = Pgn.parse("[Result \"0-1\"]\n\n1. f3 e5 2. g4 Qh4# 0-1");
+        List<Annotator.Review> reviews = review(game);
+        assertEquals(Annotator.Judgement.BLUNDER, reviews.get(2).getJudgement());
+        Annotator.Review mate = reviews.get(3);
+        assertEquals(Annotator.Judgement.GOOD, mate.getJudgement());
+        assertEquals(-Search.MATE_SCORE, mate.getScore());
+
+        String pgn = Annotator.toPgn(game, reviews).replaceAll("\\s+", " ");
+        assertTrue(pgn.contains("g4 $4 {"), pgn);
+        assertTrue(pgn.contains("Qh4# {#}"), pgn);
+    }
+
+    /**
+     * A stalemate that gives away a mate in one is a blunder scored as a draw, with the mate as
+     * the best move.
+     */
+    @Test
+    @Timeout(60)
+    void scoresAStalemate() throws Exception {
+        var game = Pgn.parse("[FEN \"7k/8/6K1/8/8/8/5Q2/8 w - - 0 1\"]\n[Result \"1/2-1/2\"]\n"
+                             + "\n1. Qf7 1/2-1/2");
+        List<Annotator.Review> reviews = review(game);
+        Annotator.Review stalemate = reviews.get(0);
+        assertEquals(Annotator.Judgement.BLUNDER, stalemate.getJudgement());
+        assertEquals(0, stalemate.getScore());
+        assertEquals(Search.MATE_SCORE - 1, stalemate.getBestScore());
+
+        String best = Pgn.toSan(position(game, 0), stalemate.getBestMove());
+        assertTrue(best.endsWith("#"), best);
+        String pgn = Annotator.toPgn(game, reviews).replaceAll("\\s+", " ");
+        assertTrue(pgn.contains("Qf7 $4 {+0.00 Blunder. Best was " + best + " (#1).}"), pgn);
+    }
+
+    /**
+     * Reviews a game with two workers.
+     *
+     * @param game the game
+     * @return the review of every move
+     * @throws Exception if the review fails
+     */
+    private static List<Annotator.Review> review(Pgn.Game game) throws Exception {
+        try (var annotator = new Annotator(2, LIMITS, 1)) {
+            List<Annotator.Review> reviews = annotator.review(game).get(30, TimeUnit.SECONDS);
+            assertEquals(game.getMoves().size(), reviews.size());
+            return reviews;
+        }
+    }
+
+    /**
+     * Returns the position of a game before one of its moves.
+     *
+     * @param game the game
+     * @param ply  the number of moves played before the position
+     * @return the position
+     */
+    private static Board position(Pgn.Game game, int ply) {
+        var board = new Board(game.getStartFen());
+        for (Move move: game.getMoves().subList(0, ply)) {
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import chess.Board;
+
+/**
+ * Tests that the evaluation treats both colors alike, whatever the weights.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class EvaluatorTest {
+
+    private static final List<String> POSITIONS = List.of(
+        Board.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 11 40",
+        "6k1/5pp1/4n2p/8/2B5/1N3P2/5KPP/8 b - - 0 30");
+
+    /**
+     * A position and its mirror image, with the colors swapped, get the same score for the side
+     * to move and opposite features, even with weights that favor some ranks over their mirror
+     * images.
+     */
+    @Test
+    void scoresMirroredPositionsAlike() {
+        int[] weights = Evaluator.getDefaultWeights();
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] += i * 7 % 23;
+        }
+        var evaluator = new Evaluator(new PawnTable(), weights);
+        int[] features = new int[Evaluator.WEIGHTS];
+        int[] mirroredFeatures = new int[Evaluator.WEIGHTS];
+        for (String fen: POSITIONS) {
+            var board = new Board(fen);
+            var mirrored = new Board(mirror(fen));
+            assertEquals(evaluator.evaluate(board), evaluator.evaluate(mirrored), fen);
+            Evaluator.features(board, features);
+            Evaluator.features(mirrored, mirroredFeatures);
+            for (int i = 0; i < features.length; i++) {
+                mirroredFeatures[i] = -mirroredFeatures[i];
+            }
+            assertArrayEquals(features, mirroredFeatures, fen);
+        }
+    }
+
+    /**
+     * Mirrors a position top to bottom and swaps the colors of its pieces, its side to move and
+     * its castling rights.
+     *
+     * @param fen the position
+     * @return the mirrored position
+     */
+    private static String mirror(String fen) {
+        String[] fields = fen.split(" ");
+        String[] ranks = fields[0].split("/");
+        var placement = new StringBuilder();
+        for (int i = ranks.length - 1; i >= 0; i--) {
+            placement.append(swapCase(ranks[i])).append(i > 0 ? "/" : "");
+        }
+        String castling = fields[2].equals("-") ? "-" : swapCase(fields[2]);
+        castling = castling.replaceAll("[^KQ]", "") + castling.replaceAll("[^kq]", "");
+        String enPassant = fields[3].equals("-") ? "-"
+                                                 : fields[3].charAt(0) + ""
+                                                   + (char) ('1' + '8' - fields[3].charAt(1));
+        return placement + (fields[1].equals("w") ? " b " : " w ")
+               + (castling.isEmpty() ? "-" : castling) + " " + enPassant + " " + fields[4]
+               + " " + fields[5];
+    }
+
+    /**
+     * Swaps the case of every letter.
+     *
+     * @param text the text
+     * @return the text with upper and lower case swapped
+     */
+    private static String swapCase(String text) {
+        var swapped = new StringBuilder(text.length());
+        for (char c: text.toCharArray()) {
+            swapped.append(Character.isUpperCase(c) ? Character.toLowerCase(c)
+                                                    : Character.toUpperCase(c));
+        }
+        return swapped.toString();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Tests that the mate solver finds the shortest mates, proves their absence, and gives up when
+ * it runs out of nodes.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class MateSolverTest {
+
+    private static final String MATE_IN_ONE   = "6k1/5ppp/8/8/8/8/1R6/1R4K1 w - - 0 1";
+    private static final String MATE_IN_TWO   = "7k/8/8/8/8/8/R7/1R4K1 w - - 0 1";
+    private static final String MATE_IN_THREE = "6k1/8/8/8/8/8/8/R5RK w - - 0 1";
+
+    /**
+     * The shortest mate is found, and its line, with the defender's longest resistance, ends in
+     * checkmate. The board is left as it was.
+     */
+    @Test
+    void findsTheShortestMate() {
+        var solver = new MateSolver(4);
+        List<String> problems = List.of(MATE_IN_ONE, MATE_IN_TWO, MATE_IN_THREE);
+        for (int i = 0; i < problems.size(); i++) {
+            var board = new Board(problems.get(i));
+            MateSolver.Result result = solver.solve(board, 4, 0);
+            assertEquals(MateSolver.Status.MATE, result.getStatus(), problems.get(i));
+            assertEquals(i + 1, result.getMateIn(), problems.get(i));
+            assertEquals(2 * i + 1, result.getLine().size(), problems.get(i));
+            assertEquals(problems.get(i), board.toFen());
+            for (Move move: result.getLine()) {
+                assertTrue(board.movePiece(move), move.toString());
+            }
+            assertTrue(board.isCheckmate(), problems.get(i));
+        }
+    }
+
+    /**
+     * A position without a mate in the number of moves given is reported as such.
+     */
+    @Test
+    void provesThereIsNoShorterMate() {
+        var solver = new MateSolver(4);
+        MateSolver.Result result = solver.solve(new Board(MATE_IN_THREE), 2, 0);
+        assertEquals(MateSolver.Status.NO_MATE, result.getStatus());
+        assertEquals(0, result.getMateIn());
+        assertEquals(List.of(), result.getLine());
+        assertEquals(MateSolver.Status.NO_MATE,
+                     solver.solve(new Board(Board.START_FEN), 2, 0).getStatus());
+    }
+
+    /**
+     * The solver gives up when it reaches its node limit before solving the problem.
+     */
+    @Test
+    void givesUpAtTheNodeLimit() {
+        MateSolver.Result result = new MateSolver(4).solve(new Board(MATE_IN_THREE), 3, 100);
+        assertEquals(MateSolver.Status.UNKNOWN, result.getStatus());
+        assertEquals(List.of(), result.getLine());
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Tests the moves the Monte Carlo tree search picks, its node limit, and the reuse of its tree
+ * between searches.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class MctsTest {
+
+    private static final Search.Limits PLAYOUTS = new Search.Limits(0, 4000, 0);
+
+    /**
+     * A mate in one is played.
+     */
+    @Test
+    void playsMateInOne() {
+        var board = new Board("6k1/5ppp/8/8/8/8/1R6/1R4K1 w - - 0 1");
+        Move best = new Mcts(4, 1, Evaluator::new).search(board, PLAYOUTS, null);
+        board.makeMove(best);
+        assertTrue(board.isCheckmate(), best.toString());
+    }
+
+    /**
+     * An undefended queen is captured.
+     */
+    @Test
+    void capturesAHangingQueen() {
+        var board = new Board("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1");
+        assertEquals(Move.parse("d1d5"), new Mcts(4, 1, Evaluator::new).search(board, PLAYOUTS,
+                                                                              null));
+    }
+
+    /**
+     * There is no move to return for a player who is checkmated.
+     */
+    @Test
+    void returnsNullWhenCheckmated() {
+        var board = new Board("1R4k1/5ppp/8/8/8/8/8/6K1 b - - 0 1");
+        assertNull(new Mcts(4, 1, Evaluator::new).search(board, PLAYOUTS, null));
+    }
+
+    /**
+     * A search stops at its node limit, and the next search, two moves later along the expected
+     * line, starts from the subtree it left rather than from an empty tree.
+     */
+    @Test
+    void stopsAtTheNodeLimitAndKeepsTheSubtree() {
+        var board = new Board(Board.START_FEN);
+        var mcts = new Mcts(4, 1, Evaluator::new);
+        var line = new AtomicReference<List<Move>>();
+        mcts.search(board, PLAYOUTS, info -> line.set(info.getPrincipalVariation()));
+        assertEquals(PLAYOUTS.getNodes(), mcts.getNodes());
+        assertTrue(line.get().size() >= 2, line.get().toString());
+
+        board.makeMove(line.get().get(0));
+        board.makeMove(line.get().get(1));
+        var single = new Search.Limits(0, 1, 0);
+        mcts.search(board, single, null);
+        var fresh = new Mcts(4, 1, Evaluator::new);
+        fresh.search(board, single, null);
+        assertTrue(mcts.getSize() > fresh.getSize(), mcts.getSize() + " " + fresh.getSize());
+    }
+
+}
\ No newline at end of file
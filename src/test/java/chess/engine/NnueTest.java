@@ -0,0 +1,151 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Tests that the accumulators of a {@link Nnue} stay equal to rebuilt ones as moves are made and
+ * taken back, that both kernels agree, and that networks survive a trip through a file.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class NnueTest {
+
+    /** A first layer whose size is not a multiple of any vector width, so tails run too. */
+    private static final int HIDDEN_SIZE = 40;
+
+    private static final List<String> POSITIONS = List.of(
+        Board.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 11 40",
+        "r3k2r/1P6/8/8/pP6/8/8/R3K2R b KQkq b3 0 1");
+
+    /** A line from the last position: en passant, castling on either side, then a promotion. */
+    private static final List<String> LINE = List.of("a4b3", "e1c1", "e8g8", "b7b8q");
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Along a line with en passant, castling and promotion, and then while it is taken back,
+     * every evaluation matches the one of an evaluator that builds its accumulators afresh.
+     */
+    @Test
+    void updatesAccumulatorsThroughSpecialMoves() {
+        var network = Nnue.Network.random(HIDDEN_SIZE, 1);
+        for (boolean vector: new boolean[] {false, true}) {
+            var nnue = new Nnue(network, vector);
+            var board = new Board(POSITIONS.get(3));
+            assertEquals(fresh(network, vector, board), nnue.evaluate(board));
+            for (String text: LINE) {
+                Move move = Move.parse(text);
+                assertTrue(board.getLegalMoves().contains(move), text);
+                board.makeMove(move);
+                assertEquals(fresh(network, vector, board), nnue.evaluate(board), text);
+            }
+            for (int i = 0; i < LINE.size(); i++) {
+                board.undoMove();
+                assertEquals(fresh(network, vector, board), nnue.evaluate(board));
+            }
+            assertEquals(POSITIONS.get(3), board.toFen());
+        }
+    }
+
+    /**
+     * Every legal move of each position, made and taken back, leaves the accumulators equal to
+     * rebuilt ones.
+     */
+    @Test
+    void updatesAccumulatorsForEveryMove() {
+        var network = Nnue.Network.random(HIDDEN_SIZE, 2);
+        var nnue = new Nnue(network, false);
+        for (String fen: POSITIONS) {
+            var board = new Board(fen);
+            int score = nnue.evaluate(board);
+            for (Move move: board.getLegalMoves()) {
+                board.makeMove(move);
+                assertEquals(fresh(network, false, board), nnue.evaluate(board), fen + " " + move);
+                board.undoMove();
+                assertEquals(score, nnue.evaluate(board), fen + " " + move);
+            }
+        }
+    }
+
+    /**
+     * The scalar and vector kernels give the same scores, up to the rounding of sums added in a
+     * different order.
+     */
+    @Test
+    void scoresAlikeWithEitherKernel() {
+        assumeTrue(Nnue.isVectorAvailable(), "the jdk.incubator.vector module is not loaded");
+        var network = Nnue.Network.random(HIDDEN_SIZE, 3);
+        var scalar = new Nnue(network, false);
+        var vector = new Nnue(network, true);
+        assertTrue(vector.toString().contains("vector"), vector.toString());
+        for (String fen: POSITIONS) {
+            var board = new Board(fen);
+            for (Move move: board.getLegalMoves()) {
+                board.makeMove(move);
+                int expected = scalar.evaluate(board);
+                int actual = vector.evaluate(board);
+                assertTrue(Math.abs(expected - actual) <= 1, fen + " " + move + ": " + expected
+                                                             + " and " + actual);
+                board.undoMove();
+            }
+        }
+    }
+
+    /**
+     * A saved network loads with the same layers and scores, while a truncated file or one that
+     * is not a network is rejected.
+     */
+    @Test
+    void savesAndLoadsNetworks() throws IOException {
+        var network = Nnue.Network.random(HIDDEN_SIZE, 4);
+        Path file = directory.resolve("network.nnue");
+        network.save(file);
+        var loaded = Nnue.Network.load(file);
+        assertEquals(network.toString(), loaded.toString());
+        assertEquals(HIDDEN_SIZE, loaded.getHiddenSize());
+        for (String fen: POSITIONS) {
+            var board = new Board(fen);
+            assertEquals(fresh(network, false, board), fresh(loaded, false, board), fen);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = Files.write(directory.resolve("truncated.nnue"),
+                                     Arrays.copyOf(bytes, bytes.length - 4));
+        assertThrows(IOException.class, () -> Nnue.Network.load(truncated));
+        Path header = Files.write(directory.resolve("header.nnue"), Arrays.copyOf(bytes, 12));
+        assertThrows(IOException.class, () -> Nnue.Network.load(header));
+        bytes[0] ^= 1;
+        Path corrupt = Files.write(directory.resolve("corrupt.nnue"), bytes);
+        assertThrows(IOException.class, () -> Nnue.Network.load(corrupt));
+    }
+
+    /**
+     * Evaluates a copy of a board with a new evaluator, whose accumulators are built from the
+     * pieces on the board.
+     *
+     * @param network the network
+     * @param vector  whether the evaluator may use the Vector API
+     * @param board   the board, which keeps its own listener
+     * @return the score of the copy
+     */
+    private static int fresh(Nnue.Network network, boolean vector, Board board) {
+        return new Nnue(network, vector).evaluate(new Board(board.toFen()));
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Tests the search's handling of repetitions, captures en passant and mates.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class SearchTest {
+
+    /**
+     * A side far behind in material heads for a position repeated from the game, which is a
+     * draw, rather than any other move.
+     */
+    @Test
+    void repeatsAPositionToDrawWhenBehind() {
+        var board = new Board("4k3/8/8/8/7q/8/8/1N4K1 w - - 0 1");
+        for (String move: new String[] {"b1c3", "e8d8", "c3b1", "d8e8"}) {
+            board.makeMove(Move.parse(move));
+        }
+        var search = new Search();
+        int[] score = new int[1];
+        Move best = search.search(board, new Search.Limits(3, 0, 0), info -> {
+            score[0] = info.getScore();
+        });
+        assertEquals(Move.parse("b1c3"), best);
+        assertEquals(0, score[0]);
+    }
+
+    /**
+     * The quiescence search captures en passant.
+     */
+    @Test
+    void quiescenceCapturesEnPassant() {
+        var board = new Board("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1");
+        var evaluator = new Evaluator();
+        int standPat = evaluator.evaluate(board);
+        var search = new Search(new TranspositionTable(1), evaluator);
+        assertTrue(search.quiescence(board) > standPat + 50);
+    }
+
+    /**
+     * A back-rank mate in one is found with the mate score.
+     */
+    @Test
+    void findsMateInOne() {
+        var board = new Board("6k1/5ppp/8/8/8/8/1R6/1R4K1 w - - 0 1");
+        var search = new Search();
+        int[] score = new int[1];
+        search.search(board, new Search.Limits(4, 0, 0), info -> score[0] = info.getScore());
+        assertEquals(Search.MATE_SCORE - 1, score[0]);
+    }
+
+}
\ No newline at end of file
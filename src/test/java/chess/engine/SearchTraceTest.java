@@ -0,0 +1,160 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Tests that a {@link SearchTrace} that overflowed links every node it kept to the node at the
+ * ply above that encloses it, and that it reads back from a file as it was written.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class SearchTraceTest {
+
+    /** Fewer nodes than the 421 of a two-ply walk from the start, so the oldest are lost. */
+    private static final int CAPACITY = 64;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * After a walk of every line two plies deep, every node kept has the parent it was recorded
+     * under, and a trace read from a file has the same nodes, parents and count.
+     */
+    @Test
+    void linksNodesToTheirParents() throws Exception {
+        var trace = new SearchTrace(CAPACITY);
+        var parents = new ArrayList<Integer>();
+        walk(new Board(), trace, 0, 2, parents, true);
+        assertEquals(parents.size(), trace.getRecorded());
+        assertEquals(CAPACITY, trace.size());
+        assertArrayEquals(expectedParents(trace, parents), trace.parents());
+
+        Path file = directory.resolve("trace.bin");
+        trace.write(file);
+        var read = SearchTrace.read(file);
+        assertEquals(trace.size(), read.size());
+        assertEquals(trace.getRecorded(), read.getRecorded());
+        for (int node = 0; node < trace.size(); node++) {
+            assertEquals(describe(trace, node), describe(read, node));
+        }
+        assertArrayEquals(trace.parents(), read.parents());
+    }
+
+    /**
+     * Nodes whose parent has not been recorded yet, because its search has not finished, have
+     * no parent.
+     */
+    @Test
+    void leavesUnfinishedParentsOut() {
+        var trace = new SearchTrace(CAPACITY);
+        var parents = new ArrayList<Integer>();
+        walk(new Board(), trace, 0, 2, parents, false);
+        int[] found = trace.parents();
+        assertArrayEquals(expectedParents(trace, parents), found);
+        for (int node = 0; node < trace.size(); node++) {
+            assertEquals(trace.getPly(node) == 1, found[node] == -1, describe(trace, node));
+        }
+    }
+
+    /**
+     * The nodes a real search kept have parents one ply above them, recorded after them.
+     */
+    @Test
+    void linksTheNodesOfASearch() {
+        assumeTrue(SearchTrace.ENABLED, "tracing is off; run with -Dchess.trace=true");
+        var trace = new SearchTrace(CAPACITY);
+        var search = new Search();
+        search.setTrace(trace);
+        search.search(new Board(), new Search.Limits(3, 0, 0), null);
+        assertTrue(trace.getRecorded() > CAPACITY, Long.toString(trace.getRecorded()));
+        int[] parents = trace.parents();
+        int linked = 0;
+        for (int node = 0; node < trace.size(); node++) {
+            if (parents[node] != -1) {
+                assertEquals(trace.getPly(node) - 1, trace.getPly(parents[node]));
+                assertTrue(parents[node] > node);
+                linked++;
+            }
+        }
+        assertTrue(linked > CAPACITY / 2, Integer.toString(linked));
+    }
+
+    /**
+     * Records every line from a position into a trace, the way the search does, with each
+     * node's count of descendants as its score.
+     *
+     * @param board      the position
+     * @param trace      the trace
+     * @param ply        the position's distance from the root
+     * @param depth      the number of plies left to walk
+     * @param parents    receives the number of the parent of every node recorded, or
+     *                   <code>-1</code> for the root and the nodes recorded under it
+     * @param recordRoot <code>false</code> to stop before recording the root
+     * @return the number of nodes recorded under the position, itself included
+     */
+    private static int walk(Board board, SearchTrace trace, int ply, int depth,
+                            List<Integer> parents, boolean recordRoot) {
+        int nodes = 1;
+        var children = new ArrayList<Integer>();
+        if (depth > 0) {
+            for (Move move: board.getLegalMoves()) {
+                trace.enter(ply + 1, move);
+                board.makeMove(move);
+                nodes += walk(board, trace, ply + 1, depth - 1, parents, true);
+                children.add(parents.size() - 1);
+                board.undoMove();
+            }
+        }
+        if (ply > 0 || recordRoot) {
+            trace.record(ply, depth, -nodes, nodes, nodes, SearchTrace.SEARCHED);
+            parents.add(-1);
+            for (int child: children) {
+                parents.set(child, parents.size() - 1);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Maps the parents of the nodes a trace kept to indexes among those nodes.
+     *
+     * @param trace   the trace
+     * @param parents the number of the parent of every node recorded, or <code>-1</code>
+     * @return the index of the parent of every node kept, or <code>-1</code>
+     */
+    private static int[] expectedParents(SearchTrace trace, List<Integer> parents) {
+        int lost = (int) trace.getRecorded() - trace.size();
+        int[] expected = new int[trace.size()];
+        for (int node = 0; node < expected.length; node++) {
+            int parent = parents.get(lost + node);
+            expected[node] = parent < lost ? -1 : parent - lost;
+        }
+        return expected;
+    }
+
+    /**
+     * Describes a node with everything recorded about it.
+     *
+     * @param trace the trace
+     * @param node  the node's index
+     * @return the description
+     */
+    private static String describe(SearchTrace trace, int node) {
+        return trace.getMove(node) + " " + trace.getPly(node) + " " + trace.getDepth(node) + " "
+               + trace.getAlpha(node) + " " + trace.getBeta(node) + " " + trace.getScore(node)
+               + " " + SearchTrace.reasonName(trace.getReason(node));
+    }
+
+}
\ No newline at end of file
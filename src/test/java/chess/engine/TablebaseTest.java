@@ -0,0 +1,228 @@
+package chess.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import chess.Board;
+import chess.Move;
+import chess.pieces.Color;
+import chess.pieces.Knight;
+
+/**
+ * Tests the tables built by {@link TablebaseGenerator}: their longest mates, their agreement with
+ * a one-move lookahead over the tables themselves, and the files they are written to.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class TablebaseTest {
+
+    private static final int SAMPLES = 400;
+
+    private static Tablebase tablebase;
+
+    /**
+     * Builds every table once, in the order promotions need them.
+     */
+    @BeforeAll
+    static void generate() {
+        tablebase = new Tablebase();
+        for (Tablebase.Endgame endgame: Tablebase.Endgame.values()) {
+            tablebase.put(endgame, TablebaseGenerator.generate(endgame, tablebase, 2));
+        }
+    }
+
+    /**
+     * The longest wins are the known ones: mate in 10 with a queen, 16 with a rook and 33 with a
+     * bishop and a knight.
+     */
+    @Test
+    void longestMatesHaveTheirKnownLengths() {
+        assertEquals(10, longestWin(Tablebase.Endgame.KQK));
+        assertEquals(16, longestWin(Tablebase.Endgame.KRK));
+        assertEquals(33, longestWin(Tablebase.Endgame.KBNK));
+    }
+
+    /**
+     * Probes of known positions, of endgames that are drawn without a table, and of positions
+     * whose table is missing.
+     */
+    @Test
+    void probesKnownPositions() {
+        assertEquals(Search.MATE_SCORE - 1,
+                     tablebase.probe(new Board("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1")));
+        assertEquals(-Search.MATE_SCORE,
+                     tablebase.probe(new Board("1Q5k/8/6K1/8/8/8/8/8 b - - 0 1")));
+        assertEquals(Search.MATE_SCORE - 1,
+                     tablebase.probe(new Board("1q6/8/8/8/8/6k1/8/7K b - - 0 1")));
+        assertEquals(-Search.MATE_SCORE,
+                     tablebase.probe(new Board("8/8/8/8/8/6k1/8/q6K w - - 0 1")));
+        assertEquals(0, tablebase.probe(new Board("k7/8/1K6/8/8/8/8/6B1 w - - 0 1")));
+        assertEquals(0, tablebase.probe(new Board("8/8/8/4k3/8/8/8/K7 w - - 0 1")));
+        assertEquals(Tablebase.UNKNOWN,
+                     new Tablebase().probe(new Board("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1")));
+        assertEquals(Tablebase.UNKNOWN,
+                     tablebase.probe(new Board("k7/8/1K6/8/8/8/1P6/7q w - - 0 1")));
+    }
+
+    /**
+     * In random positions of every endgame, with either color stronger, each probe equals the
+     * best outcome of the legal moves, probed in turn, one ply further from mate.
+     */
+    @Test
+    void probesAgreeWithALookaheadOverTheTables() {
+        var random = new Random(1);
+        for (Tablebase.Endgame endgame: Tablebase.Endgame.values()) {
+            for (Board board: randomPositions(endgame, random)) {
+                assertEquals(lookahead(board), tablebase.probe(board), board.toFen());
+            }
+        }
+    }
+
+    /**
+     * A table written to a file and loaded back gives the same entries, and pawn endgames cannot
+     * be built without the tables their promotions lead to.
+     */
+    @Test
+    void tablesRoundTripThroughFiles(@TempDir Path directory) throws Exception {
+        for (Tablebase.Endgame endgame: List.of(Tablebase.Endgame.KRK, Tablebase.Endgame.KPK)) {
+            int size = endgame.size();
+            byte[] values = new byte[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = tablebase.get(endgame, i);
+            }
+            Tablebase.write(directory.resolve(endgame.getFileName()), endgame, values);
+        }
+        Tablebase loaded = Tablebase.load(directory);
+        assertEquals(false, loaded.contains(Tablebase.Endgame.KQK));
+        for (Tablebase.Endgame endgame: List.of(Tablebase.Endgame.KRK, Tablebase.Endgame.KPK)) {
+            for (int i = 0; i < endgame.size(); i += 7) {
+                assertEquals(tablebase.get(endgame, i), loaded.get(endgame, i));
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                     () -> TablebaseGenerator.generate(Tablebase.Endgame.KPK, loaded, 1));
+    }
+
+    /**
+     * Returns the longest win in an endgame's table.
+     *
+     * @param endgame the endgame
+     * @return the number of moves to mate
+     */
+    private static int longestWin(Tablebase.Endgame endgame) {
+        int longest = 0;
+        for (int i = 0; i < endgame.size(); i++) {
+            byte entry = tablebase.get(endgame, i);
+            if (entry != Tablebase.ILLEGAL) {
+                longest = Math.max(longest, entry);
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Scores a position from the probes of the positions its legal moves lead to.
+     *
+     * @param board the position
+     * @return the score in the form of {@link Tablebase#probe(Board)}
+     */
+    private static int lookahead(Board board) {
+        List<Move> moves = board.getLegalMoves();
+        if (moves.isEmpty()) {
+            return board.isInCheck() ? -Search.MATE_SCORE : 0;
+        }
+        int best = -Search.MATE_SCORE;
+        for (Move move: moves) {
+            board.makeMove(move);
+            int score = -tablebase.probe(board);
+            board.undoMove();
+            best = Math.max(best, score > 0 ? score - 1 : score < 0 ? score + 1 : 0);
+        }
+        return best;
+    }
+
+    /**
+     * Sets up random legal positions of an endgame, half of them with black as the stronger side.
+     *
+     * @param endgame the endgame
+     * @param random  the source of randomness
+     * @return the positions
+     */
+    private static List<Board> randomPositions(Tablebase.Endgame endgame, Random random) {
+        var boards = new ArrayList<Board>();
+        while (boards.size() < SAMPLES) {
+            boolean whiteStrong = boards.size() % 2 == 0;
+            char[] squares = new char[64];
+            Arrays.fill(squares, ' ');
+            var pieces = new StringBuilder(whiteStrong ? "Kk" : "kK");
+            for (var type: endgame.getPieces()) {
+                char letter = type == Knight.class ? 'N' : type.getSimpleName().charAt(0);
+                pieces.append(whiteStrong ? letter : Character.toLowerCase(letter));
+            }
+            boolean placed = true;
+            for (char piece: pieces.toString().toCharArray()) {
+                int square = random.nextInt(64);
+                boolean pawnOnEdge = Character.toUpperCase(piece) == 'P'
+                                     && (square < 8 || square >= 56);
+                if (squares[square] != ' ' || pawnOnEdge) {
+                    placed = false;
+                    break;
+                }
+                squares[square] = piece;
+            }
+            if (!placed) {
+                continue;
+            }
+            Color turn = random.nextBoolean() ? Color.WHITE : Color.BLACK;
+            String placement = placement(squares);
+            var other = new Board(placement + (turn == Color.WHITE ? " b" : " w") + " - - 0 1");
+            if (!other.isInCheck()) {
+                boards.add(new Board(placement + (turn == Color.WHITE ? " w" : " b")
+                                     + " - - 0 1"));
+            }
+        }
+        return boards;
+    }
+
+    /**
+     * Writes squares, from a8 to h1, as the piece placement field of a FEN string.
+     *
+     * @param squares the piece letter on every square, or a space if it is empty
+     * @return the placement
+     */
+    private static String placement(char[] squares) {
+        var placement = new StringBuilder();
+        for (int rank = 0; rank < 8; rank++) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                char piece = squares[rank * 8 + file];
+                if (piece == ' ') {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    placement.append(empty);
+                    empty = 0;
+                }
+                placement.append(piece);
+            }
+            if (empty > 0) {
+                placement.append(empty);
+            }
+            if (rank < 7) {
+                placement.append('/');
+            }
+        }
+        return placement.toString();
+    }
+
+}
\ No newline at end of file
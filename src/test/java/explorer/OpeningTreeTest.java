@@ -0,0 +1,272 @@
+package explorer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import chess.Move;
+
+/**
+ * Tests that an {@link OpeningTree} keeps its common entries exact and reachable while it drops
+ * rare ones, and that trees can be merged and written to a file and read back.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class OpeningTreeTest {
+
+    private static final List<String> RESULTS = List.of("1-0", "1/2-1/2", "0-1", "*");
+    private static final List<Move> MOVES = List.of(
+        Move.parse("e2e4"), Move.parse("d2d4"), Move.parse("g1f3"), Move.parse("c2c4"));
+    private static final int MAX_ENTRIES    = 64;
+    private static final int COMMON_KEYS    = 5;
+    private static final int ROUNDS         = 40;
+    private static final int RARE_PER_ROUND = 20;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Streaming many rare entries through a small tree drops them, keeps the common entries with
+     * exact counts, and leaves every kept entry reachable from its position.
+     */
+    @Test
+    void prunesRareEntriesWhileCounting() {
+        var random = new Random(1);
+        var tree = new OpeningTree(MAX_ENTRIES);
+        var counts = new Counts();
+        List<Long> common = keys(random, COMMON_KEYS);
+        for (int i = 0; i < 10; i++) {
+            addCommon(tree, counts, common, i);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            addCommon(tree, counts, common, round);
+            for (int i = 0; i < RARE_PER_ROUND; i++) {
+                counts.add(tree, keys(random, 1).get(0), MOVES.get(i % MOVES.size()),
+                           RESULTS.get(i % RESULTS.size()), 0);
+            }
+        }
+        assertTrue(tree.size() <= MAX_ENTRIES, Integer.toString(tree.size()));
+        assertTrue(tree.getMinGames() > 1, Integer.toString(tree.getMinGames()));
+        int found = 0;
+        for (long key: counts.keys()) {
+            for (OpeningTree.Entry entry: tree.getMoves(key)) {
+                int[] expected = counts.get(key, entry.getMove());
+                assertTrue(entry.getGames() <= expected[0], key + " " + entry);
+                found++;
+            }
+        }
+        assertEquals(tree.size(), found);
+        for (long key: common) {
+            assertEquals(MOVES.size(), tree.getMoves(key).size());
+            for (OpeningTree.Entry entry: tree.getMoves(key)) {
+                assertCounts(counts.get(key, entry.getMove()), entry);
+            }
+        }
+    }
+
+    /**
+     * Merging adds up the counts of entries both trees have, keeps the others, and keeps the
+     * higher limit below which counts are not exact.
+     */
+    @Test
+    void mergesCounts() {
+        var random = new Random(2);
+        List<Long> keys = keys(random, 8);
+        var first = new OpeningTree(1000);
+        var second = new OpeningTree(1000);
+        var counts = new Counts();
+        for (int i = 0; i < 200; i++) {
+            long key = keys.get(random.nextInt(keys.size()));
+            Move move = MOVES.get(random.nextInt(MOVES.size()));
+            String result = RESULTS.get(random.nextInt(RESULTS.size()));
+            counts.add(i % 3 == 0 ? second : first, key, move, result, rating(move));
+        }
+        var seconds = new HashMap<Long, List<OpeningTree.Entry>>();
+        for (long key: keys) {
+            seconds.put(key, second.getMoves(key));
+        }
+        assertSame(first, first.merge(second));
+        assertEquals(1, first.getMinGames());
+        for (long key: keys) {
+            assertEquals(counts.moves(key), first.getMoves(key).size());
+            for (OpeningTree.Entry entry: first.getMoves(key)) {
+                assertCounts(counts.get(key, entry.getMove()), entry);
+            }
+            assertEquals(describe(seconds.get(key)), describe(second.getMoves(key)));
+        }
+        var pruned = new OpeningTree(10);
+        pruned.prune(4);
+        assertEquals(4, first.merge(pruned).getMinGames());
+    }
+
+    /**
+     * A tree written to a file reads back with the same entries, size and limit.
+     */
+    @Test
+    void writesAndReadsTrees() throws Exception {
+        var random = new Random(3);
+        var tree = new OpeningTree(MAX_ENTRIES);
+        var counts = new Counts();
+        List<Long> common = keys(random, COMMON_KEYS);
+        for (int round = 0; round < ROUNDS; round++) {
+            addCommon(tree, counts, common, round);
+            counts.add(tree, keys(random, 1).get(0), MOVES.get(round % MOVES.size()), "*", 0);
+        }
+        Path file = directory.resolve("tree.bin");
+        tree.write(file);
+        var read = OpeningTree.read(file);
+        assertEquals(tree.size(), read.size());
+        assertEquals(tree.getMinGames(), read.getMinGames());
+        for (long key: counts.keys()) {
+            assertEquals(describe(tree.getMoves(key)), describe(read.getMoves(key)));
+        }
+    }
+
+    /**
+     * Counts one game of every move from every common position, rated by move.
+     *
+     * @param tree   the tree
+     * @param counts the expected counts
+     * @param common the common positions' keys
+     * @param round  picks the games' result
+     */
+    private static void addCommon(OpeningTree tree, Counts counts, List<Long> common, int round) {
+        for (long key: common) {
+            for (Move move: MOVES) {
+                counts.add(tree, key, move, RESULTS.get(round % RESULTS.size()), rating(move));
+            }
+        }
+    }
+
+    /**
+     * Returns random keys whose home slots crowd a few slots of the tree, so that entries of
+     * different positions share probe sequences.
+     *
+     * @param random the source of randomness
+     * @param count  the number of keys
+     * @return the keys
+     */
+    private static List<Long> keys(Random random, int count) {
+        var keys = new ArrayList<Long>();
+        for (int i = 0; i < count; i++) {
+            keys.add(random.nextLong() << 12 | random.nextInt(16));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the rating of the players who play a move, which is the same for all of them so
+     * that averages are exact.
+     *
+     * @param move the move
+     * @return the rating
+     */
+    private static int rating(Move move) {
+        return 2000 + 10 * MOVES.indexOf(move);
+    }
+
+    /**
+     * Asserts that an entry has the expected counts.
+     *
+     * @param expected the games, white wins, draws, black wins and average rating
+     * @param entry    the entry
+     */
+    private static void assertCounts(int[] expected, OpeningTree.Entry entry) {
+        assertEquals(expected[0], entry.getGames(), entry.toString());
+        assertEquals(expected[1], entry.getWhiteWins(), entry.toString());
+        assertEquals(expected[2], entry.getDraws(), entry.toString());
+        assertEquals(expected[3], entry.getBlackWins(), entry.toString());
+        assertEquals(rating(entry.getMove()), entry.getAverageRating(), entry.toString());
+    }
+
+    /**
+     * Describes entries with all their counts, so that lists of them can be compared.
+     *
+     * @param entries the entries
+     * @return one description per entry, in order
+     */
+    private static List<String> describe(List<OpeningTree.Entry> entries) {
+        var descriptions = new ArrayList<String>();
+        for (OpeningTree.Entry entry: entries) {
+            descriptions.add(entry + " " + entry.getWhiteWins() + "/" + entry.getDraws() + "/"
+                             + entry.getBlackWins());
+        }
+        return descriptions;
+    }
+
+    /**
+     * The counts a tree should hold, taken alongside it.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class Counts {
+
+        private final Map<Long, Map<Move, int[]>> counts = new HashMap<>();
+        private final Set<Long> keys = new LinkedHashSet<>();
+
+        /**
+         * Counts a game in a tree and in these counts.
+         *
+         * @param tree   the tree
+         * @param key    the position's key
+         * @param move   the move
+         * @param result the game's result
+         * @param rating the player's rating, or <code>0</code>
+         */
+        void add(OpeningTree tree, long key, Move move, String result, int rating) {
+            tree.add(key, move, result, rating);
+            keys.add(key);
+            int[] count = counts.computeIfAbsent(key, k -> new HashMap<>())
+                                .computeIfAbsent(move, m -> new int[4]);
+            count[0]++;
+            int outcome = RESULTS.indexOf(result);
+            if (outcome < 3) {
+                count[1 + outcome]++;
+            }
+        }
+
+        /**
+         * Returns the counts of a move.
+         *
+         * @param key  the position's key
+         * @param move the move
+         * @return the games, white wins, draws and black wins
+         */
+        int[] get(long key, Move move) {
+            return counts.get(key).get(move);
+        }
+
+        /**
+         * Returns the number of different moves counted from a position.
+         *
+         * @param key the position's key
+         * @return the number of moves
+         */
+        int moves(long key) {
+            return counts.get(key).size();
+        }
+
+        /**
+         * Returns the keys of the positions counted, in the order they were first seen.
+         *
+         * @return the keys
+         */
+        Set<Long> keys() {
+            return keys;
+        }
+
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,159 @@
+package explorer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import chess.Board;
+import chess.Move;
+import chess.Pgn;
+
+/**
+ * Tests indexes built by {@link IndexBuilder}: the games, moves and results they report for a
+ * position, and their agreement with counts taken directly from the games.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class PositionIndexTest {
+
+    private static final String GAMES = """
+        [White "Anand, V"]
+        [Black "Carlsen, M"]
+        [Result "1-0"]
+
+        1. e4 e5 2. Nf3 1-0
+
+        [Result "0-1"]
+
+        1. e4 c5 0-1
+
+        [Result "1/2-1/2"]
+
+        1. d4 1/2-1/2
+
+        [Result "*"]
+
+        1. Nf3 Nf6 2. Ng1 Ng8 3. Nf3 *
+
+        [Result "1-0"]
+
+        1. e5 1-0
+        """;
+    private static final int RANDOM_GAMES = 400;
+    private static final int MAX_PLIES    = 40;
+
+    /**
+     * A position's games are counted once each, with their moves most played first, and games
+     * that cannot be parsed are left out.
+     */
+    @Test
+    void reportsTheGamesOfAPosition(@TempDir Path directory) throws Exception {
+        Path games = directory.resolve("games.pgn");
+        Files.writeString(games, GAMES);
+        var builder = new IndexBuilder(directory.resolve("index"), 2);
+        builder.build(List.of(games));
+        assertEquals(5, builder.getGameCount());
+        assertEquals(1, builder.getSkippedGames());
+        var index = new PositionIndex(directory.resolve("index"));
+
+        var board = new Board(Board.START_FEN);
+        PositionIndex.Stats start = index.query(board);
+        assertEquals(4, start.getGames());
+        assertEquals(List.of(0, 1, 2, 3), start.getSampleGames());
+        assertEquals(1, start.getTotal().getWhiteWins());
+        assertEquals(1, start.getTotal().getDraws());
+        assertEquals(1, start.getTotal().getBlackWins());
+        assertEquals(3, start.getMoves().size());
+        PositionIndex.MoveStats e4 = start.getMoves().get(0);
+        assertEquals(Pgn.parseSan(board, "e4"), e4.getMove());
+        assertEquals(2, e4.getGames());
+        assertEquals(0.5, e4.getWhiteScore());
+        for (PositionIndex.MoveStats move: start.getMoves().subList(1, 3)) {
+            assertEquals(1, move.getGames());
+        }
+
+        board.makeMove(Pgn.parseSan(board, "Nf3"));
+        assertEquals(List.of(3), index.query(board).getSampleGames());
+        assertEquals(1, index.query(board).getMoves().get(0).getGames());
+        board = new Board(Board.START_FEN);
+        for (String san: List.of("e4", "e5", "Nf3")) {
+            board.makeMove(Pgn.parseSan(board, san));
+        }
+        PositionIndex.Stats end = index.query(board);
+        assertEquals(1, end.getGames());
+        assertEquals(1, end.getTotal().getWhiteWins());
+        assertTrue(end.getMoves().isEmpty());
+        assertEquals(0, index.query(board.getKey() + 1).getGames());
+        assertEquals("Anand, V - Carlsen, M, ?, ?, 1-0", index.getGame(0));
+    }
+
+    /**
+     * The counts of random games indexed on several threads match the counts taken while the
+     * games were played.
+     */
+    @Test
+    void matchesCountsTakenFromTheGames(@TempDir Path directory) throws Exception {
+        var random = new Random(1);
+        var text = new StringBuilder();
+        var games = new HashMap<Long, Integer>();
+        var moves = new HashMap<Long, Map<Move, Integer>>();
+        String[] results = {"1-0", "0-1", "1/2-1/2", "*"};
+        for (int g = 0; g < RANDOM_GAMES; g++) {
+            var board = new Board(Board.START_FEN);
+            var played = new ArrayList<Move>();
+            var seen = new HashSet<Long>();
+            int plies = random.nextInt(MAX_PLIES);
+            for (int ply = 0; ; ply++) {
+                List<Move> legalMoves = board.getLegalMoves();
+                boolean ends = ply == plies || legalMoves.isEmpty();
+                // Few choices early on, so that games share their openings
+                int choices = ply < 6 ? Math.min(2, legalMoves.size()) : legalMoves.size();
+                Move move = ends ? null : legalMoves.get(random.nextInt(choices));
+                // A game that reaches a position again counts once, for its first move
+                if (seen.add(board.getKey())) {
+                    games.merge(board.getKey(), 1, Integer::sum);
+                    moves.computeIfAbsent(board.getKey(), key -> new HashMap<>())
+                         .merge(move, 1, Integer::sum);
+                }
+                if (ends) {
+                    break;
+                }
+                played.add(move);
+                board.makeMove(move);
+            }
+            text.append(Pgn.format(new Pgn.Game(new LinkedHashMap<>(), Board.START_FEN, played,
+                                                results[g % 4]), null));
+        }
+        Path file = directory.resolve("games.pgn");
+        Files.writeString(file, text);
+        new IndexBuilder(directory.resolve("index"), 3).build(List.of(file));
+        var index = new PositionIndex(directory.resolve("index"));
+
+        assertEquals(games.size(), index.getPositionCount());
+        for (var position: games.entrySet()) {
+            PositionIndex.Stats stats = index.query(position.getKey());
+            assertEquals((int) position.getValue(), stats.getGames());
+            Map<Move, Integer> expected = new HashMap<>(moves.get(position.getKey()));
+            expected.remove(null);
+            int previous = Integer.MAX_VALUE;
+            for (PositionIndex.MoveStats move: stats.getMoves()) {
+                assertEquals(expected.remove(move.getMove()), move.getGames());
+                assertTrue(move.getGames() <= previous);
+                previous = move.getGames();
+            }
+            assertTrue(expected.isEmpty());
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import chess.pieces.Color;
+
+/**
+ * Tests how a {@link GameServer} with a journal keeps games across restarts: recovered games wait
+ * for both of their players, and game identifiers are never reused.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class GameServerTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * A recovered game is not resigned when one of its players returns and leaves again before
+     * the opponent is back, while a game that never started ends when its only player leaves.
+     */
+    @Test
+    void keepsRecoveredGamesForTheirPlayers() throws Exception {
+        try (var server = open()) {
+            Game game = server.createGame();
+            var white = new Connection(null, server);
+            game.join(white);
+            game.join(new Connection(null, server));
+            assertTrue(game.move(white, "e2e4"));
+        }
+        try (var server = open()) {
+            Game game = server.findGame("1");
+            assertNotNull(game);
+            var white = new Connection(null, server);
+            assertTrue(game.join(white, Color.WHITE));
+            game.leave(white);
+            server.removeIfAbandoned(game);
+            assertFalse(game.isOver());
+            assertNotNull(server.findGame("1"));
+
+            Game waiting = server.createGame();
+            var creator = new Connection(null, server);
+            waiting.join(creator);
+            waiting.leave(creator);
+            server.removeIfAbandoned(waiting);
+            assertNull(server.findGame(Integer.toString(waiting.getId())));
+        }
+        try (var server = open()) {
+            assertEquals(1, server.getGameCount());
+            assertNotNull(server.findGame("1"));
+        }
+    }
+
+    /**
+     * Identifiers of games that ended are not handed out again after a restart, even once a
+     * snapshot has deleted the records of their creation.
+     */
+    @Test
+    void doesNotReuseIdentifiers() throws Exception {
+        try (var server = open()) {
+            server.createGame();
+            Game ended = server.createGame();
+            var white = new Connection(null, server);
+            ended.join(white);
+            ended.join(new Connection(null, server));
+            ended.leave(white);
+            assertTrue(ended.isOver());
+        }
+        try (var server = open()) {
+            assertNull(server.findGame("2"));
+            assertEquals(3, server.createGame().getId());
+        }
+        try (var journal = new MoveJournal(directory)) {
+            journal.snapshot(List::of);
+        }
+        try (var server = open()) {
+            assertEquals(0, server.getGameCount());
+            assertEquals(4, server.createGame().getId());
+        }
+    }
+
+    /**
+     * Idle games are parked off-heap, snapshot without being brought back, and rebuilt in the
+     * same position when a move arrives; an ended game leaves the store.
+     */
+    @Test
+    void parksIdleGamesUntilTheirNextMove() throws Exception {
+        try (var server = open()) {
+            Game game = server.createGame();
+            var white = new Connection(null, server);
+            var black = new Connection(null, server);
+            game.join(white);
+            game.join(black);
+            assertTrue(game.move(white, "e2e4"));
+            assertEquals(0, server.parkIdleGames(Long.MAX_VALUE));
+            assertEquals(1, server.parkIdleGames(0));
+            assertTrue(game.isParked());
+            assertEquals(1, server.getParkedGameCount());
+
+            assertNotNull(game.capture());
+            assertTrue(game.isParked());
+            assertFalse(game.move(white, "d2d4"));
+            assertTrue(game.move(black, "e7e5"));
+            assertFalse(game.isParked());
+            assertEquals(0, server.getParkedGameCount());
+
+            server.parkIdleGames(0);
+            game.leave(black);
+            assertTrue(game.isOver());
+            assertEquals(0, server.getParkedGameCount());
+        }
+        try (var server = open()) {
+            assertEquals(0, server.getGameCount());
+        }
+    }
+
+    /**
+     * Opens a server on any free port with a journal in the test's directory.
+     *
+     * @return the server, not yet accepting connections
+     * @throws IOException if the server or journal cannot be opened
+     */
+    private GameServer open() throws IOException {
+        return new GameServer(0, new MoveJournal(directory));
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Tests that an {@link IdleGameStore} gives back the positions it stores, and keeps finding them
+ * as games are removed and the table grows.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class IdleGameStoreTest {
+
+    private static final List<String> POSITIONS = List.of(
+        Board.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+        "rnbqkbnr/pppp1ppp/8/8/3Pp3/8/PPP1PPPP/RNBQKBNR b Kq d3 0 3",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 11 40",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 b kq - 3 12");
+
+    /**
+     * Every position, castling rights and en passant target included, is rebuilt as stored.
+     */
+    @Test
+    void rebuildsStoredPositions() {
+        var store = new IdleGameStore();
+        for (int i = 0; i < POSITIONS.size(); i++) {
+            store.put(i + 1, new Board(POSITIONS.get(i)));
+        }
+        for (int i = 0; i < POSITIONS.size(); i++) {
+            assertEquals(POSITIONS.get(i), store.get(i + 1).toFen());
+        }
+        assertEquals(POSITIONS.get(0), store.remove(1).toFen());
+        assertFalse(store.contains(1));
+        assertNull(store.get(1));
+        assertEquals(POSITIONS.size() - 1, store.size());
+    }
+
+    /**
+     * Positions from random games, each restarted at its end or at the fifty-move rule, stay
+     * reachable while games are removed and the table grows.
+     */
+    @Test
+    void keepsGamesReachableAcrossRemovalsAndGrowth() {
+        var store = new IdleGameStore(16);
+        var random = new Random(1);
+        var fens = new java.util.HashMap<Integer, String>();
+        var board = new Board();
+        for (int id = 1; id <= 2000; id++) {
+            List<Move> moves = board.getLegalMoves();
+            if (moves.isEmpty() || board.getHalfmoveClock() >= 100) {
+                board = new Board();
+                moves = board.getLegalMoves();
+            }
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+            store.put(id, board);
+            fens.put(id, board.toFen());
+            if (id % 3 == 0) {
+                int removed = 1 + random.nextInt(id);
+                if (fens.remove(removed) != null) {
+                    store.remove(removed);
+                }
+            }
+        }
+        assertEquals(fens.size(), store.size());
+        for (var entry: fens.entrySet()) {
+            assertEquals(entry.getValue(), store.get(entry.getKey()).toFen());
+        }
+    }
+
+}
\ No newline at end of file
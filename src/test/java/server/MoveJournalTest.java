@@ -0,0 +1,363 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import chess.Board;
+import chess.Move;
+
+/**
+ * Tests that a {@link MoveJournal} rebuilds its games after a restart, including when its last
+ * segment was torn, holds an invalid record, or could not be written, and that callers waiting
+ * for a record that never becomes durable are failed.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class MoveJournalTest {
+
+    /**
+     * A channel that writes part of a buffer and then fails, a number of times, before behaving
+     * like the channel it wraps.
+     *
+     * @author Marco Olea
+     * @version 1.0
+     */
+    private static class FailingChannel extends FileChannel {
+
+        private final FileChannel channel;
+        private int failures;
+
+        /**
+         * Wraps a channel.
+         *
+         * @param channel  the channel to wrap
+         * @param failures the number of writes that fail
+         */
+        FailingChannel(FileChannel channel, int failures) {
+            this.channel = channel;
+            this.failures = failures;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            if (failures == 0) {
+                return channel.write(source);
+            }
+            failures--;
+            var half = source.duplicate();
+            half.limit(source.position() + Math.max(1, source.remaining() / 2));
+            source.position(source.position() + channel.write(half));
+            throw new IOException("Simulated failure");
+        }
+
+        @Override
+        public int read(ByteBuffer target) throws IOException {
+            return channel.read(target);
+        }
+
+        @Override
+        public long read(ByteBuffer[] targets, int offset, int length) throws IOException {
+            return channel.read(targets, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            return channel.write(sources, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long position) throws IOException {
+            channel.position(position);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target)
+                throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel source, long position, long count)
+                throws IOException {
+            return channel.transferFrom(source, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer target, long position) throws IOException {
+            return channel.read(target, position);
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException {
+            return channel.write(source, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+
+    }
+
+    private static final List<String> MOVES = List.of("e2e4", "e7e5", "g1f3", "b8c6");
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Live games are rebuilt with their moves, from the segments alone and from a snapshot
+     * followed by segments, while ended games are not.
+     */
+    @Test
+    void recoversLiveGames() throws Exception {
+        try (var journal = open()) {
+            journal.recordCreate(1);
+            journal.recordCreate(2);
+            play(journal, 1, MOVES.subList(0, 2));
+            journal.awaitDurable(2, journal.recordEnd(2));
+        }
+        try (var journal = open()) {
+            assertEquals(List.of(1), List.copyOf(journal.getRecoveredGames().keySet()));
+            assertEquals(position(MOVES.subList(0, 2)),
+                         journal.getRecoveredGames().get(1).toFen());
+            Board board = journal.getRecoveredGames().get(1);
+            journal.snapshot(() -> List.of(new MoveJournal.GameState(1, board.toFen(),
+                                                                     journal.nextSequence(1))));
+            play(journal, 1, MOVES.subList(2, 4));
+        }
+        try (var journal = open()) {
+            assertEquals(position(MOVES), journal.getRecoveredGames().get(1).toFen());
+        }
+    }
+
+    /**
+     * A record torn by a crash is cut off, and records logged after recovery are read back.
+     */
+    @Test
+    void truncatesATornTail() throws Exception {
+        try (var journal = open()) {
+            journal.recordCreate(1);
+            play(journal, 1, MOVES.subList(0, 2));
+        }
+        Path segment = lastSegment();
+        Files.write(segment, new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+        try (var journal = open()) {
+            assertEquals(position(MOVES.subList(0, 2)),
+                         journal.getRecoveredGames().get(1).toFen());
+            assertEquals(0, Files.size(segment) % 7);
+            play(journal, 1, MOVES.subList(2, 4));
+        }
+        try (var journal = open()) {
+            assertEquals(position(MOVES), journal.getRecoveredGames().get(1).toFen());
+        }
+    }
+
+    /**
+     * Replay stops at a move that is not legal in its game, and ignores the records after it.
+     */
+    @Test
+    void stopsAtAnIllegalMove() throws Exception {
+        try (var journal = open()) {
+            journal.recordCreate(1);
+            play(journal, 1, List.of("e2e4", "e2e4", "e7e5"));
+        }
+        try (var journal = open()) {
+            assertEquals(position(List.of("e2e4")), journal.getRecoveredGames().get(1).toFen());
+            play(journal, 1, List.of("c7c5"));
+        }
+        try (var journal = open()) {
+            assertEquals(position(List.of("e2e4", "c7c5")),
+                         journal.getRecoveredGames().get(1).toFen());
+        }
+    }
+
+    /**
+     * A batch that was partly written before failing is written again, whole and only once.
+     */
+    @Test
+    @Timeout(10)
+    void retriesAFailedWrite() throws Exception {
+        try (var journal = open()) {
+            journal.recordCreate(1);
+            play(journal, 1, MOVES.subList(0, 1));
+            replaceChannel(journal, channel -> new FailingChannel(channel, 2));
+            play(journal, 1, MOVES.subList(1, 4));
+        }
+        assertEquals(5 * 7, Files.size(lastSegment()));
+        try (var journal = open()) {
+            assertEquals(position(MOVES), journal.getRecoveredGames().get(1).toFen());
+        }
+    }
+
+    /**
+     * A shard whose segment can no longer be written fails the callers waiting for its records,
+     * and recovery only rebuilds what was durable.
+     */
+    @Test
+    @Timeout(10)
+    void failsWaitersWhenTheSegmentCannotBeWritten() throws Exception {
+        var journal = open();
+        journal.recordCreate(1);
+        play(journal, 1, MOVES.subList(0, 2));
+        replaceChannel(journal, channel -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            return channel;
+        });
+        long sequence = journal.recordMove(1, Move.parse(MOVES.get(2)));
+        assertThrows(IOException.class, () -> journal.awaitDurable(1, sequence));
+        assertThrows(IOException.class, journal::close);
+        try (var reopened = open()) {
+            assertEquals(position(MOVES.subList(0, 2)),
+                         reopened.getRecoveredGames().get(1).toFen());
+            assertFalse(reopened.getRecoveredGames().containsKey(2));
+        }
+    }
+
+    /**
+     * A record logged after the journal was closed is never durable, and waiting for it fails
+     * instead of returning as if it were.
+     */
+    @Test
+    @Timeout(10)
+    void failsWaitersOnceClosed() throws Exception {
+        var journal = open();
+        journal.recordCreate(1);
+        play(journal, 1, MOVES.subList(0, 1));
+        journal.close();
+        long sequence = journal.recordMove(1, Move.parse(MOVES.get(1)));
+        assertThrows(IOException.class, () -> journal.awaitDurable(1, sequence));
+    }
+
+    /**
+     * Opens the journal with a single shard and a short sync interval.
+     *
+     * @return the journal
+     * @throws IOException if the journal cannot be opened
+     */
+    private MoveJournal open() throws IOException {
+        return new MoveJournal(directory, 1, 1);
+    }
+
+    /**
+     * Logs moves for a game, waiting for each one to be durable.
+     *
+     * @param journal the journal
+     * @param gameId  the game's identifier
+     * @param moves   the moves, in long algebraic notation
+     * @throws Exception if a move cannot be logged
+     */
+    private static void play(MoveJournal journal, int gameId, List<String> moves)
+            throws Exception {
+        for (String move: moves) {
+            journal.awaitDurable(gameId, journal.recordMove(gameId, Move.parse(move)));
+        }
+    }
+
+    /**
+     * Returns the position reached from the start by a line of moves.
+     *
+     * @param moves the moves, in long algebraic notation
+     * @return the position in Forsyth-Edwards Notation
+     */
+    private static String position(List<String> moves) {
+        var board = new Board();
+        for (String move: moves) {
+            board.makeMove(Move.parse(move));
+        }
+        return board.toFen();
+    }
+
+    /**
+     * Returns the segment of the only shard with the highest starting sequence number.
+     *
+     * @return the segment's path
+     * @throws IOException if the directory cannot be listed
+     */
+    private Path lastSegment() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log"))
+                        .max(Path::compareTo)
+                        .orElseThrow();
+        }
+    }
+
+    /**
+     * Replaces the segment channel of the only shard of an open journal.
+     *
+     * @param journal the journal
+     * @param replace maps the shard's channel to its replacement
+     * @throws ReflectiveOperationException if the shard cannot be reached
+     */
+    private static void replaceChannel(MoveJournal journal,
+                                       java.util.function.UnaryOperator<FileChannel> replace)
+            throws ReflectiveOperationException {
+        var shards = MoveJournal.class.getDeclaredField("shards");
+        shards.setAccessible(true);
+        Object shard = ((Object[]) shards.get(journal))[0];
+        var io = shard.getClass().getDeclaredField("io");
+        var channel = shard.getClass().getDeclaredField("channel");
+        io.setAccessible(true);
+        channel.setAccessible(true);
+        synchronized (io.get(shard)) {
+            channel.set(shard, replace.apply((FileChannel) channel.get(shard)));
+        }
+    }
+
+}
\ No newline at end of file
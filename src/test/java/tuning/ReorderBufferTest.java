@@ -0,0 +1,145 @@
+package tuning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests that a {@link ReorderBuffer} hands chunks over in the order of the input whatever order
+ * they are labeled in, holds workers that get too far ahead, and lets every worker finish once a
+ * failed writer drains it.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class ReorderBufferTest {
+
+    private static final int CAPACITY = 3;
+    private static final int WORKERS  = 4;
+    private static final int CHUNKS   = 40;
+
+    /**
+     * Chunks put in reverse order are taken in order, and a chunk past the buffer's capacity
+     * waits until the next chunk is taken.
+     */
+    @Test
+    @Timeout(10)
+    void takesChunksInOrder() throws Exception {
+        var reorder = new ReorderBuffer(CAPACITY);
+        for (int sequence = CAPACITY - 1; sequence >= 0; sequence--) {
+            reorder.put(sequence, chunk(sequence));
+        }
+        var ahead = new Thread(() -> {
+            try {
+                reorder.put(CAPACITY, chunk(CAPACITY));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        ahead.start();
+        ahead.join(200);
+        assertTrue(ahead.isAlive());
+        assertEquals(0, reorder.take().getLong(0));
+        ahead.join();
+        reorder.finish(CAPACITY + 1);
+        for (int sequence = 1; sequence <= CAPACITY; sequence++) {
+            assertEquals(sequence, reorder.take().getLong(0));
+        }
+        assertNull(reorder.take());
+    }
+
+    /**
+     * Workers that take different times for each chunk still hand them over in the order of the
+     * input.
+     */
+    @Test
+    @Timeout(10)
+    void ordersChunksOfWorkersFinishingOutOfOrder() throws Exception {
+        var reorder = new ReorderBuffer(CAPACITY);
+        List<Thread> workers = startWorkers(reorder);
+        var taken = new ArrayList<Long>();
+        for (int sequence = 0; sequence < CHUNKS; sequence++) {
+            taken.add(reorder.take().getLong(0));
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        reorder.finish(CHUNKS);
+        assertNull(reorder.take());
+        for (int sequence = 0; sequence < CHUNKS; sequence++) {
+            assertEquals(sequence, taken.get(sequence));
+        }
+    }
+
+    /**
+     * A writer that fails after its first chunk and drains the rest lets every worker finish,
+     * even though the buffer holds fewer chunks than the workers label.
+     */
+    @Test
+    @Timeout(10)
+    void letsWorkersFinishOnceDrained() throws Exception {
+        var reorder = new ReorderBuffer(CAPACITY);
+        List<Thread> workers = startWorkers(reorder);
+        var writer = new Thread(() -> {
+            try {
+                reorder.take();
+                reorder.drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        writer.start();
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        reorder.finish(CHUNKS);
+        writer.join();
+        assertNull(reorder.take());
+    }
+
+    /**
+     * Starts workers that each put every chunk whose sequence number is theirs modulo the
+     * number of workers, after a random delay, so that they finish out of order.
+     *
+     * @param reorder the buffer
+     * @return the workers
+     */
+    private static List<Thread> startWorkers(ReorderBuffer reorder) {
+        var workers = new ArrayList<Thread>();
+        for (int w = 0; w < WORKERS; w++) {
+            int first = w;
+            var worker = new Thread(() -> {
+                var random = new Random(first);
+                try {
+                    for (int sequence = first; sequence < CHUNKS; sequence += WORKERS) {
+                        Thread.sleep(random.nextInt(5));
+                        reorder.put(sequence, chunk(sequence));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        return workers;
+    }
+
+    /**
+     * Creates the records of a chunk, which hold its sequence number.
+     *
+     * @param sequence the chunk's place in the input
+     * @return the records
+     */
+    private static ByteBuffer chunk(long sequence) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(0, sequence);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package tuning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the log-likelihood ratio, decisions and Elo estimates of a {@link Sprt} on known
+ * results, including results with no variance.
+ *
+ * @author Marco Olea
+ * @version 1.0
+ */
+class SprtTest {
+
+    private static final double DELTA = 1e-6;
+
+    /**
+     * Known results give the log-likelihood ratio of the normal approximation, and a decision
+     * once it crosses the bounds set by alpha and beta.
+     */
+    @Test
+    void decidesOnKnownResults() {
+        var stronger = sprt(0, 5, 0.05, 0.05, 1000, 1000, 800);
+        assertEquals(4.058180, stronger.getLlr(), DELTA);
+        assertEquals(Sprt.Decision.ACCEPT_H1, stronger.getDecision());
+
+        var weaker = sprt(0, 5, 0.05, 0.05, 800, 1000, 1000);
+        assertEquals(-4.967330, weaker.getLlr(), DELTA);
+        assertEquals(Sprt.Decision.ACCEPT_H0, weaker.getDecision());
+
+        var undecided = sprt(0, 10, 0.05, 0.05, 120, 300, 100);
+        assertEquals(0.854409, undecided.getLlr(), DELTA);
+        assertEquals(Sprt.Decision.CONTINUE, undecided.getDecision());
+
+        // With beta at 0.1, the lower bound is ln(0.1 / 0.95) = -2.25
+        var close = sprt(0, 50, 0.05, 0.1, 30, 40, 30);
+        assertEquals(-1.702326, close.getLlr(), DELTA);
+        assertEquals(Sprt.Decision.CONTINUE, close.getDecision());
+        var lopsided = sprt(0, 50, 0.05, 0.1, 60, 20, 20);
+        assertEquals(7.336959, lopsided.getLlr(), DELTA);
+        assertEquals(Sprt.Decision.ACCEPT_H1, lopsided.getDecision());
+    }
+
+    /**
+     * The Elo estimate and its margin follow from the score and its variance.
+     */
+    @Test
+    void estimatesElo() {
+        var sprt = sprt(0, 5, 0.05, 0.05, 40, 25, 35);
+        assertEquals(100, sprt.getGames());
+        assertEquals(0.525, sprt.getScore(), DELTA);
+        assertEquals(17.386278, sprt.getElo(), DELTA);
+        assertEquals(59.604486, sprt.getEloMargin(), DELTA);
+        assertEquals("W 40 D 25 L 35, Elo +17.4 +/- 59.6, LLR 0.08 [-2.94, 2.94]",
+                     sprt.toString());
+    }
+
+    /**
+     * Results with no variance, from no games, all draws, or one engine winning every game,
+     * give no log-likelihood ratio, and an infinite margin when the Elo difference is infinite
+     * or unknown.
+     */
+    @Test
+    void handlesResultsWithoutVariance() {
+        var empty = sprt(0, 5, 0.05, 0.05, 0, 0, 0);
+        assertEquals(0, empty.getLlr());
+        assertEquals(Sprt.Decision.CONTINUE, empty.getDecision());
+        assertEquals(0, empty.getElo(), DELTA);
+        assertEquals(Double.POSITIVE_INFINITY, empty.getEloMargin());
+
+        var draws = sprt(0, 5, 0.05, 0.05, 0, 10, 0);
+        assertEquals(0, draws.getLlr());
+        assertEquals(0, draws.getElo(), DELTA);
+        assertEquals(0, draws.getEloMargin(), DELTA);
+
+        var wins = sprt(0, 5, 0.05, 0.05, 10, 0, 0);
+        assertEquals(0, wins.getLlr());
+        assertEquals(Sprt.Decision.CONTINUE, wins.getDecision());
+        assertEquals(Double.POSITIVE_INFINITY, wins.getElo());
+        assertEquals(Double.POSITIVE_INFINITY, wins.getEloMargin());
+
+        var losses = sprt(0, 5, 0.05, 0.05, 0, 0, 10);
+        assertEquals(Double.NEGATIVE_INFINITY, losses.getElo());
+        assertEquals(Double.POSITIVE_INFINITY, losses.getEloMargin());
+
+        var nearlyAll = sprt(0, 5, 0.05, 0.05, 9, 0, 1);
+        assertEquals(Double.POSITIVE_INFINITY, nearlyAll.getEloMargin());
+    }
+
+    /**
+     * Creates a test and adds results to it.
+     *
+     * @param elo0   the Elo difference of the null hypothesis
+     * @param elo1   the Elo difference of the alternative hypothesis
+     * @param alpha  the probability of accepting H1 when H0 is true
+     * @param beta   the probability of accepting H0 when H1 is true
+     * @param wins   the first engine's wins
+     * @param draws  the draws
+     * @param losses the first engine's losses
+     * @return the test
+     */
+    private static Sprt sprt(double elo0, double elo1, double alpha, double beta, int wins,
+                             int draws, int losses) {
+        var sprt = new Sprt(elo0, elo1, alpha, beta);
+        for (int i = 0; i < wins; i++) {
+            sprt.add(1);
+        }
+        for (int i = 0; i < draws; i++) {
+            sprt.add(0.5);
+        }
+        for (int i = 0; i < losses; i++) {
+            sprt.add(0);
+        }
+        return sprt;
+    }
+
+}
\ No newline at end of file